@@ -0,0 +1,128 @@
+/*
+ * InvestBook
+ * Copyright (C) 2020  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package db.migration.all;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.spacious_team.broker.pojo.PortfolioCash;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Moves CASH portfolio properties, serialized by {@link PortfolioCash#serialize(Collection)}, to portfolio_cash table.
+ * Values of same market and currency are summed. Property, which can't be deserialized or has value
+ * not fitting portfolio_cash.value column, is kept as is.
+ */
+@Slf4j
+public class V2021_8_5_1 extends BaseJavaMigration {
+
+    // portfolio_cash.value decimal(20,6)
+    private static final int MAX_INTEGER_DIGITS = 14;
+    private static final int MAX_FRACTION_DIGITS = 6;
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        Map<PortfolioCashKey, BigDecimal> cashes = new LinkedHashMap<>();
+        Collection<Integer> convertedProperties = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "SELECT `id`, `portfolio`, `timestamp`, `value` FROM `portfolio_property` " +
+                             "WHERE `property` = 'CASH'")) {
+            while (resultSet.next()) {
+                String portfolio = resultSet.getString(2);
+                Timestamp timestamp = resultSet.getTimestamp(3);
+                String value = resultSet.getString(4);
+                try {
+                    Map<PortfolioCashKey, BigDecimal> propertyCashes = new LinkedHashMap<>();
+                    for (PortfolioCash cash : PortfolioCash.deserialize(value)) {
+                        String market = (cash.getSection() == null) ? "all" : cash.getSection();
+                        String currency = Objects.requireNonNull(cash.getCurrency(), "Не задана валюта");
+                        BigDecimal cashValue = Objects.requireNonNull(cash.getValue(), "Не задан остаток");
+                        PortfolioCashKey key = new PortfolioCashKey(portfolio, timestamp, market, currency);
+                        propertyCashes.merge(key, cashValue, BigDecimal::add);
+                    }
+                    propertyCashes.values().forEach(V2021_8_5_1::checkValue);
+                    propertyCashes.forEach((key, cash) -> cashes.merge(key, cash, BigDecimal::add));
+                    convertedProperties.add(resultSet.getInt(1));
+                } catch (Exception e) {
+                    log.warn("Не могу перенести в таблицу portfolio_cash свойство CASH счета {}: {}",
+                            portfolio, value, e);
+                }
+            }
+        }
+        insertPortfolioCash(connection, cashes);
+        deletePortfolioProperties(connection, convertedProperties);
+        log.info("Перенесено в таблицу portfolio_cash {} свойств CASH", convertedProperties.size());
+    }
+
+    private static void checkValue(BigDecimal value) {
+        BigDecimal stripped = value.stripTrailingZeros();
+        int fractionDigits = Math.max(0, stripped.scale());
+        if (fractionDigits > MAX_FRACTION_DIGITS || stripped.precision() - stripped.scale() > MAX_INTEGER_DIGITS) {
+            throw new IllegalArgumentException("Остаток " + value.toPlainString() + " не может быть сохранен без " +
+                    "округления, допустимо не более " + MAX_INTEGER_DIGITS + " знаков в целой части и " +
+                    MAX_FRACTION_DIGITS + " в дробной");
+        }
+    }
+
+    private static void insertPortfolioCash(Connection connection, Map<PortfolioCashKey, BigDecimal> cashes)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO `portfolio_cash` (`portfolio`, `timestamp`, `market`, `currency`, `value`) " +
+                        "VALUES (?, ?, ?, ?, ?)")) {
+            for (var entry : cashes.entrySet()) {
+                PortfolioCashKey key = entry.getKey();
+                statement.setString(1, key.portfolio());
+                statement.setTimestamp(2, key.timestamp());
+                statement.setString(3, key.market());
+                statement.setString(4, key.currency());
+                statement.setBigDecimal(5, entry.getValue());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void deletePortfolioProperties(Connection connection, Collection<Integer> ids) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "DELETE FROM `portfolio_property` WHERE `id` = ?")) {
+            for (Integer id : ids) {
+                statement.setInt(1, id);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static record PortfolioCashKey(String portfolio, Timestamp timestamp, String market, String currency) {
+    }
+}
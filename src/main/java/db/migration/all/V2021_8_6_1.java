@@ -0,0 +1,94 @@
+/*
+ * InvestBook
+ * Copyright (C) 2020  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package db.migration.all;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Moves TOTAL_ASSETS_RUB and TOTAL_ASSETS_USD portfolio properties, stored as strings, to portfolio_total_assets table.
+ * Property, which value isn't a number or doesn't fit portfolio_total_assets.value column without rounding,
+ * is kept as is.
+ */
+@Slf4j
+public class V2021_8_6_1 extends BaseJavaMigration {
+
+    // portfolio_total_assets.value decimal(20,6)
+    private static final int MAX_INTEGER_DIGITS = 14;
+    private static final int MAX_FRACTION_DIGITS = 6;
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        int count = 0;
+        try (Statement select = connection.createStatement();
+             ResultSet resultSet = select.executeQuery(
+                     "SELECT `id`, `portfolio`, `timestamp`, `property`, `value` FROM `portfolio_property` " +
+                             "WHERE `property` IN ('TOTAL_ASSETS_RUB', 'TOTAL_ASSETS_USD')");
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO `portfolio_total_assets` (`portfolio`, `timestamp`, `value`, `currency`) " +
+                             "VALUES (?, ?, ?, ?)");
+             PreparedStatement delete = connection.prepareStatement(
+                     "DELETE FROM `portfolio_property` WHERE `id` = ?")) {
+            while (resultSet.next()) {
+                String property = resultSet.getString(4);
+                String value = resultSet.getString(5);
+                BigDecimal totalAssets;
+                try {
+                    totalAssets = BigDecimal.valueOf(Double.parseDouble(value));
+                } catch (Exception e) {
+                    log.warn("Не могу перенести в таблицу portfolio_total_assets свойство {} счета {}, " +
+                            "значение должно содержать число: {}", property, resultSet.getString(2), value);
+                    continue;
+                }
+                if (!isFitColumn(totalAssets)) {
+                    log.warn("Не могу перенести в таблицу portfolio_total_assets свойство {} счета {}, " +
+                                    "значение не может быть сохранено без округления: {}",
+                            property, resultSet.getString(2), value);
+                    continue;
+                }
+                insert.setString(1, resultSet.getString(2));
+                insert.setTimestamp(2, resultSet.getTimestamp(3));
+                insert.setBigDecimal(3, totalAssets);
+                insert.setString(4, property.equals("TOTAL_ASSETS_USD") ? "USD" : "RUB");
+                insert.addBatch();
+                delete.setInt(1, resultSet.getInt(1));
+                delete.addBatch();
+                count++;
+            }
+            insert.executeBatch();
+            delete.executeBatch();
+        }
+        log.info("Перенесено в таблицу portfolio_total_assets {} свойств TOTAL_ASSETS", count);
+    }
+
+    private static boolean isFitColumn(BigDecimal value) {
+        BigDecimal stripped = value.stripTrailingZeros();
+        int fractionDigits = Math.max(0, stripped.scale());
+        return fractionDigits <= MAX_FRACTION_DIGITS && stripped.precision() - stripped.scale() <= MAX_INTEGER_DIGITS;
+    }
+}
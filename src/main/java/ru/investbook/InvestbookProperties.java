@@ -25,6 +25,7 @@ import org.springframework.stereotype.Component;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -45,4 +46,58 @@ public class InvestbookProperties {
     private Collection<String> tableParsers = Collections.emptyList();
 
     private boolean reportBackup = true;
+
+    /**
+     * Max summary count of transactions held by FIFO positions cache, least valuable positions are evicted
+     * when the limit is exceeded
+     */
+    private long positionsCacheMaxTransactions = 100_000;
+
+    /**
+     * FIFO positions are evicted from cache if not accessed within this period
+     */
+    private Duration positionsCacheExpireAfterAccess = Duration.ofHours(1);
+
+    /**
+     * Max count of cached exchange rates (including cross rates at dates)
+     */
+    private long fxRateCacheMaxSize = 50_000;
+
+    /**
+     * Count of threads computing report table rows for different securities concurrently, rows are computed
+     * on the report thread if value is 1 or less. Disabled by default, because pool threads have no
+     * open-in-view EntityManager, lazy loaded entity associations can't be read by them.
+     */
+    private int reportRowsParallelism = 1;
+
+    /**
+     * Builds Excel report by streaming workbook, which holds in memory only last rows of the sheet being written,
+     * other rows are flushed to compressed temp files. Workbook is written directly to HTTP response.
+     * Buffered in memory workbook is used if disabled
+     */
+    private boolean reportStreaming = true;
+
+    /**
+     * Stores parsed broker report tables by JDBC batches in single database transaction, if enabled.
+     * Batch mode skips already stored rows only, any constraint violation fails whole batch. Report is stored
+     * row by row through API with per row error logging if batch mode is disabled or batch storing fails
+     */
+    private boolean reportImportBatch = true;
+
+    /**
+     * Reads uploaded xlsx broker reports by SAX parser into compact workbook holding only cell values.
+     * Reduces memory usage while large reports are parsed. Report is read by usual way
+     * if it exceeds xls sheet limits (65536 rows, 256 columns)
+     */
+    private boolean reportImportStreaming = false;
+
+    /**
+     * Count of threads parsing uploaded broker reports concurrently
+     */
+    private int reportImportParallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Count of broker reports waiting for import. If queue is full, report is imported on uploading thread
+     */
+    private int reportImportQueueCapacity = 100;
 }
@@ -23,6 +23,7 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.spacious_team.broker.pojo.ForeignExchangeRate;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -45,6 +46,8 @@ import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import static java.util.Collections.singleton;
+
 @RestController
 @Tag(name = "Официальные обменные курсы", description = "История обменных курсов валют")
 @RequestMapping("/api/v1/foreign-exchange-rates")
@@ -98,8 +101,11 @@ public class ForeignExchangeRateRestController extends AbstractRestController<Fo
     @PostMapping
     @Operation(summary = "Добавить")
     public ResponseEntity<Void> post(@RequestBody ForeignExchangeRate object) {
-        foreignExchangeRateService.invalidateCache();
-        return super.post(object);
+        ResponseEntity<Void> response = super.post(object);
+        if (response.getStatusCode() == HttpStatus.CREATED) {
+            foreignExchangeRateService.updateCache(singleton(object));
+        }
+        return response;
     }
 
     /**
@@ -115,8 +121,9 @@ public class ForeignExchangeRateRestController extends AbstractRestController<Fo
                                     @DateTimeFormat(pattern = "yyyy-MM-dd")
                                             LocalDate date,
                                     @RequestBody ForeignExchangeRate object) {
-        foreignExchangeRateService.invalidateCache();
-        return super.put(getId(currencyPair, date), object);
+        ResponseEntity<Void> response = super.put(getId(currencyPair, date), object);
+        foreignExchangeRateService.updateCache(singleton(updateId(getId(currencyPair, date), object)));
+        return response;
     }
 
     /**
@@ -131,8 +138,8 @@ public class ForeignExchangeRateRestController extends AbstractRestController<Fo
                        @Parameter(description = "Дата", example = "2021-01-23")
                        @DateTimeFormat(pattern = "yyyy-MM-dd")
                                LocalDate date) {
-        foreignExchangeRateService.invalidateCache();
         super.delete(getId(currencyPair, date));
+        foreignExchangeRateService.removeFromCache(currencyPair, date);
     }
 
     @Override
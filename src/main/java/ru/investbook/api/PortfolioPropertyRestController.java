@@ -22,6 +22,7 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.spacious_team.broker.pojo.PortfolioProperty;
+import org.spacious_team.broker.pojo.PortfolioPropertyType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -33,6 +34,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import ru.investbook.converter.EntityConverter;
+import ru.investbook.converter.PortfolioTotalAssetsConverter;
 import ru.investbook.entity.PortfolioPropertyEntity;
 
 import javax.validation.Valid;
@@ -67,18 +69,24 @@ public class PortfolioPropertyRestController extends AbstractRestController<Inte
 
     @Override
     @PostMapping
-    @Operation(summary = "Добавить", description = "Добавить информацию о конкретном счете")
+    @Operation(summary = "Добавить", description = "Добавить информацию о конкретном счете. " +
+            "Свойства CASH, TOTAL_ASSETS_RUB и TOTAL_ASSETS_USD не принимаются (ответ 400), " +
+            "остатки денежных средств и оценка активов вводятся через формы")
     public ResponseEntity<Void> post(@Valid @RequestBody PortfolioProperty property) {
+        checkProperty(property);
         return super.post(property);
     }
 
     @Override
     @PutMapping("{id}")
-    @Operation(summary = "Обновить", description = "Обновить информацию о счете")
+    @Operation(summary = "Обновить", description = "Обновить информацию о счете. " +
+            "Свойства CASH, TOTAL_ASSETS_RUB и TOTAL_ASSETS_USD не принимаются (ответ 400), " +
+            "остатки денежных средств и оценка активов вводятся через формы")
     public ResponseEntity<Void> put(@PathVariable("id")
                                     @Parameter(description = "Внутренний идентификатор записи")
                                             Integer id,
                                     @Valid @RequestBody PortfolioProperty property) {
+        checkProperty(property);
         return super.put(id, property);
     }
 
@@ -91,6 +99,19 @@ public class PortfolioPropertyRestController extends AbstractRestController<Inte
         super.delete(id);
     }
 
+    /**
+     * Cash and total assets are stored in portfolio_cash and portfolio_total_assets tables, not in portfolio_property
+     */
+    private static void checkProperty(PortfolioProperty property) {
+        if (property.getProperty() == PortfolioPropertyType.CASH) {
+            throw new BadRequestException("Свойство " + property.getProperty() + " не поддерживается, " +
+                    "остатки денежных средств хранятся отдельно от свойств счета");
+        } else if (PortfolioTotalAssetsConverter.isTotalAssets(property)) {
+            throw new BadRequestException("Свойство " + property.getProperty() + " не поддерживается, " +
+                    "оценка активов хранится отдельно от свойств счета");
+        }
+    }
+
     @Override
     protected Optional<PortfolioPropertyEntity> getById(Integer id) {
         return repository.findById(id);
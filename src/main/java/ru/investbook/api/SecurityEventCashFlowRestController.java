@@ -40,8 +40,6 @@ import javax.validation.Valid;
 import java.util.List;
 import java.util.Optional;
 
-import static org.spacious_team.broker.pojo.CashFlowType.REDEMPTION;
-
 @RestController
 @Tag(name = "События по бумаге", description = """
         Дивиденды, купоны, амортизации, вариационная маржа, комиссии, налоги
@@ -77,8 +75,9 @@ public class SecurityEventCashFlowRestController extends AbstractRestController<
     @PostMapping
     @Operation(summary = "Добавить", description = "Сохранить информацию о выплате в БД")
     public ResponseEntity<Void> post(@Valid @RequestBody SecurityEventCashFlow event) {
-        if (event.getEventType() == REDEMPTION) positionsFactory.invalidateCache();
-        return super.post(event);
+        ResponseEntity<Void> response = super.post(event);
+        positionsFactory.invalidateCache(event);
+        return response;
     }
 
     @Override
@@ -88,8 +87,11 @@ public class SecurityEventCashFlowRestController extends AbstractRestController<
                                     @Parameter(description = "Внутренний идентификатор выплаты в БД")
                                             Integer id,
                                     @Valid @RequestBody SecurityEventCashFlow event) {
-        if (event.getEventType() == REDEMPTION) positionsFactory.invalidateCache();
-        return super.put(id, event);
+        Optional<SecurityEventCashFlow> oldEvent = getById(id).map(converter::fromEntity);
+        ResponseEntity<Void> response = super.put(id, event);
+        oldEvent.ifPresent(positionsFactory::invalidateCache);
+        positionsFactory.invalidateCache(event);
+        return response;
     }
 
     @Override
@@ -98,8 +100,9 @@ public class SecurityEventCashFlowRestController extends AbstractRestController<
     public void delete(@PathVariable("id")
                        @Parameter(description = "Внутренний идентификатор выплаты в БД")
                                Integer id) {
-        positionsFactory.invalidateCache();
+        Optional<SecurityEventCashFlow> event = getById(id).map(converter::fromEntity);
         super.delete(id);
+        event.ifPresent(positionsFactory::invalidateCache);
     }
 
     @Override
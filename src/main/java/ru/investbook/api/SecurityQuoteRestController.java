@@ -22,7 +22,6 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.spacious_team.broker.pojo.SecurityQuote;
-import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -34,6 +33,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import ru.investbook.converter.EntityConverter;
 import ru.investbook.entity.SecurityQuoteEntity;
+import ru.investbook.repository.SecurityQuoteRepository;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -44,9 +44,12 @@ import java.util.Optional;
 @RequestMapping("/api/v1/security-quotes")
 public class SecurityQuoteRestController extends AbstractRestController<Integer, SecurityQuote, SecurityQuoteEntity> {
 
-    public SecurityQuoteRestController(JpaRepository<SecurityQuoteEntity, Integer> repository,
+    private final SecurityQuoteRepository securityQuoteRepository;
+
+    public SecurityQuoteRestController(SecurityQuoteRepository repository,
                                        EntityConverter<SecurityQuoteEntity, SecurityQuote> converter) {
         super(repository, converter);
+        this.securityQuoteRepository = repository;
     }
 
     @Override
@@ -70,7 +73,9 @@ public class SecurityQuoteRestController extends AbstractRestController<Integer,
     @PostMapping
     @Operation(summary = "Добавить")
     public ResponseEntity<Void> post(@Valid @RequestBody SecurityQuote quote) {
-        return super.post(quote);
+        ResponseEntity<Void> response = super.post(quote);
+        securityQuoteRepository.refreshLatestQuote(quote.getSecurity());
+        return response;
     }
 
     @Override
@@ -80,7 +85,12 @@ public class SecurityQuoteRestController extends AbstractRestController<Integer,
                                     @Parameter(description = "Номер записи о котировке")
                                             Integer id,
                                     @Valid @RequestBody SecurityQuote quote) {
-        return super.put(id, quote);
+        Optional<String> prevSecurity = getSecurity(id);
+        ResponseEntity<Void> response = super.put(id, quote);
+        securityQuoteRepository.refreshLatestQuote(quote.getSecurity());
+        prevSecurity.filter(security -> !security.equals(quote.getSecurity()))
+                .ifPresent(securityQuoteRepository::refreshLatestQuote);
+        return response;
     }
 
     @Override
@@ -89,7 +99,13 @@ public class SecurityQuoteRestController extends AbstractRestController<Integer,
     public void delete(@PathVariable("id")
                        @Parameter(description = "Номер записи о котировке")
                                Integer id) {
+        Optional<String> security = getSecurity(id);
         super.delete(id);
+        security.ifPresent(securityQuoteRepository::refreshLatestQuote);
+    }
+
+    private Optional<String> getSecurity(Integer id) {
+        return getById(id).map(quote -> quote.getSecurity().getId());
     }
 
     @Override
@@ -35,6 +35,7 @@ import org.springframework.web.bind.annotation.RestController;
 import ru.investbook.converter.TransactionCashFlowConverter;
 import ru.investbook.entity.TransactionCashFlowEntity;
 import ru.investbook.entity.TransactionCashFlowEntityPK;
+import ru.investbook.report.FifoPositionsFactory;
 import ru.investbook.repository.TransactionCashFlowRepository;
 
 import java.net.URI;
@@ -48,11 +49,14 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/v1/transaction-cash-flows")
 public class TransactionCashFlowRestController extends AbstractRestController<TransactionCashFlowEntityPK, TransactionCashFlow, TransactionCashFlowEntity> {
     private final TransactionCashFlowRepository transactionCashFlowRepository;
+    private final FifoPositionsFactory positionsFactory;
 
     public TransactionCashFlowRestController(TransactionCashFlowRepository repository,
-                                             TransactionCashFlowConverter converter) {
+                                             TransactionCashFlowConverter converter,
+                                             FifoPositionsFactory positionsFactory) {
         super(repository, converter);
         this.transactionCashFlowRepository = repository;
+        this.positionsFactory = positionsFactory;
     }
 
     @Override
@@ -97,7 +101,9 @@ public class TransactionCashFlowRestController extends AbstractRestController<Tr
     @PostMapping
     @Operation(summary = "Добавить", description = "Добавить информацию об об объемах движения ДС по сделке")
     public ResponseEntity<Void> post(@RequestBody TransactionCashFlow object) {
-        return super.post(object);
+        ResponseEntity<Void> response = super.post(object);
+        positionsFactory.invalidateCache(object.getPortfolio(), object.getTransactionId());
+        return response;
     }
 
     /**
@@ -115,7 +121,9 @@ public class TransactionCashFlowRestController extends AbstractRestController<Tr
                                     @Parameter(description = "Тип (стоимость/комиссия/НКД)", example = "Смотреть API \"Типы событий\"")
                                             int eventType,
                                     @RequestBody TransactionCashFlow object) {
-        return super.put(getId(portfolio, transactionId, eventType), object);
+        ResponseEntity<Void> response = super.put(getId(portfolio, transactionId, eventType), object);
+        positionsFactory.invalidateCache(portfolio, transactionId);
+        return response;
     }
 
     /**
@@ -136,6 +144,7 @@ public class TransactionCashFlowRestController extends AbstractRestController<Tr
                                example = "Смотреть API \"Типы событий\"")
                                int eventType) {
         super.delete(getId(portfolio, transactionId, eventType));
+        positionsFactory.invalidateCache(portfolio, transactionId);
     }
 
     @Override
@@ -81,8 +81,9 @@ public class TransactionRestController extends AbstractRestController<Transactio
     @PostMapping
     @Operation(summary = "Добавить", description = "Сохраняет новую сделку в БД")
     public ResponseEntity<Void> post(@Valid @RequestBody Transaction object) {
-        positionsFactory.invalidateCache();
-        return super.post(object);
+        ResponseEntity<Void> response = super.post(object);
+        positionsFactory.invalidateCache(object);
+        return response;
     }
 
     /**
@@ -97,8 +98,11 @@ public class TransactionRestController extends AbstractRestController<Transactio
                                     @Parameter(description = "Идентификатор сделки")
                                             String id,
                                     @Valid @RequestBody Transaction object) {
-        positionsFactory.invalidateCache();
-        return super.put(getId(portfolio, id), object);
+        Optional<Transaction> oldObject = getById(getId(portfolio, id)).map(converter::fromEntity);
+        ResponseEntity<Void> response = super.put(getId(portfolio, id), object);
+        oldObject.ifPresent(positionsFactory::invalidateCache);
+        positionsFactory.invalidateCache(portfolio, object.getSecurity(), object.getTimestamp());
+        return response;
     }
 
     /**
@@ -112,8 +116,9 @@ public class TransactionRestController extends AbstractRestController<Transactio
                        @PathVariable("id")
                        @Parameter(description = "Идентификатор сделки")
                                String id) {
-        positionsFactory.invalidateCache();
+        Optional<Transaction> object = getById(getId(portfolio, id)).map(converter::fromEntity);
         super.delete(getId(portfolio, id));
+        object.ifPresent(positionsFactory::invalidateCache);
     }
 
     @Override
@@ -0,0 +1,62 @@
+/*
+ * InvestBook
+ * Copyright (C) 2020  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.converter;
+
+import lombok.RequiredArgsConstructor;
+import org.spacious_team.broker.pojo.PortfolioCash;
+import org.springframework.stereotype.Component;
+import ru.investbook.entity.PortfolioCashEntity;
+import ru.investbook.entity.PortfolioEntity;
+import ru.investbook.repository.PortfolioRepository;
+
+@Component
+@RequiredArgsConstructor
+public class PortfolioCashConverter implements EntityConverter<PortfolioCashEntity, PortfolioCash> {
+    public static final String DEFAULT_MARKET = "all";
+    private final PortfolioRepository portfolioRepository;
+
+    @Override
+    public PortfolioCashEntity toEntity(PortfolioCash cash) {
+        PortfolioEntity portfolioEntity = portfolioRepository.findById(cash.getPortfolio())
+                .orElseThrow(() -> new IllegalArgumentException("В справочнике не найден брокерский счет: " + cash.getPortfolio()));
+
+        PortfolioCashEntity entity = new PortfolioCashEntity();
+        entity.setPortfolio(portfolioEntity);
+        entity.setTimestamp(cash.getTimestamp());
+        entity.setMarket(getMarket(cash));
+        entity.setValue(cash.getValue());
+        entity.setCurrency(cash.getCurrency());
+        return entity;
+    }
+
+    @Override
+    public PortfolioCash fromEntity(PortfolioCashEntity entity) {
+        return PortfolioCash.builder()
+                .portfolio(entity.getPortfolio().getId())
+                .timestamp(entity.getTimestamp())
+                .section(entity.getMarket())
+                .value(entity.getValue())
+                .currency(entity.getCurrency())
+                .build();
+    }
+
+    public static String getMarket(PortfolioCash cash) {
+        return (cash.getSection() == null) ? DEFAULT_MARKET : cash.getSection();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * InvestBook
+ * Copyright (C) 2020  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.converter;
+
+import lombok.RequiredArgsConstructor;
+import org.spacious_team.broker.pojo.PortfolioProperty;
+import org.spacious_team.broker.pojo.PortfolioPropertyType;
+import org.springframework.stereotype.Component;
+import ru.investbook.entity.PortfolioEntity;
+import ru.investbook.entity.PortfolioTotalAssetsEntity;
+import ru.investbook.repository.PortfolioRepository;
+
+import java.math.BigDecimal;
+
+import static org.spacious_team.broker.pojo.PortfolioPropertyType.TOTAL_ASSETS_RUB;
+import static org.spacious_team.broker.pojo.PortfolioPropertyType.TOTAL_ASSETS_USD;
+
+/**
+ * Converts TOTAL_ASSETS_RUB and TOTAL_ASSETS_USD portfolio properties to portfolio total assets of RUB or USD currency
+ */
+@Component
+@RequiredArgsConstructor
+public class PortfolioTotalAssetsConverter implements EntityConverter<PortfolioTotalAssetsEntity, PortfolioProperty> {
+    private final PortfolioRepository portfolioRepository;
+
+    @Override
+    public PortfolioTotalAssetsEntity toEntity(PortfolioProperty property) {
+        PortfolioEntity portfolioEntity = portfolioRepository.findById(property.getPortfolio())
+                .orElseThrow(() -> new IllegalArgumentException(
+                        "В справочнике не найден брокерский счет: " + property.getPortfolio()));
+
+        PortfolioTotalAssetsEntity entity = new PortfolioTotalAssetsEntity();
+        entity.setId(property.getId());
+        entity.setPortfolio(portfolioEntity);
+        entity.setTimestamp(property.getTimestamp());
+        entity.setValue(getValue(property));
+        entity.setCurrency(getCurrency(property.getProperty()));
+        return entity;
+    }
+
+    @Override
+    public PortfolioProperty fromEntity(PortfolioTotalAssetsEntity entity) {
+        return PortfolioProperty.builder()
+                .id(entity.getId())
+                .portfolio(entity.getPortfolio().getId())
+                .timestamp(entity.getTimestamp())
+                .property(getProperty(entity.getCurrency()))
+                .value(entity.getValue().toString())
+                .build();
+    }
+
+    public static boolean isTotalAssets(PortfolioProperty property) {
+        return property.getProperty() == TOTAL_ASSETS_RUB || property.getProperty() == TOTAL_ASSETS_USD;
+    }
+
+    public static BigDecimal getValue(PortfolioProperty property) {
+        try {
+            return BigDecimal.valueOf(Double.parseDouble(property.getValue()));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Значение должно содержать число, передано " + property, e);
+        }
+    }
+
+    public static String getCurrency(PortfolioPropertyType property) {
+        return switch (property) {
+            case TOTAL_ASSETS_RUB -> "RUB";
+            case TOTAL_ASSETS_USD -> "USD";
+            default -> throw new IllegalArgumentException("Свойство не является оценкой активов: " + property);
+        };
+    }
+
+    public static PortfolioPropertyType getProperty(String currency) {
+        return switch (currency.toUpperCase()) {
+            case "RUB" -> TOTAL_ASSETS_RUB;
+            case "USD" -> TOTAL_ASSETS_USD;
+            default -> throw new IllegalArgumentException("Не поддерживается валюта оценки активов: " + currency);
+        };
+    }
+}
@@ -20,10 +20,15 @@ package ru.investbook.entity;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import org.spacious_team.broker.pojo.SecurityType;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 
 @Entity
@@ -43,4 +48,17 @@ public class SecurityEntity {
 
     @Column(name = "name")
     private String name;
+
+    /**
+     * Derived from {@link #id}, stored to filter securities by type in queries
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type")
+    private SecurityType type;
+
+    @PrePersist
+    @PreUpdate
+    void updateType() {
+        type = SecurityType.getSecurityType(id);
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.spacious_team.broker.report_parser.api.AbstractBrokerReportFactory;
+import org.spacious_team.broker.report_parser.api.BrokerReport;
+
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Broker report factory which can create report from already opened Excel workbook. Allows to open workbook once
+ * while detecting broker of the report.
+ */
+@Slf4j
+public abstract class AbstractExcelBrokerReportFactory extends AbstractBrokerReportFactory {
+
+    /**
+     * @param book opened workbook, isn't closed by this method if null is returned
+     * @return broker report owning the workbook or null if workbook isn't a report of the broker
+     */
+    public abstract BrokerReport create(String excelFileName, Workbook book);
+
+    protected BrokerReport create(Pattern expectedFileNamePattern,
+                                  String excelFileName,
+                                  Workbook book,
+                                  BiFunction<String, Workbook, BrokerReport> brokerReportProvider) {
+        if (expectedFileNamePattern.matcher(excelFileName).matches()) {
+            try {
+                return brokerReportProvider.apply(excelFileName, book);
+            } catch (Exception e) {
+                log.debug("Отчет '{}' не является отчетом брокера {}: {}", excelFileName, getBrokerName(), e.getMessage());
+            }
+        }
+        return null;
+    }
+}
@@ -22,6 +22,20 @@ import java.io.InputStream;
 
 public interface BrokerReportParserService {
 
+    /**
+     * Parse and backups report. Skips report if same file was already imported.
+     * Method does not close input stream.
+     *
+     * @param inputStream      file content
+     * @param fileName         file name
+     * @param providedByBroker broker what generates report, may be null if unknown
+     * @return true if report is imported, false if report is skipped as already imported
+     * @throws RuntimeException if report has broken format or parser not found
+     */
+    default boolean parseReport(InputStream inputStream, String fileName, String providedByBroker) {
+        return parseReport(inputStream, fileName, providedByBroker, false);
+    }
+
     /**
      * Parse and backups report.
      * Method does not close input stream.
@@ -29,7 +43,9 @@ public interface BrokerReportParserService {
      * @param inputStream      file content
      * @param fileName         file name
      * @param providedByBroker broker what generates report, may be null if unknown
+     * @param forceReimport    if false, report is skipped if same file was already imported
+     * @return true if report is imported, false if report is skipped as already imported
      * @throws RuntimeException if report has broken format or parser not found
      */
-    void parseReport(InputStream inputStream, String fileName, String providedByBroker);
+    boolean parseReport(InputStream inputStream, String fileName, String providedByBroker, boolean forceReimport);
 }
@@ -22,6 +22,7 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.spacious_team.broker.report_parser.api.BrokerReport;
 import org.spacious_team.broker.report_parser.api.BrokerReportFactory;
 import org.spacious_team.broker.report_parser.api.ReportTables;
@@ -29,16 +30,25 @@ import org.spacious_team.broker.report_parser.api.ReportTablesFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import ru.investbook.InvestbookProperties;
+import ru.investbook.entity.ImportedBrokerReportEntity;
+import ru.investbook.repository.ImportedBrokerReportRepository;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -49,17 +59,31 @@ public class BrokerReportParserServiceImpl implements BrokerReportParserService
 
     private final InvestbookProperties investbookProperties;
     private final ReportParserService reportParserService;
+    private final ReportImportScheduler reportImportScheduler;
+    private final ImportedBrokerReportRepository importedBrokerReportRepository;
     private final Collection<BrokerReportFactory> brokerReportFactories;
     private final Collection<ReportTablesFactory> reportTablesFactories;
 
 
     @SneakyThrows
     @Override
-    public void parseReport(InputStream inputStream, String fileName, String broker) {
+    public boolean parseReport(InputStream inputStream, String fileName, String broker, boolean forceReimport) {
         try (ByteArrayInputStream is = castToByteArrayInputStream(inputStream)) {
             long t0 = System.nanoTime();
             is.mark(Integer.MAX_VALUE);
-            String brokerName = parseReport0(is, fileName, broker);
+            String sha256 = getSha256(is);
+            is.reset();
+            if (!forceReimport && importedBrokerReportRepository.existsById(sha256)) {
+                log.info("Отчет {} был загружен ранее, повторная загрузка пропущена", fileName);
+                return false;
+            }
+            ParsedReport parsedReport = parseReport0(is, fileName, broker);
+            String brokerName = parsedReport.brokerName();
+            if (parsedReport.isFullyStored()) {
+                saveImportedReport(sha256, brokerName, fileName);
+            } else {
+                log.warn("Отчет {} сохранен не полностью, повторная загрузка отчета не будет пропущена", fileName);
+            }
             if (investbookProperties.isReportBackup()) {
                 is.reset();
                 Path path = saveToBackup(is, fileName, brokerName);
@@ -69,6 +93,7 @@ public class BrokerReportParserServiceImpl implements BrokerReportParserService
                 log.info("Загрузка отчета {} завершена за {}, бекап отключен конфигурацией",
                         fileName, Duration.ofNanos(System.nanoTime() - t0));
             }
+            return true;
         }
     }
 
@@ -86,14 +111,18 @@ public class BrokerReportParserServiceImpl implements BrokerReportParserService
      * @param inputStream      file content
      * @param fileName         file name
      * @param providedByBroker broker what generates report, may be null if unknown
-     * @return the exact name of the broker providing the report
+     * @return the exact name of the broker providing the report and report storing result
      * @throws RuntimeException if report has broken format or parser not found
      */
-    private String parseReport0(ByteArrayInputStream inputStream, String fileName, String providedByBroker) {
+    private ParsedReport parseReport0(ByteArrayInputStream inputStream, String fileName, String providedByBroker) {
         try (BrokerNameAndReport brokerNameAndReport = getBrokerReport(inputStream, fileName, providedByBroker)) {
+            long t0 = System.nanoTime();
             ReportTables reportTables = getReportTables(brokerNameAndReport.getBrokerReport());
-            reportParserService.parse(reportTables);
-            return brokerNameAndReport.getBrokerName();
+            Set<String> portfolios = ReportParserService.getPortfolioIds(reportTables); // tables are parsed here
+            reportImportScheduler.recordParsing(t0);
+            boolean isFullyStored =
+                    reportImportScheduler.runExclusively(portfolios, () -> reportParserService.parse(reportTables));
+            return new ParsedReport(brokerNameAndReport.getBrokerName(), isFullyStored);
         } catch (Exception e) {
             String error = "Произошла ошибка парсинга отчета '" + fileName + "'";
             log.warn(error, e);
@@ -101,6 +130,26 @@ public class BrokerReportParserServiceImpl implements BrokerReportParserService
         }
     }
 
+    private static String getSha256(InputStream inputStream) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        new DigestInputStream(inputStream, digest).transferTo(OutputStream.nullOutputStream()); // doesn't close stream
+        return String.format("%064x", new BigInteger(1, digest.digest()));
+    }
+
+    private void saveImportedReport(String sha256, String brokerName, String fileName) {
+        try {
+            importedBrokerReportRepository.save(ImportedBrokerReportEntity.builder()
+                    .sha256(sha256)
+                    .broker(brokerName)
+                    .fileName(fileName)
+                    .timestamp(Instant.now())
+                    .build());
+        } catch (Exception e) {
+            log.warn("Не удалось сохранить хеш загруженного отчета {}, повторная загрузка отчета не будет пропущена",
+                    fileName, e);
+        }
+    }
+
     /**
      * @return backup file
      */
@@ -132,35 +181,92 @@ public class BrokerReportParserServiceImpl implements BrokerReportParserService
         }
     }
 
-    @SneakyThrows
     private BrokerNameAndReport getReportOfUnknownBroker(ByteArrayInputStream inputStream, String fileName) {
-        BrokerReport brokerReport;
-        // convert to mark supporting input stream
+        BrokerNameAndReport brokerNameAndReport = detectBrokerReport(inputStream, fileName, brokerReportFactories);
+        if (brokerNameAndReport == null) {
+            throw new IllegalArgumentException("Неизвестный формат отчета '" + fileName + "'");
+        }
+        return brokerNameAndReport;
+    }
+
+    private BrokerNameAndReport getReportOfKnownBroker(ByteArrayInputStream inputStream, String fileName, String providedByBroker) {
+        BrokerNameAndReport brokerNameAndReport =
+                detectBrokerReport(inputStream, fileName, findBrokerReportFactory(providedByBroker));
+        if (brokerNameAndReport == null) {
+            throw new IllegalArgumentException("Файл " + fileName + " не является отчетом брокера " + providedByBroker);
+        }
+        return brokerNameAndReport;
+    }
+
+    /**
+     * Excel file is opened once and offered to all Excel report factories, other factories are tried with input stream.
+     *
+     * @return detected report or null if no factory recognizes file
+     */
+    private BrokerNameAndReport detectBrokerReport(ByteArrayInputStream inputStream, String fileName,
+                                                   Collection<BrokerReportFactory> factories) {
+        long t0 = System.nanoTime();
+        Workbook book = isExcelFile(fileName) ? openWorkbook(inputStream, fileName) : null;
+        boolean isBookOwned = false;
+        try {
+            for (BrokerReportFactory brokerReportFactory : factories) {
+                BrokerReport brokerReport;
+                if (book != null && brokerReportFactory instanceof AbstractExcelBrokerReportFactory) {
+                    brokerReport = ((AbstractExcelBrokerReportFactory) brokerReportFactory).create(fileName, book);
+                    isBookOwned = (brokerReport != null);
+                } else {
+                    inputStream.reset();
+                    brokerReport = brokerReportFactory.create(fileName, inputStream);
+                }
+                if (brokerReport != null) {
+                    log.debug("Брокер отчета '{}' определен за {}", fileName, Duration.ofNanos(System.nanoTime() - t0));
+                    return new BrokerNameAndReport(brokerReportFactory.getBrokerName(), brokerReport);
+                }
+            }
+            return null;
+        } finally {
+            reportImportScheduler.recordDetection(t0);
+            if (book != null && !isBookOwned) {
+                closeWorkbook(book, fileName);
+            }
+        }
+    }
+
+    private static boolean isExcelFile(String fileName) {
+        String name = (fileName == null) ? "" : fileName.toLowerCase();
+        return name.endsWith(".xls") || name.endsWith(".xlsx");
+    }
 
-        for (BrokerReportFactory brokerReportFactory : brokerReportFactories) {
-            brokerReport = brokerReportFactory.create(fileName, inputStream);
-            if (brokerReport != null) {
-                return new BrokerNameAndReport(brokerReportFactory.getBrokerName(), brokerReport);
+    /**
+     * @return workbook or null if file can't be opened as workbook, in this case factories are tried with input stream
+     */
+    private Workbook openWorkbook(ByteArrayInputStream inputStream, String fileName) {
+        if (investbookProperties.isReportImportStreaming() && fileName.toLowerCase().endsWith(".xlsx")) {
+            try {
+                inputStream.reset();
+                return StreamingXlsxWorkbookReader.read(inputStream);
+            } catch (Exception e) {
+                log.info("Потоковое чтение файла '{}' невозможно, файл будет прочитан целиком: {}",
+                        fileName, e.getMessage());
             }
         }
-        throw new IllegalArgumentException("Неизвестный формат отчета '" + fileName + "'");
+        try {
+            inputStream.reset();
+            return AbstractExcelBrokerReport.getWorkBook(fileName, inputStream);
+        } catch (Exception e) {
+            log.debug("Не удалось открыть файл '{}' как excel книгу: {}", fileName, e.getMessage());
+            return null;
+        } finally {
+            inputStream.reset();
+        }
     }
 
-    @SneakyThrows
-    private BrokerNameAndReport getReportOfKnownBroker(ByteArrayInputStream inputStream, String fileName, String providedByBroker) {
-        return findBrokerReportFactory(providedByBroker).stream()
-                .map(f -> {
-                    BrokerReport brokerReport = f.create(fileName, inputStream);
-                    if (brokerReport != null) {
-                        return new BrokerNameAndReport(f.getBrokerName(), brokerReport);
-                    } else {
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
-                .findAny()
-                .orElseThrow(() -> new IllegalArgumentException("Файл " + fileName +
-                        " не является отчетом брокера " + providedByBroker));
+    private static void closeWorkbook(Workbook book, String fileName) {
+        try {
+            book.close();
+        } catch (Exception e) {
+            log.warn("Не удалось закрыть excel книгу '{}'", fileName, e);
+        }
     }
 
     private Collection<BrokerReportFactory> findBrokerReportFactory(String broker) {
@@ -191,4 +297,7 @@ public class BrokerReportParserServiceImpl implements BrokerReportParserService
             brokerReport.close();
         }
     }
+
+    private static record ParsedReport(String brokerName, boolean isFullyStored) {
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ru.investbook.parser;
+
+import org.spacious_team.broker.pojo.CashFlowType;
+import org.spacious_team.broker.pojo.EventCashFlow;
+import org.spacious_team.table_wrapper.api.AbstractTable;
+
+import java.time.Instant;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Collection merging duplicates on add the same way as {@link AbstractTable#addWithEqualityChecker}:
+ * the first (in insertion order) element equal to the added one is removed and merged elements are appended.
+ * Elements are hash indexed by key, equality checker is called for elements with the same key only,
+ * so equal elements must have equal keys.
+ */
+public class DuplicatesMergingCollection<K, T> extends AbstractCollection<T> {
+
+    private final Function<T, K> keyExtractor;
+    private final BiPredicate<T, T> equalityChecker;
+    private final BiFunction<T, T, ? extends Iterable<T>> duplicatesMerger;
+    private final Map<K, List<Node<T>>> index = new HashMap<>();
+    private final LinkedHashSet<Node<T>> nodes = new LinkedHashSet<>();
+
+    public DuplicatesMergingCollection(Function<T, K> keyExtractor,
+                                       BiPredicate<T, T> equalityChecker,
+                                       BiFunction<T, T, ? extends Iterable<T>> duplicatesMerger) {
+        this.keyExtractor = keyExtractor;
+        this.equalityChecker = equalityChecker;
+        this.duplicatesMerger = duplicatesMerger;
+    }
+
+    /**
+     * @return collection merging event cash flows by {@link EventCashFlow#checkEquality} and
+     * {@link EventCashFlow#mergeDuplicates}
+     */
+    public static DuplicatesMergingCollection<EventCashFlowKey, EventCashFlow> ofEventCashFlows() {
+        return new DuplicatesMergingCollection<>(EventCashFlowKey::of,
+                EventCashFlow::checkEquality, EventCashFlow::mergeDuplicates);
+    }
+
+    @Override
+    public boolean add(T element) {
+        K key = keyExtractor.apply(element);
+        List<Node<T>> bucket = index.get(key);
+        if (bucket != null) {
+            for (Node<T> node : bucket) {
+                if (equalityChecker.test(node.element, element)) {
+                    remove(key, node);
+                    for (T merged : duplicatesMerger.apply(node.element, element)) {
+                        append(merged);
+                    }
+                    return true;
+                }
+            }
+        }
+        append(element, key);
+        return true;
+    }
+
+    private void append(T element) {
+        append(element, keyExtractor.apply(element));
+    }
+
+    private void append(T element, K key) {
+        Node<T> node = new Node<>(element);
+        index.computeIfAbsent(key, k -> new ArrayList<>(1)).add(node);
+        nodes.add(node);
+    }
+
+    private void remove(K key, Node<T> node) {
+        List<Node<T>> bucket = index.get(key);
+        bucket.remove(node);
+        if (bucket.isEmpty()) {
+            index.remove(key);
+        }
+        nodes.remove(node);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        Iterator<Node<T>> iterator = nodes.iterator();
+        return new Iterator<>() {
+            private Node<T> current;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                current = iterator.next();
+                return current.element;
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                K key = keyExtractor.apply(current.element);
+                List<Node<T>> bucket = index.get(key);
+                bucket.remove(current);
+                if (bucket.isEmpty()) {
+                    index.remove(key);
+                }
+                current = null;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+        nodes.clear();
+    }
+
+    /**
+     * Element holder, compared by identity, so equal elements are stored separately
+     */
+    private static class Node<T> {
+        private final T element;
+
+        private Node(T element) {
+            this.element = element;
+        }
+    }
+
+    public static record EventCashFlowKey(String portfolio, Instant timestamp, CashFlowType eventType,
+                                          String currency) {
+        static EventCashFlowKey of(EventCashFlow cash) {
+            return new EventCashFlowKey(cash.getPortfolio(), cash.getTimestamp(), cash.getEventType(),
+                    cash.getCurrency());
+        }
+    }
+}
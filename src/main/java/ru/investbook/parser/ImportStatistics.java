@@ -0,0 +1,82 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Counts rows per table. Rows, which are stored concurrently by another import, are counted as added.
+ */
+class ImportStatistics {
+    private final Map<String, int[]> tableStatistics = new LinkedHashMap<>(); // added, skipped, failed
+
+    /**
+     * @param isStored predicate returns true if row is already stored in database, such a row is skipped
+     * @param adder    stores row, returns false on error
+     * @return true if all rows are stored
+     */
+    <T> boolean add(String table, Collection<T> rows, Predicate<T> isStored, Predicate<T> adder) {
+        int[] statistics = getStatistics(table);
+        boolean isAllStored = true;
+        for (T row : rows) {
+            if (isStored.test(row)) {
+                statistics[1]++;
+            } else if (adder.test(row)) {
+                statistics[0]++;
+            } else {
+                statistics[2]++;
+                isAllStored = false;
+            }
+        }
+        return isAllStored;
+    }
+
+    /**
+     * Counts rows stored by batch, rows which are not inserted as duplicates are counted as skipped
+     */
+    void add(String table, int rowCount, int addedCount) {
+        int[] statistics = getStatistics(table);
+        statistics[0] += addedCount;
+        statistics[1] += rowCount - addedCount;
+    }
+
+    private int[] getStatistics(String table) {
+        return tableStatistics.computeIfAbsent(table, key -> new int[3]);
+    }
+
+    boolean hasErrors() {
+        return tableStatistics.values()
+                .stream()
+                .anyMatch(statistics -> statistics[2] > 0);
+    }
+
+    @Override
+    public String toString() {
+        return tableStatistics.entrySet()
+                .stream()
+                .map(e -> e.getKey() + " (добавлено " + e.getValue()[0] +
+                        ", пропущено " + e.getValue()[1] +
+                        ", ошибок " + e.getValue()[2] + ")")
+                .collect(Collectors.joining(", "));
+    }
+}
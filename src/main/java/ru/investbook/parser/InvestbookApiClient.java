@@ -25,7 +25,6 @@ import org.spacious_team.broker.pojo.ForeignExchangeRate;
 import org.spacious_team.broker.pojo.Portfolio;
 import org.spacious_team.broker.pojo.PortfolioCash;
 import org.spacious_team.broker.pojo.PortfolioProperty;
-import org.spacious_team.broker.pojo.PortfolioPropertyType;
 import org.spacious_team.broker.pojo.Security;
 import org.spacious_team.broker.pojo.SecurityEventCashFlow;
 import org.spacious_team.broker.pojo.SecurityQuote;
@@ -46,19 +45,27 @@ import ru.investbook.api.SecurityQuoteRestController;
 import ru.investbook.api.SecurityRestController;
 import ru.investbook.api.TransactionCashFlowRestController;
 import ru.investbook.api.TransactionRestController;
+import ru.investbook.converter.PortfolioCashConverter;
+import ru.investbook.converter.PortfolioTotalAssetsConverter;
+import ru.investbook.repository.PortfolioCashRepository;
+import ru.investbook.repository.PortfolioTotalAssetsRepository;
 import ru.investbook.service.moex.MoexDerivativeCodeService;
 
+import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.AbstractMap.SimpleEntry;
 import java.util.Collection;
-import java.util.List;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.reducing;
 import static java.util.stream.Collectors.toList;
+import static ru.investbook.converter.PortfolioCashConverter.getMarket;
 import static ru.investbook.repository.RepositoryHelper.isUniqIndexViolationException;
 
 @Component
@@ -74,6 +81,10 @@ public class InvestbookApiClient {
     private final PortfolioPropertyRestController portfolioPropertyRestController;
     private final SecurityQuoteRestController securityQuoteRestController;
     private final ForeignExchangeRateRestController foreignExchangeRateRestController;
+    private final PortfolioCashRepository portfolioCashRepository;
+    private final PortfolioCashConverter portfolioCashConverter;
+    private final PortfolioTotalAssetsRepository portfolioTotalAssetsRepository;
+    private final PortfolioTotalAssetsConverter portfolioTotalAssetsConverter;
     private final MoexDerivativeCodeService moexDerivativeCodeService;
 
     public boolean addPortfolio(Portfolio portfolio) {
@@ -111,27 +122,38 @@ public class InvestbookApiClient {
         return security;
     }
 
-    public void addTransaction(SecurityTransaction securityTransaction) {
+    public boolean addTransaction(SecurityTransaction securityTransaction) {
         boolean isAdded = addTransaction(securityTransaction.getTransaction());
         if (isAdded) {
             securityTransaction.getTransactionCashFlows().forEach(this::addTransactionCashFlow);
         }
+        return isAdded;
     }
 
-    public void addTransaction(DerivativeTransaction derivativeTransaction) {
-        addSecurity(derivativeTransaction.getSecurity());
+    public boolean addTransaction(DerivativeTransaction derivativeTransaction) {
+        return addTransaction(derivativeTransaction, this::addSecurity);
+    }
+
+    private boolean addTransaction(DerivativeTransaction derivativeTransaction, Predicate<String> securityAdder) {
+        securityAdder.test(derivativeTransaction.getSecurity());
         boolean isAdded = addTransaction(derivativeTransaction.getTransaction());
         if (isAdded) {
             derivativeTransaction.getTransactionCashFlows().forEach(this::addTransactionCashFlow);
         }
+        return isAdded;
+    }
+
+    public boolean addTransaction(ForeignExchangeTransaction fxTransaction) {
+        return addTransaction(fxTransaction, this::addSecurity);
     }
 
-    public void addTransaction(ForeignExchangeTransaction fxTransaction) {
-        addSecurity(fxTransaction.getSecurity());
+    private boolean addTransaction(ForeignExchangeTransaction fxTransaction, Predicate<String> securityAdder) {
+        securityAdder.test(fxTransaction.getSecurity());
         boolean isAdded = addTransaction(fxTransaction.getTransaction());
         if (isAdded) {
             fxTransaction.getTransactionCashFlows().forEach(this::addTransactionCashFlow);
         }
+        return isAdded;
     }
 
     protected boolean addTransaction(Transaction transaction) {
@@ -140,65 +162,92 @@ public class InvestbookApiClient {
                 "Не могу добавить транзакцию " + transaction);
     }
 
-    public void addTransactionCashFlow(TransactionCashFlow transactionCashFlow) {
-        handlePost(
+    public boolean addTransactionCashFlow(TransactionCashFlow transactionCashFlow) {
+        return handlePost(
                 () -> transactionCashFlowRestController.post(transactionCashFlow),
                 "Не могу добавить информацию о передвижении средств " + transactionCashFlow);
     }
 
-    public void addEventCashFlow(EventCashFlow eventCashFlow) {
-        handlePost(
+    public boolean addEventCashFlow(EventCashFlow eventCashFlow) {
+        return handlePost(
                 () -> eventCashFlowRestController.post(eventCashFlow),
                 "Не могу добавить информацию о движении денежных средств " + eventCashFlow);
     }
 
-    public void addSecurityEventCashFlow(SecurityEventCashFlow securityEventCashFlow) {
-        handlePost(
+    public boolean addSecurityEventCashFlow(SecurityEventCashFlow securityEventCashFlow) {
+        return handlePost(
                 () -> securityEventCashFlowRestController.post(securityEventCashFlow),
                 "Не могу добавить информацию о движении денежных средств " + securityEventCashFlow);
     }
 
-    // TODO replace by storing to new 'portfolio_cash' table
-    @Deprecated
-    public void addPortfolioCash(Collection<PortfolioCash> cash) {
-        try {
-            Map<Entry<String, Instant>, List<PortfolioCash>> groupedCash = cash.stream()
-                    .collect(
-                            groupingBy(
-                                    v -> new SimpleEntry<>(v.getPortfolio(), v.getTimestamp()),
-                                    toList()));
-            groupedCash.entrySet()
-                    .stream()
-                    .map(e -> PortfolioProperty.builder()
-                            .portfolio(e.getKey().getKey())
-                            .timestamp(e.getKey().getValue())
-                            .property(PortfolioPropertyType.CASH)
-                            .value(PortfolioCash.serialize(e.getValue()))
-                            .build())
-                    .forEach(this::addPortfolioProperty);
-        } catch (Exception e) {
-            log.warn("Не могу добавить информацию о наличных средствах {}", cash, e);
-        }
+    public boolean addPortfolioCash(PortfolioCash cash) {
+        return handlePost(
+                () -> {
+                    portfolioCashRepository.saveAndFlush(portfolioCashConverter.toEntity(cash));
+                    return ResponseEntity.ok().build();
+                },
+                "Не могу добавить информацию о наличных средствах " + cash);
+    }
+
+    public boolean addPortfolioTotalAssets(PortfolioProperty totalAssets) {
+        return handlePost(
+                () -> {
+                    portfolioTotalAssetsRepository.saveAndFlush(portfolioTotalAssetsConverter.toEntity(totalAssets));
+                    return ResponseEntity.ok().build();
+                },
+                "Не могу добавить информацию об оценке активов " + totalAssets);
+    }
+
+    /**
+     * @return portfolio cash with summed values of same portfolio, timestamp, market and currency,
+     * which are stored as single portfolio_cash row
+     */
+    static Collection<PortfolioCash> sumPortfolioCash(Collection<PortfolioCash> cash) {
+        Map<PortfolioCashKey, BigDecimal> groupedCash = cash.stream()
+                .filter(v -> v.getValue() != null)
+                .collect(
+                        groupingBy(
+                                v -> new PortfolioCashKey(
+                                        v.getPortfolio(), v.getTimestamp(), getMarket(v), v.getCurrency()),
+                                LinkedHashMap::new,
+                                reducing(BigDecimal.ZERO, PortfolioCash::getValue, BigDecimal::add)));
+        return groupedCash.entrySet()
+                .stream()
+                .map(e -> PortfolioCash.builder()
+                        .portfolio(e.getKey().portfolio())
+                        .timestamp(e.getKey().timestamp())
+                        .section(e.getKey().market())
+                        .currency(e.getKey().currency())
+                        .value(e.getValue())
+                        .build())
+                .collect(toList());
     }
 
-    public void addPortfolioProperty(PortfolioProperty property) {
-        handlePost(
+    public boolean addPortfolioProperty(PortfolioProperty property) {
+        return handlePost(
                 () -> portfolioPropertyRestController.post(property),
                 "Не могу добавить информацию о свойствах портфеля " + property);
     }
 
-    public void addSecurityQuote(SecurityQuote securityQuote) {
-        handlePost(
+    public boolean addSecurityQuote(SecurityQuote securityQuote) {
+        return handlePost(
                 () -> securityQuoteRestController.post(securityQuote),
                 "Не могу добавить информацию о котировке финансового инструмента " + securityQuote);
     }
 
-    public void addForeignExchangeRate(ForeignExchangeRate exchangeRate) {
-        handlePost(
+    public boolean addForeignExchangeRate(ForeignExchangeRate exchangeRate) {
+        return handlePost(
                 () -> foreignExchangeRateRestController.post(exchangeRate),
                 "Не могу добавить информацию о курсе валюты " + exchangeRate);
     }
 
+    /**
+     * @return new import session, which should be used by one report import
+     */
+    public ImportSession newImportSession() {
+        return new ImportSession();
+    }
+
     /**
      * @return true if new row was added or it was already exists in DB, false - or error
      */
@@ -221,4 +270,60 @@ public class InvestbookApiClient {
         }
         return true;
     }
+
+    /**
+     * Remembers portfolios and securities which are already stored during single report import,
+     * such a portfolio or security isn't posted again. Isn't thread safe.
+     */
+    public class ImportSession {
+        private final Set<String> storedPortfolios = new HashSet<>();
+        private final Set<String> storedSecurities = new HashSet<>();
+
+        /**
+         * Marks portfolios as stored without posting them
+         */
+        public void setPortfoliosStored(Collection<String> portfolios) {
+            storedPortfolios.addAll(portfolios);
+        }
+
+        /**
+         * Marks securities as stored without posting them
+         */
+        public void setSecuritiesStored(Collection<String> securities) {
+            storedSecurities.addAll(securities);
+        }
+
+        public boolean addPortfolio(Portfolio portfolio) {
+            return storedPortfolios.contains(portfolio.getId()) ||
+                    remember(storedPortfolios, portfolio.getId(), InvestbookApiClient.this.addPortfolio(portfolio));
+        }
+
+        public boolean addSecurity(String security) {
+            return storedSecurities.contains(security) ||
+                    remember(storedSecurities, security, InvestbookApiClient.this.addSecurity(security));
+        }
+
+        public boolean addSecurity(Security security) {
+            return storedSecurities.contains(security.getId()) ||
+                    remember(storedSecurities, security.getId(), InvestbookApiClient.this.addSecurity(security));
+        }
+
+        public boolean addTransaction(DerivativeTransaction derivativeTransaction) {
+            return InvestbookApiClient.this.addTransaction(derivativeTransaction, this::addSecurity);
+        }
+
+        public boolean addTransaction(ForeignExchangeTransaction fxTransaction) {
+            return InvestbookApiClient.this.addTransaction(fxTransaction, this::addSecurity);
+        }
+
+        private boolean remember(Set<String> storedIds, String id, boolean isStored) {
+            if (isStored) {
+                storedIds.add(id);
+            }
+            return isStored;
+        }
+    }
+
+    private static record PortfolioCashKey(String portfolio, Instant timestamp, String market, String currency) {
+    }
 }
@@ -39,7 +39,11 @@ import javax.mail.search.FlagTerm;
 import javax.mail.search.FromTerm;
 import javax.mail.search.SearchTerm;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.lang.System.nanoTime;
@@ -54,6 +58,7 @@ public class MailboxReportParserService {
 
     private final Flags SEEN_FLAG = new Flags(SEEN);
     private final BrokerReportParserService brokerReportParserService;
+    private final ReportImportScheduler reportImportScheduler;
 
     @SneakyThrows
     public int parseReports(MailboxDescriptor mailbox) {
@@ -67,9 +72,11 @@ public class MailboxReportParserService {
         SearchTerm searchTerm = getSearchTerm(mailbox);
         Message[] messages = inbox.search(searchTerm);
         log.info("Найдено {} не прочитанных писем, удовлетворяющих фильтру", messages.length);
-        int parsedReportCount = Stream.of(messages)
-                .parallel()
-                .mapToInt(message -> handleMessage(message, mailbox))
+        List<MessageImport> messageImports = Stream.of(messages)
+                .map(message -> handleMessage(message, mailbox))
+                .collect(Collectors.toList());
+        int parsedReportCount = messageImports.stream()
+                .mapToInt(MessageImport::await)
                 .sum();
         log.info("{} отчетов загружено с почтового ящика {} на {} за {}",
                 parsedReportCount, mailbox.getLogin(), mailbox.getServer(), Duration.ofNanos(nanoTime() - t0));
@@ -103,10 +110,10 @@ public class MailboxReportParserService {
     }
 
     /**
-     * @return number of successfully parsed reports
+     * Submits message attachments for import
      */
-    private int handleMessage(Message message, MailboxDescriptor mailbox) {
-        int reportCnt = 0;
+    private MessageImport handleMessage(Message message, MailboxDescriptor mailbox) {
+        List<Future<Boolean>> reports = new ArrayList<>();
         boolean isSeen = true;
         try {
             isSeen = message.getFlags().contains(SEEN);
@@ -114,38 +121,62 @@ public class MailboxReportParserService {
             if (content instanceof Multipart) {
                 Multipart multipart = (Multipart) message.getContent();
                 for (int i = 0, cnt = multipart.getCount(); i < cnt; i++) {
-                    if (handleBodyPart(multipart.getBodyPart(i), mailbox)) {
-                        reportCnt++;
-                    }
+                    BodyPart bodyPart = multipart.getBodyPart(i);
+                    reports.add(reportImportScheduler.submit(() -> handleBodyPart(bodyPart, mailbox)));
                 }
             }
         } catch (Exception e) {
             log.error("Mail parsing error", e);
-        } finally {
-            try {
-                if (reportCnt == 0 && !isSeen) {
-                    message.setFlag(SEEN, false);
-                }
-            } catch (Exception ignore) {
-            }
         }
-        return reportCnt;
+        return new MessageImport(message, isSeen, reports);
     }
 
     /**
-     * @return true if body contains report and it was successfully parsed
+     * @return true if body contains report and it was successfully parsed, false if report was imported before
      */
     private boolean handleBodyPart(BodyPart bodyPart, MailboxDescriptor mailbox) {
         try {
             if (bodyPart.getFileName() != null) {
                 DataHandler dataHandler = bodyPart.getDataHandler();
                 DataSource dataSource = dataHandler.getDataSource();
-                brokerReportParserService.parseReport(dataSource.getInputStream(), dataSource.getName(), mailbox.getBroker());
-                return true;
+                return brokerReportParserService.parseReport(
+                        dataSource.getInputStream(), dataSource.getName(), mailbox.getBroker());
             }
         } catch (Exception e) {
             log.error("Вложенный файл не является отчетом брокера", e);
         }
         return false;
     }
+
+    private static record MessageImport(Message message, boolean isSeen, List<Future<Boolean>> reports) {
+
+        /**
+         * Waits attachments import and restores message unseen flag if no report was parsed.
+         *
+         * @return number of successfully parsed reports
+         */
+        int await() {
+            int reportCnt = 0;
+            try {
+                for (Future<Boolean> report : reports) {
+                    if (report.get()) {
+                        reportCnt++;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Mail parsing interrupted", e);
+            } catch (Exception e) {
+                log.error("Mail parsing error", e);
+            } finally {
+                try {
+                    if (reportCnt == 0 && !isSeen) {
+                        message.setFlag(SEEN, false);
+                    }
+                } catch (Exception ignore) {
+                }
+            }
+            return reportCnt;
+        }
+    }
 }
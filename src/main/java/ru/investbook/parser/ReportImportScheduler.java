@@ -0,0 +1,198 @@
+/*
+ * InvestBook
+ * Copyright (C) 2020  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import ru.investbook.InvestbookProperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * Runs broker report imports on dedicated bounded thread pool. Reports are parsed concurrently,
+ * but storing of reports of the same portfolio is serialized to avoid unique key conflicts.
+ * If import queue is full, report is imported on submitting thread, which slows down submitter.
+ */
+@Component
+@Slf4j
+public class ReportImportScheduler implements MeterBinder, DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ReentrantLock> portfolioLocks = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlightJobs = new AtomicInteger();
+    private final AtomicLong callerRunJobs = new AtomicLong();
+    private final Map<Stage, StageTimer> stageTimers = new ConcurrentHashMap<>();
+
+    public ReportImportScheduler(InvestbookProperties properties) {
+        int parallelism = Math.max(1, properties.getReportImportParallelism());
+        int queueCapacity = Math.max(1, properties.getReportImportQueueCapacity());
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), getThreadFactory(), (job, executor) -> {
+            callerRunJobs.incrementAndGet();
+            log.debug("Очередь загрузки отчетов заполнена, отчет загружается в потоке {}",
+                    Thread.currentThread().getName());
+            new ThreadPoolExecutor.CallerRunsPolicy().rejectedExecution(job, executor);
+        });
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, new StageTimer());
+        }
+    }
+
+    /**
+     * Submits report import job. Job is executed on submitting thread if import queue is full.
+     */
+    public <T> Future<T> submit(Callable<T> importJob) {
+        long submitTime = nanoTime();
+        inFlightJobs.incrementAndGet();
+        try {
+            return executor.submit(() -> {
+                try {
+                    record(Stage.QUEUE, submitTime);
+                    return importJob.call();
+                } finally {
+                    inFlightJobs.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlightJobs.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs storing of parsed report exclusively for each of report portfolios.
+     * Waiting jobs obtain portfolio lock in order of arrival.
+     *
+     * @return report storing result
+     */
+    public <T> T runExclusively(Collection<String> portfolios, Supplier<T> reportStoring) {
+        long t0 = nanoTime();
+        List<ReentrantLock> locks = new ArrayList<>(portfolios.size());
+        try {
+            for (String portfolio : new TreeSet<>(portfolios)) { // sorted to avoid deadlock
+                ReentrantLock lock = portfolioLocks.computeIfAbsent(portfolio, key -> new ReentrantLock(true));
+                lock.lock();
+                locks.add(lock);
+            }
+            record(Stage.PORTFOLIO_LOCK, t0);
+            long t1 = nanoTime();
+            T result = reportStoring.get();
+            record(Stage.STORE, t1);
+            return result;
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * @param startNanoTime broker report detection start time returned by {@link System#nanoTime()}
+     */
+    public void recordDetection(long startNanoTime) {
+        record(Stage.DETECT, startNanoTime);
+    }
+
+    /**
+     * @param startNanoTime parsing start time returned by {@link System#nanoTime()}
+     */
+    public void recordParsing(long startNanoTime) {
+        record(Stage.PARSE, startNanoTime);
+    }
+
+    private void record(Stage stage, long startNanoTime) {
+        stageTimers.get(stage).record(nanoTime() - startNanoTime);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("investbook.report-import.queue.size", executor, e -> e.getQueue().size())
+                .register(registry);
+        Gauge.builder("investbook.report-import.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(registry);
+        Gauge.builder("investbook.report-import.in-flight", inFlightJobs, AtomicInteger::get)
+                .register(registry);
+        FunctionCounter.builder("investbook.report-import.caller-runs", callerRunJobs, AtomicLong::get)
+                .register(registry);
+        stageTimers.forEach((stage, timer) ->
+                FunctionTimer.builder("investbook.report-import.stage", timer,
+                                StageTimer::getCount, StageTimer::getTotalNanos, TimeUnit.NANOSECONDS)
+                        .tag("stage", stage.name().toLowerCase())
+                        .register(registry));
+    }
+
+    private static ThreadFactory getThreadFactory() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "report-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private enum Stage {
+        QUEUE, DETECT, PARSE, PORTFOLIO_LOCK, STORE
+    }
+
+    private static class StageTimer {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        double getTotalNanos() {
+            return totalNanos.get();
+        }
+    }
+}
@@ -21,21 +21,43 @@ package ru.investbook.parser;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.spacious_team.broker.pojo.EventCashFlow;
+import org.spacious_team.broker.pojo.ForeignExchangeRate;
 import org.spacious_team.broker.pojo.Portfolio;
 import org.spacious_team.broker.pojo.PortfolioCash;
 import org.spacious_team.broker.pojo.PortfolioProperty;
+import org.spacious_team.broker.pojo.Security;
 import org.spacious_team.broker.pojo.SecurityEventCashFlow;
+import org.spacious_team.broker.pojo.SecurityQuote;
+import org.spacious_team.broker.pojo.Transaction;
+import org.spacious_team.broker.pojo.TransactionCashFlow;
+import org.spacious_team.broker.report_parser.api.AbstractTransaction;
 import org.spacious_team.broker.report_parser.api.DerivativeTransaction;
 import org.spacious_team.broker.report_parser.api.ForeignExchangeTransaction;
 import org.spacious_team.broker.report_parser.api.ReportTable;
 import org.spacious_team.broker.report_parser.api.ReportTables;
 import org.spacious_team.broker.report_parser.api.SecurityTransaction;
 import org.springframework.stereotype.Service;
+import ru.investbook.InvestbookProperties;
+import ru.investbook.converter.PortfolioTotalAssetsConverter;
+import ru.investbook.parser.StoredReportRowsFinder.EventCashFlowKey;
+import ru.investbook.parser.StoredReportRowsFinder.ForeignExchangeRateKey;
+import ru.investbook.parser.StoredReportRowsFinder.PortfolioCashKey;
+import ru.investbook.parser.StoredReportRowsFinder.PortfolioPropertyKey;
+import ru.investbook.parser.StoredReportRowsFinder.PortfolioTotalAssetsKey;
+import ru.investbook.parser.StoredReportRowsFinder.SecurityEventCashFlowKey;
+import ru.investbook.parser.StoredReportRowsFinder.SecurityQuoteKey;
+import ru.investbook.parser.StoredReportRowsFinder.TransactionCashFlowKey;
+import ru.investbook.parser.StoredReportRowsFinder.TransactionKey;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toCollection;
@@ -46,61 +68,193 @@ import static org.spacious_team.broker.pojo.CashFlowType.DERIVATIVE_PROFIT;
 @RequiredArgsConstructor
 public class ReportParserService {
     private final InvestbookApiClient api;
+    private final StoredReportRowsFinder storedRowsFinder;
+    private final ReportTablesBatchWriter batchWriter;
+    private final InvestbookProperties properties;
 
-    public void parse(ReportTables reportTables) {
+    /**
+     * @return true if all report rows are stored now or were stored before, false if some rows are not stored
+     */
+    public boolean parse(ReportTables reportTables) {
+        if (properties.isReportImportBatch()) {
+            try {
+                batchWriter.write(reportTables);
+                return true;
+            } catch (Exception e) {
+                log.warn("Не могу сохранить отчет {} пакетно, сохраняю построчно", reportTables.getReport(), e);
+            }
+        }
+        long t0 = System.nanoTime();
+        ImportStatistics statistics = new ImportStatistics();
+        InvestbookApiClient.ImportSession session = api.newImportSession();
         try {
-            boolean isAdded = getPortfolios(reportTables).stream().allMatch(api::addPortfolio);
+            Set<String> portfolios = getPortfolioIds(reportTables);
+            Set<String> storedPortfolios = storedRowsFinder.findPortfolios(portfolios);
+            session.setPortfoliosStored(storedPortfolios);
+            boolean isAdded = statistics.add("portfolio", portfolios, storedPortfolios::contains,
+                    portfolio -> session.addPortfolio(Portfolio.builder().id(portfolio).build()));
             if (!isAdded) {
-                return;
+                return false;
             }
 
-            reportTables.getPortfolioPropertyTable()
-                    .getData()
-                    .forEach(api::addPortfolioProperty);
-            api.addPortfolioCash(reportTables.getCashTable().getData());
-            reportTables.getSecuritiesTable()
-                    .getData()
-                    .forEach(api::addSecurity);
-            reportTables.getCashFlowTable()
-                    .getData()
-                    .forEach(api::addEventCashFlow);
-            reportTables.getSecurityTransactionTable()
-                    .getData()
-                    .forEach(api::addTransaction);
-            reportTables.getCouponAmortizationRedemptionTable()
-                    .getData()
-                    .stream()
-                    .filter(c -> api.addSecurity(c.getSecurity())) // required for amortization
-                    .forEach(api::addSecurityEventCashFlow);
-            reportTables.getDividendTable()
-                    .getData()
-                    .forEach(api::addSecurityEventCashFlow);
-            reportTables.getDerivativeTransactionTable()
-                    .getData()
-                    .forEach(api::addTransaction);
-            reportTables.getDerivativeCashFlowTable()
+            Collection<PortfolioProperty> portfolioProperties = getPortfolioProperties(reportTables);
+            Set<PortfolioPropertyKey> storedProperties = storedRowsFinder.findPortfolioProperties(portfolioProperties);
+            statistics.add("portfolio_property", portfolioProperties,
+                    property -> storedProperties.contains(PortfolioPropertyKey.of(property)),
+                    api::addPortfolioProperty);
+
+            Collection<PortfolioCash> portfolioCash = getPortfolioCash(reportTables);
+            Set<PortfolioCashKey> storedPortfolioCash = storedRowsFinder.findPortfolioCash(portfolioCash);
+            statistics.add("portfolio_cash", portfolioCash,
+                    cash -> storedPortfolioCash.contains(PortfolioCashKey.of(cash)),
+                    api::addPortfolioCash);
+
+            Collection<PortfolioProperty> totalAssets = getPortfolioTotalAssets(reportTables);
+            Set<PortfolioTotalAssetsKey> storedTotalAssets = storedRowsFinder.findPortfolioTotalAssets(totalAssets);
+            statistics.add("portfolio_total_assets", totalAssets,
+                    assets -> storedTotalAssets.contains(PortfolioTotalAssetsKey.of(assets)),
+                    api::addPortfolioTotalAssets);
+
+            Collection<SecurityTransaction> securityTransactions = reportTables.getSecurityTransactionTable().getData();
+            Collection<DerivativeTransaction> derivativeTransactions = reportTables.getDerivativeTransactionTable().getData();
+            Collection<ForeignExchangeTransaction> fxTransactions = reportTables.getForeignExchangeTransactionTable().getData();
+            Collection<SecurityEventCashFlow> couponAmortizationRedemptions =
+                    reportTables.getCouponAmortizationRedemptionTable().getData();
+            Collection<SecurityEventCashFlow> dividends = reportTables.getDividendTable().getData();
+            Collection<SecurityEventCashFlow> derivativeCashFlows = reportTables.getDerivativeCashFlowTable()
                     .getData()
                     .stream()
-                    .filter(c -> api.addSecurity(c.getSecurity()))
                     .map(ReportParserService::setDerivativeCashFlowDefaults)
-                    .forEach(api::addSecurityEventCashFlow);
-            reportTables.getForeignExchangeTransactionTable()
-                    .getData()
-                    .forEach(api::addTransaction);
-            reportTables.getSecurityQuoteTable()
-                    .getData()
-                    .forEach(api::addSecurityQuote);
-            reportTables.getForeignExchangeRateTable()
-                    .getData()
-                    .forEach(api::addForeignExchangeRate);
+                    .collect(Collectors.toList());
+
+            Collection<Security> securities = reportTables.getSecuritiesTable().getData();
+            Set<String> securityIds = new HashSet<>();
+            securities.forEach(security -> securityIds.add(security.getId()));
+            couponAmortizationRedemptions.forEach(cash -> securityIds.add(cash.getSecurity()));
+            derivativeCashFlows.forEach(cash -> securityIds.add(cash.getSecurity()));
+            Set<String> storedSecurities = storedRowsFinder.findSecurities(securityIds);
+            session.setSecuritiesStored(storedSecurities);
+            statistics.add("security", securities, security -> storedSecurities.contains(security.getId()),
+                    session::addSecurity);
+
+            Collection<EventCashFlow> eventCashFlows = reportTables.getCashFlowTable().getData();
+            Set<EventCashFlowKey> storedEventCashFlows = storedRowsFinder.findEventCashFlows(eventCashFlows);
+            statistics.add("event_cash_flow", eventCashFlows,
+                    cash -> storedEventCashFlows.contains(EventCashFlowKey.of(cash)),
+                    api::addEventCashFlow);
+
+            List<AbstractTransaction> allTransactions = new ArrayList<>(securityTransactions);
+            allTransactions.addAll(derivativeTransactions);
+            allTransactions.addAll(fxTransactions);
+            List<Transaction> transactions = allTransactions.stream()
+                    .map(AbstractTransaction::getTransaction)
+                    .collect(Collectors.toList());
+            Set<TransactionKey> storedTransactions = storedRowsFinder.findTransactions(transactions);
+            statistics.add("transaction", securityTransactions,
+                    t -> storedTransactions.contains(TransactionKey.of(t.getTransaction())),
+                    api::addTransaction);
+
+            List<SecurityEventCashFlow> securityEventCashFlows = new ArrayList<>(couponAmortizationRedemptions);
+            securityEventCashFlows.addAll(dividends);
+            securityEventCashFlows.addAll(derivativeCashFlows);
+            Set<SecurityEventCashFlowKey> storedSecurityEventCashFlows =
+                    storedRowsFinder.findSecurityEventCashFlows(securityEventCashFlows);
+            Predicate<SecurityEventCashFlow> isStoredSecurityEventCashFlow =
+                    cash -> storedSecurityEventCashFlows.contains(SecurityEventCashFlowKey.of(cash));
+            Predicate<SecurityEventCashFlow> addSecurityAndSecurityEventCashFlow = cash ->
+                    session.addSecurity(cash.getSecurity()) && // required for amortization
+                            api.addSecurityEventCashFlow(cash);
 
+            statistics.add("security_event_cash_flow", couponAmortizationRedemptions,
+                    isStoredSecurityEventCashFlow, addSecurityAndSecurityEventCashFlow);
+            statistics.add("security_event_cash_flow", dividends,
+                    isStoredSecurityEventCashFlow, api::addSecurityEventCashFlow);
+            statistics.add("transaction", derivativeTransactions,
+                    t -> storedTransactions.contains(TransactionKey.of(t.getTransaction())),
+                    session::addTransaction);
+            statistics.add("security_event_cash_flow", derivativeCashFlows,
+                    isStoredSecurityEventCashFlow, addSecurityAndSecurityEventCashFlow);
+            statistics.add("transaction", fxTransactions,
+                    t -> storedTransactions.contains(TransactionKey.of(t.getTransaction())),
+                    session::addTransaction);
+
+            // Cash flows of new transactions are stored with transaction, stored transaction may miss some of them
+            Set<TransactionCashFlowKey> storedTransactionCashFlows =
+                    storedRowsFinder.findTransactionCashFlows(transactions);
+            List<TransactionCashFlow> storedTransactionsCashFlows = allTransactions.stream()
+                    .filter(t -> storedTransactions.contains(TransactionKey.of(t.getTransaction())))
+                    .flatMap(t -> t.getTransactionCashFlows().stream())
+                    .collect(Collectors.toList());
+            statistics.add("transaction_cash_flow", storedTransactionsCashFlows,
+                    cash -> storedTransactionCashFlows.contains(TransactionCashFlowKey.of(cash)),
+                    api::addTransactionCashFlow);
+
+            Collection<SecurityQuote> quotes = reportTables.getSecurityQuoteTable().getData();
+            Set<SecurityQuoteKey> storedQuotes = storedRowsFinder.findSecurityQuotes(quotes);
+            statistics.add("security_quote", quotes,
+                    quote -> storedQuotes.contains(SecurityQuoteKey.of(quote)),
+                    api::addSecurityQuote);
+
+            Collection<ForeignExchangeRate> rates = reportTables.getForeignExchangeRateTable().getData();
+            Set<ForeignExchangeRateKey> storedRates = storedRowsFinder.findForeignExchangeRates(rates);
+            statistics.add("foreign_exchange_rate", rates,
+                    rate -> storedRates.contains(ForeignExchangeRateKey.of(rate)),
+                    api::addForeignExchangeRate);
+
+            return !statistics.hasErrors();
         } catch (Exception e) {
             log.warn("Не могу распарсить отчет {}", reportTables.getReport(), e);
             throw new RuntimeException(e);
+        } finally {
+            log.info("Построчно сохранен отчет {} за {}: {}",
+                    reportTables.getReport(), Duration.ofNanos(System.nanoTime() - t0), statistics);
+        }
+    }
+
+    static Collection<PortfolioCash> getPortfolioCash(ReportTables reportTables) {
+        Collection<PortfolioCash> cash = reportTables.getCashTable().getData();
+        try {
+            return InvestbookApiClient.sumPortfolioCash(cash);
+        } catch (Exception e) {
+            log.warn("Не могу добавить информацию о наличных средствах {}", cash, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return portfolio properties except total assets, which are stored in portfolio_total_assets table
+     */
+    static Collection<PortfolioProperty> getPortfolioProperties(ReportTables reportTables) {
+        return reportTables.getPortfolioPropertyTable()
+                .getData()
+                .stream()
+                .filter(property -> !PortfolioTotalAssetsConverter.isTotalAssets(property))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return total assets properties with numeric value
+     */
+    static Collection<PortfolioProperty> getPortfolioTotalAssets(ReportTables reportTables) {
+        return reportTables.getPortfolioPropertyTable()
+                .getData()
+                .stream()
+                .filter(PortfolioTotalAssetsConverter::isTotalAssets)
+                .filter(ReportParserService::hasNumericValue)
+                .collect(Collectors.toList());
+    }
+
+    private static boolean hasNumericValue(PortfolioProperty totalAssets) {
+        try {
+            PortfolioTotalAssetsConverter.getValue(totalAssets);
+            return true;
+        } catch (Exception e) {
+            log.warn("Не могу добавить информацию об оценке активов {}", totalAssets, e);
+            return false;
         }
     }
 
-    private static Set<Portfolio> getPortfolios(ReportTables tables) {
+    static Set<String> getPortfolioIds(ReportTables tables) {
         Set<String> portfolios = new HashSet<>();
 
         addPortfolios(portfolios, tables.getPortfolioPropertyTable(), PortfolioProperty::getPortfolio);
@@ -115,9 +269,7 @@ public class ReportParserService {
         addPortfolios(portfolios, tables.getDividendTable(), SecurityEventCashFlow::getPortfolio);
         addPortfolios(portfolios, tables.getDerivativeCashFlowTable(), SecurityEventCashFlow::getPortfolio);
 
-        return portfolios.stream()
-                .map(portfolio -> Portfolio.builder().id(portfolio).build())
-                .collect(Collectors.toSet());
+        return portfolios;
     }
 
     private static <T> void addPortfolios(Collection<String> dest,
@@ -128,7 +280,7 @@ public class ReportParserService {
                 .collect(toCollection(() -> dest));
     }
 
-    private static SecurityEventCashFlow setDerivativeCashFlowDefaults(SecurityEventCashFlow c) {
+    static SecurityEventCashFlow setDerivativeCashFlowDefaults(SecurityEventCashFlow c) {
         if (c.getCount() == null && c.getEventType() == DERIVATIVE_PROFIT) {
             // count is optional for derivatives
             c = c.toBuilder()
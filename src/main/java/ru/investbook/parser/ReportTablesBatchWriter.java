@@ -0,0 +1,384 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.spacious_team.broker.pojo.EventCashFlow;
+import org.spacious_team.broker.pojo.ForeignExchangeRate;
+import org.spacious_team.broker.pojo.PortfolioCash;
+import org.spacious_team.broker.pojo.PortfolioProperty;
+import org.spacious_team.broker.pojo.Security;
+import org.spacious_team.broker.pojo.SecurityEventCashFlow;
+import org.spacious_team.broker.pojo.SecurityQuote;
+import org.spacious_team.broker.pojo.SecurityType;
+import org.spacious_team.broker.pojo.Transaction;
+import org.spacious_team.broker.pojo.TransactionCashFlow;
+import org.spacious_team.broker.report_parser.api.DerivativeTransaction;
+import org.spacious_team.broker.report_parser.api.ForeignExchangeTransaction;
+import org.spacious_team.broker.report_parser.api.ReportTables;
+import org.spacious_team.broker.report_parser.api.SecurityTransaction;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.investbook.converter.PortfolioCashConverter;
+import ru.investbook.converter.PortfolioTotalAssetsConverter;
+import ru.investbook.report.FifoPositionsFactory;
+import ru.investbook.report.ForeignExchangeRateService;
+import ru.investbook.service.moex.MoexDerivativeCodeService;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Stores all report tables by JDBC batches in single database transaction. Already stored rows are skipped
+ * by "INSERT ... ON DUPLICATE KEY UPDATE" statement with no-op update, which is supported by MariaDB
+ * and by H2 in MySQL compatibility mode. Unlike "INSERT IGNORE" the statement skips unique key duplicates only,
+ * foreign key, not null and data truncation errors fail whole report, so it can be stored row by row.
+ * Unlike {@link InvestbookApiClient} makes no SELECT before each INSERT and no flush after it.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ReportTablesBatchWriter {
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_IN_LIST_SIZE = 1000;
+    private static final String DEFAULT_CURRENCY = "RUR";
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MoexDerivativeCodeService moexDerivativeCodeService;
+    private final FifoPositionsFactory positionsFactory;
+    private final ForeignExchangeRateService foreignExchangeRateService;
+
+    /**
+     * Stores report tables or nothing if exception is thrown
+     */
+    public void write(ReportTables reportTables) {
+        long t0 = System.nanoTime();
+        Collection<ForeignExchangeRate> exchangeRates = reportTables.getForeignExchangeRateTable().getData();
+        ImportStatistics statistics = new ImportStatistics();
+        transactionTemplate.executeWithoutResult(status -> write0(reportTables, exchangeRates, statistics));
+        positionsFactory.invalidateCache();
+        if (!exchangeRates.isEmpty()) {
+            foreignExchangeRateService.invalidateCache();
+        }
+        log.info("Пакетно сохранен отчет {} за {}: {}",
+                reportTables.getReport(), Duration.ofNanos(System.nanoTime() - t0), statistics);
+    }
+
+    private void write0(ReportTables reportTables, Collection<ForeignExchangeRate> exchangeRates,
+                        ImportStatistics statistics) {
+        Collection<SecurityTransaction> securityTransactions = reportTables.getSecurityTransactionTable().getData();
+        Collection<DerivativeTransaction> derivativeTransactions = reportTables.getDerivativeTransactionTable().getData();
+        Collection<ForeignExchangeTransaction> fxTransactions = reportTables.getForeignExchangeTransactionTable().getData();
+        Collection<SecurityEventCashFlow> couponAmortizationRedemptions =
+                reportTables.getCouponAmortizationRedemptionTable().getData();
+        Collection<SecurityEventCashFlow> derivativeCashFlows = reportTables.getDerivativeCashFlowTable()
+                .getData()
+                .stream()
+                .map(ReportParserService::setDerivativeCashFlowDefaults)
+                .collect(Collectors.toList());
+
+        Map<String, Security> securities = new LinkedHashMap<>();
+        reportTables.getSecuritiesTable().getData().forEach(security -> addSecurity(securities, security));
+        derivativeTransactions.forEach(t -> addSecurity(securities, t.getSecurity()));
+        fxTransactions.forEach(t -> addSecurity(securities, t.getSecurity()));
+        couponAmortizationRedemptions.forEach(c -> addSecurity(securities, c.getSecurity()));
+        derivativeCashFlows.forEach(c -> addSecurity(securities, c.getSecurity()));
+
+        List<Transaction> transactions = new ArrayList<>();
+        List<TransactionCashFlow> transactionCashFlows = new ArrayList<>();
+        for (SecurityTransaction t : securityTransactions) {
+            transactions.add(t.getTransaction());
+            transactionCashFlows.addAll(t.getTransactionCashFlows());
+        }
+        for (DerivativeTransaction t : derivativeTransactions) {
+            transactions.add(t.getTransaction());
+            transactionCashFlows.addAll(t.getTransactionCashFlows());
+        }
+        for (ForeignExchangeTransaction t : fxTransactions) {
+            transactions.add(t.getTransaction());
+            transactionCashFlows.addAll(t.getTransactionCashFlows());
+        }
+
+        List<SecurityEventCashFlow> securityEventCashFlows = new ArrayList<>(couponAmortizationRedemptions);
+        securityEventCashFlows.addAll(reportTables.getDividendTable().getData());
+        securityEventCashFlows.addAll(derivativeCashFlows);
+        securityEventCashFlows.removeIf(cash -> {
+            if (cash.getCount() == null) {
+                log.warn("Не могу добавить информацию о движении денежных средств без количества ЦБ {}", cash);
+                return true;
+            }
+            return false;
+        });
+
+        insertPortfolios(statistics, ReportParserService.getPortfolioIds(reportTables));
+        insertSecurities(statistics, securities.values());
+        insertPortfolioProperties(statistics, ReportParserService.getPortfolioProperties(reportTables));
+        insertPortfolioCash(statistics, ReportParserService.getPortfolioCash(reportTables));
+        insertPortfolioTotalAssets(statistics, ReportParserService.getPortfolioTotalAssets(reportTables));
+        insertEventCashFlows(statistics, reportTables.getCashFlowTable().getData());
+        insertTransactions(statistics, transactions);
+        insertTransactionCashFlows(statistics, transactionCashFlows);
+        insertSecurityEventCashFlows(statistics, securityEventCashFlows);
+        insertSecurityQuotes(statistics, reportTables.getSecurityQuoteTable().getData());
+        insertForeignExchangeRates(statistics, exchangeRates);
+    }
+
+    private void addSecurity(Map<String, Security> securities, String security) {
+        if (security != null) {
+            addSecurity(securities, Security.builder().id(security).build());
+        }
+    }
+
+    private void addSecurity(Map<String, Security> securities, Security security) {
+        String id = security.getId();
+        String newId = moexDerivativeCodeService.convertDerivativeSecurityId(id);
+        if (!Objects.equals(id, newId)) {
+            security = security.toBuilder()
+                    .id(newId)
+                    .build();
+        }
+        securities.putIfAbsent(security.getId(), security);
+    }
+
+    private void insertPortfolios(ImportStatistics statistics, Set<String> portfolios) {
+        batchInsert(statistics, "portfolio",
+                "INSERT INTO `portfolio` (`id`) VALUES (?) " +
+                        "ON DUPLICATE KEY UPDATE `id` = `id`",
+                portfolios,
+                (ps, portfolio) -> ps.setString(1, portfolio));
+    }
+
+    private void insertSecurities(ImportStatistics statistics, Collection<Security> securities) {
+        batchInsert(statistics, "security",
+                "INSERT INTO `security` (`id`, `isin`, `ticker`, `name`, `type`) " +
+                        "VALUES (?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE `id` = `id`",
+                securities,
+                (ps, security) -> {
+                    ps.setString(1, security.getId());
+                    ps.setString(2, security.getIsin());
+                    ps.setString(3, security.getTicker());
+                    ps.setString(4, security.getName());
+                    ps.setString(5, SecurityType.getSecurityType(security.getId()).name());
+                });
+    }
+
+    private void insertPortfolioProperties(ImportStatistics statistics, Collection<PortfolioProperty> properties) {
+        batchInsert(statistics, "portfolio_property",
+                "INSERT INTO `portfolio_property` (`portfolio`, `timestamp`, `property`, `value`) " +
+                        "VALUES (?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE `id` = `id`",
+                properties,
+                (ps, property) -> {
+                    ps.setString(1, property.getPortfolio());
+                    ps.setTimestamp(2, Timestamp.from(property.getTimestamp()));
+                    ps.setString(3, property.getProperty().name());
+                    ps.setString(4, property.getValue());
+                });
+    }
+
+    private void insertPortfolioCash(ImportStatistics statistics, Collection<PortfolioCash> cashes) {
+        batchInsert(statistics, "portfolio_cash",
+                "INSERT INTO `portfolio_cash` " +
+                        "(`portfolio`, `timestamp`, `market`, `currency`, `value`) " +
+                        "VALUES (?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE `id` = `id`",
+                cashes,
+                (ps, cash) -> {
+                    ps.setString(1, cash.getPortfolio());
+                    ps.setTimestamp(2, Timestamp.from(cash.getTimestamp()));
+                    ps.setString(3, PortfolioCashConverter.getMarket(cash));
+                    ps.setString(4, cash.getCurrency());
+                    ps.setBigDecimal(5, cash.getValue());
+                });
+    }
+
+    private void insertPortfolioTotalAssets(ImportStatistics statistics, Collection<PortfolioProperty> totalAssets) {
+        batchInsert(statistics, "portfolio_total_assets",
+                "INSERT INTO `portfolio_total_assets` " +
+                        "(`portfolio`, `timestamp`, `currency`, `value`) " +
+                        "VALUES (?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE `id` = `id`",
+                totalAssets,
+                (ps, assets) -> {
+                    ps.setString(1, assets.getPortfolio());
+                    ps.setTimestamp(2, Timestamp.from(assets.getTimestamp()));
+                    ps.setString(3, PortfolioTotalAssetsConverter.getCurrency(assets.getProperty()));
+                    ps.setBigDecimal(4, PortfolioTotalAssetsConverter.getValue(assets));
+                });
+    }
+
+    private void insertEventCashFlows(ImportStatistics statistics, Collection<EventCashFlow> cashFlows) {
+        batchInsert(statistics, "event_cash_flow",
+                "INSERT INTO `event_cash_flow` " +
+                        "(`portfolio`, `timestamp`, `type`, `value`, `currency`, `description`) " +
+                        "VALUES (?, ?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE `id` = `id`",
+                cashFlows,
+                (ps, cash) -> {
+                    ps.setString(1, cash.getPortfolio());
+                    ps.setTimestamp(2, Timestamp.from(cash.getTimestamp()));
+                    ps.setInt(3, cash.getEventType().getId());
+                    ps.setBigDecimal(4, cash.getValue());
+                    ps.setString(5, getCurrency(cash.getCurrency()));
+                    String description = cash.getDescription();
+                    ps.setString(6, (description == null || description.isEmpty()) ? null : description);
+                });
+    }
+
+    private void insertTransactions(ImportStatistics statistics, Collection<Transaction> transactions) {
+        batchInsert(statistics, "transaction",
+                "INSERT INTO `transaction` (`id`, `portfolio`, `security`, `timestamp`, `count`) " +
+                        "VALUES (?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE `id` = `id`",
+                transactions,
+                (ps, transaction) -> {
+                    ps.setString(1, transaction.getId());
+                    ps.setString(2, transaction.getPortfolio());
+                    ps.setString(3, transaction.getSecurity());
+                    ps.setTimestamp(4, Timestamp.from(transaction.getTimestamp()));
+                    ps.setInt(5, transaction.getCount());
+                });
+    }
+
+    private void insertTransactionCashFlows(ImportStatistics statistics, Collection<TransactionCashFlow> cashFlows) {
+        batchInsert(statistics, "transaction_cash_flow",
+                "INSERT INTO `transaction_cash_flow` " +
+                        "(`transaction_id`, `portfolio`, `type`, `value`, `currency`) " +
+                        "VALUES (?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE `transaction_id` = `transaction_id`",
+                cashFlows,
+                (ps, cash) -> {
+                    ps.setString(1, cash.getTransactionId());
+                    ps.setString(2, cash.getPortfolio());
+                    ps.setInt(3, cash.getEventType().getId());
+                    ps.setBigDecimal(4, cash.getValue());
+                    ps.setString(5, getCurrency(cash.getCurrency()));
+                });
+    }
+
+    private void insertSecurityEventCashFlows(ImportStatistics statistics, Collection<SecurityEventCashFlow> cashFlows) {
+        batchInsert(statistics, "security_event_cash_flow",
+                "INSERT INTO `security_event_cash_flow` " +
+                        "(`portfolio`, `timestamp`, `security`, `count`, `type`, `value`, `currency`) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE `id` = `id`",
+                cashFlows,
+                (ps, cash) -> {
+                    ps.setString(1, cash.getPortfolio());
+                    ps.setTimestamp(2, Timestamp.from(cash.getTimestamp()));
+                    ps.setString(3, cash.getSecurity());
+                    ps.setInt(4, cash.getCount());
+                    ps.setInt(5, cash.getEventType().getId());
+                    ps.setBigDecimal(6, cash.getValue());
+                    ps.setString(7, getCurrency(cash.getCurrency()));
+                });
+    }
+
+    private void insertSecurityQuotes(ImportStatistics statistics, Collection<SecurityQuote> quotes) {
+        batchInsert(statistics, "security_quote",
+                "INSERT INTO `security_quote` " +
+                        "(`security`, `timestamp`, `quote`, `price`, `accrued_interest`, `currency`) " +
+                        "VALUES (?, ?, ?, ?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE `id` = `id`",
+                quotes,
+                (ps, quote) -> {
+                    ps.setString(1, quote.getSecurity());
+                    ps.setTimestamp(2, Timestamp.from(quote.getTimestamp()));
+                    ps.setBigDecimal(3, quote.getQuote());
+                    ps.setBigDecimal(4, quote.getPrice());
+                    ps.setBigDecimal(5, quote.getAccruedInterest());
+                    ps.setString(6, quote.getCurrency());
+                });
+        refreshLatestQuotes(quotes.stream()
+                .map(SecurityQuote::getSecurity)
+                .distinct()
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Updates security_latest_quote for all securities by one statement per {@link #MAX_IN_LIST_SIZE} securities
+     */
+    private void refreshLatestQuotes(List<String> securities) {
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        for (int i = 0; i < securities.size(); i += MAX_IN_LIST_SIZE) {
+            namedJdbcTemplate.update("""
+                            INSERT INTO `security_latest_quote` (`security`, `quote_id`)
+                            SELECT q.`security`, q.`id`
+                            FROM `security_quote` AS q
+                            WHERE q.`security` IN (:securities)
+                            AND q.`timestamp` = (
+                                SELECT MAX(q2.`timestamp`)
+                                FROM `security_quote` AS q2
+                                WHERE q2.`security` = q.`security`
+                            )
+                            ON DUPLICATE KEY UPDATE `quote_id` = VALUES(`quote_id`)
+                            """,
+                    Map.of("securities", securities.subList(i, Math.min(securities.size(), i + MAX_IN_LIST_SIZE))));
+        }
+    }
+
+    private void insertForeignExchangeRates(ImportStatistics statistics, Collection<ForeignExchangeRate> rates) {
+        batchInsert(statistics, "foreign_exchange_rate",
+                "INSERT INTO `foreign_exchange_rate` (`date`, `currency_pair`, `rate`) " +
+                        "VALUES (?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE `rate` = `rate`",
+                rates,
+                (ps, rate) -> {
+                    ps.setDate(1, Date.valueOf(rate.getDate()));
+                    ps.setString(2, rate.getCurrencyPair());
+                    ps.setBigDecimal(3, rate.getRate());
+                });
+    }
+
+    /**
+     * Counts inserted rows as added and not inserted duplicates as skipped. Statistics is approximate:
+     * MySQL driver reports found rows by default, so skipped duplicate may be counted as added
+     */
+    private <T> void batchInsert(ImportStatistics statistics, String table, String sql, Collection<T> rows,
+                                 ParameterizedPreparedStatementSetter<T> setter) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        int count = 0;
+        for (int[] batch : jdbcTemplate.batchUpdate(sql, rows, BATCH_SIZE, setter)) {
+            for (int rowCount : batch) {
+                count += Math.max(0, rowCount); // driver may return Statement.SUCCESS_NO_INFO
+            }
+        }
+        statistics.add(table, rows.size(), count);
+    }
+
+    private static String getCurrency(String currency) {
+        return (currency == null) ? DEFAULT_CURRENCY : currency;
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import lombok.RequiredArgsConstructor;
+import org.spacious_team.broker.pojo.EventCashFlow;
+import org.spacious_team.broker.pojo.ForeignExchangeRate;
+import org.spacious_team.broker.pojo.PortfolioCash;
+import org.spacious_team.broker.pojo.PortfolioProperty;
+import org.spacious_team.broker.pojo.SecurityEventCashFlow;
+import org.spacious_team.broker.pojo.SecurityQuote;
+import org.spacious_team.broker.pojo.Transaction;
+import org.spacious_team.broker.pojo.TransactionCashFlow;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.investbook.converter.PortfolioCashConverter;
+import ru.investbook.converter.PortfolioTotalAssetsConverter;
+import ru.investbook.service.moex.MoexDerivativeCodeService;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Finds rows of report, which are already stored in database, by one query per table.
+ * Queries are bounded by report portfolios (or securities) and by report time interval.
+ */
+@Component
+@RequiredArgsConstructor
+public class StoredReportRowsFinder {
+    private static final int MAX_IN_LIST_SIZE = 1000;
+    private static final String DEFAULT_CURRENCY = "RUR";
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final MoexDerivativeCodeService moexDerivativeCodeService;
+
+    public Set<String> findPortfolios(Collection<String> portfolios) {
+        return findIn("SELECT `id` FROM `portfolio` WHERE `id` IN (:ids)",
+                portfolios,
+                (rs, rowNum) -> rs.getString(1));
+    }
+
+    /**
+     * @param securities security ids, derivative ids are converted same way as {@link InvestbookApiClient} does
+     * @return stored security ids as they are passed in argument
+     */
+    public Set<String> findSecurities(Collection<String> securities) {
+        Set<String> convertedIds = securities.stream()
+                .map(moexDerivativeCodeService::convertDerivativeSecurityId)
+                .collect(toSet());
+        Set<String> storedIds = findIn("SELECT `id` FROM `security` WHERE `id` IN (:ids)",
+                convertedIds,
+                (rs, rowNum) -> rs.getString(1));
+        return securities.stream()
+                .filter(id -> storedIds.contains(moexDerivativeCodeService.convertDerivativeSecurityId(id)))
+                .collect(toSet());
+    }
+
+    public Set<PortfolioPropertyKey> findPortfolioProperties(Collection<PortfolioProperty> properties) {
+        return findInInterval("SELECT `portfolio`, `timestamp`, `property` FROM `portfolio_property` " +
+                        "WHERE `portfolio` IN (:ids) AND `timestamp` BETWEEN :from AND :to",
+                properties, PortfolioProperty::getPortfolio, PortfolioProperty::getTimestamp,
+                (rs, rowNum) -> new PortfolioPropertyKey(
+                        rs.getString(1),
+                        rs.getTimestamp(2).toInstant(),
+                        rs.getString(3)));
+    }
+
+    public Set<PortfolioCashKey> findPortfolioCash(Collection<PortfolioCash> cash) {
+        return findInInterval("SELECT `portfolio`, `timestamp`, `market`, `currency` FROM `portfolio_cash` " +
+                        "WHERE `portfolio` IN (:ids) AND `timestamp` BETWEEN :from AND :to",
+                cash, PortfolioCash::getPortfolio, PortfolioCash::getTimestamp,
+                (rs, rowNum) -> new PortfolioCashKey(
+                        rs.getString(1),
+                        rs.getTimestamp(2).toInstant(),
+                        rs.getString(3),
+                        rs.getString(4)));
+    }
+
+    public Set<PortfolioTotalAssetsKey> findPortfolioTotalAssets(Collection<PortfolioProperty> totalAssets) {
+        return findInInterval("SELECT `portfolio`, `timestamp`, `currency` FROM `portfolio_total_assets` " +
+                        "WHERE `portfolio` IN (:ids) AND `timestamp` BETWEEN :from AND :to",
+                totalAssets, PortfolioProperty::getPortfolio, PortfolioProperty::getTimestamp,
+                (rs, rowNum) -> new PortfolioTotalAssetsKey(
+                        rs.getString(1),
+                        rs.getTimestamp(2).toInstant(),
+                        rs.getString(3)));
+    }
+
+    public Set<EventCashFlowKey> findEventCashFlows(Collection<EventCashFlow> cashFlows) {
+        return findInInterval("SELECT `portfolio`, `timestamp`, `type`, `value`, `currency` FROM `event_cash_flow` " +
+                        "WHERE `portfolio` IN (:ids) AND `timestamp` BETWEEN :from AND :to",
+                cashFlows, EventCashFlow::getPortfolio, EventCashFlow::getTimestamp,
+                (rs, rowNum) -> new EventCashFlowKey(
+                        rs.getString(1),
+                        rs.getTimestamp(2).toInstant(),
+                        rs.getInt(3),
+                        normalize(rs.getBigDecimal(4)),
+                        rs.getString(5)));
+    }
+
+    public Set<TransactionKey> findTransactions(Collection<Transaction> transactions) {
+        return findInInterval("SELECT `portfolio`, `id` FROM `transaction` " +
+                        "WHERE `portfolio` IN (:ids) AND `timestamp` BETWEEN :from AND :to",
+                transactions, Transaction::getPortfolio, Transaction::getTimestamp,
+                (rs, rowNum) -> new TransactionKey(rs.getString(1), rs.getString(2)));
+    }
+
+    /**
+     * @param transactions transactions, which cash flows are looked for
+     * @return keys of stored cash flows of transactions, which are stored in the same time interval
+     */
+    public Set<TransactionCashFlowKey> findTransactionCashFlows(Collection<Transaction> transactions) {
+        return findInInterval("SELECT c.`portfolio`, c.`transaction_id`, c.`type` FROM `transaction_cash_flow` AS c " +
+                        "JOIN `transaction` AS t ON t.`portfolio` = c.`portfolio` AND t.`id` = c.`transaction_id` " +
+                        "WHERE c.`portfolio` IN (:ids) AND t.`timestamp` BETWEEN :from AND :to",
+                transactions, Transaction::getPortfolio, Transaction::getTimestamp,
+                (rs, rowNum) -> new TransactionCashFlowKey(rs.getString(1), rs.getString(2), rs.getInt(3)));
+    }
+
+    /**
+     * @param cashFlows cash flows, derivative security ids are converted same way as {@link InvestbookApiClient} does
+     * @return keys of stored cash flows with security ids as they are passed in argument
+     */
+    public Set<SecurityEventCashFlowKey> findSecurityEventCashFlows(Collection<SecurityEventCashFlow> cashFlows) {
+        Set<SecurityEventCashFlowKey> storedKeys = findInInterval(
+                "SELECT `portfolio`, `timestamp`, `security`, `type` FROM `security_event_cash_flow` " +
+                        "WHERE `portfolio` IN (:ids) AND `timestamp` BETWEEN :from AND :to",
+                cashFlows, SecurityEventCashFlow::getPortfolio, SecurityEventCashFlow::getTimestamp,
+                (rs, rowNum) -> new SecurityEventCashFlowKey(
+                        rs.getString(1),
+                        rs.getTimestamp(2).toInstant(),
+                        rs.getString(3),
+                        rs.getInt(4)));
+        return cashFlows.stream()
+                .map(SecurityEventCashFlowKey::of)
+                .filter(key -> storedKeys.contains(new SecurityEventCashFlowKey(
+                        key.portfolio(),
+                        key.timestamp(),
+                        moexDerivativeCodeService.convertDerivativeSecurityId(key.security()),
+                        key.type())))
+                .collect(toSet());
+    }
+
+    public Set<SecurityQuoteKey> findSecurityQuotes(Collection<SecurityQuote> quotes) {
+        return findInInterval("SELECT `security`, `timestamp` FROM `security_quote` " +
+                        "WHERE `security` IN (:ids) AND `timestamp` BETWEEN :from AND :to",
+                quotes, SecurityQuote::getSecurity, SecurityQuote::getTimestamp,
+                (rs, rowNum) -> new SecurityQuoteKey(rs.getString(1), rs.getTimestamp(2).toInstant()));
+    }
+
+    public Set<ForeignExchangeRateKey> findForeignExchangeRates(Collection<ForeignExchangeRate> rates) {
+        if (rates.isEmpty()) {
+            return Collections.emptySet();
+        }
+        LocalDate from = rates.stream().map(ForeignExchangeRate::getDate).min(LocalDate::compareTo).orElseThrow();
+        LocalDate to = rates.stream().map(ForeignExchangeRate::getDate).max(LocalDate::compareTo).orElseThrow();
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Date.valueOf(from))
+                .addValue("to", Date.valueOf(to));
+        return findIn("SELECT `date`, `currency_pair` FROM `foreign_exchange_rate` " +
+                        "WHERE `currency_pair` IN (:ids) AND `date` BETWEEN :from AND :to",
+                rates.stream().map(ForeignExchangeRate::getCurrencyPair).collect(toSet()),
+                params,
+                (rs, rowNum) -> new ForeignExchangeRateKey(rs.getDate(1).toLocalDate(), rs.getString(2)));
+    }
+
+    private <T, K> Set<K> findInInterval(String sql,
+                                         Collection<T> rows,
+                                         Function<T, String> idExtractor,
+                                         Function<T, Instant> timestampExtractor,
+                                         RowMapper<K> rowMapper) {
+        if (rows.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<Instant> timestamps = rows.stream()
+                .map(timestampExtractor)
+                .filter(Objects::nonNull)
+                .collect(toList());
+        if (timestamps.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Instant from = Collections.min(timestamps);
+        Instant to = Collections.max(timestamps);
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.from(from))
+                .addValue("to", Timestamp.from(to));
+        return findIn(sql, rows.stream().map(idExtractor).collect(toSet()), params, rowMapper);
+    }
+
+    private <K> Set<K> findIn(String sql, Collection<String> ids, RowMapper<K> rowMapper) {
+        return findIn(sql, ids, new MapSqlParameterSource(), rowMapper);
+    }
+
+    private <K> Set<K> findIn(String sql,
+                              Collection<String> ids,
+                              MapSqlParameterSource params,
+                              RowMapper<K> rowMapper) {
+        Set<K> result = new HashSet<>();
+        List<String> idList = new ArrayList<>(ids);
+        idList.removeIf(Objects::isNull);
+        for (int i = 0; i < idList.size(); i += MAX_IN_LIST_SIZE) {
+            params.addValue("ids", idList.subList(i, Math.min(idList.size(), i + MAX_IN_LIST_SIZE)));
+            result.addAll(jdbcTemplate.query(sql, params, rowMapper));
+        }
+        return result;
+    }
+
+    /**
+     * Makes values with different scale equal, for example 1.10 and 1.1
+     */
+    static BigDecimal normalize(BigDecimal value) {
+        return (value == null) ? null : value.stripTrailingZeros();
+    }
+
+    public static record PortfolioPropertyKey(String portfolio, Instant timestamp, String property) {
+        public static PortfolioPropertyKey of(PortfolioProperty property) {
+            return new PortfolioPropertyKey(
+                    property.getPortfolio(),
+                    property.getTimestamp(),
+                    property.getProperty().name());
+        }
+    }
+
+    public static record PortfolioCashKey(String portfolio, Instant timestamp, String market, String currency) {
+        public static PortfolioCashKey of(PortfolioCash cash) {
+            return new PortfolioCashKey(
+                    cash.getPortfolio(),
+                    cash.getTimestamp(),
+                    PortfolioCashConverter.getMarket(cash),
+                    cash.getCurrency());
+        }
+    }
+
+    public static record PortfolioTotalAssetsKey(String portfolio, Instant timestamp, String currency) {
+        public static PortfolioTotalAssetsKey of(PortfolioProperty totalAssets) {
+            return new PortfolioTotalAssetsKey(
+                    totalAssets.getPortfolio(),
+                    totalAssets.getTimestamp(),
+                    PortfolioTotalAssetsConverter.getCurrency(totalAssets.getProperty()));
+        }
+    }
+
+    public static record EventCashFlowKey(String portfolio, Instant timestamp, int type, BigDecimal value,
+                                          String currency) {
+        public static EventCashFlowKey of(EventCashFlow cash) {
+            return new EventCashFlowKey(
+                    cash.getPortfolio(),
+                    cash.getTimestamp(),
+                    cash.getEventType().getId(),
+                    normalize(cash.getValue()),
+                    Objects.requireNonNullElse(cash.getCurrency(), DEFAULT_CURRENCY));
+        }
+    }
+
+    public static record TransactionKey(String portfolio, String id) {
+        public static TransactionKey of(Transaction transaction) {
+            return new TransactionKey(transaction.getPortfolio(), transaction.getId());
+        }
+    }
+
+    public static record TransactionCashFlowKey(String portfolio, String transactionId, int type) {
+        public static TransactionCashFlowKey of(TransactionCashFlow cash) {
+            return new TransactionCashFlowKey(
+                    cash.getPortfolio(),
+                    cash.getTransactionId(),
+                    cash.getEventType().getId());
+        }
+    }
+
+    public static record SecurityEventCashFlowKey(String portfolio, Instant timestamp, String security, int type) {
+        public static SecurityEventCashFlowKey of(SecurityEventCashFlow cash) {
+            return new SecurityEventCashFlowKey(
+                    cash.getPortfolio(),
+                    cash.getTimestamp(),
+                    cash.getSecurity(),
+                    cash.getEventType().getId());
+        }
+    }
+
+    public static record SecurityQuoteKey(String security, Instant timestamp) {
+        public static SecurityQuoteKey of(SecurityQuote quote) {
+            return new SecurityQuoteKey(quote.getSecurity(), quote.getTimestamp());
+        }
+    }
+
+    public static record ForeignExchangeRateKey(LocalDate date, String currencyPair) {
+        public static ForeignExchangeRateKey of(ForeignExchangeRate rate) {
+            return new ForeignExchangeRateKey(rate.getDate(), rate.getCurrencyPair());
+        }
+    }
+}
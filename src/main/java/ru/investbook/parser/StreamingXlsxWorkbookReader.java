@@ -0,0 +1,231 @@
+/*
+ * InvestBook
+ * Copyright (C) 2020  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.CloseIgnoringInputStream;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads xlsx file by SAX parser (POI event model) without building XSSF object model of sheet XML. Only cell values,
+ * date formats and merged regions are kept in compact HSSF workbook, which can be wrapped by
+ * {@link org.spacious_team.table_wrapper.excel.ExcelSheet} as usual. Report tables search cells by value
+ * over whole sheet, so sheet rows are still held in memory, but a cell takes several times less heap
+ * than in {@link org.apache.poi.xssf.usermodel.XSSFWorkbook}.
+ */
+public class StreamingXlsxWorkbookReader {
+
+    private static final SAXParserFactory saxParserFactory = createSaxParserFactory();
+
+    /**
+     * @throws IllegalArgumentException if sheet doesn't fit into HSSF workbook limits
+     */
+    public static Workbook read(InputStream is) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(new CloseIgnoringInputStream(is));
+        } catch (Exception e) {
+            throw new IOException("Не смог открыть xlsx файл", e);
+        }
+        HSSFWorkbook book = new HSSFWorkbook();
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheetData = sheets.next()) {
+                    Sheet sheet = book.createSheet(sheets.getSheetName());
+                    XMLReader xmlReader = saxParserFactory.newSAXParser().getXMLReader();
+                    xmlReader.setContentHandler(new SheetHandler(sheet, strings, styles));
+                    xmlReader.parse(new InputSource(sheetData));
+                }
+            }
+            return book;
+        } catch (Exception e) {
+            book.close();
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            } else if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new IOException("Не смог прочитать xlsx файл", e);
+        } finally {
+            pkg.revert(); // package is opened read only, nothing to save
+        }
+    }
+
+    private static SAXParserFactory createSaxParserFactory() {
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory;
+        } catch (Exception e) {
+            throw new RuntimeException("Не смог создать SAX парсер", e);
+        }
+    }
+
+    private static class SheetHandler extends DefaultHandler {
+        private static final int MAX_ROW_INDEX = SpreadsheetVersion.EXCEL97.getLastRowIndex();
+        private static final int MAX_COLUMN_INDEX = SpreadsheetVersion.EXCEL97.getLastColumnIndex();
+        private final Sheet sheet;
+        private final ReadOnlySharedStringsTable strings;
+        private final StylesTable styles;
+        private final Map<Integer, Optional<CellStyle>> dateCellStyles = new HashMap<>();
+        private final StringBuilder value = new StringBuilder();
+        private boolean isValueCollecting = false;
+        private Row row;
+        private int rowIndex = -1;
+        private int columnIndex = -1;
+        private String cellType;
+        private String cellStyle;
+
+        SheetHandler(Sheet sheet, ReadOnlySharedStringsTable strings, StylesTable styles) {
+            this.sheet = sheet;
+            this.strings = strings;
+            this.styles = styles;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row" -> {
+                    String r = attributes.getValue("r");
+                    rowIndex = (r == null) ? (rowIndex + 1) : (Integer.parseInt(r) - 1);
+                    columnIndex = -1;
+                    if (rowIndex > MAX_ROW_INDEX) {
+                        throw new IllegalArgumentException("Строк на листе '" + sheet.getSheetName() +
+                                "' больше " + (MAX_ROW_INDEX + 1));
+                    }
+                    row = sheet.createRow(rowIndex);
+                }
+                case "c" -> {
+                    String r = attributes.getValue("r");
+                    columnIndex = (r == null) ? (columnIndex + 1) : new CellReference(r).getCol();
+                    if (columnIndex > MAX_COLUMN_INDEX) {
+                        throw new IllegalArgumentException("Столбцов на листе '" + sheet.getSheetName() +
+                                "' больше " + (MAX_COLUMN_INDEX + 1));
+                    }
+                    cellType = attributes.getValue("t");
+                    cellStyle = attributes.getValue("s");
+                    value.setLength(0);
+                }
+                case "v", "t" -> isValueCollecting = true;
+                case "mergeCell" -> sheet.addMergedRegionUnsafe(CellRangeAddress.valueOf(attributes.getValue("ref")));
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (isValueCollecting) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v", "t" -> isValueCollecting = false;
+                case "c" -> setCellValue();
+                default -> {
+                }
+            }
+        }
+
+        private void setCellValue() {
+            if (value.length() == 0 || row == null) {
+                return;
+            }
+            String v = value.toString();
+            if (cellType == null || cellType.equals("n")) {
+                Cell cell = row.createCell(columnIndex);
+                cell.setCellValue(Double.parseDouble(v));
+                CellStyle dateCellStyle = getDateCellStyle();
+                if (dateCellStyle != null) {
+                    cell.setCellStyle(dateCellStyle);
+                }
+            } else {
+                switch (cellType) {
+                    case "s" -> row.createCell(columnIndex)
+                            .setCellValue(strings.getItemAt(Integer.parseInt(v)).getString());
+                    case "inlineStr", "str", "d" -> row.createCell(columnIndex).setCellValue(v);
+                    case "b" -> row.createCell(columnIndex).setCellValue(v.equals("1"));
+                    default -> {
+                        // error cells are left blank
+                    }
+                }
+            }
+        }
+
+        private CellStyle getDateCellStyle() {
+            if (cellStyle == null || styles == null) {
+                return null;
+            }
+            int styleIndex = Integer.parseInt(cellStyle);
+            return dateCellStyles.computeIfAbsent(styleIndex, this::createDateCellStyle).orElse(null);
+        }
+
+        /**
+         * @return style having same date format or empty for not date formatted cells
+         */
+        private Optional<CellStyle> createDateCellStyle(int styleIndex) {
+            XSSFCellStyle style = styles.getStyleAt(styleIndex);
+            if (style == null) {
+                return Optional.empty();
+            }
+            String format = style.getDataFormatString();
+            if (!DateUtil.isADateFormat(style.getDataFormat(), format)) {
+                return Optional.empty();
+            }
+            Workbook book = sheet.getWorkbook();
+            CellStyle dateCellStyle = book.createCellStyle();
+            dateCellStyle.setDataFormat(book.createDataFormat().getFormat(format));
+            return Optional.of(dateCellStyle);
+        }
+    }
+}
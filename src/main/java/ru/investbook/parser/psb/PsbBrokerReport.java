@@ -50,7 +50,11 @@ public class PsbBrokerReport extends AbstractExcelBrokerReport {
     }
 
     public PsbBrokerReport(String excelFileName, InputStream is) {
-        this.book = getWorkBook(excelFileName, is);
+        this(excelFileName, getWorkBook(excelFileName, is));
+    }
+
+    public PsbBrokerReport(String excelFileName, Workbook book) {
+        this.book = book;
         ReportPage reportPage = new ExcelSheet(book.getSheetAt(0));
         checkReportFormat(excelFileName, reportPage);
         setPath(Paths.get(excelFileName));
@@ -20,16 +20,17 @@ package ru.investbook.parser.psb;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.spacious_team.broker.report_parser.api.AbstractBrokerReportFactory;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.spacious_team.broker.report_parser.api.BrokerReport;
 import org.springframework.stereotype.Component;
+import ru.investbook.parser.AbstractExcelBrokerReportFactory;
 
 import java.io.InputStream;
 import java.util.regex.Pattern;
 
 @Component
 @Slf4j
-public class PsbBrokerReportFactory extends AbstractBrokerReportFactory {
+public class PsbBrokerReportFactory extends AbstractExcelBrokerReportFactory {
 
     @Getter
     private final String brokerName = "Промсвязьбанк";
@@ -38,6 +39,16 @@ public class PsbBrokerReportFactory extends AbstractBrokerReportFactory {
     @Override
     public BrokerReport create(String excelFileName, InputStream is) {
         BrokerReport brokerReport = create(expectedFileNamePattern, excelFileName, is, PsbBrokerReport::new);
+        return logIfDetected(brokerReport, excelFileName);
+    }
+
+    @Override
+    public BrokerReport create(String excelFileName, Workbook book) {
+        BrokerReport brokerReport = create(expectedFileNamePattern, excelFileName, book, PsbBrokerReport::new);
+        return logIfDetected(brokerReport, excelFileName);
+    }
+
+    private BrokerReport logIfDetected(BrokerReport brokerReport, String excelFileName) {
         if (brokerReport != null) {
             log.info("Обнаружен отчет '{}' фондового и срочного рынков Промсвязьбанк брокера", excelFileName);
         }
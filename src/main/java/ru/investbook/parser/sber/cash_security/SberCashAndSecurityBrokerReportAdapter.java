@@ -39,7 +39,11 @@ public class SberCashAndSecurityBrokerReportAdapter implements BrokerReport {
     private final Workbook book;
 
     public SberCashAndSecurityBrokerReportAdapter(String excelFileName, InputStream is) {
-        this.book = getWorkBook(excelFileName, is);
+        this(excelFileName, getWorkBook(excelFileName, is));
+    }
+
+    public SberCashAndSecurityBrokerReportAdapter(String excelFileName, Workbook book) {
+        this.book = book;
         this.cashReport = new SberCashBrokerReport(excelFileName, book);
         this.securityDepositReport = new SberSecurityDepositBrokerReport(excelFileName, book);
     }
@@ -20,16 +20,17 @@ package ru.investbook.parser.sber.cash_security;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.spacious_team.broker.report_parser.api.AbstractBrokerReportFactory;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.spacious_team.broker.report_parser.api.BrokerReport;
 import org.springframework.stereotype.Component;
+import ru.investbook.parser.AbstractExcelBrokerReportFactory;
 
 import java.io.InputStream;
 import java.util.regex.Pattern;
 
 @Component
 @Slf4j
-public class SberCashAndSecurityBrokerReportFactory extends AbstractBrokerReportFactory {
+public class SberCashAndSecurityBrokerReportFactory extends AbstractExcelBrokerReportFactory {
 
     @Getter
     private final String brokerName = "Сбербанк Онлайн (деньги)";
@@ -39,6 +40,17 @@ public class SberCashAndSecurityBrokerReportFactory extends AbstractBrokerReport
     public BrokerReport create(String excelFileName, InputStream is) {
         BrokerReport brokerReport = create(expectedFileNamePattern, excelFileName, is,
                 SberCashAndSecurityBrokerReportAdapter::new);
+        return logIfDetected(brokerReport, excelFileName);
+    }
+
+    @Override
+    public BrokerReport create(String excelFileName, Workbook book) {
+        BrokerReport brokerReport = create(expectedFileNamePattern, excelFileName, book,
+                SberCashAndSecurityBrokerReportAdapter::new);
+        return logIfDetected(brokerReport, excelFileName);
+    }
+
+    private BrokerReport logIfDetected(BrokerReport brokerReport, String excelFileName) {
         if (brokerReport != null) {
             log.info("Обнаружен отчет зачислений и списаний '{}' СберБанк брокера", excelFileName);
         }
@@ -40,7 +40,11 @@ public class SberTrBrokerReport implements BrokerReport {
     private final String toString;
 
     public SberTrBrokerReport(String excelFileName, InputStream is) {
-        this.book = getWorkBook(excelFileName, is);
+        this(excelFileName, getWorkBook(excelFileName, is));
+    }
+
+    public SberTrBrokerReport(String excelFileName, Workbook book) {
+        this.book = book;
         this.reportPage = new ExcelSheet(book.getSheetAt(0));
         this.toString = excelFileName;
         checkReportFormat(excelFileName, reportPage);
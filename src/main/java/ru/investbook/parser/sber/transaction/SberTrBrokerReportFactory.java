@@ -20,16 +20,17 @@ package ru.investbook.parser.sber.transaction;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.spacious_team.broker.report_parser.api.AbstractBrokerReportFactory;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.spacious_team.broker.report_parser.api.BrokerReport;
 import org.springframework.stereotype.Component;
+import ru.investbook.parser.AbstractExcelBrokerReportFactory;
 
 import java.io.InputStream;
 import java.util.regex.Pattern;
 
 @Component
 @Slf4j
-public class SberTrBrokerReportFactory extends AbstractBrokerReportFactory {
+public class SberTrBrokerReportFactory extends AbstractExcelBrokerReportFactory {
 
     @Getter
     private final String brokerName = "Сбербанк Онлайн (сделки)";
@@ -38,6 +39,16 @@ public class SberTrBrokerReportFactory extends AbstractBrokerReportFactory {
     @Override
     public BrokerReport create(String excelFileName, InputStream is) {
         BrokerReport brokerReport = create(expectedFileNamePattern, excelFileName, is, SberTrBrokerReport::new);
+        return logIfDetected(brokerReport, excelFileName);
+    }
+
+    @Override
+    public BrokerReport create(String excelFileName, Workbook book) {
+        BrokerReport brokerReport = create(expectedFileNamePattern, excelFileName, book, SberTrBrokerReport::new);
+        return logIfDetected(brokerReport, excelFileName);
+    }
+
+    private BrokerReport logIfDetected(BrokerReport brokerReport, String excelFileName) {
         if (brokerReport != null) {
             log.info("Обнаружен отчет сделок '{}' Сбербанк брокера", excelFileName);
         }
@@ -26,12 +26,12 @@ import org.spacious_team.broker.pojo.Security;
 import org.spacious_team.broker.pojo.SecurityEventCashFlow;
 import org.spacious_team.broker.report_parser.api.ReportTable;
 import org.spacious_team.broker.report_parser.api.SecurityTransaction;
-import org.spacious_team.table_wrapper.api.AbstractTable;
 import org.spacious_team.table_wrapper.api.Table;
 import org.spacious_team.table_wrapper.api.TableColumn;
 import org.spacious_team.table_wrapper.api.TableColumnDescription;
 import org.spacious_team.table_wrapper.api.TableColumnImpl;
 import org.spacious_team.table_wrapper.api.TableRow;
+import ru.investbook.parser.DuplicatesMergingCollection;
 import ru.investbook.parser.SingleAbstractReportTable;
 import ru.investbook.parser.uralsib.SecuritiesTable.ReportSecurityInformation;
 
@@ -41,7 +41,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -56,10 +61,9 @@ abstract class PaymentsTable extends SingleAbstractReportTable<SecurityEventCash
 
     static final String TABLE_NAME = "ДВИЖЕНИЕ ДЕНЕЖНЫХ СРЕДСТВ ЗА ОТЧЕТНЫЙ ПЕРИОД";
     protected static final BigDecimal minValue = BigDecimal.valueOf(0.01);
-    // human readable name -> incoming count
-    private final List<ReportSecurityInformation> securitiesIncomingCount;
-    private final List<SecurityTransaction> securityTransactions;
-    private final Collection<EventCashFlow> eventCashFlows = new ArrayList<>();
+    private final SecurityDescriptionIndex securityDescriptionIndex;
+    private final SecurityCountIndex securityCountIndex;
+    private final Collection<EventCashFlow> eventCashFlows = DuplicatesMergingCollection.ofEventCashFlows();
     private final Pattern taxInformationPattern = Pattern.compile("налог в размере ([0-9.]+) удержан");
     private String currentRowDescription = "";
 
@@ -67,8 +71,9 @@ abstract class PaymentsTable extends SingleAbstractReportTable<SecurityEventCash
                          SecuritiesTable securitiesTable,
                          ReportTable<SecurityTransaction> securityTransactionTable) {
         super(report, TABLE_NAME, "", PaymentsTableHeader.class);
-        this.securitiesIncomingCount = securitiesTable.getData();
-        this.securityTransactions = securityTransactionTable.getData();
+        // индексы строятся один раз на отчет, а не для каждой строки таблицы выплат
+        this.securityDescriptionIndex = new SecurityDescriptionIndex(securitiesTable.getData());
+        this.securityCountIndex = new SecurityCountIndex(securitiesTable.getData(), securityTransactionTable.getData());
     }
 
     @Override
@@ -102,15 +107,13 @@ abstract class PaymentsTable extends SingleAbstractReportTable<SecurityEventCash
                     .eventType(cashEventIfSecurityNotFound)
                     .value(value)
                     .build();
-            AbstractTable.addWithEqualityChecker(cash, eventCashFlows,
-                    EventCashFlow::checkEquality, EventCashFlow::mergeDuplicates);
+            eventCashFlows.add(cash);
             if (tax.abs().compareTo(minValue) >= 0) {
                 EventCashFlow taxEventCash = builder
                         .eventType(CashFlowType.TAX)
                         .value(tax.negate())
                         .build();
-                AbstractTable.addWithEqualityChecker(taxEventCash, eventCashFlows,
-                        EventCashFlow::checkEquality, EventCashFlow::mergeDuplicates);
+                eventCashFlows.add(taxEventCash);
             }
             log.debug("Получена выплата по ценной бумаге, которой нет в портфеле: " + cash);
             return null;
@@ -119,31 +122,10 @@ abstract class PaymentsTable extends SingleAbstractReportTable<SecurityEventCash
 
     protected Security getSecurityIfCan(TableRow row) {
         String description = row.getStringCellValueOrDefault(DESCRIPTION, "");
-        String descriptionLowercase = description.toLowerCase();
-        for (ReportSecurityInformation info : securitiesIncomingCount) {
-            if (info == null) continue;
-            Security security = info.getSecurity();
-            if (contains(descriptionLowercase, info.getCfi()) ||   // dividend
-                    (security != null && (contains(descriptionLowercase, security.getName()) ||  // coupon, amortization, redemption
-                            contains(descriptionLowercase, security.getId())))) { // for future report changes
-                return security;
-            }
-        }
-        throw new RuntimeException("Не могу найти ISIN ценной бумаги в отчете брокера по событию:" + description);
-    }
-
-    private boolean contains(String description, String securityParameter) {
-        if (securityParameter == null) {
-            return false;
-        }
-        int start = description.indexOf(securityParameter.toLowerCase());
-        if (start < 0) {
-            return false;
-        }
-        int end = start + securityParameter.length(); // exclusive
-        boolean leftWordBoundary = (start == 0 || !isLetterOrDigit(description.charAt(start - 1)));
-        boolean rightWordBoundary = (end == description.length() || !isLetterOrDigit(description.charAt(end)));
-        return leftWordBoundary && rightWordBoundary;
+        return securityDescriptionIndex.find(description.toLowerCase())
+                .orElseThrow(() -> new RuntimeException(
+                        "Не могу найти ISIN ценной бумаги в отчете брокера по событию:" + description))
+                .getSecurity();
     }
 
     protected BigDecimal getTax(TableRow row) {
@@ -160,33 +142,7 @@ abstract class PaymentsTable extends SingleAbstractReportTable<SecurityEventCash
     }
 
     protected Integer getSecurityCount(Security security, Instant atInstant) {
-        int count = securitiesIncomingCount.stream()
-                .filter(i -> i.getSecurity().getId().equals(security.getId()))
-                .map(ReportSecurityInformation::getIncomingCount)
-                .findAny()
-                .orElseThrow(() -> new RuntimeException("Не найдено количество на начало периода отчета для ЦБ " + security));
-        Collection<SecurityTransaction> transactions = securityTransactions.stream()
-                .filter(t -> t.getSecurity().equals(security.getId()))
-                .sorted(Comparator.comparing(SecurityTransaction::getTimestamp))
-                .collect(Collectors.toList());
-        int prevCount = 0;
-        for (SecurityTransaction transaction : transactions) {
-            if (transaction.getTimestamp().isBefore(atInstant)) {
-                prevCount = count;
-                count += transaction.getCount();
-            } else {
-                break;
-            }
-        }
-        if (count > 0) {
-            return count;
-        } else if (prevCount > 0) {
-            // dividends, coupons payments was received after securities celling (count == 0),
-            // returning securities quantity before celling
-            return prevCount;
-        } else {
-            throw  new RuntimeException("Не определено количество ЦБ " + security + " на момент времени " + atInstant);
-        }
+        return securityCountIndex.getCount(security, atInstant);
     }
 
     public Collection<EventCashFlow> getEventCashFlows() {
@@ -204,10 +160,8 @@ abstract class PaymentsTable extends SingleAbstractReportTable<SecurityEventCash
         // gh-78: обе выплаты должны быть сохранены. Одна выплата выполнена по текущему портфелю, другая - по связанному ИИС.
         // К сожалению, сохраняем обе выплаты как по внешнему портфелю, т.к. брокер по выплате не указал количество ЦБ
         // ни по одной из выплат, поэтому не возможно определить какая из выплат относится к текущему портфелю.
-        AbstractTable.addWithEqualityChecker(cast(cash1), eventCashFlows,
-                EventCashFlow::checkEquality, EventCashFlow::mergeDuplicates);
-        AbstractTable.addWithEqualityChecker(cast(cash2), eventCashFlows,
-                EventCashFlow::checkEquality, EventCashFlow::mergeDuplicates);
+        eventCashFlows.add(cast(cash1));
+        eventCashFlows.add(cast(cash2));
         return Collections.emptyList();
     }
 
@@ -222,6 +176,174 @@ abstract class PaymentsTable extends SingleAbstractReportTable<SecurityEventCash
                 .build();
     }
 
+    /**
+     * Поиск ценной бумаги по описанию выплаты. Параметр ценной бумаги (CFI, наименование, ISIN) может встретиться
+     * в описании как отдельное слово (последовательность букв и цифр) только если каждое его слово является словом
+     * описания, поэтому параметры проиндексированы по первому слову, а полная проверка с учетом границ слов
+     * выполняется только для кандидатов, найденных по словам описания.
+     */
+    private static class SecurityDescriptionIndex {
+        private final List<ReportSecurityInformation> securities;
+        // первое слово параметра -> индексы ЦБ в securities
+        private final Map<String, List<Integer>> securitiesByFirstWord = new HashMap<>();
+        // параметры без букв и цифр, проверяются для каждого описания
+        private final List<Integer> securitiesWithoutWords = new ArrayList<>();
+
+        SecurityDescriptionIndex(List<ReportSecurityInformation> securities) {
+            this.securities = securities;
+            for (int i = 0; i < securities.size(); i++) {
+                ReportSecurityInformation info = securities.get(i);
+                if (info == null) continue;
+                Security security = info.getSecurity();
+                index(info.getCfi(), i); // dividend
+                if (security != null) {
+                    index(security.getName(), i); // coupon, amortization, redemption
+                    index(security.getId(), i); // for future report changes
+                }
+            }
+        }
+
+        private void index(String securityParameter, int securityIndex) {
+            if (securityParameter == null) {
+                return;
+            }
+            List<String> words = getWords(securityParameter.toLowerCase());
+            if (words.isEmpty()) {
+                securitiesWithoutWords.add(securityIndex);
+            } else {
+                securitiesByFirstWord.computeIfAbsent(words.get(0), k -> new ArrayList<>())
+                        .add(securityIndex);
+            }
+        }
+
+        /**
+         * @return первая в порядке таблицы ценных бумаг ЦБ, параметр которой содержится в описании
+         */
+        Optional<ReportSecurityInformation> find(String descriptionLowercase) {
+            SortedSet<Integer> candidates = new TreeSet<>(securitiesWithoutWords);
+            for (String word : getWords(descriptionLowercase)) {
+                candidates.addAll(securitiesByFirstWord.getOrDefault(word, Collections.emptyList()));
+            }
+            for (int i : candidates) {
+                ReportSecurityInformation info = securities.get(i);
+                Security security = info.getSecurity();
+                if (contains(descriptionLowercase, info.getCfi()) ||
+                        (security != null && (contains(descriptionLowercase, security.getName()) ||
+                                contains(descriptionLowercase, security.getId())))) {
+                    return Optional.of(info);
+                }
+            }
+            return Optional.empty();
+        }
+
+        private static List<String> getWords(String text) {
+            List<String> words = new ArrayList<>();
+            int start = -1;
+            for (int i = 0; i < text.length(); i++) {
+                if (isLetterOrDigit(text.charAt(i))) {
+                    if (start < 0) start = i;
+                } else if (start >= 0) {
+                    words.add(text.substring(start, i));
+                    start = -1;
+                }
+            }
+            if (start >= 0) {
+                words.add(text.substring(start));
+            }
+            return words;
+        }
+
+        private static boolean contains(String description, String securityParameter) {
+            if (securityParameter == null) {
+                return false;
+            }
+            int start = description.indexOf(securityParameter.toLowerCase());
+            if (start < 0) {
+                return false;
+            }
+            int end = start + securityParameter.length(); // exclusive
+            boolean leftWordBoundary = (start == 0 || !isLetterOrDigit(description.charAt(start - 1)));
+            boolean rightWordBoundary = (end == description.length() || !isLetterOrDigit(description.charAt(end)));
+            return leftWordBoundary && rightWordBoundary;
+        }
+    }
+
+    /**
+     * Количество ЦБ на момент времени. Сделки по каждой ЦБ отсортированы по времени один раз,
+     * количество после каждой сделки хранится нарастающим итогом и находится бинарным поиском.
+     */
+    private static class SecurityCountIndex {
+        private final Map<String, Integer> incomingCounts = new HashMap<>();
+        private final Map<String, Instant[]> transactionTimestamps = new HashMap<>();
+        // количество ЦБ после i-ой сделки, начиная с количества на начало периода отчета
+        private final Map<String, int[]> countsAfterTransaction = new HashMap<>();
+
+        SecurityCountIndex(List<ReportSecurityInformation> securities, List<SecurityTransaction> securityTransactions) {
+            for (ReportSecurityInformation info : securities) {
+                if (info == null || info.getSecurity() == null) continue;
+                incomingCounts.putIfAbsent(info.getSecurity().getId(), info.getIncomingCount());
+            }
+            Map<String, List<SecurityTransaction>> transactionsBySecurity = securityTransactions.stream()
+                    .collect(Collectors.groupingBy(SecurityTransaction::getSecurity,
+                            Collectors.toCollection(ArrayList::new)));
+            transactionsBySecurity.forEach((securityId, transactions) -> {
+                transactions.sort(Comparator.comparing(SecurityTransaction::getTimestamp));
+                Instant[] timestamps = new Instant[transactions.size()];
+                int[] counts = new int[transactions.size()];
+                int count = 0;
+                for (int i = 0; i < transactions.size(); i++) {
+                    SecurityTransaction transaction = transactions.get(i);
+                    count += transaction.getCount();
+                    timestamps[i] = transaction.getTimestamp();
+                    counts[i] = count;
+                }
+                transactionTimestamps.put(securityId, timestamps);
+                countsAfterTransaction.put(securityId, counts);
+            });
+        }
+
+        Integer getCount(Security security, Instant atInstant) {
+            Integer incomingCount = incomingCounts.get(security.getId());
+            if (incomingCount == null) {
+                throw new RuntimeException("Не найдено количество на начало периода отчета для ЦБ " + security);
+            }
+            Instant[] timestamps = transactionTimestamps.getOrDefault(security.getId(), new Instant[0]);
+            int[] counts = countsAfterTransaction.getOrDefault(security.getId(), new int[0]);
+            int transactionsBefore = countBefore(timestamps, atInstant);
+            int count = incomingCount + ((transactionsBefore > 0) ? counts[transactionsBefore - 1] : 0);
+            int prevCount = (transactionsBefore > 0) ?
+                    incomingCount + ((transactionsBefore > 1) ? counts[transactionsBefore - 2] : 0) :
+                    0;
+            if (count > 0) {
+                return count;
+            } else if (prevCount > 0) {
+                // dividends, coupons payments was received after securities celling (count == 0),
+                // returning securities quantity before celling
+                return prevCount;
+            } else {
+                throw new RuntimeException("Не определено количество ЦБ " + security +
+                        " на момент времени " + atInstant);
+            }
+        }
+
+        /**
+         * @return количество отсортированных моментов времени, строго предшествующих {@code atInstant}
+         */
+        private static int countBefore(Instant[] timestamps, Instant atInstant) {
+            int low = 0;
+            int high = timestamps.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[mid].isBefore(atInstant)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
     enum PaymentsTableHeader implements TableColumnDescription {
         DATE("дата"),
         OPERATION("тип", "операции"),
@@ -60,7 +60,11 @@ public class UralsibBrokerReport extends AbstractExcelBrokerReport {
     }
 
     public UralsibBrokerReport(String excelFileName, InputStream is) {
-        this.book = getWorkBook(excelFileName, is);
+        this(excelFileName, getWorkBook(excelFileName, is));
+    }
+
+    public UralsibBrokerReport(String excelFileName, Workbook book) {
+        this.book = book;
         ReportPage reportPage = new ExcelSheet(book.getSheetAt(0));
         Path path = Paths.get(excelFileName);
         checkReportFormat(path, reportPage);
@@ -20,9 +20,10 @@ package ru.investbook.parser.uralsib;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.spacious_team.broker.report_parser.api.AbstractBrokerReportFactory;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.spacious_team.broker.report_parser.api.BrokerReport;
 import org.springframework.stereotype.Component;
+import ru.investbook.parser.AbstractExcelBrokerReportFactory;
 
 import java.io.InputStream;
 import java.util.regex.Pattern;
@@ -30,7 +31,7 @@ import java.util.zip.ZipInputStream;
 
 @Component
 @Slf4j
-public class UralsibBrokerReportFactory extends AbstractBrokerReportFactory {
+public class UralsibBrokerReportFactory extends AbstractExcelBrokerReportFactory {
 
     @Getter
     private final String brokerName = "Уралсиб";
@@ -53,6 +54,20 @@ public class UralsibBrokerReportFactory extends AbstractBrokerReportFactory {
                     is,
                     UralsibBrokerReport::new);
         }
+        return logIfDetected(brokerReport, excelFileName);
+    }
+
+    @Override
+    public BrokerReport create(String excelFileName, Workbook book) {
+        BrokerReport brokerReport = create(
+                expectedFileNamePattern,
+                excelFileName,
+                book,
+                UralsibBrokerReport::new);
+        return logIfDetected(brokerReport, excelFileName);
+    }
+
+    private BrokerReport logIfDetected(BrokerReport brokerReport, String excelFileName) {
         if (brokerReport != null) {
             log.info("Обнаружен отчет '{}' Уралсиб брокера", excelFileName);
             if (!excelFileName.contains("_invest_")) {
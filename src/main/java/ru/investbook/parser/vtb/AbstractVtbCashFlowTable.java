@@ -20,68 +20,46 @@ package ru.investbook.parser.vtb;
 
 import ru.investbook.parser.SingleInitializableReportTable;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.function.BiFunction;
-import java.util.function.BiPredicate;
-import java.util.stream.Collector;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.unmodifiableCollection;
-import static org.spacious_team.table_wrapper.api.AbstractTable.addWithEqualityChecker;
 
 public abstract class AbstractVtbCashFlowTable<RowType> extends SingleInitializableReportTable<RowType> {
 
     private final Collection<CashFlowEventTable.CashFlowEvent> events;
-    private final BiPredicate<RowType, RowType> equalityChecker;
-    private final BiFunction<RowType, RowType, Collection<RowType>> duplicatesMerger;
+    private final Supplier<? extends Collection<RowType>> duplicatesMergingCollectionFactory;
 
     public AbstractVtbCashFlowTable(CashFlowEventTable cashFlowEventTable) {
         super(cashFlowEventTable.getReport());
         this.events = unmodifiableCollection(cashFlowEventTable.getData());
-        equalityChecker = null;
-        duplicatesMerger = null;
+        duplicatesMergingCollectionFactory = null;
     }
 
+    /**
+     * @param duplicatesMergingCollectionFactory creates collection merging duplicate rows on add,
+     *                                           for example {@link ru.investbook.parser.DuplicatesMergingCollection}
+     */
     public AbstractVtbCashFlowTable(CashFlowEventTable cashFlowEventTable,
-                                    BiPredicate<RowType, RowType> equalityChecker,
-                                    BiFunction<RowType, RowType, Collection<RowType>> duplicatesMerger) {
+                                    Supplier<? extends Collection<RowType>> duplicatesMergingCollectionFactory) {
         super(cashFlowEventTable.getReport());
         this.events = unmodifiableCollection(cashFlowEventTable.getData());
-        this.equalityChecker = equalityChecker;
-        this.duplicatesMerger = duplicatesMerger;
+        this.duplicatesMergingCollectionFactory = duplicatesMergingCollectionFactory;
     }
 
     @Override
     protected Collection<RowType> parseTable() {
-        if (equalityChecker == null || duplicatesMerger == null) {
+        if (duplicatesMergingCollectionFactory == null) {
             return events.stream()
                     .flatMap(e -> getRow(e).stream())
                     .collect(Collectors.toList());
         } else {
             return events.stream()
                     .flatMap(e -> getRow(e).stream())
-                    .collect(toList(equalityChecker, duplicatesMerger));
+                    .collect(Collectors.toCollection(duplicatesMergingCollectionFactory));
         }
     }
 
-    private static <RowType> Collector<RowType, ArrayList<RowType>, ArrayList<RowType>> toList(
-            BiPredicate<RowType, RowType> equalityChecker,
-            BiFunction<RowType, RowType, Collection<RowType>> duplicatesMerger) {
-        return Collector.of(
-                ArrayList::new,
-                (collection, element) -> addWithEqualityChecker(
-                        element,
-                        collection,
-                        equalityChecker,
-                        duplicatesMerger),
-                (left, right) -> {
-                    left.addAll(right);
-                    return left;
-                },
-                Collector.Characteristics.IDENTITY_FINISH
-        );
-    }
-
     protected abstract Collection<RowType> getRow(CashFlowEventTable.CashFlowEvent event);
 }
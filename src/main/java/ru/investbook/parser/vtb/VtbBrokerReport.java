@@ -44,7 +44,11 @@ public class VtbBrokerReport extends AbstractExcelBrokerReport {
     private final Workbook book;
 
     public VtbBrokerReport(String excelFileName, InputStream is) {
-        this.book = getWorkBook(excelFileName, is);
+        this(excelFileName, getWorkBook(excelFileName, is));
+    }
+
+    public VtbBrokerReport(String excelFileName, Workbook book) {
+        this.book = book;
         ReportPage reportPage = new ExcelSheet(book.getSheetAt(0));
         Path path = Paths.get(excelFileName);
         checkReportFormat(path, reportPage);
@@ -20,16 +20,17 @@ package ru.investbook.parser.vtb;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.spacious_team.broker.report_parser.api.AbstractBrokerReportFactory;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.spacious_team.broker.report_parser.api.BrokerReport;
 import org.springframework.stereotype.Component;
+import ru.investbook.parser.AbstractExcelBrokerReportFactory;
 
 import java.io.InputStream;
 import java.util.regex.Pattern;
 
 @Component
 @Slf4j
-public class VtbBrokerReportFactory extends AbstractBrokerReportFactory {
+public class VtbBrokerReportFactory extends AbstractExcelBrokerReportFactory {
 
     @Getter
     private final String brokerName = "ВТБ";
@@ -42,6 +43,20 @@ public class VtbBrokerReportFactory extends AbstractBrokerReportFactory {
                 excelFileName,
                 is,
                 VtbBrokerReport::new);
+        return logIfDetected(brokerReport, excelFileName);
+    }
+
+    @Override
+    public BrokerReport create(String excelFileName, Workbook book) {
+        BrokerReport brokerReport = create(
+                expectedFileNamePattern,
+                excelFileName,
+                book,
+                VtbBrokerReport::new);
+        return logIfDetected(brokerReport, excelFileName);
+    }
+
+    private BrokerReport logIfDetected(BrokerReport brokerReport, String excelFileName) {
         if (brokerReport != null) {
             log.info("Обнаружен отчет '{}' брокера ВТБ", excelFileName);
         }
@@ -21,6 +21,7 @@ package ru.investbook.parser.vtb;
 import org.spacious_team.broker.pojo.CashFlowType;
 import org.spacious_team.broker.pojo.EventCashFlow;
 import org.springframework.util.StringUtils;
+import ru.investbook.parser.DuplicatesMergingCollection;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -32,7 +33,7 @@ import static org.spacious_team.broker.pojo.CashFlowType.TAX;
 public class VtbCashFlowTable extends AbstractVtbCashFlowTable<EventCashFlow> {
 
     public VtbCashFlowTable(CashFlowEventTable cashFlowEventTable) {
-        super(cashFlowEventTable, EventCashFlow::checkEquality, EventCashFlow::mergeDuplicates);
+        super(cashFlowEventTable, DuplicatesMergingCollection::ofEventCashFlows);
     }
 
     @Override
@@ -24,8 +24,8 @@ import org.spacious_team.broker.pojo.CashFlowType;
 import org.spacious_team.broker.pojo.SecurityEventCashFlow;
 import org.spacious_team.broker.pojo.Transaction;
 
+import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.LinkedList;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.stream.Collectors;
@@ -40,14 +40,23 @@ public class FifoPositions {
 
     private final Deque<Transaction> transactions;
     private final Deque<SecurityEventCashFlow> redemptions;
-    private final Deque<PositionHistory> positionHistories = new LinkedList<>();
-    private final Deque<OpenedPosition> openedPositions = new LinkedList<>();
-    private final Deque<ClosedPosition> closedPositions = new LinkedList<>();
+    private final Deque<PositionHistory> positionHistories;
+    private final Deque<OpenedPosition> openedPositions = new ArrayDeque<>();
+    private final Deque<ClosedPosition> closedPositions;
     private final int currentOpenedPositionsCount;
+    /**
+     * Cash flows of {@link #getTransactions()}
+     */
+    private final TransactionCashFlows transactionCashFlows;
 
-    public FifoPositions(Deque<Transaction> transactions, Deque<SecurityEventCashFlow> redemptions) {
+    public FifoPositions(Deque<Transaction> transactions,
+                         Deque<SecurityEventCashFlow> redemptions,
+                         TransactionCashFlows transactionCashFlows) {
         this.transactions = transactions;
         this.redemptions = redemptions;
+        this.transactionCashFlows = transactionCashFlows;
+        this.positionHistories = new ArrayDeque<>(transactions.size() + redemptions.size());
+        this.closedPositions = new ArrayDeque<>(transactions.size());
         updateSecuritiesPastPositions(transactions);
         processTransactions(transactions);
         processRedemptions(redemptions);
@@ -71,7 +80,7 @@ public class FifoPositions {
             String security = redemptions.peek().getSecurity();
             updateSecuritiesPastPositions(redemptions.stream()
                     .map(FifoPositions::convertToTransaction)
-                    .collect(Collectors.toCollection(LinkedList::new)));
+                    .collect(Collectors.toCollection(ArrayDeque::new)));
             for (SecurityEventCashFlow  redemption : redemptions) {
                 closePositions(convertToTransaction(redemption), CashFlowType.REDEMPTION);
             }
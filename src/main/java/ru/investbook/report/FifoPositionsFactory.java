@@ -18,44 +18,79 @@
 
 package ru.investbook.report;
 
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.spacious_team.broker.pojo.CashFlowType;
 import org.spacious_team.broker.pojo.Portfolio;
 import org.spacious_team.broker.pojo.Security;
 import org.spacious_team.broker.pojo.SecurityEventCashFlow;
 import org.spacious_team.broker.pojo.SecurityType;
 import org.spacious_team.broker.pojo.Transaction;
+import org.spacious_team.broker.pojo.TransactionCashFlow;
 import org.springframework.stereotype.Component;
+import ru.investbook.InvestbookProperties;
 import ru.investbook.converter.SecurityEventCashFlowConverter;
+import ru.investbook.converter.TransactionCashFlowConverter;
 import ru.investbook.converter.TransactionConverter;
 import ru.investbook.entity.SecurityEventCashFlowEntity;
 import ru.investbook.entity.TransactionEntity;
+import ru.investbook.entity.TransactionEntityPK;
+import ru.investbook.report.TransactionCashFlows.TransactionKey;
 import ru.investbook.repository.SecurityEventCashFlowRepository;
+import ru.investbook.repository.TransactionCashFlowRepository;
 import ru.investbook.repository.TransactionRepository;
 
+import java.time.Instant;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.singleton;
 import static org.spacious_team.broker.pojo.SecurityType.getCurrencyPair;
 
 @Component
-@RequiredArgsConstructor
-public class FifoPositionsFactory {
+public class FifoPositionsFactory implements MeterBinder {
+    private static final int MAX_IN_LIST_SIZE = 1000;
 
-    private static final String ALL_PORTFOLIO_KEY = "all";
     private final TransactionRepository transactionRepository;
     private final SecurityEventCashFlowRepository securityEventCashFlowRepository;
+    private final TransactionCashFlowRepository transactionCashFlowRepository;
     private final TransactionConverter transactionConverter;
     private final SecurityEventCashFlowConverter securityEventCashFlowConverter;
-    private final Map<String, Map<String, FifoPositions>> positionsCache = new ConcurrentHashMap<>();
+    private final TransactionCashFlowConverter transactionCashFlowConverter;
+    private final Cache<PositionsCacheKey, FifoPositions> positionsCache;
+    private final AtomicLong cacheInvalidations = new AtomicLong();
+
+    public FifoPositionsFactory(TransactionRepository transactionRepository,
+                                SecurityEventCashFlowRepository securityEventCashFlowRepository,
+                                TransactionCashFlowRepository transactionCashFlowRepository,
+                                TransactionConverter transactionConverter,
+                                SecurityEventCashFlowConverter securityEventCashFlowConverter,
+                                TransactionCashFlowConverter transactionCashFlowConverter,
+                                InvestbookProperties properties) {
+        this.transactionRepository = transactionRepository;
+        this.securityEventCashFlowRepository = securityEventCashFlowRepository;
+        this.transactionCashFlowRepository = transactionCashFlowRepository;
+        this.transactionConverter = transactionConverter;
+        this.securityEventCashFlowConverter = securityEventCashFlowConverter;
+        this.transactionCashFlowConverter = transactionCashFlowConverter;
+        this.positionsCache = Caffeine.newBuilder()
+                .maximumWeight(properties.getPositionsCacheMaxTransactions())
+                .weigher(FifoPositionsFactory::getWeight)
+                .expireAfterAccess(properties.getPositionsCacheExpireAfterAccess())
+                .recordStats()
+                .build();
+    }
 
     public FifoPositions get(Portfolio portfolio, Security security, ViewFilter filter) {
         return get(singleton(portfolio.getId()), security.getId(), filter);
@@ -70,46 +105,109 @@ public class FifoPositionsFactory {
     }
 
     public FifoPositions get(Collection<String> portfolios, String isinOrContract, ViewFilter filter) {
-        String key = portfolios.stream().sorted().collect(Collectors.joining(","));
-        return positionsCache
-                .computeIfAbsent(
-                        key.isEmpty() ? ALL_PORTFOLIO_KEY : key,
-                        k -> new ConcurrentHashMap<>())
-                .computeIfAbsent(
-                        getCacheKey(isinOrContract, filter),
-                        k -> create(portfolios, isinOrContract, filter));
+        PositionsCacheKey key = new PositionsCacheKey(
+                Set.copyOf(portfolios),
+                getSecurityCacheKey(isinOrContract),
+                filter.getFromDate(),
+                filter.getToDate());
+        return positionsCache.get(key, k -> create(portfolios, isinOrContract, filter));
     }
 
     public void invalidateCache() {
-        positionsCache.clear();
+        cacheInvalidations.addAndGet(positionsCache.estimatedSize());
+        positionsCache.invalidateAll();
+    }
+
+    /**
+     * Invalidates cached positions affected by transaction saving or deleting
+     */
+    public void invalidateCache(Transaction transaction) {
+        invalidateCache(transaction.getPortfolio(), transaction.getSecurity(), transaction.getTimestamp());
+    }
+
+    /**
+     * Invalidates cached positions affected by stored transaction or its cash flows modification
+     */
+    public void invalidateCache(String portfolio, String transactionId) {
+        TransactionEntityPK pk = new TransactionEntityPK();
+        pk.setPortfolio(portfolio);
+        pk.setId(transactionId);
+        transactionRepository.findById(pk)
+                .ifPresent(entity -> invalidateCache(portfolio, entity.getSecurity().getId(), entity.getTimestamp()));
+    }
+
+    /**
+     * Invalidates cached positions affected by security event saving or deleting.
+     * Only bonds redemption events are participated in positions calculation.
+     */
+    public void invalidateCache(SecurityEventCashFlow event) {
+        if (event.getEventType() == CashFlowType.REDEMPTION) {
+            invalidateCache(event.getPortfolio(), event.getSecurity(), event.getTimestamp());
+        }
+    }
+
+    /**
+     * Invalidates cached positions of portfolio and security, which period includes timestamp
+     */
+    public void invalidateCache(String portfolio, String isinOrContract, Instant timestamp) {
+        String security = getSecurityCacheKey(isinOrContract);
+        positionsCache.asMap().keySet().removeIf(key -> {
+            boolean isAffected = key.isAffectedBy(portfolio, security, timestamp);
+            if (isAffected) cacheInvalidations.incrementAndGet();
+            return isAffected;
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("investbook.fifo-positions.cache.size", positionsCache, Cache::estimatedSize)
+                .register(registry);
+        Gauge.builder("investbook.fifo-positions.cache.weight", positionsCache,
+                        cache -> cache.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L))
+                .register(registry);
+        FunctionCounter.builder("investbook.fifo-positions.cache.hits", positionsCache, cache -> cache.stats().hitCount())
+                .register(registry);
+        FunctionCounter.builder("investbook.fifo-positions.cache.misses", positionsCache, cache -> cache.stats().missCount())
+                .register(registry);
+        FunctionCounter.builder("investbook.fifo-positions.cache.evictions", positionsCache, cache -> cache.stats().evictionCount())
+                .register(registry);
+        FunctionCounter.builder("investbook.fifo-positions.cache.invalidations", cacheInvalidations, AtomicLong::get)
+                .register(registry);
+    }
+
+    /**
+     * @return cache weight of positions, estimated as number of held transactions
+     */
+    private static int getWeight(PositionsCacheKey key, FifoPositions positions) {
+        return Math.max(1, positions.getTransactions().size() + positions.getRedemptions().size());
     }
 
-    private String getCacheKey(String isinOrContract, ViewFilter filter) {
-        String key = (SecurityType.getSecurityType(isinOrContract) == SecurityType.CURRENCY_PAIR) ?
+    private static String getSecurityCacheKey(String isinOrContract) {
+        return (SecurityType.getSecurityType(isinOrContract) == SecurityType.CURRENCY_PAIR) ?
                 getCurrencyPair(isinOrContract) :
                 isinOrContract;
-        return key + filter.getFromDate().toString() + filter.getToDate().toString();
     }
 
     private FifoPositions create(Collection<String> portfolios, String isinOrContract, ViewFilter filter) {
         SecurityType type = SecurityType.getSecurityType(isinOrContract);
-        LinkedList<Transaction> transactions;
+        Deque<Transaction> transactions;
         if (type == SecurityType.CURRENCY_PAIR) {
             String currencyPair = getCurrencyPair(isinOrContract);
-            transactions = getFxContracts(portfolios, currencyPair, filter)
+            List<Transaction> fxTransactions = getFxContracts(portfolios, currencyPair, filter)
                     .stream()
                     .flatMap(contract -> getTransactions(portfolios, contract, filter).stream())
-                    .collect(Collectors.toCollection(LinkedList::new));
-            transactions.sort(
+                    .collect(Collectors.toCollection(ArrayList::new));
+            fxTransactions.sort(
                     Comparator.comparing(Transaction::getTimestamp)
                             .thenComparing(Transaction::getId));
+            transactions = new ArrayDeque<>(fxTransactions);
         } else {
             transactions = getTransactions(portfolios, isinOrContract, filter);
         }
         Deque<SecurityEventCashFlow> redemption = (type == SecurityType.STOCK_OR_BOND) ?
                 getRedemption(portfolios, isinOrContract, filter) :
                 new ArrayDeque<>(0);
-        return new FifoPositions(transactions, redemption);
+        return new FifoPositions(transactions, redemption, getTransactionCashFlows(transactions));
     }
 
     private Collection<String> getFxContracts(Collection<String> portfolios, String currencyPair, ViewFilter filter) {
@@ -127,7 +225,7 @@ public class FifoPositionsFactory {
                                 filter.getToDate());
     }
 
-    public LinkedList<Transaction> getTransactions(Collection<String> portfolios, String isin, ViewFilter filter) {
+    public Deque<Transaction> getTransactions(Collection<String> portfolios, String isin, ViewFilter filter) {
         List<TransactionEntity> entities = portfolios.isEmpty() ?
                 transactionRepository
                         .findBySecurityIdAndTimestampBetweenOrderByTimestampAscPkIdAsc(
@@ -142,7 +240,36 @@ public class FifoPositionsFactory {
                                 filter.getToDate());
         return entities.stream()
                 .map(transactionConverter::fromEntity)
-                .collect(Collectors.toCollection(LinkedList::new));
+                .collect(Collectors.toCollection(ArrayDeque::new));
+    }
+
+    /**
+     * Loads cash flows of all transactions by one query
+     */
+    private TransactionCashFlows getTransactionCashFlows(Collection<Transaction> transactions) {
+        Set<String> portfolios = transactions.stream()
+                .map(Transaction::getPortfolio)
+                .collect(Collectors.toSet());
+        List<String> transactionIds = transactions.stream()
+                .map(Transaction::getId)
+                .distinct()
+                .collect(Collectors.toList());
+        if (transactionIds.isEmpty()) {
+            return TransactionCashFlows.empty();
+        }
+        Set<TransactionKey> transactionKeys = transactions.stream()
+                .map(TransactionKey::of)
+                .collect(Collectors.toSet());
+        List<TransactionCashFlow> cashFlows = new ArrayList<>();
+        for (int i = 0; i < transactionIds.size(); i += MAX_IN_LIST_SIZE) {
+            List<String> ids = transactionIds.subList(i, Math.min(transactionIds.size(), i + MAX_IN_LIST_SIZE));
+            transactionCashFlowRepository.findByPkPortfolioInAndPkTransactionIdIn(portfolios, ids)
+                    .stream()
+                    .map(transactionCashFlowConverter::fromEntity)
+                    .filter(cashFlow -> transactionKeys.contains(TransactionKey.of(cashFlow)))
+                    .forEach(cashFlows::add);
+        }
+        return new TransactionCashFlows(cashFlows);
     }
 
     private Deque<SecurityEventCashFlow> getRedemption(Collection<String> portfolios, String isin, ViewFilter filter) {
@@ -162,6 +289,20 @@ public class FifoPositionsFactory {
                                 filter.getToDate());
         return entities.stream()
                 .map(securityEventCashFlowConverter::fromEntity)
-                .collect(Collectors.toCollection(LinkedList::new));
+                .collect(Collectors.toCollection(ArrayDeque::new));
+    }
+
+    /**
+     * @param portfolios empty for all portfolios
+     * @param security   ISIN, contract or currency pair
+     */
+    private static record PositionsCacheKey(Set<String> portfolios, String security, Instant fromDate, Instant toDate) {
+
+        boolean isAffectedBy(String portfolio, String security, Instant timestamp) {
+            return this.security.equals(security) &&
+                    (portfolios.isEmpty() || portfolios.contains(portfolio)) &&
+                    !timestamp.isBefore(fromDate) &&
+                    !timestamp.isAfter(toDate);
+        }
     }
 }
@@ -0,0 +1,196 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.report;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable exchange rate history of one currency pair, sorted by date.
+ * Modification methods return new instance, so history may be read without locks.
+ * Rate of date newer than last known date is appended in amortized O(1) time: new history shares arrays
+ * with this history and uses one more array element.
+ */
+class ForeignExchangeRateHistory {
+
+    private static final ForeignExchangeRateHistory EMPTY =
+            new ForeignExchangeRateHistory(new int[0], new BigDecimal[0], 0, new AtomicInteger());
+    // arrays may be shared by several histories, only first size elements belong to this history
+    private final int[] epochDays;
+    private final BigDecimal[] rates;
+    private final int size;
+    // count of array elements used by histories sharing arrays
+    private final AtomicInteger usedSize;
+
+    private ForeignExchangeRateHistory(int[] epochDays, BigDecimal[] rates, int size, AtomicInteger usedSize) {
+        this.epochDays = epochDays;
+        this.rates = rates;
+        this.size = size;
+        this.usedSize = usedSize;
+    }
+
+    private ForeignExchangeRateHistory(int[] epochDays, BigDecimal[] rates) {
+        this(epochDays, rates, epochDays.length, new AtomicInteger(epochDays.length));
+    }
+
+    static ForeignExchangeRateHistory of(Map<LocalDate, BigDecimal> rates) {
+        return EMPTY.withRates(rates);
+    }
+
+    /**
+     * @return exchange rate at the date
+     */
+    Optional<BigDecimal> get(LocalDate date) {
+        int i = Arrays.binarySearch(epochDays, 0, size, toEpochDay(date));
+        return (i >= 0) ? Optional.of(rates[i]) : Optional.empty();
+    }
+
+    /**
+     * @return exchange rate at the date or last known rate before the date
+     */
+    Optional<BigDecimal> getAtOrBefore(LocalDate date) {
+        int i = indexAtOrBefore(date);
+        return (i >= 0) ? Optional.of(rates[i]) : Optional.empty();
+    }
+
+    /**
+     * @return the date, if rate is known at the date, or date of last known rate before the date
+     */
+    Optional<LocalDate> getDateAtOrBefore(LocalDate date) {
+        int i = indexAtOrBefore(date);
+        return (i >= 0) ? Optional.of(LocalDate.ofEpochDay(epochDays[i])) : Optional.empty();
+    }
+
+    private int indexAtOrBefore(LocalDate date) {
+        int i = Arrays.binarySearch(epochDays, 0, size, toEpochDay(date));
+        return (i >= 0) ? i : -i - 2; // insertion point - 1
+    }
+
+    /**
+     * @return last known exchange rate
+     */
+    Optional<BigDecimal> getLatest() {
+        return (size == 0) ? Optional.empty() : Optional.of(rates[size - 1]);
+    }
+
+    /**
+     * @return copy of history with added or replaced rates
+     */
+    ForeignExchangeRateHistory withRates(Map<LocalDate, BigDecimal> newRates) {
+        if (newRates.isEmpty()) {
+            return this;
+        }
+        int[] newEpochDays = new int[newRates.size()];
+        BigDecimal[] newRateValues = new BigDecimal[newRates.size()];
+        int n = 0;
+        for (Map.Entry<LocalDate, BigDecimal> e : newRates.entrySet()) {
+            newEpochDays[n] = toEpochDay(e.getKey());
+            newRateValues[n] = e.getValue();
+            n++;
+        }
+        sort(newEpochDays, newRateValues);
+        return (size == 0 || newEpochDays[0] > epochDays[size - 1]) ?
+                append(newEpochDays, newRateValues) :
+                merge(newEpochDays, newRateValues);
+    }
+
+    /**
+     * @param newEpochDays sorted dates, all newer than last known date
+     */
+    private ForeignExchangeRateHistory append(int[] newEpochDays, BigDecimal[] newRates) {
+        int newSize = size + newEpochDays.length;
+        if (newSize <= epochDays.length && usedSize.compareAndSet(size, newSize)) {
+            // elements after size are not used by any history yet
+            System.arraycopy(newEpochDays, 0, epochDays, size, newEpochDays.length);
+            System.arraycopy(newRates, 0, rates, size, newRates.length);
+            return new ForeignExchangeRateHistory(epochDays, rates, newSize, usedSize);
+        }
+        int capacity = Math.max(newSize, size + (size >> 1));
+        int[] days = Arrays.copyOf(epochDays, capacity);
+        BigDecimal[] values = Arrays.copyOf(rates, capacity);
+        System.arraycopy(newEpochDays, 0, days, size, newEpochDays.length);
+        System.arraycopy(newRates, 0, values, size, newRates.length);
+        return new ForeignExchangeRateHistory(days, values, newSize, new AtomicInteger(newSize));
+    }
+
+    /**
+     * @param newEpochDays sorted dates, rates of known dates are replaced
+     */
+    private ForeignExchangeRateHistory merge(int[] newEpochDays, BigDecimal[] newRates) {
+        int[] days = new int[size + newEpochDays.length];
+        BigDecimal[] values = new BigDecimal[days.length];
+        int i = 0, j = 0, n = 0;
+        while (i < size || j < newEpochDays.length) {
+            if (j == newEpochDays.length || (i < size && epochDays[i] < newEpochDays[j])) {
+                days[n] = epochDays[i];
+                values[n++] = rates[i++];
+            } else {
+                if (i < size && epochDays[i] == newEpochDays[j]) {
+                    i++;
+                }
+                days[n] = newEpochDays[j];
+                values[n++] = newRates[j++];
+            }
+        }
+        return new ForeignExchangeRateHistory(Arrays.copyOf(days, n), Arrays.copyOf(values, n));
+    }
+
+    /**
+     * @return copy of history without rate at the date
+     */
+    ForeignExchangeRateHistory withoutRate(LocalDate date) {
+        int i = Arrays.binarySearch(epochDays, 0, size, toEpochDay(date));
+        if (i < 0) {
+            return this;
+        }
+        int[] days = new int[size - 1];
+        BigDecimal[] values = new BigDecimal[size - 1];
+        System.arraycopy(epochDays, 0, days, 0, i);
+        System.arraycopy(rates, 0, values, 0, i);
+        System.arraycopy(epochDays, i + 1, days, i, size - i - 1);
+        System.arraycopy(rates, i + 1, values, i, size - i - 1);
+        return new ForeignExchangeRateHistory(days, values);
+    }
+
+    /**
+     * Sorts rates by dates, dates are unique
+     */
+    private static void sort(int[] epochDays, BigDecimal[] rates) {
+        if (epochDays.length < 2) {
+            return;
+        }
+        Integer[] order = new Integer[epochDays.length];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Integer.compare(epochDays[a], epochDays[b]));
+        int[] days = epochDays.clone();
+        BigDecimal[] values = rates.clone();
+        for (int i = 0; i < order.length; i++) {
+            epochDays[i] = days[order[i]];
+            rates[i] = values[order[i]];
+        }
+    }
+
+    private static int toEpochDay(LocalDate date) {
+        return Math.toIntExact(date.toEpochDay());
+    }
+}
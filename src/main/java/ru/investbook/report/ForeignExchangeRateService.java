@@ -18,40 +18,60 @@
 
 package ru.investbook.report;
 
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.extern.slf4j.Slf4j;
+import org.spacious_team.broker.pojo.ForeignExchangeRate;
 import org.spacious_team.broker.pojo.SecurityQuote;
 import org.spacious_team.broker.pojo.SecurityQuote.SecurityQuoteBuilder;
 import org.spacious_team.broker.pojo.SecurityType;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.investbook.InvestbookProperties;
 import ru.investbook.entity.ForeignExchangeRateEntity;
 import ru.investbook.repository.ForeignExchangeRateRepository;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static org.spacious_team.broker.pojo.SecurityType.*;
 
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
-public class ForeignExchangeRateService {
+public class ForeignExchangeRateService implements MeterBinder {
     public static final String RUB = "RUB";
+    private static final int LATEST_RATE_EPOCH_DAY = Integer.MAX_VALUE;
+    private static final long NOT_CACHEABLE_KEY = -1;
     private final ForeignExchangeRateRepository foreignExchangeRateRepository;
-    // base-currency -> quote-currency -> exchange-rate
-    private final Map<String, Map<String, BigDecimal>> cache = new ConcurrentHashMap<>();
-    // base-currency -> quote-currency -> local date -> exchange-rate
-    private final Map<String, Map<String, Map<LocalDate, BigDecimal>>> cacheByDate = new ConcurrentHashMap<>();
+    // (base-currency, quote-currency, epoch day) packed key -> exchange-rate
+    private final Cache<Long, BigDecimal> cache;
+    // currency pair (for example USDRUB) -> exchange rate history
+    private final Map<String, ForeignExchangeRateHistory> rateHistories = new ConcurrentHashMap<>();
     @Value("${server.port}")
     private int serverPort;
 
+    public ForeignExchangeRateService(ForeignExchangeRateRepository foreignExchangeRateRepository,
+                                      InvestbookProperties properties) {
+        this.foreignExchangeRateRepository = foreignExchangeRateRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getFxRateCacheMaxSize())
+                .recordStats()
+                .build();
+    }
+
     /**
      * Возвращает последнюю известную котировку базовой валюты в цене котируемой валюты. Например, для USD/RUB базовая валюта - USD.
      *
@@ -89,9 +109,8 @@ public class ForeignExchangeRateService {
         if (currency.equalsIgnoreCase("rub")) {
             return BigDecimal.ONE;
         }
-        BigDecimal exchangeRate = foreignExchangeRateRepository
-                .findFirstByPkCurrencyPairOrderByPkDateDesc(currency.toUpperCase() + "RUB")
-                .map(ForeignExchangeRateEntity::getRate)
+        BigDecimal exchangeRate = getRateHistory(currency)
+                .getLatest()
                 .orElse(BigDecimal.ZERO);
 
         if (exchangeRate.equals(BigDecimal.ZERO)) {
@@ -162,6 +181,14 @@ public class ForeignExchangeRateService {
         try {
             return getExchangeRateToRub(currency, atDate);
         } catch (Exception e) {
+            ForeignExchangeRateHistory history = getRateHistory(currency);
+            Optional<LocalDate> lastKnownDate = history.getDateAtOrBefore(atDate);
+            if (lastKnownDate.isPresent()) {
+                BigDecimal lastKnownExchangeRate = history.get(lastKnownDate.get()).orElseThrow();
+                log.warn("Курс валюты {}RUB на дату {} не известен, использую курс {} на дату {}",
+                        currency.toUpperCase(), atDate, lastKnownExchangeRate, lastKnownDate.get());
+                return lastKnownExchangeRate;
+            }
             BigDecimal defaultExchangeRate = getDefaultExchangeRate(currency);
             log.warn("Курс валюты {}RUB на дату {} не известен, использую ориентировочное значение {}",
                     currency.toUpperCase(), atDate, defaultExchangeRate);
@@ -181,9 +208,8 @@ public class ForeignExchangeRateService {
         if (currency.equalsIgnoreCase("rub")) {
             return BigDecimal.ONE;
         }
-        BigDecimal exchangeRate = foreignExchangeRateRepository
-                .findByPkCurrencyPairAndPkDate(currency.toUpperCase() + "RUB", atDate)
-                .map(ForeignExchangeRateEntity::getRate)
+        BigDecimal exchangeRate = getRateHistory(currency)
+                .get(atDate)
                 .orElse(BigDecimal.ZERO);
 
         if (exchangeRate.equals(BigDecimal.ZERO)) {
@@ -191,35 +217,113 @@ public class ForeignExchangeRateService {
                     " не известен, загрузите значение курса с сайта ЦБ РФ (https://www.cbr.ru/currency_base/dynamics/) " +
                     " запросом POST http://localhost:" + serverPort + "/foreign-exchange-rates");
         }
-        cache(currency, "RUB", atDate, exchangeRate);
         return exchangeRate;
     }
 
+    private ForeignExchangeRateHistory getRateHistory(String currency) {
+        return rateHistories.computeIfAbsent(currency.toUpperCase() + RUB, this::loadRateHistory);
+    }
+
+    private ForeignExchangeRateHistory loadRateHistory(String currencyPair) {
+        Map<LocalDate, BigDecimal> rates = foreignExchangeRateRepository.findByPkCurrencyPair(currencyPair)
+                .stream()
+                .collect(Collectors.toMap(e -> e.getPk().getDate(), ForeignExchangeRateEntity::getRate));
+        return ForeignExchangeRateHistory.of(rates);
+    }
+
     public void invalidateCache() {
-        this.cache.clear();
+        this.cache.invalidateAll();
+        this.rateHistories.clear();
+    }
+
+    /**
+     * Updates cache by saved exchange rates without reloading from database
+     */
+    public void updateCache(Collection<ForeignExchangeRate> exchangeRates) {
+        exchangeRates.stream()
+                .collect(Collectors.groupingBy(
+                        ForeignExchangeRate::getCurrencyPair,
+                        Collectors.toMap(ForeignExchangeRate::getDate, ForeignExchangeRate::getRate, (a, b) -> b)))
+                .forEach((currencyPair, rates) ->
+                        rateHistories.computeIfPresent(currencyPair.toUpperCase(), (k, history) -> history.withRates(rates)));
+        this.cache.invalidateAll(); // cross rates are cached also
+    }
+
+    /**
+     * Updates cache by deleted exchange rate without reloading from database
+     */
+    public void removeFromCache(String currencyPair, LocalDate date) {
+        rateHistories.computeIfPresent(currencyPair.toUpperCase(), (k, history) -> history.withoutRate(date));
+        this.cache.invalidateAll(); // cross rates are cached also
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("investbook.fx-rate.cache.size", cache, Cache::estimatedSize)
+                .register(registry);
+        Gauge.builder("investbook.fx-rate.cache.hit-ratio", cache, c -> c.stats().hitRate())
+                .register(registry);
+        FunctionCounter.builder("investbook.fx-rate.cache.hits", cache, c -> c.stats().hitCount())
+                .register(registry);
+        FunctionCounter.builder("investbook.fx-rate.cache.misses", cache, c -> c.stats().missCount())
+                .register(registry);
     }
 
     private void cache(String baseCurrency, String quoteCurrency, BigDecimal exchangeRate) {
-        this.cache.computeIfAbsent(baseCurrency, k -> new ConcurrentHashMap<>())
-                .putIfAbsent(quoteCurrency, exchangeRate);
+        cache(getCacheKey(baseCurrency, quoteCurrency, LATEST_RATE_EPOCH_DAY), exchangeRate);
     }
 
     private void cache(String baseCurrency, String quoteCurrency, LocalDate localDate, BigDecimal exchangeRate) {
-        this.cacheByDate.computeIfAbsent(baseCurrency, k -> new ConcurrentHashMap<>())
-                .computeIfAbsent(quoteCurrency, k -> new ConcurrentHashMap<>())
-                .putIfAbsent(localDate, exchangeRate);
+        cache(getCacheKey(baseCurrency, quoteCurrency, localDate.toEpochDay()), exchangeRate);
+    }
+
+    private void cache(long key, BigDecimal exchangeRate) {
+        if (key != NOT_CACHEABLE_KEY) {
+            this.cache.asMap().putIfAbsent(key, exchangeRate);
+        }
     }
 
     private BigDecimal getFromCache(String baseCurrency, String quoteCurrency) {
-        return this.cache.computeIfAbsent(baseCurrency, k -> new ConcurrentHashMap<>())
-                .get(quoteCurrency);
+        return getFromCache(getCacheKey(baseCurrency, quoteCurrency, LATEST_RATE_EPOCH_DAY));
     }
 
     private BigDecimal getFromCache(String baseCurrency, String quoteCurrency, LocalDate localDate) {
-        return this.cacheByDate.computeIfAbsent(baseCurrency, k -> new ConcurrentHashMap<>())
-                .computeIfAbsent(quoteCurrency, k -> new ConcurrentHashMap<>())
-                .get(localDate);
+        return getFromCache(getCacheKey(baseCurrency, quoteCurrency, localDate.toEpochDay()));
+    }
 
+    private BigDecimal getFromCache(long key) {
+        return (key == NOT_CACHEABLE_KEY) ? null : this.cache.getIfPresent(key);
+    }
+
+    /**
+     * @return base currency (15 bits), quote currency (15 bits) and epoch day (32 bits) packed to long
+     * or {@link #NOT_CACHEABLE_KEY} if currency code is not 3 latin letters
+     */
+    private static long getCacheKey(String baseCurrency, String quoteCurrency, long epochDay) {
+        int base = encodeCurrency(baseCurrency);
+        int quote = encodeCurrency(quoteCurrency);
+        if (base < 0 || quote < 0) {
+            return NOT_CACHEABLE_KEY;
+        }
+        return ((long) base << 47) | ((long) quote << 32) | (epochDay & 0xFFFF_FFFFL);
+    }
+
+    /**
+     * @return 3 letter currency code packed to 15 bits or -1
+     */
+    private static int encodeCurrency(String currency) {
+        if (currency.length() != 3) {
+            return -1;
+        }
+        int code = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = Character.toUpperCase(currency.charAt(i));
+            if (c < 'A' || c > 'Z') {
+                return -1;
+            }
+            code = (code << 5) | (c - 'A');
+        }
+        return code;
     }
 
     private static BigDecimal getDefaultExchangeRate(String currency) {
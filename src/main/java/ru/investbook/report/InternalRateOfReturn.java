@@ -25,11 +25,10 @@ import org.decampo.xirr.Xirr;
 import org.spacious_team.broker.pojo.Security;
 import org.spacious_team.broker.pojo.SecurityQuote;
 import org.spacious_team.broker.pojo.Transaction;
+import org.spacious_team.broker.pojo.TransactionCashFlow;
 import org.springframework.stereotype.Component;
 import ru.investbook.entity.SecurityEventCashFlowEntity;
-import ru.investbook.entity.TransactionCashFlowEntity;
 import ru.investbook.repository.SecurityEventCashFlowRepository;
-import ru.investbook.repository.TransactionCashFlowRepository;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -53,7 +52,6 @@ import static org.spacious_team.broker.pojo.SecurityType.getSecurityType;
 @Slf4j
 public class InternalRateOfReturn {
     private final FifoPositionsFactory positionsFactory;
-    private final TransactionCashFlowRepository transactionCashFlowRepository;
     private final SecurityEventCashFlowRepository securityEventCashFlowRepository;
     private final ForeignExchangeRateService foreignExchangeRateService;
     private final ZoneId zoneId = ZoneId.systemDefault();
@@ -85,9 +83,10 @@ public class InternalRateOfReturn {
             }
 
             String toCurrency = getTransactionCurrency(positions);
+            TransactionCashFlows cashFlows = positions.getTransactionCashFlows();
             Collection<org.decampo.xirr.Transaction> transactions = positions.getTransactions()
                     .stream()
-                    .map(transaction -> castToXirrTransaction(transaction, toCurrency))
+                    .map(transaction -> castToXirrTransaction(transaction, cashFlows, toCurrency))
                     .flatMap(Optional::stream)
                     .collect(Collectors.toList());
 
@@ -109,18 +108,20 @@ public class InternalRateOfReturn {
     }
 
     private String getTransactionCurrency(FifoPositions positions) {
+        TransactionCashFlows cashFlows = positions.getTransactionCashFlows();
         return positions.getTransactions()
                 .stream()
-                .map(t -> transactionCashFlowRepository
-                        .findByPkPortfolioAndPkTransactionIdAndPkType(t.getPortfolio(), t.getId(), PRICE.getId()))
+                .map(t -> cashFlows.get(t, PRICE))
                 .flatMap(Optional::stream)
-                .map(TransactionCashFlowEntity::getCurrency)
+                .map(TransactionCashFlow::getCurrency)
                 .findAny()
                 .orElseThrow(() -> new RuntimeException("Can't find any transaction payment currency"));
     }
 
-    private Optional<org.decampo.xirr.Transaction> castToXirrTransaction(Transaction transaction, String toCurrency) {
-        return getTransactionValue(transaction, toCurrency)
+    private Optional<org.decampo.xirr.Transaction> castToXirrTransaction(Transaction transaction,
+                                                                         TransactionCashFlows cashFlows,
+                                                                         String toCurrency) {
+        return getTransactionValue(transaction, cashFlows, toCurrency)
                 .map(value -> new org.decampo.xirr.Transaction(
                         value.doubleValue(),
                         toLocalDate(transaction.getTimestamp())));
@@ -143,12 +144,13 @@ public class InternalRateOfReturn {
                         toLocalDate(quote.getTimestamp())));
     }
 
-    private Optional<BigDecimal> getTransactionValue(Transaction t, String toCurrency) {
+    private Optional<BigDecimal> getTransactionValue(Transaction t, TransactionCashFlows cashFlows, String toCurrency) {
         BigDecimal value = null;
         if (t.getId() != null) { // bond redemption, accounted by other way, skipping
-            value = transactionCashFlowRepository.findByPkPortfolioAndPkTransactionId(t.getPortfolio(), t.getId())
+            value = cashFlows.get(t)
+                    .values()
                     .stream()
-                    .map(entity -> convertToCurrency(entity.getValue(), entity.getCurrency(), toCurrency))
+                    .map(cash -> convertToCurrency(cash.getValue(), cash.getCurrency(), toCurrency))
                     .reduce(BigDecimal.ZERO, BigDecimal::add);
         }
         return (BigDecimal.ZERO.equals(value)) ? empty() : ofNullable(value);
@@ -0,0 +1,121 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.report;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import ru.investbook.InvestbookProperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Computes report table rows of different securities concurrently by bounded thread pool.
+ * Propagates {@link ViewFilter} of calling thread to computing threads and returns results in elements order.
+ */
+@Component
+public class ReportRowsExecutor implements DisposableBean {
+
+    private static final ThreadLocal<Boolean> isWorkerThread = ThreadLocal.withInitial(() -> false);
+    private final ExecutorService executor;
+
+    public ReportRowsExecutor(InvestbookProperties properties) {
+        int parallelism = properties.getReportRowsParallelism();
+        this.executor = (parallelism > 1) ?
+                Executors.newFixedThreadPool(parallelism, getThreadFactory()) :
+                null;
+    }
+
+    /**
+     * Applies mapper to each element concurrently.
+     * Elements are processed on calling thread if parallelism is disabled or if called from mapper itself
+     * (nested calls are not parallelized to avoid thread pool starvation).
+     *
+     * @return mapper results in elements iteration order
+     */
+    public <T, R> List<R> map(Collection<T> elements, Function<? super T, ? extends R> mapper) {
+        List<R> results = new ArrayList<>(elements.size());
+        if (executor == null || elements.size() < 2 || isWorkerThread.get()) {
+            for (T element : elements) {
+                results.add(mapper.apply(element));
+            }
+            return results;
+        }
+        ViewFilter filter = ViewFilter.get();
+        List<Future<R>> futures = new ArrayList<>(elements.size());
+        for (T element : elements) {
+            futures.add(executor.submit(() -> apply(mapper, element, filter)));
+        }
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Прервано формирование строк отчета", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Ошибка при формировании строк отчета", cause);
+        }
+    }
+
+    private static <T, R> R apply(Function<? super T, ? extends R> mapper, T element, ViewFilter filter) {
+        try {
+            ViewFilter.set(filter);
+            return mapper.apply(element);
+        } finally {
+            ViewFilter.remove();
+        }
+    }
+
+    private static ThreadFactory getThreadFactory() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(() -> {
+                isWorkerThread.set(true);
+                runnable.run();
+            }, "report-rows-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.report;
+
+import org.spacious_team.broker.pojo.CashFlowType;
+import ru.investbook.repository.SecurityEventCashFlowRepository.SecurityEventCashFlowAggregate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Security payments sums by (security, payment type, currency) with last payment timestamps.
+ * Is loaded by one grouping query for all portfolio securities to avoid per security repository queries.
+ */
+public class SecurityEventCashFlowSummary {
+
+    private final Map<String, List<SecurityEventCashFlowAggregate>> aggregates = new HashMap<>();
+
+    public SecurityEventCashFlowSummary(Collection<SecurityEventCashFlowAggregate> aggregates) {
+        for (SecurityEventCashFlowAggregate aggregate : aggregates) {
+            this.aggregates
+                    .computeIfAbsent(aggregate.getSecurity(), k -> new ArrayList<>())
+                    .add(aggregate);
+        }
+    }
+
+    /**
+     * @return payments sum of type by payment currency
+     */
+    public Map<String, BigDecimal> getPayments(String security, CashFlowType type) {
+        Map<String, BigDecimal> payments = new HashMap<>();
+        for (SecurityEventCashFlowAggregate aggregate : get(security)) {
+            if (aggregate.getCashFlowType() == type.getId() && aggregate.getValue() != null) {
+                payments.merge(aggregate.getCurrency(), aggregate.getValue(), BigDecimal::add);
+            }
+        }
+        return payments;
+    }
+
+    /**
+     * @return last payment timestamp of one of types
+     */
+    public Optional<Instant> getLastEventTimestamp(String security, Set<Integer> types) {
+        Instant timestamp = null;
+        for (SecurityEventCashFlowAggregate aggregate : get(security)) {
+            if (types.contains(aggregate.getCashFlowType()) &&
+                    (timestamp == null || aggregate.getTimestamp().isAfter(timestamp))) {
+                timestamp = aggregate.getTimestamp();
+            }
+        }
+        return Optional.ofNullable(timestamp);
+    }
+
+    private List<SecurityEventCashFlowAggregate> get(String security) {
+        return aggregates.getOrDefault(security, Collections.emptyList());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.report;
+
+import org.spacious_team.broker.pojo.CashFlowType;
+import org.spacious_team.broker.pojo.Transaction;
+import org.spacious_team.broker.pojo.TransactionCashFlow;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Transaction cash flows index of {@link FifoPositions} transactions, keyed by (portfolio, transaction id, type).
+ * Is loaded once for all security transactions to avoid per transaction repository queries.
+ */
+public class TransactionCashFlows {
+
+    private static final TransactionCashFlows EMPTY = new TransactionCashFlows(Collections.emptyList());
+    private final Map<TransactionKey, Map<CashFlowType, TransactionCashFlow>> cashFlows = new HashMap<>();
+
+    public TransactionCashFlows(Collection<TransactionCashFlow> cashFlows) {
+        for (TransactionCashFlow cashFlow : cashFlows) {
+            this.cashFlows
+                    .computeIfAbsent(
+                            TransactionKey.of(cashFlow),
+                            k -> new EnumMap<>(CashFlowType.class))
+                    .put(cashFlow.getEventType(), cashFlow);
+        }
+    }
+
+    public static TransactionCashFlows empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return transaction cash flow of type or empty for bond redemption and fictitious transactions
+     */
+    public Optional<TransactionCashFlow> get(Transaction transaction, CashFlowType type) {
+        return Optional.ofNullable(get(transaction).get(type));
+    }
+
+    /**
+     * @return all transaction cash flows or empty map for bond redemption and fictitious transactions
+     */
+    public Map<CashFlowType, TransactionCashFlow> get(Transaction transaction) {
+        if (transaction.getId() == null) {
+            return Collections.emptyMap();
+        }
+        Map<CashFlowType, TransactionCashFlow> transactionCashFlows =
+                cashFlows.get(TransactionKey.of(transaction));
+        return (transactionCashFlows == null) ?
+                Collections.emptyMap() :
+                Collections.unmodifiableMap(transactionCashFlows);
+    }
+
+    static record TransactionKey(String portfolio, String transactionId) {
+
+        static TransactionKey of(Transaction transaction) {
+            return new TransactionKey(transaction.getPortfolio(), transaction.getId());
+        }
+
+        static TransactionKey of(TransactionCashFlow cashFlow) {
+            return new TransactionKey(cashFlow.getPortfolio(), cashFlow.getTransactionId());
+        }
+    }
+}
@@ -19,42 +19,38 @@
 package ru.investbook.report.excel;
 
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
 import org.spacious_team.broker.pojo.CashFlowType;
 import org.spacious_team.broker.pojo.EventCashFlow;
 import org.spacious_team.broker.pojo.Portfolio;
-import org.spacious_team.broker.pojo.PortfolioCash;
-import org.spacious_team.broker.pojo.PortfolioPropertyType;
 import org.springframework.stereotype.Component;
 import ru.investbook.converter.EventCashFlowConverter;
-import ru.investbook.entity.PortfolioPropertyEntity;
 import ru.investbook.report.Table;
 import ru.investbook.report.TableFactory;
 import ru.investbook.report.ViewFilter;
 import ru.investbook.repository.EventCashFlowRepository;
-import ru.investbook.repository.PortfolioPropertyRepository;
+import ru.investbook.repository.PortfolioCashRepository;
+import ru.investbook.repository.PortfolioCurrencyValue;
 
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import static java.util.Collections.singleton;
 import static ru.investbook.report.excel.CashFlowExcelTableHeader.*;
 
 @Component
 @RequiredArgsConstructor
-@Slf4j
 public class CashFlowExcelTableFactory implements TableFactory {
     // TODO DAYS() excel function not impl by Apache POI: https://bz.apache.org/bugzilla/show_bug.cgi?id=58468
     private static final String DAYS_COUNT_FORMULA = "=DAYS360(" + DATE.getCellAddr() + ",TODAY())";
     private final EventCashFlowRepository eventCashFlowRepository;
     private final EventCashFlowConverter eventCashFlowConverter;
     private final ForeignExchangeRateTableFactory foreignExchangeRateTableFactory;
-    private final PortfolioPropertyRepository portfolioPropertyRepository;
+    private final PortfolioCashRepository portfolioCashRepository;
 
     @Override
     public Table create(Portfolio portfolio) {
@@ -128,31 +124,25 @@ public class CashFlowExcelTableFactory implements TableFactory {
     }
 
     private Map<String, BigDecimal> getCashBalances(Portfolio portfolio) {
-        try {
-            Instant atTime = Instant.ofEpochSecond(Math.min(
-                    ViewFilter.get().getToDate().getEpochSecond(),
-                    Instant.now().getEpochSecond()));
-            return getPortfolioCash(portfolio, atTime)
-                    .map(PortfolioCash::deserialize)
-                    .orElse(Collections.emptyList())
-                    .stream()
-                    .collect(Collectors.toMap(c -> c.getCurrency().toUpperCase(), PortfolioCash::getValue, BigDecimal::add));
-        } catch (Exception e) {
-            log.warn("Ошибка при десериализации свойства CASH", e);
-            return Collections.emptyMap();
-        }
+        Instant atTime = Instant.ofEpochSecond(Math.min(
+                ViewFilter.get().getToDate().getEpochSecond(),
+                Instant.now().getEpochSecond()));
+        return getPortfolioCash(portfolio, atTime)
+                .stream()
+                .collect(Collectors.toMap(
+                        c -> c.currency().toUpperCase(),
+                        PortfolioCurrencyValue::value,
+                        BigDecimal::add));
     }
 
     /**
-     * Возвращает последний известный остаток денежных средств соответствующей дате, не позже указанной.
+     * Возвращает по каждой валюте последний известный остаток денежных средств соответствующей дате, не позже указанной.
      */
-    private Optional<String> getPortfolioCash(Portfolio portfolio, Instant atInstant) {
-        return portfolioPropertyRepository
-                .findFirstByPortfolioIdAndPropertyAndTimestampBetweenOrderByTimestampDesc(
-                        portfolio.getId(),
-                        PortfolioPropertyType.CASH.name(),
+    private List<PortfolioCurrencyValue> getPortfolioCash(Portfolio portfolio, Instant atInstant) {
+        return portfolioCashRepository
+                .sumLatestValueByPortfolioIdInAndTimestampBetweenGroupByCurrency(
+                        singleton(portfolio.getId()),
                         Instant.ofEpochSecond(0),
-                        atInstant)
-                .map(PortfolioPropertyEntity::getValue);
+                        atInstant);
     }
 }
@@ -20,29 +20,26 @@ package ru.investbook.report.excel;
 
 import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.spacious_team.broker.pojo.Portfolio;
-import org.spacious_team.broker.pojo.PortfolioPropertyType;
 import org.springframework.stereotype.Component;
 import ru.investbook.converter.PortfolioConverter;
-import ru.investbook.entity.PortfolioPropertyEntity;
 import ru.investbook.report.Table;
 import ru.investbook.report.TableHeader;
-import ru.investbook.repository.PortfolioPropertyRepository;
 import ru.investbook.repository.PortfolioRepository;
+import ru.investbook.service.AssetsAndCashService;
 
 import java.math.BigDecimal;
 import java.util.Optional;
 import java.util.function.UnaryOperator;
 
+import static java.util.Collections.singleton;
 import static ru.investbook.report.excel.CashFlowExcelTableHeader.*;
 
 @Component
-@Slf4j
 public class CashFlowExcelTableView extends ExcelTableView {
 
     @Getter
@@ -51,14 +48,14 @@ public class CashFlowExcelTableView extends ExcelTableView {
     private final int sheetOrder = 9;
     @Getter(AccessLevel.PROTECTED)
     private final UnaryOperator<String> sheetNameCreator = portfolio -> "Доходность (" + portfolio + ")";
-    private final PortfolioPropertyRepository portfolioPropertyRepository;
+    private final AssetsAndCashService assetsAndCashService;
 
     public CashFlowExcelTableView(PortfolioRepository portfolioRepository,
                                   CashFlowExcelTableFactory tableFactory,
                                   PortfolioConverter portfolioConverter,
-                                  PortfolioPropertyRepository portfolioPropertyRepository) {
+                                  AssetsAndCashService assetsAndCashService) {
         super(portfolioRepository, tableFactory, portfolioConverter);
-        this.portfolioPropertyRepository = portfolioPropertyRepository;
+        this.assetsAndCashService = assetsAndCashService;
     }
 
     @Override
@@ -78,13 +75,10 @@ public class CashFlowExcelTableView extends ExcelTableView {
     @Override
     protected Table.Record getTotalRow(Table table, Optional<Portfolio> portfolio) {
         Table.Record total = Table.newRecord();
-        BigDecimal liquidationValueRub = portfolioPropertyRepository
-                .findFirstByPortfolioIdAndPropertyOrderByTimestampDesc(
-                        portfolio
-                                .orElseThrow(() -> new IllegalArgumentException("Ожидается портфель"))
-                                .getId(),
-                        PortfolioPropertyType.TOTAL_ASSETS_RUB.name()) // TODO sum with TOTAL_ASSETS_USD div by USDRUB exchange rate
-                .map(CashFlowExcelTableView::getPropertyValue)
+        BigDecimal liquidationValueRub = assetsAndCashService
+                .getAssets(singleton(portfolio
+                        .orElseThrow(() -> new IllegalArgumentException("Ожидается портфель"))
+                        .getId()))
                 .orElse(BigDecimal.ZERO);
         total.put(DATE, "Итого:");
         total.put(CASH_RUB, "=SUM(" +
@@ -99,32 +93,21 @@ public class CashFlowExcelTableView extends ExcelTableView {
         return total;
     }
 
-    private static BigDecimal getPropertyValue(PortfolioPropertyEntity entity) {
-        try {
-            return BigDecimal.valueOf(
-                    Double.parseDouble(
-                            entity.getValue()));
-        } catch (Exception e) {
-            log.error("Значение должно содержать число, сохранено {}", entity);
-            return BigDecimal.ZERO;
+    @Override
+    protected void rowPostCreate(Row row, CellStyles styles) {
+        Cell cell = row.getCell(DAYS_COUNT.ordinal());
+        if (cell != null) {
+            cell.setCellStyle(styles.getIntStyle());
+        }
+        cell = row.getCell(DESCRIPTION.ordinal());
+        if (cell != null) {
+            cell.setCellStyle(styles.getLeftAlignedTextStyle());
         }
     }
 
     @Override
-    protected void sheetPostCreate(Sheet sheet, Class<? extends TableHeader> headerType, CellStyles styles) {
-        super.sheetPostCreate(sheet, headerType, styles);
-        for (Row row : sheet) {
-            if (row.getRowNum() == 0) continue;
-            Cell cell = row.getCell(DAYS_COUNT.ordinal());
-            if (cell != null) {
-                cell.setCellStyle(styles.getIntStyle());
-            }
-            cell = row.getCell(DESCRIPTION.ordinal());
-            if (cell != null) {
-                cell.setCellStyle(styles.getLeftAlignedTextStyle());
-            }
-        }
-        for (Cell cell : sheet.getRow(1)) {
+    protected void totalRowPostCreate(Row row, CellStyles styles) {
+        for (Cell cell : row) {
             if (cell == null) continue;
             if (cell.getColumnIndex() == DATE.ordinal()) {
                 cell.setCellStyle(styles.getTotalTextStyle());
@@ -68,16 +68,16 @@ public class CommissionExcelTableView extends ExcelTableView {
     }
 
     @Override
-    protected void sheetPostCreate(Sheet sheet, Class<? extends TableHeader> headerType, CellStyles styles) {
-        super.sheetPostCreate(sheet, headerType, styles);
-        for (Row row : sheet) {
-            if (row.getRowNum() == 0) continue;
-            Cell cell = row.getCell(DESCRIPTION.ordinal());
-            if (cell != null) {
-                cell.setCellStyle(styles.getLeftAlignedTextStyle());
-            }
+    protected void rowPostCreate(Row row, CellStyles styles) {
+        Cell cell = row.getCell(DESCRIPTION.ordinal());
+        if (cell != null) {
+            cell.setCellStyle(styles.getLeftAlignedTextStyle());
         }
-        for (Cell cell : sheet.getRow(1)) {
+    }
+
+    @Override
+    protected void totalRowPostCreate(Row row, CellStyles styles) {
+        for (Cell cell : row) {
             if (cell == null) continue;
             if (cell.getColumnIndex() == DATE.ordinal()) {
                 cell.setCellStyle(styles.getTotalTextStyle());
@@ -28,7 +28,6 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xddf.usermodel.chart.LegendPosition;
 import org.apache.poi.xddf.usermodel.chart.XDDFChartData;
 import org.apache.poi.xddf.usermodel.chart.XDDFDataSource;
-import org.apache.poi.xddf.usermodel.chart.XDDFDataSourcesFactory;
 import org.apache.poi.xddf.usermodel.chart.XDDFNumericalDataSource;
 import org.apache.poi.xssf.usermodel.XSSFChart;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
@@ -157,19 +156,19 @@ public class DerivativesMarketTotalProfitExcelTableView extends ExcelTableView {
     }
 
     @Override
-    protected void sheetPostCreate(Sheet sheet, Class<? extends TableHeader> headerType, CellStyles styles) {
-        super.sheetPostCreate(sheet, headerType, styles);
-        for (Row row : sheet) {
-            if (row.getRowNum() == 0) continue;
-            Cell cell;
-            if ((cell = row.getCell(CONTRACT_GROUP.ordinal())) != null) {
-                cell.setCellStyle(styles.getLeftAlignedTextStyle());
-            }
-            if ((cell = row.getCell(PROFIT_PROPORTION.ordinal())) != null) {
-                cell.setCellStyle(styles.getPercentStyle());
-            }
+    protected void rowPostCreate(Row row, CellStyles styles) {
+        Cell cell;
+        if ((cell = row.getCell(CONTRACT_GROUP.ordinal())) != null) {
+            cell.setCellStyle(styles.getLeftAlignedTextStyle());
         }
-        for (Cell cell : sheet.getRow(1)) {
+        if ((cell = row.getCell(PROFIT_PROPORTION.ordinal())) != null) {
+            cell.setCellStyle(styles.getPercentStyle());
+        }
+    }
+
+    @Override
+    protected void totalRowPostCreate(Row row, CellStyles styles) {
+        for (Cell cell : row) {
             if (cell == null) continue;
             if (cell.getColumnIndex() == CONTRACT_GROUP.ordinal()) {
                 cell.setCellStyle(styles.getTotalTextStyle());
@@ -185,17 +184,21 @@ public class DerivativesMarketTotalProfitExcelTableView extends ExcelTableView {
                 cell.setCellStyle(styles.getTotalRowStyle());
             }
         }
-        highlightNegativeByRed(sheet, PROFIT);
-        plotChart("Прибыль", sheet, DerivativesMarketTotalProfitExcelTableView::addPieChart);
     }
 
-    private static void addPieChart(String name, XSSFSheet sheet) {
-        int rowCount = sheet.getLastRowNum();
+    @Override
+    protected void sheetPostCreate(Sheet sheet, Table table, Class<? extends TableHeader> headerType,
+                                   CellStyles styles) {
+        super.sheetPostCreate(sheet, table, headerType, styles);
+        highlightNegativeByRed(sheet, table.size(), PROFIT);
+        plotChart("Прибыль", sheet, table, DerivativesMarketTotalProfitExcelTableView::addPieChart);
+    }
+
+    private static void addPieChart(String name, XSSFSheet sheet, Table table) {
+        int rowCount = table.size();
 
-        XDDFDataSource<String> securities = XDDFDataSourcesFactory.fromStringCellRange(sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, CONTRACT_GROUP.ordinal(), CONTRACT_GROUP.ordinal()));
-        XDDFNumericalDataSource<Double> proportions = XDDFDataSourcesFactory.fromNumericCellRange(sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, PROFIT_PROPORTION.ordinal(), PROFIT_PROPORTION.ordinal()));
+        XDDFDataSource<String> securities = stringDataSource(sheet, table, 2, rowCount, CONTRACT_GROUP);
+        XDDFNumericalDataSource<Double> proportions = numericDataSource(sheet, table, 2, rowCount, PROFIT_PROPORTION);
 
         XSSFChart chart = createChart(sheet, name, 0, rowCount + 2, PROFIT_PROPORTION.ordinal() + 1, 30);
         XDDFChartData data = createPieChartData(chart);
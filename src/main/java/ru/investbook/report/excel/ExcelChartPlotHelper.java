@@ -20,7 +20,6 @@ package ru.investbook.report.excel;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.ClientAnchor;
-import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xddf.usermodel.PresetColor;
@@ -36,22 +35,31 @@ import org.apache.poi.xddf.usermodel.chart.DisplayBlanks;
 import org.apache.poi.xddf.usermodel.chart.LegendPosition;
 import org.apache.poi.xddf.usermodel.chart.XDDFChartData;
 import org.apache.poi.xddf.usermodel.chart.XDDFChartLegend;
+import org.apache.poi.xddf.usermodel.chart.XDDFDataSource;
+import org.apache.poi.xddf.usermodel.chart.XDDFDataSourcesFactory;
+import org.apache.poi.xddf.usermodel.chart.XDDFNumericalDataSource;
 import org.apache.poi.xddf.usermodel.chart.XDDFValueAxis;
 import org.apache.poi.xssf.usermodel.XSSFChart;
 import org.apache.poi.xssf.usermodel.XSSFDrawing;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
+import ru.investbook.report.Table;
+import ru.investbook.report.TableHeader;
 
 import java.util.Objects;
-import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 
 @Slf4j
 public class ExcelChartPlotHelper {
 
     private static String NO_VALUE_IN_CELL_RANGE = "No value in cell range";
 
-    static void plotChart(String name, Sheet sheet, BiConsumer<String, XSSFSheet> plotter) {
+    /**
+     * Plots chart on XSSF sheet (underlying sheet for streaming workbook). Rows of streaming workbook
+     * may be already flushed, so plotter should compute row ranges by table, not by sheet.
+     */
+    static void plotChart(String name, Sheet sheet, Table table, ChartPlotter plotter) {
         try {
-            plotter.accept(name, (XSSFSheet) sheet);
+            plotter.plot(name, ExcelView.getXSSFSheet(sheet), table);
         } catch (Exception e) {
             String message = "Не возможно построить график '{}' на вкладке '{}'";
             if (Objects.equals(e.getMessage(), NO_VALUE_IN_CELL_RANGE)) {
@@ -144,19 +152,63 @@ public class ExcelChartPlotHelper {
                 .setVal(false);
     }
 
-    static CellRangeAddress nonEmptyCellRangeAddress(Sheet sheet, int firstRow, int lastRow, int firstCol, int lastCol) {
-        int count = 0;
-        for (int i = firstRow; i <= lastRow; i++) {
-            Row row = sheet.getRow(i);
-            for (int j = firstCol; j <= lastCol; j++) {
-                if (row.getCell(j) != null) {
-                    count++;
-                }
-                if (count > 1) { // for plotting graph 2 or more values requires
-                    return new CellRangeAddress(firstRow, lastRow, firstCol, lastCol);
-                }
-            }
+    /**
+     * Returns data source referencing cells of the column. Chart cache is filled by table values,
+     * because rows of streaming workbook are already flushed, formula values are not cached
+     */
+    static XDDFDataSource<String> stringDataSource(XSSFSheet sheet, Table table, int firstRow, int lastRow,
+                                                   TableHeader column) {
+        String[] values = getColumnValues(table, firstRow, lastRow, column)
+                .map(value -> (value instanceof String && !((String) value).startsWith("=")) ? (String) value : null)
+                .toArray(String[]::new);
+        return XDDFDataSourcesFactory.fromArray(values, getDataReference(sheet, table, firstRow, lastRow, column));
+    }
+
+    /**
+     * Returns data source referencing cells of the column. Chart cache is filled by table values,
+     * because rows of streaming workbook are already flushed, formula values are not cached
+     */
+    static XDDFNumericalDataSource<Double> numericDataSource(XSSFSheet sheet, Table table, int firstRow, int lastRow,
+                                                             TableHeader column) {
+        Double[] values = getColumnValues(table, firstRow, lastRow, column)
+                .map(value -> (value instanceof Number) ? ((Number) value).doubleValue() : null)
+                .toArray(Double[]::new);
+        return XDDFDataSourcesFactory.fromArray(values, getDataReference(sheet, table, firstRow, lastRow, column));
+    }
+
+    /**
+     * Table record with index i is written to sheet row i + 1 (row 0 is header)
+     */
+    private static Stream<Object> getColumnValues(Table table, int firstRow, int lastRow, TableHeader column) {
+        return table.stream()
+                .skip(firstRow - 1)
+                .limit(lastRow - firstRow + 1)
+                .map(record -> record.get(column));
+    }
+
+    private static String getDataReference(XSSFSheet sheet, Table table, int firstRow, int lastRow,
+                                           TableHeader column) {
+        return nonEmptyCellRangeAddress(table, firstRow, lastRow, column)
+                .formatAsString(sheet.getSheetName(), true);
+    }
+
+    /**
+     * Cell is not created for null table value
+     */
+    private static CellRangeAddress nonEmptyCellRangeAddress(Table table, int firstRow, int lastRow,
+                                                             TableHeader column) {
+        long count = getColumnValues(table, firstRow, lastRow, column)
+                .filter(Objects::nonNull)
+                .limit(2) // for plotting graph 2 or more values requires
+                .count();
+        if (count < 2) {
+            throw new IllegalArgumentException(NO_VALUE_IN_CELL_RANGE);
         }
-        throw new IllegalArgumentException(NO_VALUE_IN_CELL_RANGE);
+        return new CellRangeAddress(firstRow, lastRow, column.ordinal(), column.ordinal());
+    }
+
+    @FunctionalInterface
+    interface ChartPlotter {
+        void plot(String name, XSSFSheet sheet, Table table);
     }
 }
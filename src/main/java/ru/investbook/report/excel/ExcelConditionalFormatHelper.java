@@ -27,20 +27,19 @@ import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.usermodel.IndexedColorMap;
 import org.apache.poi.xssf.usermodel.XSSFColor;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
 
 class ExcelConditionalFormatHelper {
     private static final byte[] backgroundRed = new byte[]{(byte) 255, (byte) 200, (byte) 200};
     private static final byte[] borderRed = new byte[]{(byte) 255, (byte) 175, (byte) 175};
 
-    static void highlightNegativeByRed(Sheet sheet, ExcelTableHeader column) {
+    static void highlightNegativeByRed(Sheet sheet, int lastRow, ExcelTableHeader column) {
         SheetConditionalFormatting sheetCF = sheet.getSheetConditionalFormatting();
-        IndexedColorMap indexedColors = ((XSSFSheet) sheet).getWorkbook()
+        IndexedColorMap indexedColors = ExcelView.getXSSFWorkbook(sheet.getWorkbook())
                 .getStylesSource()
                 .getIndexedColors();
 
         CellRangeAddress range =
-                new CellRangeAddress(2, sheet.getLastRowNum(), column.ordinal(), column.ordinal());
+                new CellRangeAddress(2, lastRow, column.ordinal(), column.ordinal());
 
         ConditionalFormattingRule rule = sheetCF
                 .createConditionalFormattingRule(column.getCellAddr(3) + "<0");
@@ -165,8 +165,12 @@ public abstract class ExcelTableView {
                                 " на вкладке '" + sheet.getSheetName() + "'");
                     }
                 }
+                rowPostCreate(row, styles);
+                if (rowNum == 1) {
+                    totalRowPostCreate(row, styles);
+                }
             }
-            sheetPostCreate(sheet, headerType, styles);
+            sheetPostCreate(sheet, table, headerType, styles);
             log.debug("Вкладка '{}' сохранена за {}", sheetName, Duration.ofNanos(System.nanoTime() - t0));
         }
     }
@@ -223,7 +227,25 @@ public abstract class ExcelTableView {
         sheet.setZoom(93); // show all columns for 24 inch monitor for securities sheet
     }
 
-    protected void sheetPostCreate(Sheet sheet, Class<? extends TableHeader> headerType, CellStyles styles) {
-        sheet.setAutoFilter(new CellRangeAddress(0, sheet.getLastRowNum(), 0, (headerType.getEnumConstants().length - 1)));
+    /**
+     * Called after row cells are written. Rows of streaming workbook sheet are flushed
+     * when they leave the row window, so row styles should be set here, not in {@link #sheetPostCreate}
+     */
+    protected void rowPostCreate(Row row, CellStyles styles) {
+    }
+
+    /**
+     * Called after {@link #rowPostCreate} for first row after header, which is total row if it exists
+     */
+    protected void totalRowPostCreate(Row row, CellStyles styles) {
+    }
+
+    /**
+     * Sheet rows may be already flushed, table row range should be computed from table size:
+     * table records are written to sheet rows from 1 to {@code table.size()}
+     */
+    protected void sheetPostCreate(Sheet sheet, Table table, Class<? extends TableHeader> headerType,
+                                   CellStyles styles) {
+        sheet.setAutoFilter(new CellRangeAddress(0, table.size(), 0, (headerType.getEnumConstants().length - 1)));
     }
 }
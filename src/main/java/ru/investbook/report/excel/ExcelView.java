@@ -18,7 +18,10 @@
 
 package ru.investbook.report.excel;
 
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Component;
 import ru.investbook.report.ViewFilter;
@@ -45,9 +48,12 @@ public class ExcelView {
                 .collect(Collectors.toList());
     }
 
-    public void writeTo(XSSFWorkbook book, ViewFilter filter) throws InterruptedException, ExecutionException {
+    /**
+     * @param book {@link XSSFWorkbook} or streaming {@link SXSSFWorkbook}
+     */
+    public void writeTo(Workbook book, ViewFilter filter) throws InterruptedException, ExecutionException {
 
-        CellStyles styles = new CellStyles(book);
+        CellStyles styles = new CellStyles(getXSSFWorkbook(book));
         ExecutorService tableWriterExecutor = Executors.newSingleThreadExecutor();
         Collection<Future<?>> sheetWriterFutures = new ArrayList<>();
         int cpuCnt = Runtime.getRuntime().availableProcessors();
@@ -94,6 +100,22 @@ public class ExcelView {
         }
     }
 
+    static XSSFWorkbook getXSSFWorkbook(Workbook book) {
+        return (book instanceof SXSSFWorkbook) ?
+                ((SXSSFWorkbook) book).getXSSFWorkbook() :
+                (XSSFWorkbook) book;
+    }
+
+    /**
+     * @return sheet itself or underlying sheet of streaming workbook, which holds no rows, but should be used
+     * for drawing charts
+     */
+    static XSSFSheet getXSSFSheet(Sheet sheet) {
+        return (sheet instanceof XSSFSheet) ?
+                (XSSFSheet) sheet :
+                getXSSFWorkbook(sheet.getWorkbook()).getSheet(sheet.getSheetName());
+    }
+
     private static void writeExcelTables(List<ExcelTable> tables, Workbook book, CellStyles styles) {
         tables.stream()
                 .sorted(comparing(t -> t.getCreator().getSheetOrder()))
@@ -30,8 +30,8 @@ import ru.investbook.report.OpenedPosition;
 import ru.investbook.report.Position;
 import ru.investbook.report.Table;
 import ru.investbook.report.TableFactory;
+import ru.investbook.report.TransactionCashFlows;
 import ru.investbook.report.ViewFilter;
-import ru.investbook.repository.TransactionCashFlowRepository;
 import ru.investbook.repository.TransactionRepository;
 
 import java.math.BigDecimal;
@@ -48,7 +48,6 @@ import static ru.investbook.report.excel.ForeignMarketProfitExcelTableHeader.*;
 public class ForeignMarketProfitExcelTableFactory implements TableFactory {
     // isin -> security price currency
     private final TransactionRepository transactionRepository;
-    private final TransactionCashFlowRepository transactionCashFlowRepository;
     private final FifoPositionsFactory positionsFactory;
 
     public Table create(Portfolio portfolio) {
@@ -60,10 +59,11 @@ public class ForeignMarketProfitExcelTableFactory implements TableFactory {
         Table closedPositionsProfit = new Table();
         for (String currencyPair : currencyPairs) {
             FifoPositions positions = positionsFactory.get(portfolio, currencyPair, ViewFilter.get());
+            TransactionCashFlows cashFlows = positions.getTransactionCashFlows();
             openPositionsProfit.addAll(getPositionProfit(currencyPair, positions.getOpenedPositions(),
-                    this::getOpenedPositionProfit));
+                    position -> getOpenedPositionProfit(position, cashFlows)));
             closedPositionsProfit.addAll(getPositionProfit(currencyPair, positions.getClosedPositions(),
-                    this::getClosedPositionProfit));
+                    position -> getClosedPositionProfit(position, cashFlows)));
         }
         Table profit = new Table();
         profit.addAll(openPositionsProfit);
@@ -93,34 +93,34 @@ public class ForeignMarketProfitExcelTableFactory implements TableFactory {
         return rows;
     }
 
-    private Table.Record getOpenedPositionProfit(OpenedPosition position) {
+    private Table.Record getOpenedPositionProfit(OpenedPosition position, TransactionCashFlows cashFlows) {
         Table.Record row = new Table.Record();
         Transaction transaction = position.getOpenTransaction();
         row.put(OPEN_DATE, transaction.getTimestamp());
         row.put(COUNT, Math.abs(position.getCount()) * Integer.signum(transaction.getCount()));
-        row.put(OPEN_PRICE, getTransactionCashFlow(transaction, CashFlowType.PRICE, 1d / transaction.getCount()));
+        row.put(OPEN_PRICE, getTransactionCashFlow(cashFlows, transaction, CashFlowType.PRICE, 1d / transaction.getCount()));
         double multiplier = Math.abs(1d * position.getCount() / transaction.getCount());
-        row.put(OPEN_AMOUNT, getTransactionCashFlow(transaction, CashFlowType.PRICE, multiplier));
-        row.put(OPEN_COMMISSION, getTransactionCashFlow(transaction, CashFlowType.COMMISSION, multiplier));
+        row.put(OPEN_AMOUNT, getTransactionCashFlow(cashFlows, transaction, CashFlowType.PRICE, multiplier));
+        row.put(OPEN_COMMISSION, getTransactionCashFlow(cashFlows, transaction, CashFlowType.COMMISSION, multiplier));
         return row;
     }
 
-    private Table.Record getClosedPositionProfit(ClosedPosition position) {
+    private Table.Record getClosedPositionProfit(ClosedPosition position, TransactionCashFlows cashFlows) {
         // open transaction info
-        Table.Record row = new Table.Record(getOpenedPositionProfit(position));
+        Table.Record row = new Table.Record(getOpenedPositionProfit(position, cashFlows));
         // close transaction info
         Transaction transaction = position.getCloseTransaction();
         double multiplier = Math.abs(1d * position.getCount() / transaction.getCount());
         row.put(CLOSE_DATE, transaction.getTimestamp());
         BigDecimal closeAmount;
         if (position.getClosingEvent() == CashFlowType.PRICE) {
-            closeAmount = getTransactionCashFlow(transaction, CashFlowType.PRICE, multiplier);
+            closeAmount = getTransactionCashFlow(cashFlows, transaction, CashFlowType.PRICE, multiplier);
         } else {
             throw new IllegalArgumentException("ЦБ " + transaction.getSecurity() +
                     " не может быть закрыта событием типа " + position.getClosingEvent());
         }
         row.put(CLOSE_AMOUNT, closeAmount);
-        row.put(CLOSE_COMMISSION, getTransactionCashFlow(transaction, CashFlowType.COMMISSION, multiplier));
+        row.put(CLOSE_COMMISSION, getTransactionCashFlow(cashFlows, transaction, CashFlowType.COMMISSION, multiplier));
         boolean isLongPosition = isLongPosition(position);
         row.put(FORECAST_TAX, getForecastTax(isLongPosition));
         row.put(PROFIT, getClosedPositionProfit(isLongPosition));
@@ -132,15 +132,9 @@ public class ForeignMarketProfitExcelTableFactory implements TableFactory {
         return position.getOpenTransaction().getCount() > 0;
     }
 
-    private BigDecimal getTransactionCashFlow(Transaction transaction, CashFlowType type, double multiplier) {
-        if (transaction.getId() == null) {
-            return null;
-        }
-        return transactionCashFlowRepository
-                .findByPkPortfolioAndPkTransactionIdAndPkType(
-                        transaction.getPortfolio(),
-                        transaction.getId(),
-                        type.getId())
+    private BigDecimal getTransactionCashFlow(TransactionCashFlows cashFlows, Transaction transaction,
+                                              CashFlowType type, double multiplier) {
+        return cashFlows.get(transaction, type) // empty if transaction id is null
                 .map(cash -> cash.getValue()
                         .multiply(BigDecimal.valueOf(multiplier))
                         .abs()
@@ -24,21 +24,18 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.spacious_team.broker.pojo.EventCashFlow;
 import org.spacious_team.broker.pojo.Portfolio;
-import org.spacious_team.broker.pojo.PortfolioCash;
-import org.spacious_team.broker.pojo.PortfolioProperty;
-import org.spacious_team.broker.pojo.PortfolioPropertyType;
 import org.springframework.stereotype.Component;
 import ru.investbook.converter.EventCashFlowConverter;
-import ru.investbook.converter.PortfolioPropertyConverter;
 import ru.investbook.entity.EventCashFlowEntity;
-import ru.investbook.entity.PortfolioPropertyEntity;
 import ru.investbook.entity.StockMarketIndexEntity;
 import ru.investbook.report.ForeignExchangeRateService;
 import ru.investbook.report.Table;
 import ru.investbook.report.TableFactory;
 import ru.investbook.report.ViewFilter;
 import ru.investbook.repository.EventCashFlowRepository;
-import ru.investbook.repository.PortfolioPropertyRepository;
+import ru.investbook.repository.PortfolioCashRepository;
+import ru.investbook.repository.PortfolioCurrencyValue;
+import ru.investbook.repository.PortfolioTotalAssetsRepository;
 import ru.investbook.repository.StockMarketIndexRepository;
 
 import java.math.BigDecimal;
@@ -47,21 +44,17 @@ import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.lang.Double.isFinite;
-import static java.lang.Double.parseDouble;
 import static java.util.Collections.singleton;
-import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.*;
 import static org.spacious_team.broker.pojo.CashFlowType.CASH;
 import static ru.investbook.report.ForeignExchangeRateService.RUB;
@@ -75,16 +68,12 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
     private static final String SP500_GROWTH_FORMULA = getSp500GrowthFormula();
     private final EventCashFlowRepository eventCashFlowRepository;
     private final EventCashFlowConverter eventCashFlowConverter;
-    private final PortfolioPropertyRepository portfolioPropertyRepository;
-    private final PortfolioPropertyConverter portfolioPropertyConverter;
+    private final PortfolioCashRepository portfolioCashRepository;
+    private final PortfolioTotalAssetsRepository portfolioTotalAssetsRepository;
     private final ForeignExchangeRateTableFactory foreignExchangeRateTableFactory;
     private final ForeignExchangeRateService foreignExchangeRateService;
     private final StockMarketIndexRepository stockMarketIndexRepository;
     private final TreeMap<Instant, BigDecimal> emptyTreeMap = new TreeMap<>();
-    private final Set<String> cashProperty = Set.of(PortfolioPropertyType.CASH.name());
-    private final Set<String> totalAssetsProperty = Set.of(
-            PortfolioPropertyType.TOTAL_ASSETS_RUB.name(),
-            PortfolioPropertyType.TOTAL_ASSETS_USD.name());
 
     @Override
     public Table create(Collection<String> portfolios) {
@@ -110,12 +99,12 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
                               LinkedHashMap<Instant, Map<String, BigDecimal>> cashBalances,
                               LinkedHashMap<Instant, BigDecimal> totalAssets,
                               Map<LocalDate, BigDecimal> sp500) {
-        Table table = new Table();
-        addInvestmentColumns(cashFlows, table);
-        addCashBalanceColumns(cashBalances, table);
-        addAssetsColumns(totalAssets, table);
+        DateIndexedRecords records = new DateIndexedRecords();
+        addInvestmentColumns(cashFlows, records);
+        addCashBalanceColumns(cashBalances, records);
+        addAssetsColumns(totalAssets, records);
 
-        table.sort(comparing(record -> ((LocalDate) record.get(DATE))));
+        Table table = records.toTable();
 
         addAssetsGrowthColumn(table);
         addSp500GrowthColumn(sp500, table);
@@ -126,9 +115,9 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
         return table;
     }
 
-    private void addInvestmentColumns(List<EventCashFlow> cashFlows, Table table) {
+    private void addInvestmentColumns(List<EventCashFlow> cashFlows, DateIndexedRecords records) {
         for (EventCashFlow cashFlow : cashFlows) {
-            Table.Record record = recordOf(table, cashFlow.getTimestamp(), cashFlow.getCurrency());
+            Table.Record record = records.recordOf(cashFlow.getTimestamp(), cashFlow.getCurrency());
             record.merge(INVESTMENT_AMOUNT, cashFlow.getValue(), (v1, v2) -> ((BigDecimal) v1).add(((BigDecimal) v2)));
             record.computeIfAbsent(INVESTMENT_AMOUNT_USD, $ -> foreignExchangeRateTableFactory
                     .cashConvertToUsdExcelFormula(cashFlow.getCurrency(), INVESTMENT_AMOUNT, EXCHANGE_RATE));
@@ -137,10 +126,11 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
         }
     }
 
-    private void addCashBalanceColumns(LinkedHashMap<Instant, Map<String, BigDecimal>> cashBalances, Table table) {
+    private void addCashBalanceColumns(LinkedHashMap<Instant, Map<String, BigDecimal>> cashBalances,
+                                       DateIndexedRecords records) {
         for (var entry : cashBalances.entrySet()) {
             Instant instant = entry.getKey();
-            Table.Record record = recordOf(table, instant);
+            Table.Record record = records.recordOf(instant);
             Map<String, BigDecimal> currencyValue = entry.getValue();
             record.put(CASH_RUB, currencyValue.get("RUB"));
             record.put(CASH_USD, currencyValue.get("USD"));
@@ -156,11 +146,11 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
         }
     }
 
-    private void addAssetsColumns(LinkedHashMap<Instant, BigDecimal> totalAssets, Table table) {
+    private void addAssetsColumns(LinkedHashMap<Instant, BigDecimal> totalAssets, DateIndexedRecords records) {
         for (var entry : totalAssets.entrySet()) {
             Instant instant = entry.getKey();
             BigDecimal assets = entry.getValue();
-            Table.Record record = recordOf(table, instant);
+            Table.Record record = records.recordOf(instant);
             record.put(ASSETS_RUB, assets);
             record.put(ASSETS_USD, foreignExchangeRateTableFactory
                     .cashConvertToUsdExcelFormula("RUB", ASSETS_RUB, EXCHANGE_RATE));
@@ -259,31 +249,6 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
         }
     }
 
-    private static Table.Record recordOf(Table table, Instant instant, String investmentCurrency) {
-        LocalDate date = LocalDate.ofInstant(instant, ZoneId.systemDefault());
-        return table.stream()
-                .filter(record -> date.equals(record.get(DATE)) && investmentCurrency.equals(record.get(INVESTMENT_CURRENCY)))
-                .findAny()
-                .orElseGet(() -> {
-                    Table.Record record = table.addNewRecord();
-                    record.put(DATE, date);
-                    record.put(INVESTMENT_CURRENCY, investmentCurrency);
-                    return record;
-                });
-    }
-
-    private static Table.Record recordOf(Table table, Instant instant) {
-        LocalDate date = LocalDate.ofInstant(instant, ZoneId.systemDefault());
-        return table.stream()
-                .filter(record -> date.equals(record.get(DATE)))
-                .findAny()
-                .orElseGet(() -> {
-                    Table.Record record = table.addNewRecord();
-                    record.put(DATE, date);
-                    return record;
-                });
-    }
-
     private List<EventCashFlow> getCashFlow(Collection<String> portfolios) {
         ViewFilter viewFilter = ViewFilter.get();
         List<EventCashFlowEntity> entities = portfolios.isEmpty() ?
@@ -309,38 +274,43 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
      * @return map of date -> currency -> value
      */
     private LinkedHashMap<Instant, Map<String, BigDecimal>> getCashBalance(Collection<String> portfolios) {
-        List<PortfolioProperty> portfolioCashes = getPortfolioProperty(portfolios, cashProperty);
-        List<PortfolioInstantCurrencyValue> balances = sumCashWithSameCurrency(portfolioCashes);
-        int portfolioCount = countPortfolios(portfolioCashes);
+        List<PortfolioCurrencyValue> portfolioCashes = getPortfolioCash(portfolios);
+        List<PortfolioInstantCurrencyValue> balances = groupByPortfolioAndInstant(portfolioCashes);
+        int portfolioCount = countPortfolios(balances);
         return getAllPortfolioCashBalance(balances, portfolioCount);
     }
 
-    // TODO PortfolioPropertyType.TOTAL_ASSETS_RUB and TOTAL_ASSETS_USD both exists for same timestamp
-    private LinkedHashMap<Instant, BigDecimal> getTotalAssets(Collection<String> portfolios,
-                                                              List<EventCashFlow> cashFlows) {
-        List<PortfolioProperty> assets = getPortfolioProperty(portfolios, totalAssetsProperty);
-        return getAllPortfolioTotalAssets(assets, cashFlows);
+    /**
+     * @return cash summed by SQL for each portfolio, timestamp and currency, ordered by timestamp
+     */
+    private List<PortfolioCurrencyValue> getPortfolioCash(Collection<String> portfolios) {
+        ViewFilter viewFilter = ViewFilter.get();
+        return portfolios.isEmpty() ?
+                portfolioCashRepository
+                        .sumValueByTimestampBetweenGroupByPortfolioAndTimestampAndCurrency(
+                                viewFilter.getFromDate(),
+                                viewFilter.getToDate()) :
+                portfolioCashRepository
+                        .sumValueByPortfolioIdInAndTimestampBetweenGroupByPortfolioAndTimestampAndCurrency(
+                                portfolios,
+                                viewFilter.getFromDate(),
+                                viewFilter.getToDate());
     }
 
-    private List<PortfolioProperty> getPortfolioProperty(Collection<String> portfolios, Collection<String> propertyTypes) {
+    private LinkedHashMap<Instant, BigDecimal> getTotalAssets(Collection<String> portfolios,
+                                                              List<EventCashFlow> cashFlows) {
         ViewFilter viewFilter = ViewFilter.get();
-        List<PortfolioPropertyEntity> entities = portfolios.isEmpty() ?
-                portfolioPropertyRepository
-                        .findByPropertyInAndTimestampBetweenOrderByTimestampDesc(
-                                propertyTypes,
+        List<PortfolioCurrencyValue> assets = portfolios.isEmpty() ?
+                portfolioTotalAssetsRepository
+                        .findByTimestampBetweenOrderByTimestamp(
                                 viewFilter.getFromDate(),
                                 viewFilter.getToDate()) :
-                portfolioPropertyRepository
-                        .findByPortfolioIdInAndPropertyInAndTimestampBetweenOrderByTimestampDesc(
+                portfolioTotalAssetsRepository
+                        .findByPortfolioIdInAndTimestampBetweenOrderByTimestamp(
                                 portfolios,
-                                propertyTypes,
                                 viewFilter.getFromDate(),
                                 viewFilter.getToDate());
-        List<PortfolioProperty> properties = entities.stream()
-                .map(portfolioPropertyConverter::fromEntity)
-                .collect(Collectors.toCollection(ArrayList::new));
-        Collections.reverse(properties);
-        return properties;
+        return getAllPortfolioTotalAssets(assets, cashFlows);
     }
 
     private Map<LocalDate, BigDecimal> getSp500Index() {
@@ -380,33 +350,33 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
         return allPortfolioCashBalance;
     }
 
-    private static int countPortfolios(List<PortfolioProperty> portfolioCashes) {
-        return (int) portfolioCashes.stream()
-                .map(PortfolioProperty::getPortfolio)
+    private static int countPortfolios(List<PortfolioInstantCurrencyValue> balances) {
+        return (int) balances.stream()
+                .map(PortfolioInstantCurrencyValue::getPortfolio)
                 .distinct()
                 .count();
     }
 
-    private static List<PortfolioInstantCurrencyValue> sumCashWithSameCurrency(List<PortfolioProperty> portfolioCashes) {
-        return portfolioCashes.stream()
-                .map(portfolioProperty -> {
-                    Map<String, BigDecimal> currencyValue;
-                    try {
-                        currencyValue = PortfolioCash.deserialize(portfolioProperty.getValue())
-                                .stream()
-                                .collect(groupingBy(PortfolioCash::getCurrency,
-                                        reducing(BigDecimal.ZERO, PortfolioCash::getValue, BigDecimal::add)));
-                    } catch (Exception e) {
-                        log.warn("Ошибка при десериализации свойства: {}", portfolioProperty.getValue(), e);
-                        currencyValue = Collections.emptyMap();
-                    }
-                    return PortfolioInstantCurrencyValue.builder()
-                            .portfolio(portfolioProperty.getPortfolio())
-                            .instant(portfolioProperty.getTimestamp())
-                            .currencyValue(currencyValue)
-                            .build();
-                })
-                .collect(toList());
+    /**
+     * Joins rows ordered by timestamp into balances of portfolio at the timestamp
+     */
+    private static List<PortfolioInstantCurrencyValue> groupByPortfolioAndInstant(List<PortfolioCurrencyValue> cashes) {
+        List<PortfolioInstantCurrencyValue> balances = new ArrayList<>();
+        PortfolioInstantCurrencyValue balance = null;
+        for (PortfolioCurrencyValue cash : cashes) {
+            if (balance == null ||
+                    !balance.getPortfolio().equals(cash.portfolio()) ||
+                    !balance.getInstant().equals(cash.timestamp())) {
+                balance = PortfolioInstantCurrencyValue.builder()
+                        .portfolio(cash.portfolio())
+                        .instant(cash.timestamp())
+                        .currencyValue(new HashMap<>())
+                        .build();
+                balances.add(balance);
+            }
+            balance.getCurrencyValue().merge(cash.currency(), cash.value(), BigDecimal::add);
+        }
+        return balances;
     }
 
     @Getter
@@ -420,7 +390,7 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
     /**
      * Assets in ruble
      */
-    private LinkedHashMap<Instant, BigDecimal> getAllPortfolioTotalAssets(List<PortfolioProperty> assets,
+    private LinkedHashMap<Instant, BigDecimal> getAllPortfolioTotalAssets(List<PortfolioCurrencyValue> assets,
                                                                           List<EventCashFlow> cashFlows) {
         // temp var: portfolio -> assets
         Map<String, BigDecimal> lastTotalAssets = initPortfoliosByZero(assets);
@@ -432,13 +402,13 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
         Map<String, TreeMap<Instant, BigDecimal>> rubCashFlowsGroupedByPortfolio =
                 convertCashFlowsToRubAndGroupByPortfolio(cashFlows);
 
-        for (PortfolioProperty updatingAssets : assets) {
+        for (PortfolioCurrencyValue updatingAssets : assets) {
             updateKnownPortfolioAssets(lastTotalAssets, updatingAssets, rubCashFlowsGroupedByPortfolio, lastInstant);
-            lastInstant = updatingAssets.getTimestamp();
+            lastInstant = updatingAssets.timestamp();
             BigDecimal sum = lastTotalAssets.values()
                     .stream()
                     .reduce(BigDecimal.ZERO, BigDecimal::add);
-            allPortfolioSummedAssets.put(updatingAssets.getTimestamp(), sum);
+            allPortfolioSummedAssets.put(updatingAssets.timestamp(), sum);
         }
         return allPortfolioSummedAssets;
     }
@@ -452,45 +422,32 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
                                 TreeMap::new)));
     }
 
-    private Map<String, BigDecimal> initPortfoliosByZero(Collection<PortfolioProperty> assets) {
+    private Map<String, BigDecimal> initPortfoliosByZero(Collection<PortfolioCurrencyValue> assets) {
         return assets.stream()
-                .map(PortfolioProperty::getPortfolio)
+                .map(PortfolioCurrencyValue::portfolio)
                 .distinct()
                 .collect(toMap(Function.identity(), $ -> BigDecimal.ZERO));
     }
 
     private void updateKnownPortfolioAssets(Map<String, BigDecimal> lastPortfolioAssets,
-                                            PortfolioProperty updatingAssets,
+                                            PortfolioCurrencyValue updatingAssets,
                                             Map<String, TreeMap<Instant, BigDecimal>> rubCashFlowsGroupedByPortfolio,
                                             Instant lastInstant) {
-        String updatingPortfolio = updatingAssets.getPortfolio();
+        String updatingPortfolio = updatingAssets.portfolio();
         lastPortfolioAssets.put(updatingPortfolio, convertAssetsToRub(updatingAssets));
         lastPortfolioAssets.replaceAll((portfolio, portfolioAssets) ->
                 portfolio.equals(updatingPortfolio) ? portfolioAssets :
                         // update other portfolios by invested sum
                         rubCashFlowsGroupedByPortfolio.getOrDefault(portfolio, emptyTreeMap)
-                                .subMap(lastInstant, false, updatingAssets.getTimestamp(), true)
+                                .subMap(lastInstant, false, updatingAssets.timestamp(), true)
                                 .values()
                                 .stream()
                                 .reduce(portfolioAssets, BigDecimal::add));
     }
 
-    private BigDecimal convertAssetsToRub(PortfolioProperty updatingAssets) {
-        String currency = switch (updatingAssets.getProperty()) {
-            case TOTAL_ASSETS_RUB -> RUB;
-            case TOTAL_ASSETS_USD -> "USD";
-            default -> throw new IllegalArgumentException("Unsupported property " + updatingAssets.getProperty());
-        };
-        return foreignExchangeRateService.convertValueToCurrency(getAssets(updatingAssets), currency, RUB);
-    }
-
-    private static BigDecimal getAssets(PortfolioProperty property) {
-        try {
-            return BigDecimal.valueOf(parseDouble(property.getValue()));
-        } catch (Exception e) {
-            log.error("В поле актив ожидается число: {}", property);
-            return BigDecimal.ZERO;
-        }
+    private BigDecimal convertAssetsToRub(PortfolioCurrencyValue updatingAssets) {
+        return foreignExchangeRateService
+                .convertValueToCurrency(updatingAssets.value(), updatingAssets.currency(), RUB);
     }
 
     private static String getSp500GrowthFormula() {
@@ -506,4 +463,52 @@ public class PortfolioAnalysisExcelTableFactory implements TableFactory {
                 getColumnsRange(SP500, 3, SP500, 10000) + "," +
                 firstNonEmptyRow + ",1)";
     }
+
+    /**
+     * Table records indexed by date and by (date, investment currency)
+     */
+    private static class DateIndexedRecords {
+        private final TreeMap<LocalDate, List<Table.Record>> recordsByDate = new TreeMap<>();
+        private final Map<DateCurrency, Table.Record> recordsByDateAndCurrency = new HashMap<>();
+
+        /**
+         * @return record of date and investment currency, creates it if not exists
+         */
+        Table.Record recordOf(Instant instant, String investmentCurrency) {
+            LocalDate date = LocalDate.ofInstant(instant, ZoneId.systemDefault());
+            return recordsByDateAndCurrency.computeIfAbsent(new DateCurrency(date, investmentCurrency), key -> {
+                Table.Record record = addNewRecord(date);
+                record.put(INVESTMENT_CURRENCY, investmentCurrency);
+                return record;
+            });
+        }
+
+        /**
+         * @return first added record of date, creates it if not exists
+         */
+        Table.Record recordOf(Instant instant) {
+            LocalDate date = LocalDate.ofInstant(instant, ZoneId.systemDefault());
+            List<Table.Record> records = recordsByDate.get(date);
+            return (records == null) ? addNewRecord(date) : records.get(0);
+        }
+
+        private Table.Record addNewRecord(LocalDate date) {
+            Table.Record record = Table.newRecord();
+            record.put(DATE, date);
+            recordsByDate.computeIfAbsent(date, $ -> new ArrayList<>(1)).add(record);
+            return record;
+        }
+
+        /**
+         * @return records sorted by date, records of the same date are in order of addition
+         */
+        Table toTable() {
+            Table table = new Table();
+            recordsByDate.values().forEach(table::addAll);
+            return table;
+        }
+    }
+
+    private static record DateCurrency(LocalDate date, String currency) {
+    }
 }
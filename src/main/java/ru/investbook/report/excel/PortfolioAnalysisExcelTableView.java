@@ -23,10 +23,10 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xddf.usermodel.chart.XDDFChartData;
 import org.apache.poi.xddf.usermodel.chart.XDDFDataSource;
-import org.apache.poi.xddf.usermodel.chart.XDDFDataSourcesFactory;
 import org.apache.poi.xddf.usermodel.chart.XDDFNumericalDataSource;
 import org.apache.poi.xssf.usermodel.XSSFChart;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
@@ -131,28 +131,31 @@ public class PortfolioAnalysisExcelTableView extends ExcelTableView {
     }
 
     @Override
-    protected void sheetPostCreate(Sheet sheet, Class<? extends TableHeader> headerType, CellStyles styles) {
-        super.sheetPostCreate(sheet, headerType, styles);
-        for (Cell cell : sheet.getRow(1)) {
+    protected void totalRowPostCreate(Row row, CellStyles styles) {
+        for (Cell cell : row) {
                 cell.setCellStyle(styles.getTotalRowStyle());
         }
-        plotChart("Активы и инвестиции, USD", sheet, PortfolioAnalysisExcelTableView::addInvestmentAndAssetsGraph);
-        plotChart("Роста активов, %", sheet, PortfolioAnalysisExcelTableView::addPortfolioGrowthGraph);
-        plotChart("Остаток денежных средств, USD", sheet, PortfolioAnalysisExcelTableView::addCashBalanceGraph);
     }
 
-    private static void addInvestmentAndAssetsGraph(String name, Sheet sheet) {
-        int rowCount = sheet.getLastRowNum();
-        XSSFSheet _sheet = (XSSFSheet) sheet;
+    @Override
+    protected void sheetPostCreate(Sheet sheet, Table table, Class<? extends TableHeader> headerType,
+                                   CellStyles styles) {
+        super.sheetPostCreate(sheet, table, headerType, styles);
+        plotChart("Активы и инвестиции, USD", sheet, table,
+                PortfolioAnalysisExcelTableView::addInvestmentAndAssetsGraph);
+        plotChart("Роста активов, %", sheet, table, PortfolioAnalysisExcelTableView::addPortfolioGrowthGraph);
+        plotChart("Остаток денежных средств, USD", sheet, table, PortfolioAnalysisExcelTableView::addCashBalanceGraph);
+    }
+
+    private static void addInvestmentAndAssetsGraph(String name, XSSFSheet sheet, Table table) {
+        int rowCount = table.size();
 
-        XDDFDataSource<String> date = XDDFDataSourcesFactory.fromStringCellRange(_sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, DATE.ordinal(), DATE.ordinal()));
-        XDDFNumericalDataSource<Double> assetsUsd = XDDFDataSourcesFactory.fromNumericCellRange(_sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, ASSETS_USD.ordinal(), ASSETS_USD.ordinal()));
-        XDDFNumericalDataSource<Double> investmentUsd = XDDFDataSourcesFactory.fromNumericCellRange(_sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, TOTAL_INVESTMENT_USD.ordinal(), TOTAL_INVESTMENT_USD.ordinal()));
+        XDDFDataSource<String> date = stringDataSource(sheet, table, 2, rowCount, DATE);
+        XDDFNumericalDataSource<Double> assetsUsd = numericDataSource(sheet, table, 2, rowCount, ASSETS_USD);
+        XDDFNumericalDataSource<Double> investmentUsd =
+                numericDataSource(sheet, table, 2, rowCount, TOTAL_INVESTMENT_USD);
 
-        XSSFChart chart = createChart(_sheet, name, CURRENCY_NAME.ordinal(), 6, 8, 18);
+        XSSFChart chart = createChart(sheet, name, CURRENCY_NAME.ordinal(), 6, 8, 18);
         XDDFChartData chartData = createScatterChartData(chart);
 
         XDDFChartData.Series assetsGraph = chartData.addSeries(date, assetsUsd);
@@ -164,18 +167,14 @@ public class PortfolioAnalysisExcelTableView extends ExcelTableView {
         chart.plot(chartData);
     }
 
-    private static void addPortfolioGrowthGraph(String name, Sheet sheet) {
-        int rowCount = sheet.getLastRowNum();
-        XSSFSheet _sheet = (XSSFSheet) sheet;
+    private static void addPortfolioGrowthGraph(String name, XSSFSheet sheet, Table table) {
+        int rowCount = table.size();
 
-        XDDFDataSource<String> date = XDDFDataSourcesFactory.fromStringCellRange(_sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, DATE.ordinal(), DATE.ordinal()));
-        XDDFNumericalDataSource<Double> assetsGrowth = XDDFDataSourcesFactory.fromNumericCellRange(_sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, ASSETS_GROWTH.ordinal(), ASSETS_GROWTH.ordinal()));
-        XDDFNumericalDataSource<Double> sp500Growth = XDDFDataSourcesFactory.fromNumericCellRange(_sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, SP500_GROWTH.ordinal(), SP500_GROWTH.ordinal()));
+        XDDFDataSource<String> date = stringDataSource(sheet, table, 2, rowCount, DATE);
+        XDDFNumericalDataSource<Double> assetsGrowth = numericDataSource(sheet, table, 2, rowCount, ASSETS_GROWTH);
+        XDDFNumericalDataSource<Double> sp500Growth = numericDataSource(sheet, table, 2, rowCount, SP500_GROWTH);
 
-        XSSFChart chart = createChart(_sheet, name, CURRENCY_NAME.ordinal(), 24, 8, 18);
+        XSSFChart chart = createChart(sheet, name, CURRENCY_NAME.ordinal(), 24, 8, 18);
         XDDFChartData chartData = createScatterChartData(chart);
 
         XDDFChartData.Series assetsGrowthGraph = chartData.addSeries(date, assetsGrowth);
@@ -187,16 +186,13 @@ public class PortfolioAnalysisExcelTableView extends ExcelTableView {
         chart.plot(chartData);
     }
 
-    private static void addCashBalanceGraph(String name, Sheet sheet) {
-        int rowCount = sheet.getLastRowNum();
-        XSSFSheet _sheet = (XSSFSheet) sheet;
+    private static void addCashBalanceGraph(String name, XSSFSheet sheet, Table table) {
+        int rowCount = table.size();
 
-        XDDFDataSource<String> date = XDDFDataSourcesFactory.fromStringCellRange(_sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, DATE.ordinal(), DATE.ordinal()));
-        XDDFNumericalDataSource<Double> cashBalance = XDDFDataSourcesFactory.fromNumericCellRange(_sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, TOTAL_CASH_USD.ordinal(), TOTAL_CASH_USD.ordinal()));
+        XDDFDataSource<String> date = stringDataSource(sheet, table, 2, rowCount, DATE);
+        XDDFNumericalDataSource<Double> cashBalance = numericDataSource(sheet, table, 2, rowCount, TOTAL_CASH_USD);
 
-        XSSFChart chart = createChart(_sheet, name, CURRENCY_NAME.ordinal(), 42, 8, 18);
+        XSSFChart chart = createChart(sheet, name, CURRENCY_NAME.ordinal(), 42, 8, 18);
         XDDFChartData chartData = createScatterChartData(chart);
 
         chartData.addSeries(date, cashBalance);
@@ -22,8 +22,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.spacious_team.broker.pojo.CashFlowType;
 import org.spacious_team.broker.pojo.Portfolio;
-import org.spacious_team.broker.pojo.PortfolioCash;
-import org.spacious_team.broker.pojo.PortfolioProperty;
 import org.spacious_team.broker.pojo.Security;
 import org.spacious_team.broker.pojo.SecurityEventCashFlow;
 import org.spacious_team.broker.pojo.SecurityQuote;
@@ -38,9 +36,12 @@ import ru.investbook.report.FifoPositionsFactory;
 import ru.investbook.report.ForeignExchangeRateService;
 import ru.investbook.report.InternalRateOfReturn;
 import ru.investbook.report.PositionHistory;
+import ru.investbook.report.ReportRowsExecutor;
+import ru.investbook.report.SecurityEventCashFlowSummary;
 import ru.investbook.report.Table;
 import ru.investbook.report.TableFactory;
 import ru.investbook.report.ViewFilter;
+import ru.investbook.repository.PortfolioCurrencyValue;
 import ru.investbook.repository.SecurityQuoteRepository;
 import ru.investbook.repository.SecurityRepository;
 import ru.investbook.repository.TransactionRepository;
@@ -81,6 +82,7 @@ public class PortfolioStatusExcelTableFactory implements TableFactory {
     private final ForeignExchangeRateService foreignExchangeRateService;
     private final SecurityProfitService securityProfitService;
     private final InternalRateOfReturn internalRateOfReturn;
+    private final ReportRowsExecutor reportRowsExecutor;
     private final Instant instantOf2000_01_01 = LocalDate.of(2000, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant();
     private final Set<Integer> paymentEvents = Set.of(
             CashFlowType.AMORTIZATION.getId(),
@@ -110,11 +112,11 @@ public class PortfolioStatusExcelTableFactory implements TableFactory {
 
     private Table create(Collection<String> portfolios, Collection<String> securitiesIsin, String forCurrency) {
         Table table = new Table();
-        for (String isin : securitiesIsin) {
-            getSecurity(isin)
-                    .map(security -> getSecurityStatus(portfolios, security, forCurrency))
-                    .ifPresent(table::add);
-        }
+        SecurityEventCashFlowSummary payments =
+                securityProfitService.getSecurityEventCashFlowSummary(portfolios, ViewFilter.get());
+        reportRowsExecutor.map(securitiesIsin, isin -> getSecurity(isin)
+                        .map(security -> getSecurityStatus(portfolios, security, payments, forCurrency)))
+                .forEach(row -> row.ifPresent(table::add));
         return table;
     }
 
@@ -167,24 +169,14 @@ public class PortfolioStatusExcelTableFactory implements TableFactory {
                 ViewFilter.get().getToDate().getEpochSecond(),
                 Instant.now().getEpochSecond()));
         row.put(SECURITY, "Остаток денежных средств, " + forCurrency.toLowerCase());
-        Collection<PortfolioProperty> portfolioCashes = securityProfitService.getPortfolioCash(portfolios, atTime);
+        Collection<PortfolioCurrencyValue> portfolioCashes = securityProfitService.getPortfolioCash(portfolios, atTime);
         row.put(LAST_EVENT_DATE, portfolioCashes.stream()
-                .map(PortfolioProperty::getTimestamp)
+                .map(PortfolioCurrencyValue::timestamp)
                 .reduce((t1, t2) -> t1.isAfter(t2) ? t1 : t2)
                 .orElse(null));
         BigDecimal portfolioCash = portfolioCashes.stream()
-                .map(portfolioProperty -> {
-                    try {
-                        return PortfolioCash.deserialize(portfolioProperty.getValue())
-                                .stream()
-                                .filter(cash -> forCurrency.equals(cash.getCurrency()))
-                                .map(PortfolioCash::getValue)
-                                .reduce(BigDecimal.ZERO, BigDecimal::add);
-                    } catch (Exception e) {
-                        log.warn("Ошибка при десериализации свойства: {}", portfolioProperty.getValue(), e);
-                        return BigDecimal.ZERO;
-                    }
-                })
+                .filter(cash -> forCurrency.equals(cash.currency()))
+                .map(PortfolioCurrencyValue::value)
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
         row.put(LAST_PRICE, portfolioCash);
         if (ViewFilter.get().getFromDate().isBefore(instantOf2000_01_01) &&
@@ -208,7 +200,8 @@ public class PortfolioStatusExcelTableFactory implements TableFactory {
         }
     }
 
-    private Table.Record getSecurityStatus(Collection<String> portfolios, Security security, String toCurrency) {
+    private Table.Record getSecurityStatus(Collection<String> portfolios, Security security,
+                                           SecurityEventCashFlowSummary payments, String toCurrency) {
         Table.Record row = new Table.Record();
         SecurityType securityType = getSecurityType(security);
         row.put(SECURITY,
@@ -229,7 +222,7 @@ public class PortfolioStatusExcelTableFactory implements TableFactory {
                     .orElse(null));
             if (securityType != CURRENCY_PAIR) {
                 row.put(LAST_EVENT_DATE,
-                        securityProfitService.getLastEventTimestamp(portfolios, security, paymentEvents, filter)
+                        payments.getLastEventTimestamp(security.getId(), paymentEvents)
                                 .orElse(null));
             }
             row.put(BUY_COUNT, positions.getTransactions()
@@ -251,7 +244,7 @@ public class PortfolioStatusExcelTableFactory implements TableFactory {
             int count = positions.getCurrentOpenedPositionsCount();
             row.put(COUNT, count);
             if (count == 0) {
-                row.put(GROSS_PROFIT, "=" + securityProfitService.getGrossProfit(portfolios, security, positions, toCurrency) +
+                row.put(GROSS_PROFIT, "=" + getGrossProfit(portfolios, security, positions, payments, toCurrency) +
                         ((securityType == STOCK_OR_BOND) ? ("+" + AMORTIZATION.getCellAddr()) : ""));
             } else {
                 row.put(AVERAGE_PRICE, securityProfitService.getPurchaseCost(security, positions, toCurrency)
@@ -271,19 +264,19 @@ public class PortfolioStatusExcelTableFactory implements TableFactory {
                 if (securityType == STOCK_OR_BOND || securityType == CURRENCY_PAIR) {
                     row.put(GROSS_PROFIT, STOCK_GROSS_PROFIT_FORMULA);
                 } else if (securityType == DERIVATIVE) {
-                    row.put(GROSS_PROFIT, securityProfitService.getGrossProfit(portfolios, security, positions, toCurrency));
+                    row.put(GROSS_PROFIT, getGrossProfit(portfolios, security, positions, payments, toCurrency));
                 }
                 if (securityType == STOCK_OR_BOND) {
                     row.put(INVESTMENT_PROPORTION, INVESTMENT_PROPORTION_FORMULA);
                     row.put(PROPORTION, PROPORTION_FORMULA);
                 }
             }
-            row.put(COMMISSION, securityProfitService.getTotal(positions.getTransactions(), CashFlowType.COMMISSION, toCurrency).abs());
+            row.put(COMMISSION, securityProfitService.getTotal(positions, CashFlowType.COMMISSION, toCurrency).abs());
             if (securityType == STOCK_OR_BOND) {
-                row.put(COUPON, securityProfitService.sumPaymentsForType(portfolios, security, CashFlowType.COUPON, toCurrency));
-                row.put(AMORTIZATION, securityProfitService.sumPaymentsForType(portfolios, security, CashFlowType.AMORTIZATION, toCurrency));
-                row.put(DIVIDEND, securityProfitService.sumPaymentsForType(portfolios, security, CashFlowType.DIVIDEND, toCurrency));
-                row.put(TAX, securityProfitService.sumPaymentsForType(portfolios, security, CashFlowType.TAX, toCurrency).abs());
+                row.put(COUPON, securityProfitService.sumPaymentsForType(payments, security, CashFlowType.COUPON, toCurrency));
+                row.put(AMORTIZATION, securityProfitService.sumPaymentsForType(payments, security, CashFlowType.AMORTIZATION, toCurrency));
+                row.put(DIVIDEND, securityProfitService.sumPaymentsForType(payments, security, CashFlowType.DIVIDEND, toCurrency));
+                row.put(TAX, securityProfitService.sumPaymentsForType(payments, security, CashFlowType.TAX, toCurrency).abs());
             }
             row.put(PROFIT, PROFIT_FORMULA);
             row.put(INTERNAL_RATE_OF_RETURN, internalRateOfReturn.calc(portfolios, security, quote, filter));
@@ -294,6 +287,13 @@ public class PortfolioStatusExcelTableFactory implements TableFactory {
         return row;
     }
 
+    private BigDecimal getGrossProfit(Collection<String> portfolios, Security security, FifoPositions positions,
+                                      SecurityEventCashFlowSummary payments, String toCurrency) {
+        return (getSecurityType(security) == DERIVATIVE) ?
+                securityProfitService.sumPaymentsForType(payments, security, CashFlowType.DERIVATIVE_PROFIT, toCurrency) :
+                securityProfitService.getGrossProfit(portfolios, security, positions, toCurrency);
+    }
+
     private static String getStockOrBondGrossProfitFormula() {
         return "=IF(" + LAST_PRICE.getCellAddr() + "<>\"\",(" +
                 LAST_PRICE.getCellAddr() + "+" + LAST_ACCRUED_INTEREST.getCellAddr() + "-" +
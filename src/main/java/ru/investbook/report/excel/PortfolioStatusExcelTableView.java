@@ -27,7 +27,6 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xddf.usermodel.chart.XDDFChartData;
 import org.apache.poi.xddf.usermodel.chart.XDDFDataSource;
-import org.apache.poi.xddf.usermodel.chart.XDDFDataSourcesFactory;
 import org.apache.poi.xddf.usermodel.chart.XDDFNumericalDataSource;
 import org.apache.poi.xssf.usermodel.XSSFChart;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
@@ -181,28 +180,28 @@ public class PortfolioStatusExcelTableView extends ExcelTableView {
     }
 
     @Override
-    protected void sheetPostCreate(Sheet sheet, Class<? extends TableHeader> headerType, CellStyles styles) {
-        super.sheetPostCreate(sheet, headerType, styles);
-        for (Row row : sheet) {
-            if (row.getRowNum() == 0) continue;
-            Cell cell;
-            if ((cell = row.getCell(SECURITY.ordinal())) != null) {
-                cell.setCellStyle(styles.getLeftAlignedTextStyle());
-            }
-            if ((cell = row.getCell(INTERNAL_RATE_OF_RETURN.ordinal())) != null) {
-                cell.setCellStyle(styles.getPercentStyle());
-            }
-            if ((cell = row.getCell(PROFIT_PROPORTION.ordinal())) != null) {
-                cell.setCellStyle(styles.getPercentStyle());
-            }
-            if ((cell = row.getCell(INVESTMENT_PROPORTION.ordinal())) != null) {
-                cell.setCellStyle(styles.getPercentStyle());
-            }
-            if ((cell = row.getCell(PROPORTION.ordinal())) != null) {
-                cell.setCellStyle(styles.getPercentStyle());
-            }
+    protected void rowPostCreate(Row row, CellStyles styles) {
+        Cell cell;
+        if ((cell = row.getCell(SECURITY.ordinal())) != null) {
+            cell.setCellStyle(styles.getLeftAlignedTextStyle());
+        }
+        if ((cell = row.getCell(INTERNAL_RATE_OF_RETURN.ordinal())) != null) {
+            cell.setCellStyle(styles.getPercentStyle());
         }
-        for (Cell cell : sheet.getRow(1)) {
+        if ((cell = row.getCell(PROFIT_PROPORTION.ordinal())) != null) {
+            cell.setCellStyle(styles.getPercentStyle());
+        }
+        if ((cell = row.getCell(INVESTMENT_PROPORTION.ordinal())) != null) {
+            cell.setCellStyle(styles.getPercentStyle());
+        }
+        if ((cell = row.getCell(PROPORTION.ordinal())) != null) {
+            cell.setCellStyle(styles.getPercentStyle());
+        }
+    }
+
+    @Override
+    protected void totalRowPostCreate(Row row, CellStyles styles) {
+        for (Cell cell : row) {
             if (cell == null) continue;
             if (cell.getColumnIndex() == SECURITY.ordinal()) {
                 cell.setCellStyle(styles.getTotalTextStyle());
@@ -222,18 +221,22 @@ public class PortfolioStatusExcelTableView extends ExcelTableView {
                 cell.setCellStyle(styles.getTotalRowStyle());
             }
         }
-        highlightNegativeByRed(sheet, PROFIT);
-        highlightNegativeByRed(sheet, INTERNAL_RATE_OF_RETURN);
-        plotChart("Состав портфеля", sheet, PortfolioStatusExcelTableView::addPieChart);
     }
 
-    private static void addPieChart(String name, XSSFSheet sheet) {
-        int rowCount = sheet.getLastRowNum();
+    @Override
+    protected void sheetPostCreate(Sheet sheet, Table table, Class<? extends TableHeader> headerType,
+                                   CellStyles styles) {
+        super.sheetPostCreate(sheet, table, headerType, styles);
+        highlightNegativeByRed(sheet, table.size(), PROFIT);
+        highlightNegativeByRed(sheet, table.size(), INTERNAL_RATE_OF_RETURN);
+        plotChart("Состав портфеля", sheet, table, PortfolioStatusExcelTableView::addPieChart);
+    }
+
+    private static void addPieChart(String name, XSSFSheet sheet, Table table) {
+        int rowCount = table.size();
 
-        XDDFDataSource<String> securities = XDDFDataSourcesFactory.fromStringCellRange(sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, SECURITY.ordinal(), SECURITY.ordinal()));
-        XDDFNumericalDataSource<Double> proportions = XDDFDataSourcesFactory.fromNumericCellRange(sheet,
-                nonEmptyCellRangeAddress(sheet,2, rowCount, PROPORTION.ordinal(), PROPORTION.ordinal()));
+        XDDFDataSource<String> securities = stringDataSource(sheet, table, 2, rowCount, SECURITY);
+        XDDFNumericalDataSource<Double> proportions = numericDataSource(sheet, table, 2, rowCount, PROPORTION);
 
         XSSFChart chart = createChart(sheet, name, 0, rowCount + 2, PROPORTION.ordinal() + 1, 36);
         XDDFChartData data = createPieChartData(chart);
@@ -24,10 +24,10 @@ import org.spacious_team.broker.pojo.Portfolio;
 import org.spacious_team.broker.pojo.Security;
 import org.spacious_team.broker.pojo.SecurityEventCashFlow;
 import org.spacious_team.broker.pojo.Transaction;
+import org.spacious_team.broker.pojo.TransactionCashFlow;
 import org.springframework.stereotype.Component;
 import ru.investbook.converter.SecurityConverter;
 import ru.investbook.entity.SecurityEventCashFlowEntity;
-import ru.investbook.entity.TransactionCashFlowEntity;
 import ru.investbook.report.ClosedPosition;
 import ru.investbook.report.FifoPositions;
 import ru.investbook.report.FifoPositionsFactory;
@@ -36,12 +36,13 @@ import ru.investbook.report.OpenedPosition;
 import ru.investbook.report.PaidInterest;
 import ru.investbook.report.PaidInterestFactory;
 import ru.investbook.report.Position;
+import ru.investbook.report.ReportRowsExecutor;
 import ru.investbook.report.Table;
 import ru.investbook.report.TableFactory;
+import ru.investbook.report.TransactionCashFlows;
 import ru.investbook.report.ViewFilter;
 import ru.investbook.repository.SecurityEventCashFlowRepository;
 import ru.investbook.repository.SecurityRepository;
-import ru.investbook.repository.TransactionCashFlowRepository;
 import ru.investbook.repository.TransactionRepository;
 
 import java.math.BigDecimal;
@@ -63,12 +64,12 @@ public class StockMarketProfitExcelTableFactory implements TableFactory {
     private static final String TAX_LIABILITY_FORMULA = getTaxLiabilityFormula();
     private final TransactionRepository transactionRepository;
     private final SecurityRepository securityRepository;
-    private final TransactionCashFlowRepository transactionCashFlowRepository;
     private final SecurityConverter securityConverter;
     private final PaidInterestFactory paidInterestFactory;
     private final SecurityEventCashFlowRepository securityEventCashFlowRepository;
     private final ForeignExchangeRateService foreignExchangeRateService;
     private final FifoPositionsFactory positionsFactory;
+    private final ReportRowsExecutor reportRowsExecutor;
 
     public Table create(Portfolio portfolio) {
         throw new UnsupportedOperationException();
@@ -90,38 +91,43 @@ public class StockMarketProfitExcelTableFactory implements TableFactory {
     public Table create(Portfolio portfolio, Collection<String> securitiesIsin, String toCurrency) {
         Table openPositionsProfit = new Table();
         Table closedPositionsProfit = new Table();
-        for (String isin : securitiesIsin) {
-            securityRepository.findById(isin)
-                    .map(securityConverter::fromEntity)
-                    .ifPresent(security ->
-                            getRowsForSecurity(security, portfolio, openPositionsProfit, closedPositionsProfit, toCurrency));
-        }
+        reportRowsExecutor.map(securitiesIsin, isin -> securityRepository.findById(isin)
+                        .map(securityConverter::fromEntity)
+                        .map(security -> getRowsForSecurity(security, portfolio, toCurrency)))
+                .forEach(rows -> rows.ifPresent(securityRows -> {
+                    openPositionsProfit.addAll(securityRows.openPositionsProfit());
+                    closedPositionsProfit.addAll(securityRows.closedPositionsProfit());
+                }));
         Table profit = new Table();
         profit.addAll(openPositionsProfit);
         profit.addAll(closedPositionsProfit);
         return profit;
     }
 
-    private void getRowsForSecurity(Security security, Portfolio portfolio, Table openPositionsProfit,
-                                    Table closedPositionsProfit, String toCurrency) {
+    private SecurityRows getRowsForSecurity(Security security, Portfolio portfolio, String toCurrency) {
+        Table openPositionsProfit = new Table();
+        Table closedPositionsProfit = new Table();
         FifoPositions positions = positionsFactory.get(portfolio, security, ViewFilter.get());
+        TransactionCashFlows cashFlows = positions.getTransactionCashFlows();
         PaidInterest paidInterest = paidInterestFactory.get(portfolio, security, ViewFilter.get());
-        openPositionsProfit.addAll(getPositionProfit(security, positions.getOpenedPositions(),
-                paidInterest, this::getOpenedPositionProfit, toCurrency));
-        closedPositionsProfit.addAll(getPositionProfit(security, positions.getClosedPositions(),
-                paidInterest, this::getClosedPositionProfit, toCurrency));
-        openPositionsProfit.addAll(getPositionProfit(security, paidInterest.getFictitiousPositions(),
-                paidInterest, this::getOpenedPositionProfit, toCurrency));
+        openPositionsProfit.addAll(getPositionProfit(security, positions.getOpenedPositions(), paidInterest, cashFlows,
+                (position, currency) -> getOpenedPositionProfit(position, cashFlows, currency), toCurrency));
+        closedPositionsProfit.addAll(getPositionProfit(security, positions.getClosedPositions(), paidInterest, cashFlows,
+                (position, currency) -> getClosedPositionProfit(position, cashFlows, currency), toCurrency));
+        openPositionsProfit.addAll(getPositionProfit(security, paidInterest.getFictitiousPositions(), paidInterest, cashFlows,
+                (position, currency) -> getOpenedPositionProfit(position, cashFlows, currency), toCurrency));
+        return new SecurityRows(openPositionsProfit, closedPositionsProfit);
     }
 
     private <T extends OpenedPosition> Table getPositionProfit(Security security,
                                                                Deque<T> positions,
                                                                PaidInterest paidInterest,
+                                                               TransactionCashFlows cashFlows,
                                                                BiFunction<T, String, Table.Record> profitBuilder,
                                                                String toCurrency) {
         Table rows = new Table();
         for (T position : positions) {
-            String openTransactionCurrency = getTransactionCurrency(position.getOpenTransaction(), toCurrency);
+            String openTransactionCurrency = getTransactionCurrency(position.getOpenTransaction(), cashFlows, toCurrency);
             if (openTransactionCurrency.equalsIgnoreCase(toCurrency)) {
                 Table.Record record = profitBuilder.apply(position, toCurrency);
                 record.putAll(getPaidInterestProfit(position, paidInterest, toCurrency));
@@ -135,47 +141,49 @@ public class StockMarketProfitExcelTableFactory implements TableFactory {
         return rows;
     }
 
-    private <T extends OpenedPosition> Table.Record getOpenedPositionProfit(T position, String toCurrency) {
+    private <T extends OpenedPosition> Table.Record getOpenedPositionProfit(T position, TransactionCashFlows cashFlows,
+                                                                           String toCurrency) {
         Table.Record row = new Table.Record();
         Transaction transaction = position.getOpenTransaction();
         row.put(OPEN_DATE, transaction.getTimestamp());
         row.put(COUNT, Math.abs(position.getCount()) * Integer.signum(transaction.getCount()));
-        String openPrice = getTransactionCashFlow(transaction, CashFlowType.PRICE, 1d / transaction.getCount(), toCurrency);
+        String openPrice = getTransactionCashFlow(cashFlows, transaction, CashFlowType.PRICE, 1d / transaction.getCount(), toCurrency);
         if (openPrice == null && (position instanceof ClosedPosition)) {
             // ЦБ введены, а не куплены, принимаем цену покупки = цене продажи, чтобы не было финфнсового результата
             Transaction closeTransaction = ((ClosedPosition) position).getCloseTransaction();
-            openPrice = getTransactionCashFlow(closeTransaction, CashFlowType.PRICE, 1d / closeTransaction.getCount(), toCurrency);
+            openPrice = getTransactionCashFlow(cashFlows, closeTransaction, CashFlowType.PRICE, 1d / closeTransaction.getCount(), toCurrency);
         }
         row.put(OPEN_PRICE, openPrice);
         if (openPrice != null) {
             row.put(OPEN_AMOUNT, "=ABS(" + OPEN_PRICE.getCellAddr() + "*" + COUNT.getCellAddr() + ")");
         }
         double multiplier = Math.abs(1d * position.getCount() / transaction.getCount());
-        row.put(OPEN_ACCRUED_INTEREST, getTransactionCashFlow(transaction, CashFlowType.ACCRUED_INTEREST, multiplier, toCurrency));
-        row.put(OPEN_COMMISSION, getTransactionCashFlow(transaction, CashFlowType.COMMISSION, multiplier, toCurrency));
+        row.put(OPEN_ACCRUED_INTEREST, getTransactionCashFlow(cashFlows, transaction, CashFlowType.ACCRUED_INTEREST, multiplier, toCurrency));
+        row.put(OPEN_COMMISSION, getTransactionCashFlow(cashFlows, transaction, CashFlowType.COMMISSION, multiplier, toCurrency));
         return row;
     }
 
-    private Table.Record getClosedPositionProfit(ClosedPosition position, String toCurrency) {
+    private Table.Record getClosedPositionProfit(ClosedPosition position, TransactionCashFlows cashFlows,
+                                                 String toCurrency) {
         // open transaction info
-        Table.Record row = new Table.Record(getOpenedPositionProfit(position, toCurrency));
+        Table.Record row = new Table.Record(getOpenedPositionProfit(position, cashFlows, toCurrency));
         // close transaction info
         Transaction transaction = position.getCloseTransaction();
         double multiplier = Math.abs(1d * position.getCount() / transaction.getCount());
         row.put(CLOSE_DATE, transaction.getTimestamp());
         String closeAmount = switch (position.getClosingEvent()) {
-            case PRICE -> getTransactionCashFlow(transaction, CashFlowType.PRICE, multiplier, toCurrency);
+            case PRICE -> getTransactionCashFlow(cashFlows, transaction, CashFlowType.PRICE, multiplier, toCurrency);
             case REDEMPTION -> getRedemptionCashFlow(transaction.getPortfolio(), transaction.getSecurity(), multiplier, toCurrency);
             default -> throw new IllegalArgumentException("ЦБ " + transaction.getSecurity() +
                     " не может быть закрыта событием типа " + position.getClosingEvent());
         };
         if (closeAmount == null) {
             // ЦБ выведены со счета, а не прданы, принимаем цену продажи = цене покупки, чтобы не было фин. результата
-            closeAmount = getTransactionCashFlow(position.getOpenTransaction(), CashFlowType.PRICE, multiplier, toCurrency);
+            closeAmount = getTransactionCashFlow(cashFlows, position.getOpenTransaction(), CashFlowType.PRICE, multiplier, toCurrency);
         }
         row.put(CLOSE_AMOUNT, closeAmount);
-        row.put(CLOSE_ACCRUED_INTEREST, getTransactionCashFlow(transaction, CashFlowType.ACCRUED_INTEREST, multiplier, toCurrency));
-        row.put(CLOSE_COMMISSION, getTransactionCashFlow(transaction, CashFlowType.COMMISSION, multiplier, toCurrency));
+        row.put(CLOSE_ACCRUED_INTEREST, getTransactionCashFlow(cashFlows, transaction, CashFlowType.ACCRUED_INTEREST, multiplier, toCurrency));
+        row.put(CLOSE_COMMISSION, getTransactionCashFlow(cashFlows, transaction, CashFlowType.COMMISSION, multiplier, toCurrency));
         boolean isLongPosition = isLongPosition(position);
         row.put(FORECAST_TAX, getForecastTax(isLongPosition));
         row.put(PROFIT, getClosedPositionProfit(isLongPosition));
@@ -201,15 +209,12 @@ public class StockMarketProfitExcelTableFactory implements TableFactory {
         return info;
     }
 
-    private String getTransactionCashFlow(Transaction transaction, CashFlowType type, double multiplier, String toCurrency) {
+    private String getTransactionCashFlow(TransactionCashFlows cashFlows, Transaction transaction, CashFlowType type,
+                                          double multiplier, String toCurrency) {
         if (PaidInterest.isFictitiousPositionTransaction(transaction)) {
             return null;
         }
-        return transactionCashFlowRepository
-                .findByPkPortfolioAndPkTransactionIdAndPkType(
-                        transaction.getPortfolio(),
-                        transaction.getId(),
-                        type.getId())
+        return cashFlows.get(transaction, type)
                 .map(cash -> {
                     BigDecimal value = cash.getValue()
                             .multiply(BigDecimal.valueOf(multiplier))
@@ -245,16 +250,12 @@ public class StockMarketProfitExcelTableFactory implements TableFactory {
     /**
      * @return transaction {@link CashFlowType#PRICE} currency
      */
-    private String getTransactionCurrency(Transaction transaction, String fallbackCurrency) {
+    private String getTransactionCurrency(Transaction transaction, TransactionCashFlows cashFlows, String fallbackCurrency) {
         if (PaidInterest.isFictitiousPositionTransaction(transaction)) {
             return fallbackCurrency;
         }
-        return transactionCashFlowRepository
-                .findByPkPortfolioAndPkTransactionIdAndPkType(
-                        transaction.getPortfolio(),
-                        transaction.getId(),
-                        CashFlowType.PRICE.getId())
-                .map(TransactionCashFlowEntity::getCurrency)
+        return cashFlows.get(transaction, CashFlowType.PRICE)
+                .map(TransactionCashFlow::getCurrency)
                 .orElse(fallbackCurrency);
     }
 
@@ -316,4 +317,7 @@ public class StockMarketProfitExcelTableFactory implements TableFactory {
                 "/(" + open + "+" + openCommission + ")" +
                 "*" + multiplier;
     }
+
+    private static record SecurityRows(Table openPositionsProfit, Table closedPositionsProfit) {
+    }
 }
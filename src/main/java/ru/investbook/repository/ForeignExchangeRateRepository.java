@@ -38,6 +38,8 @@ public interface ForeignExchangeRateRepository extends JpaRepository<ForeignExch
 
     List<ForeignExchangeRateEntity> findByPkCurrencyPairOrderByPkDateDesc(String currencyPair);
 
+    List<ForeignExchangeRateEntity> findByPkCurrencyPair(String currencyPair);
+
     @Query(value = """
         SELECT max(t.pk.date)
             FROM ForeignExchangeRateEntity t
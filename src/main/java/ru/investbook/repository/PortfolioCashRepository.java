@@ -0,0 +1,126 @@
+/*
+ * InvestBook
+ * Copyright (C) 2020  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.investbook.entity.PortfolioCashEntity;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface PortfolioCashRepository extends JpaRepository<PortfolioCashEntity, Integer> {
+
+    List<PortfolioCashEntity> findByOrderByTimestampDescPortfolioIdAscIdAsc();
+
+    List<PortfolioCashEntity> findByPortfolioIdAndTimestamp(String portfolio, Instant timestamp);
+
+    @Transactional
+    void deleteByPortfolioIdAndTimestamp(String portfolio, Instant timestamp);
+
+    /**
+     * Sums last known cash of all portfolios, cash of every portfolio is taken for its max timestamp in interval
+     */
+    @Query("""
+            SELECT new ru.investbook.repository.PortfolioCurrencyValue(c.currency, MAX(c.timestamp), SUM(c.value))
+            FROM PortfolioCashEntity c
+            WHERE c.timestamp = (
+                SELECT MAX(c2.timestamp)
+                FROM PortfolioCashEntity c2
+                WHERE c2.portfolio = c.portfolio
+                AND c2.timestamp BETWEEN :from AND :to
+            )
+            GROUP BY c.currency
+            """)
+    List<PortfolioCurrencyValue> sumLatestValueByTimestampBetweenGroupByCurrency(
+            @Param("from") Instant startDate,
+            @Param("to") Instant endDate);
+
+    /**
+     * Sums last known cash of portfolios, cash of every portfolio is taken for its max timestamp in interval
+     */
+    @Query("""
+            SELECT new ru.investbook.repository.PortfolioCurrencyValue(c.currency, MAX(c.timestamp), SUM(c.value))
+            FROM PortfolioCashEntity c
+            WHERE c.portfolio.id IN (:portfolios)
+            AND c.timestamp = (
+                SELECT MAX(c2.timestamp)
+                FROM PortfolioCashEntity c2
+                WHERE c2.portfolio = c.portfolio
+                AND c2.timestamp BETWEEN :from AND :to
+            )
+            GROUP BY c.currency
+            """)
+    List<PortfolioCurrencyValue> sumLatestValueByPortfolioIdInAndTimestampBetweenGroupByCurrency(
+            @Param("portfolios") Collection<String> portfolios,
+            @Param("from") Instant startDate,
+            @Param("to") Instant endDate);
+
+    /**
+     * Sums last known cash of portfolios
+     */
+    @Query("""
+            SELECT new ru.investbook.repository.PortfolioCurrencyValue(c.currency, MAX(c.timestamp), SUM(c.value))
+            FROM PortfolioCashEntity c
+            WHERE c.portfolio.id IN (:portfolios)
+            AND c.timestamp = (
+                SELECT MAX(c2.timestamp)
+                FROM PortfolioCashEntity c2
+                WHERE c2.portfolio = c.portfolio
+            )
+            GROUP BY c.currency
+            """)
+    List<PortfolioCurrencyValue> sumLatestValueByPortfolioIdInGroupByCurrency(
+            @Param("portfolios") Collection<String> portfolios);
+
+    /**
+     * Sums cash of all markets for each portfolio, timestamp and currency
+     */
+    @Query("""
+            SELECT new ru.investbook.repository.PortfolioCurrencyValue(
+                c.portfolio.id, c.timestamp, c.currency, SUM(c.value))
+            FROM PortfolioCashEntity c
+            WHERE c.timestamp BETWEEN :from AND :to
+            GROUP BY c.portfolio.id, c.timestamp, c.currency
+            ORDER BY c.timestamp, c.portfolio.id
+            """)
+    List<PortfolioCurrencyValue> sumValueByTimestampBetweenGroupByPortfolioAndTimestampAndCurrency(
+            @Param("from") Instant startDate,
+            @Param("to") Instant endDate);
+
+    /**
+     * Sums cash of all markets for each portfolio, timestamp and currency
+     */
+    @Query("""
+            SELECT new ru.investbook.repository.PortfolioCurrencyValue(
+                c.portfolio.id, c.timestamp, c.currency, SUM(c.value))
+            FROM PortfolioCashEntity c
+            WHERE c.portfolio.id IN (:portfolios)
+            AND c.timestamp BETWEEN :from AND :to
+            GROUP BY c.portfolio.id, c.timestamp, c.currency
+            ORDER BY c.timestamp, c.portfolio.id
+            """)
+    List<PortfolioCurrencyValue> sumValueByPortfolioIdInAndTimestampBetweenGroupByPortfolioAndTimestampAndCurrency(
+            @Param("portfolios") Collection<String> portfolios,
+            @Param("from") Instant startDate,
+            @Param("to") Instant endDate);
+}
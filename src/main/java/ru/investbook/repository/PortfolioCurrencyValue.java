@@ -0,0 +1,36 @@
+/*
+ * InvestBook
+ * Copyright (C) 2020  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.repository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Cash or assets value selected by SQL query of {@link PortfolioCashRepository}
+ * or {@link PortfolioTotalAssetsRepository}.
+ *
+ * @param portfolio null, if value is summed for several portfolios
+ * @param timestamp time of value, max time if value is summed for several portfolios
+ */
+public record PortfolioCurrencyValue(String portfolio, Instant timestamp, String currency, BigDecimal value) {
+
+    public PortfolioCurrencyValue(String currency, Instant timestamp, BigDecimal value) {
+        this(null, timestamp, currency, value);
+    }
+}
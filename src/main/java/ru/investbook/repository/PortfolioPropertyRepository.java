@@ -19,74 +19,7 @@
 package ru.investbook.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
 import ru.investbook.entity.PortfolioPropertyEntity;
 
-import java.time.Instant;
-import java.util.Collection;
-import java.util.List;
-import java.util.Optional;
-
 public interface PortfolioPropertyRepository extends JpaRepository<PortfolioPropertyEntity, Integer> {
-
-    List<PortfolioPropertyEntity> findByPropertyInOrderByTimestampDesc(Collection<String> property);
-
-    Optional<PortfolioPropertyEntity> findFirstByPropertyOrderByTimestampDesc(String property);
-
-    Optional<PortfolioPropertyEntity> findFirstByPortfolioIdAndPropertyOrderByTimestampDesc(String portfolio,
-                                                                                            String property);
-
-    Optional<PortfolioPropertyEntity> findFirstByPortfolioIdAndPropertyAndTimestampBetweenOrderByTimestampDesc(String portfolio,
-                                                                                                               String property,
-                                                                                                               Instant startDate,
-                                                                                                               Instant endDate);
-
-    @Query(nativeQuery = true, value = """
-            SELECT *
-            FROM portfolio_property AS t1
-            WHERE property = :property 
-            AND timestamp = (
-                SELECT MAX(timestamp)
-                FROM portfolio_property AS t2
-                WHERE t1.portfolio = t2.portfolio
-                AND t2.property = :property 
-                AND t2.timestamp between :from AND :to
-            )
-            ORDER BY portfolio, timestamp DESC
-            """)
-    List<PortfolioPropertyEntity> findDistinctOnPortfolioIdByPropertyAndTimestampBetweenOrderByTimestampDesc(
-            @Param("property") String property,
-            @Param("from") Instant startDate,
-            @Param("to") Instant endDate);
-
-    @Query(nativeQuery = true, value = """
-            SELECT *
-            FROM portfolio_property AS t1
-            WHERE portfolio IN (:portfolios) 
-            AND property = :property 
-            AND timestamp = (
-                SELECT MAX(timestamp)
-                FROM portfolio_property AS t2
-                WHERE t1.portfolio = t2.portfolio
-                AND t2.property = :property 
-                AND t2.timestamp between :from AND :to
-            )
-            ORDER BY portfolio, timestamp DESC
-            """)
-    List<PortfolioPropertyEntity> findDistinctOnPortfolioIdByPortfolioIdInAndPropertyAndTimestampBetweenOrderByTimestampDesc(
-            @Param("portfolios") Collection<String> portfolios,
-            @Param("property") String property,
-            @Param("from") Instant startDate,
-            @Param("to") Instant endDate);
-
-    List<PortfolioPropertyEntity> findByPropertyInAndTimestampBetweenOrderByTimestampDesc(Collection<String> properties,
-                                                                                          Instant startDate,
-                                                                                          Instant endDate);
-
-    List<PortfolioPropertyEntity> findByPortfolioIdInAndPropertyInAndTimestampBetweenOrderByTimestampDesc(
-            Collection<String> portfolios,
-            Collection<String> properties,
-            Instant startDate,
-            Instant endDate);
 }
@@ -0,0 +1,96 @@
+/*
+ * InvestBook
+ * Copyright (C) 2020  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.investbook.entity.PortfolioTotalAssetsEntity;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * If both RUB and USD total assets are known for the same portfolio and timestamp, queries use RUB value only
+ */
+public interface PortfolioTotalAssetsRepository extends JpaRepository<PortfolioTotalAssetsEntity, Integer> {
+
+    List<PortfolioTotalAssetsEntity> findByOrderByTimestampDescPortfolioIdAscIdAsc();
+
+    /**
+     * Sums last known total assets of portfolios
+     */
+    @Query("""
+            SELECT new ru.investbook.repository.PortfolioCurrencyValue(a.currency, MAX(a.timestamp), SUM(a.value))
+            FROM PortfolioTotalAssetsEntity a
+            WHERE a.portfolio.id IN (:portfolios)
+            AND a.timestamp = (
+                SELECT MAX(a2.timestamp)
+                FROM PortfolioTotalAssetsEntity a2
+                WHERE a2.portfolio = a.portfolio
+            )
+            AND (a.currency = 'RUB' OR NOT EXISTS (
+                SELECT a3.id
+                FROM PortfolioTotalAssetsEntity a3
+                WHERE a3.portfolio = a.portfolio
+                AND a3.timestamp = a.timestamp
+                AND a3.currency = 'RUB'
+            ))
+            GROUP BY a.currency
+            """)
+    List<PortfolioCurrencyValue> sumLatestValueByPortfolioIdInGroupByCurrency(
+            @Param("portfolios") Collection<String> portfolios);
+
+    @Query("""
+            SELECT new ru.investbook.repository.PortfolioCurrencyValue(a.portfolio.id, a.timestamp, a.currency, a.value)
+            FROM PortfolioTotalAssetsEntity a
+            WHERE a.timestamp BETWEEN :from AND :to
+            AND (a.currency = 'RUB' OR NOT EXISTS (
+                SELECT a3.id
+                FROM PortfolioTotalAssetsEntity a3
+                WHERE a3.portfolio = a.portfolio
+                AND a3.timestamp = a.timestamp
+                AND a3.currency = 'RUB'
+            ))
+            ORDER BY a.timestamp, a.portfolio.id
+            """)
+    List<PortfolioCurrencyValue> findByTimestampBetweenOrderByTimestamp(
+            @Param("from") Instant startDate,
+            @Param("to") Instant endDate);
+
+    @Query("""
+            SELECT new ru.investbook.repository.PortfolioCurrencyValue(a.portfolio.id, a.timestamp, a.currency, a.value)
+            FROM PortfolioTotalAssetsEntity a
+            WHERE a.portfolio.id IN (:portfolios)
+            AND a.timestamp BETWEEN :from AND :to
+            AND (a.currency = 'RUB' OR NOT EXISTS (
+                SELECT a3.id
+                FROM PortfolioTotalAssetsEntity a3
+                WHERE a3.portfolio = a.portfolio
+                AND a3.timestamp = a.timestamp
+                AND a3.currency = 'RUB'
+            ))
+            ORDER BY a.timestamp, a.portfolio.id
+            """)
+    List<PortfolioCurrencyValue> findByPortfolioIdInAndTimestampBetweenOrderByTimestamp(
+            @Param("portfolios") Collection<String> portfolios,
+            @Param("from") Instant startDate,
+            @Param("to") Instant endDate);
+}
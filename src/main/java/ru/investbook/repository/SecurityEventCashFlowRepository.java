@@ -19,8 +19,11 @@
 package ru.investbook.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.investbook.entity.SecurityEventCashFlowEntity;
 
+import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
@@ -91,4 +94,44 @@ public interface SecurityEventCashFlowRepository extends JpaRepository<SecurityE
             Set<Integer> cashFlowType,
             Instant fromDate,
             Instant toDate);
-}
\ No newline at end of file
+
+    /**
+     * Return payments sum and last payment timestamp, grouped by security, payment type and currency,
+     * between date-time interval
+     */
+    @Query("SELECT e.security.id AS security, e.cashFlowType.id AS cashFlowType, e.currency AS currency, " +
+            "sum(e.value) AS value, max(e.timestamp) AS timestamp " +
+            "FROM SecurityEventCashFlowEntity e " +
+            "WHERE e.portfolio.id IN (:portfolios) " +
+            "AND e.timestamp between :from AND :to " +
+            "GROUP BY e.security.id, e.cashFlowType.id, e.currency")
+    List<SecurityEventCashFlowAggregate> aggregateByPortfolioIdInAndTimestampBetween(
+            @Param("portfolios") Collection<String> portfolios,
+            @Param("from") Instant fromDate,
+            @Param("to") Instant toDate);
+
+    /**
+     * Return payments sum and last payment timestamp, grouped by security, payment type and currency,
+     * between date-time interval
+     */
+    @Query("SELECT e.security.id AS security, e.cashFlowType.id AS cashFlowType, e.currency AS currency, " +
+            "sum(e.value) AS value, max(e.timestamp) AS timestamp " +
+            "FROM SecurityEventCashFlowEntity e " +
+            "WHERE e.timestamp between :from AND :to " +
+            "GROUP BY e.security.id, e.cashFlowType.id, e.currency")
+    List<SecurityEventCashFlowAggregate> aggregateByTimestampBetween(
+            @Param("from") Instant fromDate,
+            @Param("to") Instant toDate);
+
+    interface SecurityEventCashFlowAggregate {
+        String getSecurity();
+
+        Integer getCashFlowType();
+
+        String getCurrency();
+
+        BigDecimal getValue();
+
+        Instant getTimestamp();
+    }
+}
@@ -19,6 +19,10 @@
 package ru.investbook.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import ru.investbook.entity.SecurityQuoteEntity;
 
 import java.time.Instant;
@@ -29,9 +33,60 @@ public interface SecurityQuoteRepository extends JpaRepository<SecurityQuoteEnti
 
     List<SecurityQuoteEntity> findByOrderByTimestampDescSecurityAsc();
 
+    /**
+     * Native query, because derived query joins security table and filters by its id,
+     * so index (security, timestamp) of security_quote is not used
+     */
+    @Query(nativeQuery = true, value = """
+            SELECT *
+            FROM security_quote
+            WHERE security = :security
+            AND timestamp < :timestamp
+            ORDER BY timestamp DESC
+            LIMIT 1
+            """)
     Optional<SecurityQuoteEntity> findFirstBySecurityIdAndTimestampLessThanOrderByTimestampDesc(
-            String isin,
-            Instant date);
+            @Param("security") String isin,
+            @Param("timestamp") Instant date);
+
+    /**
+     * Returns last quote before date. Reads quote from security_latest_quote if it is before date,
+     * otherwise looks for quote in history
+     */
+    default Optional<SecurityQuoteEntity> findLatestBySecurityIdAndTimestampLessThan(String isin, Instant date) {
+        return findLatestBySecurityId(isin)
+                .filter(quote -> quote.getTimestamp().isBefore(date))
+                .or(() -> findFirstBySecurityIdAndTimestampLessThanOrderByTimestampDesc(isin, date));
+    }
 
     Optional<SecurityQuoteEntity> findFirstByOrderByTimestampDesc();
+
+    /**
+     * Returns quote with max timestamp from security_latest_quote
+     */
+    @Query(nativeQuery = true, value = """
+            SELECT q.*
+            FROM security_latest_quote AS l
+            JOIN security_quote AS q
+            ON l.quote_id = q.id
+            WHERE l.security = :security
+            """)
+    Optional<SecurityQuoteEntity> findLatestBySecurityId(@Param("security") String security);
+
+    /**
+     * Updates security_latest_quote by single statement, so concurrent calls don't fail on duplicate key.
+     * Should be called after security quote is inserted, updated or deleted.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query(nativeQuery = true, value = """
+            INSERT INTO security_latest_quote (security, quote_id)
+            SELECT security, id
+            FROM security_quote
+            WHERE security = :security
+            ORDER BY timestamp DESC
+            LIMIT 1
+            ON DUPLICATE KEY UPDATE quote_id = VALUES(quote_id)
+            """)
+    void refreshLatestQuote(@Param("security") String security);
 }
@@ -39,6 +39,13 @@ public interface TransactionCashFlowRepository extends JpaRepository<Transaction
                                                                                      String transactionId,
                                                                                      int cashFlowType);
 
+    /**
+     * Returns cash flows of transactions of any of portfolios. Result may contain cash flows of other
+     * portfolio transactions with the same id, caller should filter them out by portfolio and transaction id pair.
+     */
+    List<TransactionCashFlowEntity> findByPkPortfolioInAndPkTransactionIdIn(Collection<String> portfolios,
+                                                                          Collection<String> transactionIds);
+
     List<TransactionCashFlowEntity> findByPkPortfolioAndPkTransactionIdAndPkTypeIn(String portfolio,
                                                                                    String transactionId,
                                                                                    Set<Integer> cashFlowTypes);
@@ -41,11 +41,13 @@ public interface TransactionRepository extends JpaRepository<TransactionEntity,
     /**
      * Returns stock market share and bonds ISINs
      */
-    @Query(nativeQuery = true, value = "SELECT distinct security FROM transaction " +
-            "WHERE portfolio = :#{#portfolio.id} " +
-            "AND length(security) = 12 " +
-            "AND timestamp between :from AND :to " +
-            "ORDER BY timestamp DESC")
+    @Query(nativeQuery = true, value = "SELECT distinct t1.security FROM transaction as t1 " +
+            "JOIN security as t2 " +
+            "ON t1.security = t2.id " +
+            "AND t2.type = 'STOCK_OR_BOND' " +
+            "WHERE t1.portfolio = :#{#portfolio.id} " +
+            "AND t1.timestamp between :from AND :to " +
+            "ORDER BY t1.timestamp DESC")
     List<String> findDistinctSecurityByPortfolioAndTimestampBetweenOrderByTimestampDesc(
             @Param("portfolio") Portfolio portfolio,
             @Param("from") Instant fromDate,
@@ -54,11 +56,13 @@ public interface TransactionRepository extends JpaRepository<TransactionEntity,
     /**
      * Returns stock market share and bonds ISINs
      */
-    @Query(nativeQuery = true, value = "SELECT DISTINCT security FROM transaction as t1 " +
+    @Query(nativeQuery = true, value = "SELECT DISTINCT t1.security FROM transaction as t1 " +
+            "JOIN security as t3 " +
+            "ON t1.security = t3.id " +
+            "AND t3.type = 'STOCK_OR_BOND' " +
             "JOIN transaction_cash_flow as t2 " +
             "ON t1.id = t2.transaction_id " +
             "AND t1.portfolio IN (:portfolios) " +
-            "AND length(security) = 12 " +
             "AND t2.type = 1 " +
             "AND t2.currency = :currency " +
             "AND timestamp between :from AND :to " +
@@ -72,10 +76,12 @@ public interface TransactionRepository extends JpaRepository<TransactionEntity,
     /**
      * Returns stock market share and bonds ISINs
      */
-    @Query(nativeQuery = true, value = "SELECT DISTINCT security FROM transaction as t1 " +
+    @Query(nativeQuery = true, value = "SELECT DISTINCT t1.security FROM transaction as t1 " +
+            "JOIN security as t3 " +
+            "ON t1.security = t3.id " +
+            "AND t3.type = 'STOCK_OR_BOND' " +
             "JOIN transaction_cash_flow as t2 " +
             "ON t1.id = t2.transaction_id " +
-            "AND length(security) = 12 " +
             "AND t2.type = 1 " +
             "AND t2.currency = :currency " +
             "AND timestamp between :from AND :to " +
@@ -88,12 +94,13 @@ public interface TransactionRepository extends JpaRepository<TransactionEntity,
     /**
      * Returns derivatives market contracts
      */
-    @Query(nativeQuery = true, value = "SELECT distinct security FROM transaction " +
-            "WHERE portfolio IN (:portfolios) " +
-            "AND length(security) <> 12 " +
-            "AND security NOT LIKE '______\\_%' " +
-            "AND timestamp between :from AND :to " +
-            "ORDER BY timestamp DESC")
+    @Query(nativeQuery = true, value = "SELECT distinct t1.security FROM transaction as t1 " +
+            "JOIN security as t2 " +
+            "ON t1.security = t2.id " +
+            "AND t2.type = 'DERIVATIVE' " +
+            "WHERE t1.portfolio IN (:portfolios) " +
+            "AND t1.timestamp between :from AND :to " +
+            "ORDER BY t1.timestamp DESC")
     List<String> findDistinctDerivativeByPortfolioInAndTimestampBetweenOrderByTimestampDesc(
             @Param("portfolios") Collection<String> portfolios,
             @Param("from") Instant fromDate,
@@ -102,11 +109,12 @@ public interface TransactionRepository extends JpaRepository<TransactionEntity,
     /**
      * Returns derivatives market contracts
      */
-    @Query(nativeQuery = true, value = "SELECT distinct security FROM transaction " +
-            "WHERE length(security) <> 12 " +
-            "AND security NOT LIKE '______\\_%' " +
-            "AND timestamp between :from AND :to " +
-            "ORDER BY timestamp DESC")
+    @Query(nativeQuery = true, value = "SELECT distinct t1.security FROM transaction as t1 " +
+            "JOIN security as t2 " +
+            "ON t1.security = t2.id " +
+            "AND t2.type = 'DERIVATIVE' " +
+            "WHERE t1.timestamp between :from AND :to " +
+            "ORDER BY t1.timestamp DESC")
     List<String> findDistinctDerivativeByTimestampBetweenOrderByTimestampDesc(
             @Param("from") Instant fromDate,
             @Param("to") Instant toDate);
@@ -114,12 +122,13 @@ public interface TransactionRepository extends JpaRepository<TransactionEntity,
     /**
      * Returns foreign exchange market contracts (in USDRUB_TOD, USDRUB_TOM, USDRUB_CNGD format)
      */
-    @Query(nativeQuery = true, value = "SELECT distinct security FROM transaction " +
-            "WHERE portfolio IN (:portfolios) " +
-            "AND length(security) <> 12 " +
-            "AND security LIKE '______\\_%' " +
-            "AND timestamp between :from AND :to " +
-            "ORDER BY timestamp DESC")
+    @Query(nativeQuery = true, value = "SELECT distinct t1.security FROM transaction as t1 " +
+            "JOIN security as t2 " +
+            "ON t1.security = t2.id " +
+            "AND t2.type = 'CURRENCY_PAIR' " +
+            "WHERE t1.portfolio IN (:portfolios) " +
+            "AND t1.timestamp between :from AND :to " +
+            "ORDER BY t1.timestamp DESC")
     List<String> findDistinctFxContractByPortfolioInAndTimestampBetweenOrderByTimestampDesc(
             @Param("portfolios") Collection<String> portfolios,
             @Param("from") Instant fromDate,
@@ -128,11 +137,12 @@ public interface TransactionRepository extends JpaRepository<TransactionEntity,
     /**
      * Returns foreign exchange market contracts (in USDRUB_TOD, USDRUB_TOM, USDRUB_CNGD format)
      */
-    @Query(nativeQuery = true, value = "SELECT distinct security FROM transaction " +
-            "WHERE length(security) <> 12 " +
-            "AND security LIKE '______\\_%' " +
-            "AND timestamp between :from AND :to " +
-            "ORDER BY timestamp DESC")
+    @Query(nativeQuery = true, value = "SELECT distinct t1.security FROM transaction as t1 " +
+            "JOIN security as t2 " +
+            "ON t1.security = t2.id " +
+            "AND t2.type = 'CURRENCY_PAIR' " +
+            "WHERE t1.timestamp between :from AND :to " +
+            "ORDER BY t1.timestamp DESC")
     List<String> findDistinctFxContractByTimestampBetweenOrderByTimestampDesc(
             @Param("from") Instant fromDate,
             @Param("to") Instant toDate);
@@ -175,12 +185,13 @@ public interface TransactionRepository extends JpaRepository<TransactionEntity,
     /**
      * Returns foreign exchange market contracts (in USDRUB_TOD, USDRUB_TOM, USDRUB_CNGD format)
      */
-    @Query(nativeQuery = true, value = "SELECT DISTINCT security FROM transaction as t1 " +
+    @Query(nativeQuery = true, value = "SELECT DISTINCT t1.security FROM transaction as t1 " +
+            "JOIN security as t3 " +
+            "ON t1.security = t3.id " +
+            "AND t3.type = 'CURRENCY_PAIR' " +
             "JOIN transaction_cash_flow as t2 " +
             "ON t1.id = t2.transaction_id " +
             "AND t1.portfolio IN (:portfolios) " +
-            "AND length(security) <> 12 " +
-            "AND security LIKE '______\\_%' " +
             "AND t2.type = 1 " +
             "AND t2.currency = :currency " +
             "AND timestamp between :from AND :to " +
@@ -194,11 +205,12 @@ public interface TransactionRepository extends JpaRepository<TransactionEntity,
     /**
      * Returns foreign exchange market contracts (in USDRUB_TOD, USDRUB_TOM, USDRUB_CNGD format)
      */
-    @Query(nativeQuery = true, value = "SELECT DISTINCT security FROM transaction as t1 " +
+    @Query(nativeQuery = true, value = "SELECT DISTINCT t1.security FROM transaction as t1 " +
+            "JOIN security as t3 " +
+            "ON t1.security = t3.id " +
+            "AND t3.type = 'CURRENCY_PAIR' " +
             "JOIN transaction_cash_flow as t2 " +
             "ON t1.id = t2.transaction_id " +
-            "AND length(security) <> 12 " +
-            "AND security LIKE '______\\_%' " +
             "AND t2.type = 1 " +
             "AND t2.currency = :currency " +
             "AND timestamp between :from AND :to " +
@@ -19,32 +19,27 @@
 package ru.investbook.service;
 
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import org.spacious_team.broker.pojo.PortfolioCash;
-import org.spacious_team.broker.pojo.PortfolioPropertyType;
 import org.springframework.stereotype.Service;
 import ru.investbook.entity.PortfolioEntity;
-import ru.investbook.entity.PortfolioPropertyEntity;
 import ru.investbook.report.ForeignExchangeRateService;
-import ru.investbook.repository.PortfolioPropertyRepository;
+import ru.investbook.repository.PortfolioCashRepository;
+import ru.investbook.repository.PortfolioCurrencyValue;
 import ru.investbook.repository.PortfolioRepository;
+import ru.investbook.repository.PortfolioTotalAssetsRepository;
 
 import java.math.BigDecimal;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-import static java.util.stream.Collectors.*;
 import static ru.investbook.report.ForeignExchangeRateService.RUB;
 
 @Service
 @RequiredArgsConstructor
-@Slf4j
 public class AssetsAndCashService {
-    private final PortfolioPropertyRepository portfolioPropertyRepository;
+    private final PortfolioTotalAssetsRepository portfolioTotalAssetsRepository;
+    private final PortfolioCashRepository portfolioCashRepository;
     private final ForeignExchangeRateService foreignExchangeRateService;
     private final PortfolioRepository portfolioRepository;
 
@@ -56,68 +51,29 @@ public class AssetsAndCashService {
     }
 
     public Optional<BigDecimal> getAssets(Collection<String> portfolios) {
-        Collection<BigDecimal> portfolioAssets = portfolios.stream()
-                .map(portfolio -> portfolioPropertyRepository.findFirstByPortfolioIdAndPropertyOrderByTimestampDesc(
-                        portfolio, PortfolioPropertyType.TOTAL_ASSETS_RUB.name())) // TODO sum with TOTAL_ASSETS_USD
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .map(AssetsAndCashService::parseTotalAssetsIfCan)
-                .collect(toList());
-        if (portfolioAssets.isEmpty()) {
+        if (portfolios.isEmpty()) {
             return Optional.empty();
         }
-        return Optional.of(portfolioAssets.stream()
-                .reduce(BigDecimal.ZERO, BigDecimal::add));
-
-    }
-
-    private static BigDecimal parseTotalAssetsIfCan(PortfolioPropertyEntity entity) {
-        try {
-            return BigDecimal.valueOf(
-                    Double.parseDouble(
-                            entity.getValue()));
-        } catch (Exception e) {
-            log.error("Значение должно содержать число, сохранено {}", entity);
-            return BigDecimal.ZERO;
-        }
+        List<PortfolioCurrencyValue> portfolioAssets = portfolioTotalAssetsRepository
+                .sumLatestValueByPortfolioIdInGroupByCurrency(portfolios);
+        return sumInRub(portfolioAssets);
     }
 
     public Optional<BigDecimal> getTotalCash(Collection<String> portfolios) {
-        Collection<BigDecimal> portfolioCashes = portfolios.stream()
-                .map(portfolio -> portfolioPropertyRepository.findFirstByPortfolioIdAndPropertyOrderByTimestampDesc(
-                        portfolio, PortfolioPropertyType.CASH.name()))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .map(AssetsAndCashService::groupByCurrency)
-                .map(this::convertToRubAndSum)
-                .collect(toList());
-        if (portfolioCashes.isEmpty()) {
+        if (portfolios.isEmpty()) {
             return Optional.empty();
         }
-        return Optional.of(portfolioCashes.stream()
-                .reduce(BigDecimal.ZERO, BigDecimal::add));
+        List<PortfolioCurrencyValue> portfolioCashes = portfolioCashRepository
+                .sumLatestValueByPortfolioIdInGroupByCurrency(portfolios);
+        return sumInRub(portfolioCashes);
     }
 
-    /**
-     * Returns summed cash values
-     */
-    // currency -> value
-    private static Map<String, BigDecimal> groupByCurrency(PortfolioPropertyEntity e) {
-        try {
-            return PortfolioCash.deserialize(e.getValue())
-                    .stream()
-                    .collect(groupingBy(PortfolioCash::getCurrency,
-                            reducing(BigDecimal.ZERO, PortfolioCash::getValue, BigDecimal::add)));
-        } catch (Exception ex) {
-            log.warn("Ошибка при десериализации свойства: {}", e.getValue(), ex);
-            return Collections.emptyMap();
+    private Optional<BigDecimal> sumInRub(Collection<PortfolioCurrencyValue> values) {
+        if (values.isEmpty()) {
+            return Optional.empty();
         }
-    }
-
-    private BigDecimal convertToRubAndSum(Map<String, BigDecimal> values) {
-        return values.entrySet()
-                .stream()
-                .map(e -> foreignExchangeRateService.convertValueToCurrency(e.getValue(), e.getKey(), RUB))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return Optional.of(values.stream()
+                .map(v -> foreignExchangeRateService.convertValueToCurrency(v.value(), v.currency(), RUB))
+                .reduce(BigDecimal.ZERO, BigDecimal::add));
     }
 }
@@ -43,9 +43,11 @@ import java.io.IOException;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -65,6 +67,7 @@ public class CbrForeignExchangeRateService {
             "CHF", "R01775");
     private final ForeignExchangeRateRepository foreignExchangeRateRepository;
     private final ForeignExchangeRateConverter foreignExchangeRateConverter;
+    private final ForeignExchangeRateService foreignExchangeRateService;
     private final RestTemplate restTemplate;
 
     @Transactional
@@ -72,15 +75,25 @@ public class CbrForeignExchangeRateService {
     public void updateFrom(LocalDate fromDate) {
         long t0 = System.nanoTime();
         String formattedFromDate = fromDate.format(dateTimeFormatter);
-        new ForkJoinPool(currencyParamValues.size())
-                .submit(() -> currencyParamValues.entrySet()
-                        .parallelStream()
-                        .forEach(e -> updateCurrencyRate(formattedFromDate, e)))
-                .get();
+        List<ForeignExchangeRate> savedRates;
+        try {
+            savedRates = new ForkJoinPool(currencyParamValues.size())
+                    .submit(() -> currencyParamValues.entrySet()
+                            .parallelStream()
+                            .map(e -> updateCurrencyRate(formattedFromDate, e))
+                            .flatMap(List::stream)
+                            .collect(Collectors.toList()))
+                    .get();
+        } catch (Exception e) {
+            foreignExchangeRateService.invalidateCache(); // rates of other currencies may be saved
+            throw e;
+        }
+        // rates are saved on pool threads, each by its own repository transaction, so they are already committed
+        foreignExchangeRateService.updateCache(savedRates);
         log.info("Курсы валют обновлены за {}", Duration.ofNanos(System.nanoTime() - t0));
     }
 
-    private void updateCurrencyRate(String formattedFromDate, Map.Entry<String, ?> e) {
+    private List<ForeignExchangeRate> updateCurrencyRate(String formattedFromDate, Map.Entry<String, ?> e) {
         try {
             long t0 = System.nanoTime();
             String currency = e.getKey();
@@ -89,21 +102,23 @@ public class CbrForeignExchangeRateService {
                     uri,
                     Resource.class,
                     Map.of("currency", e.getValue(), "from-date", formattedFromDate));
-            updateBy(resource, currencyPair);
+            List<ForeignExchangeRate> savedRates = updateBy(resource, currencyPair);
             log.info("Курс {} обновлен за {}", currencyPair, Duration.ofNanos(System.nanoTime() - t0));
+            return savedRates;
         } catch (Exception ex) {
             throw new RuntimeException("Не смог обновить курсы валют", ex);
         }
     }
 
-    private void updateBy(Resource resource, String currencyPair) throws IOException {
+    private List<ForeignExchangeRate> updateBy(Resource resource, String currencyPair) throws IOException {
         Objects.requireNonNull(resource, () -> "Не удалось скачать курсы валют");
         Workbook book = new XSSFWorkbook(resource.getInputStream());
-        new ExcelSheet(book.getSheetAt(0))
+        return new ExcelSheet(book.getSheetAt(0))
                 .createNameless("data", TableHeader.class)
                 .stream()
                 .map(row -> getRate(row, currencyPair))
-                .forEach(this::save);
+                .filter(this::save)
+                .collect(Collectors.toList());
     }
 
     private static ForeignExchangeRate getRate(TableRow row, String currencyPair) {
@@ -114,12 +129,14 @@ public class CbrForeignExchangeRateService {
                 .build();
     }
 
-    private void save(ForeignExchangeRate fxRate) {
+    private boolean save(ForeignExchangeRate fxRate) {
         try {
             ForeignExchangeRateEntity entity = foreignExchangeRateConverter.toEntity(fxRate);
             foreignExchangeRateRepository.save(entity);
+            return true;
         } catch (Exception e) {
             log.debug("Ошибка сохранения {}, может быть запись уже существует?", fxRate);
+            return false;
         }
     }
 
@@ -19,12 +19,13 @@
 package ru.investbook.service;
 
 import org.spacious_team.broker.pojo.CashFlowType;
-import org.spacious_team.broker.pojo.PortfolioProperty;
 import org.spacious_team.broker.pojo.Security;
 import org.spacious_team.broker.pojo.SecurityQuote;
 import org.spacious_team.broker.pojo.Transaction;
 import ru.investbook.report.FifoPositions;
+import ru.investbook.report.SecurityEventCashFlowSummary;
 import ru.investbook.report.ViewFilter;
+import ru.investbook.repository.PortfolioCurrencyValue;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -54,14 +55,28 @@ public interface SecurityProfitService {
 
     BigDecimal getTotal(Deque<Transaction> transactions, CashFlowType type, String toCurrency);
 
+    /**
+     * Same as {@link #getTotal(Deque, CashFlowType, String)} for positions transactions, but without database queries
+     */
+    BigDecimal getTotal(FifoPositions positions, CashFlowType type, String toCurrency);
+
     BigDecimal sumPaymentsForType(Collection<String> portfolios, Security security, CashFlowType cashFlowType, String toCurrency);
 
+    /**
+     * Returns all portfolios securities payments summary by one query
+     */
+    SecurityEventCashFlowSummary getSecurityEventCashFlowSummary(Collection<String> portfolios, ViewFilter filter);
+
+    /**
+     * Same as {@link #sumPaymentsForType(Collection, Security, CashFlowType, String)}, but without database queries
+     */
+    BigDecimal sumPaymentsForType(SecurityEventCashFlowSummary summary, Security security, CashFlowType cashFlowType, String toCurrency);
+
     SecurityQuote getSecurityQuote(Security security, String toCurrency, ViewFilter filter);
 
     /**
-     * Возвращает для портфеля последний известный остаток денежных средств соответствующей дате, не позже указанной.
-     * Если портфель не указан, возвращает для всех портфелей сумму последних известных остатков денежных средств
-     * соответствующих дате, не позже указанной.
+     * Возвращает по каждой валюте сумму последних известных остатков денежных средств портфелей, соответствующих дате,
+     * не позже указанной. Если портфели не указаны, суммирует остатки всех портфелей.
      */
-    Collection<PortfolioProperty> getPortfolioCash(Collection<String> portfolios, Instant atInstant);
+    Collection<PortfolioCurrencyValue> getPortfolioCash(Collection<String> portfolios, Instant atInstant);
 }
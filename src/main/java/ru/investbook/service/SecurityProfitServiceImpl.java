@@ -20,23 +20,22 @@ package ru.investbook.service;
 
 import lombok.RequiredArgsConstructor;
 import org.spacious_team.broker.pojo.CashFlowType;
-import org.spacious_team.broker.pojo.PortfolioProperty;
-import org.spacious_team.broker.pojo.PortfolioPropertyType;
 import org.spacious_team.broker.pojo.Security;
 import org.spacious_team.broker.pojo.SecurityQuote;
 import org.spacious_team.broker.pojo.SecurityType;
 import org.spacious_team.broker.pojo.Transaction;
 import org.springframework.stereotype.Service;
-import ru.investbook.converter.PortfolioPropertyConverter;
 import ru.investbook.converter.SecurityQuoteConverter;
-import ru.investbook.entity.PortfolioPropertyEntity;
 import ru.investbook.entity.SecurityEventCashFlowEntity;
 import ru.investbook.report.ClosedPosition;
 import ru.investbook.report.FifoPositions;
 import ru.investbook.report.ForeignExchangeRateService;
 import ru.investbook.report.OpenedPosition;
+import ru.investbook.report.SecurityEventCashFlowSummary;
+import ru.investbook.report.TransactionCashFlows;
 import ru.investbook.report.ViewFilter;
-import ru.investbook.repository.PortfolioPropertyRepository;
+import ru.investbook.repository.PortfolioCashRepository;
+import ru.investbook.repository.PortfolioCurrencyValue;
 import ru.investbook.repository.SecurityEventCashFlowRepository;
 import ru.investbook.repository.SecurityQuoteRepository;
 import ru.investbook.repository.TransactionCashFlowRepository;
@@ -51,7 +50,6 @@ import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import static org.spacious_team.broker.pojo.SecurityType.*;
 import static org.springframework.util.StringUtils.hasLength;
@@ -64,8 +62,7 @@ public class SecurityProfitServiceImpl implements SecurityProfitService {
     private final SecurityEventCashFlowRepository securityEventCashFlowRepository;
     private final SecurityQuoteRepository securityQuoteRepository;
     private final SecurityQuoteConverter securityQuoteConverter;
-    private final PortfolioPropertyRepository portfolioPropertyRepository;
-    private final PortfolioPropertyConverter portfolioPropertyConverter;
+    private final PortfolioCashRepository portfolioCashRepository;
     private final ForeignExchangeRateService foreignExchangeRateService;
 
     @Override
@@ -96,8 +93,8 @@ public class SecurityProfitServiceImpl implements SecurityProfitService {
         SecurityType securityType = getSecurityType(security);
         return switch (securityType) {
             case STOCK_OR_BOND -> getStockOrBondPurchaseCost(positions, toCurrency);
-            case DERIVATIVE -> getTotal(positions.getTransactions(), CashFlowType.DERIVATIVE_PRICE, toCurrency);
-            case CURRENCY_PAIR -> getTotal(positions.getTransactions(), CashFlowType.PRICE, toCurrency);
+            case DERIVATIVE -> getTotal(positions, CashFlowType.DERIVATIVE_PRICE, toCurrency);
+            case CURRENCY_PAIR -> getTotal(positions, CashFlowType.PRICE, toCurrency);
         };
     }
 
@@ -106,18 +103,19 @@ public class SecurityProfitServiceImpl implements SecurityProfitService {
      * продажи, если ЦБ введена на счет
      */
     private BigDecimal getStockOrBondPurchaseCost(FifoPositions positions, String toCurrency) {
+        TransactionCashFlows cashFlows = positions.getTransactionCashFlows();
         BigDecimal purchaseCost = positions.getOpenedPositions()
                 .stream()
-                .map(openPosition -> getTransactionValue(openPosition.getOpenTransaction(), CashFlowType.PRICE, toCurrency)
+                .map(openPosition -> getTransactionValue(cashFlows, openPosition.getOpenTransaction(), CashFlowType.PRICE, toCurrency)
                         .map(value -> value.multiply(getOpenAmountMultiplier(openPosition))))
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .reduce(BigDecimal.ZERO, BigDecimal::add); // если ценная бумага не вводилась на счет, а была куплена (есть цена покупки)
         for (ClosedPosition closedPosition : positions.getClosedPositions()) {
-            BigDecimal openPrice = getTransactionValue(closedPosition.getOpenTransaction(), CashFlowType.PRICE, toCurrency)
+            BigDecimal openPrice = getTransactionValue(cashFlows, closedPosition.getOpenTransaction(), CashFlowType.PRICE, toCurrency)
                     .map(value -> value.multiply(getOpenAmountMultiplier(closedPosition)))
                     .orElse(null);
-            BigDecimal closePrice = getTransactionValue(closedPosition.getCloseTransaction(), CashFlowType.PRICE, toCurrency)
+            BigDecimal closePrice = getTransactionValue(cashFlows, closedPosition.getCloseTransaction(), CashFlowType.PRICE, toCurrency)
                     .map(value -> value.multiply(getClosedAmountMultiplier(closedPosition)))
                     // redemption closing price will be taken into account later
                     .orElseGet(() -> (closedPosition.getClosingEvent() == CashFlowType.REDEMPTION) ? BigDecimal.ZERO : null);
@@ -137,7 +135,7 @@ public class SecurityProfitServiceImpl implements SecurityProfitService {
     @Override
     public BigDecimal getPurchaseAccruedInterest(Security security, FifoPositions positions, String toCurrency) {
         if (getSecurityType(security) == STOCK_OR_BOND) {
-            return getTotal(positions.getTransactions(), CashFlowType.ACCRUED_INTEREST, toCurrency);
+            return getTotal(positions, CashFlowType.ACCRUED_INTEREST, toCurrency);
         }
         return BigDecimal.ZERO;
     }
@@ -152,6 +150,18 @@ public class SecurityProfitServiceImpl implements SecurityProfitService {
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
     }
 
+    @Override
+    public BigDecimal getTotal(FifoPositions positions, CashFlowType type, String toCurrency) {
+        TransactionCashFlows cashFlows = positions.getTransactionCashFlows();
+        return positions.getTransactions()
+                .stream()
+                .filter(t -> t.getId() != null && t.getCount() != 0)
+                .map(t -> getTransactionValue(cashFlows, t, type, toCurrency))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
     private Optional<BigDecimal> getTransactionValue(Transaction t, CashFlowType type, String toCurrency) {
         if (t.getId() == null) { // redemption
             return Optional.empty();
@@ -161,6 +171,12 @@ public class SecurityProfitServiceImpl implements SecurityProfitService {
                 .map(entity -> convertToCurrency(entity.getValue(), entity.getCurrency(), toCurrency));
     }
 
+    private Optional<BigDecimal> getTransactionValue(TransactionCashFlows cashFlows, Transaction t,
+                                                     CashFlowType type, String toCurrency) {
+        return cashFlows.get(t, type) // empty for redemption
+                .map(cash -> convertToCurrency(cash.getValue(), cash.getCurrency(), toCurrency));
+    }
+
     private BigDecimal getOpenAmountMultiplier(OpenedPosition openedPosition) {
         int positionCount = Math.abs(openedPosition.getCount());
         int transactionCount = Math.abs(openedPosition.getOpenTransaction().getCount());
@@ -191,6 +207,25 @@ public class SecurityProfitServiceImpl implements SecurityProfitService {
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
     }
 
+    @Override
+    public SecurityEventCashFlowSummary getSecurityEventCashFlowSummary(Collection<String> portfolios, ViewFilter filter) {
+        return new SecurityEventCashFlowSummary(portfolios.isEmpty() ?
+                securityEventCashFlowRepository
+                        .aggregateByTimestampBetween(filter.getFromDate(), filter.getToDate()) :
+                securityEventCashFlowRepository
+                        .aggregateByPortfolioIdInAndTimestampBetween(portfolios, filter.getFromDate(), filter.getToDate()));
+    }
+
+    @Override
+    public BigDecimal sumPaymentsForType(SecurityEventCashFlowSummary summary, Security security,
+                                         CashFlowType cashFlowType, String toCurrency) {
+        return summary.getPayments(security.getId(), cashFlowType)
+                .entrySet()
+                .stream()
+                .map(e -> convertToCurrency(e.getValue(), e.getKey(), toCurrency))
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
     private List<SecurityEventCashFlowEntity> getSecurityEventCashFlowEntities(Collection<String> portfolios,
                                                                                Security security,
                                                                               CashFlowType cashFlowType) {
@@ -226,7 +261,7 @@ public class SecurityProfitServiceImpl implements SecurityProfitService {
                     .build();
         }
         return securityQuoteRepository
-                .findFirstBySecurityIdAndTimestampLessThanOrderByTimestampDesc(security.getId(), filter.getToDate())
+                .findLatestBySecurityIdAndTimestampLessThan(security.getId(), filter.getToDate())
                 .map(securityQuoteConverter::fromEntity)
                 .map(_quote -> foreignExchangeRateService.convertQuoteToCurrency(_quote, toCurrency))
                 .map(_quote -> hasLength(_quote.getCurrency()) ? _quote : _quote.toBuilder()
@@ -236,22 +271,17 @@ public class SecurityProfitServiceImpl implements SecurityProfitService {
     }
 
     @Override
-    public Collection<PortfolioProperty> getPortfolioCash(Collection<String> portfolios, Instant atInstant) {
-        List<PortfolioPropertyEntity> entities = portfolios.isEmpty() ?
-                portfolioPropertyRepository
-                        .findDistinctOnPortfolioIdByPropertyAndTimestampBetweenOrderByTimestampDesc(
-                                PortfolioPropertyType.CASH.name(),
+    public Collection<PortfolioCurrencyValue> getPortfolioCash(Collection<String> portfolios, Instant atInstant) {
+        return portfolios.isEmpty() ?
+                portfolioCashRepository
+                        .sumLatestValueByTimestampBetweenGroupByCurrency(
                                 Instant.ofEpochSecond(0),
                                 atInstant) :
-                portfolioPropertyRepository
-                        .findDistinctOnPortfolioIdByPortfolioIdInAndPropertyAndTimestampBetweenOrderByTimestampDesc(
+                portfolioCashRepository
+                        .sumLatestValueByPortfolioIdInAndTimestampBetweenGroupByCurrency(
                                 portfolios,
-                                PortfolioPropertyType.CASH.name(),
                                 Instant.ofEpochSecond(0),
                                 atInstant);
-        return entities.stream()
-                .map(portfolioPropertyConverter::fromEntity)
-                .collect(Collectors.toList());
     }
 
     private BigDecimal convertToCurrency(BigDecimal value, String fromCurrency, String toCurrency) {
@@ -69,6 +69,7 @@ public class MoexIssSecurityQuoteService {
                     .security(securityId)
                     .build();
             securityQuoteRepository.save(securityQuoteConverter.toEntity(quote));
+            securityQuoteRepository.refreshLatestQuote(securityId);
         } catch (Exception e) {
             if (isUniqIndexViolationException(e)) {
                 log.debug("Дублирование информации о котировке {}", quote);
@@ -30,12 +30,15 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 import ru.investbook.parser.BrokerReportParserService;
+import ru.investbook.parser.ReportImportScheduler;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static org.springframework.util.StringUtils.hasLength;
 import static ru.investbook.web.ReportControllerHelper.errorPage;
@@ -49,6 +52,7 @@ public class BrokerFileReportController {
 
     private final Collection<BrokerReportFactory> brokerReportFactories;
     private final BrokerReportParserService brokerReportParserService;
+    private final ReportImportScheduler reportImportScheduler;
 
 
     @GetMapping
@@ -59,15 +63,27 @@ public class BrokerFileReportController {
 
     @PostMapping
     public ResponseEntity<String> uploadBrokerReports(@RequestParam("reports") MultipartFile[] reports,
-                                                      @RequestParam(name = "broker", required = false) String broker) {
-        Collection<Exception> exceptions = new ConcurrentLinkedQueue<>();
-        Arrays.stream(reports)
-                .parallel()
-                .filter(Objects::nonNull)
-                .filter(report -> !report.isEmpty())
-                .forEach(report -> {
-                    uploadReport(report, broker, exceptions);
-                });
+                                                      @RequestParam(name = "broker", required = false) String broker,
+                                                      @RequestParam(name = "forceReimport", defaultValue = "false")
+                                                              boolean forceReimport) {
+        List<Future<?>> uploads = new ArrayList<>(reports.length);
+        for (MultipartFile report : reports) {
+            if (report != null && !report.isEmpty()) {
+                uploads.add(reportImportScheduler.submit(() -> uploadReport(report, broker, forceReimport)));
+            }
+        }
+        Collection<Exception> exceptions = new ArrayList<>();
+        for (Future<?> upload : uploads) {
+            try {
+                upload.get();
+            } catch (ExecutionException e) {
+                exceptions.add((e.getCause() instanceof Exception) ? (Exception) e.getCause() : e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exceptions.add(e);
+                break;
+            }
+        }
         if (exceptions.isEmpty()) {
             return ok();
         } else {
@@ -75,12 +91,11 @@ public class BrokerFileReportController {
         }
     }
 
-    private void uploadReport(MultipartFile report, String broker, Collection<Exception> exceptions) {
+    private Void uploadReport(MultipartFile report, String broker, boolean forceReimport) throws IOException {
         try (InputStream inputStream = report.getInputStream()) { // creates new input stream
-            brokerReportParserService.parseReport(inputStream, report.getOriginalFilename(), broker);
-        } catch (Exception e) {
-            exceptions.add(e);
+            brokerReportParserService.parseReport(inputStream, report.getOriginalFilename(), broker, forceReimport);
         }
+        return null;
     }
 
     private ResponseEntity<String> ok() {
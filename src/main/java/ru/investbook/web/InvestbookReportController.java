@@ -20,6 +20,7 @@ package ru.investbook.web;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.http.ContentDisposition;
 import org.springframework.stereotype.Controller;
@@ -27,6 +28,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import ru.investbook.InvestbookProperties;
 import ru.investbook.report.ViewFilter;
 import ru.investbook.report.excel.ExcelView;
 import ru.investbook.repository.PortfolioRepository;
@@ -58,6 +60,7 @@ public class InvestbookReportController {
     private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd.MM.yyyy");
     private final PortfolioRepository portfolioRepository;
     private final ExcelView excelView;
+    private final InvestbookProperties properties;
     private volatile int expectedFileSize = 0xFFFF;
 
     @GetMapping("/select-period")
@@ -88,6 +91,9 @@ public class InvestbookReportController {
     private String sendExcelFile(ViewFilterModel viewFilterModel, HttpServletResponse response)
             throws IOException, InterruptedException, ExecutionException {
         ViewFilter viewFilter = ViewFilter.of(viewFilterModel, () -> getPortfolios(portfolioRepository));
+        if (properties.isReportStreaming()) {
+            return sendExcelFileByStreaming(viewFilter, response);
+        }
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream(expectedFileSize);
         try (XSSFWorkbook book = new XSSFWorkbook()) {
             excelView.writeTo(book, viewFilter);
@@ -100,6 +106,25 @@ public class InvestbookReportController {
         return fileName;
     }
 
+    /**
+     * All sheets are built before response header is sent, so error page is still shown if report can't be built
+     */
+    private String sendExcelFileByStreaming(ViewFilter viewFilter, HttpServletResponse response)
+            throws IOException, InterruptedException, ExecutionException {
+        SXSSFWorkbook book = new SXSSFWorkbook();
+        try {
+            book.setCompressTempFiles(true);
+            excelView.writeTo(book, viewFilter);
+            String fileName = getReportName(viewFilter);
+            sendSuccessHeader(response, fileName);
+            book.write(response.getOutputStream());
+            return fileName;
+        } finally {
+            book.dispose();
+            book.close();
+        }
+    }
+
     private String getReportName(ViewFilter filter) {
         LocalDate fromDate = LocalDate.ofInstant(filter.getFromDate(), systemDefault());
         LocalDate toDate = LocalDate.ofInstant(filter.getToDate(), systemDefault());
@@ -92,7 +92,6 @@ public class ForeignExchangeRateController {
 
     public String updateForeignExchangeRateFromCbr() {
         cbrForeignExchangeRateService.updateFrom(getFirstTransactionDate());
-        foreignExchangeRateService.invalidateCache();
         return "Официальные курсы обновлены по " + getLatestDateOfAllFxRateKnown() + " включительно";
     }
 
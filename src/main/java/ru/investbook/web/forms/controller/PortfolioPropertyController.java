@@ -60,7 +60,9 @@ public class PortfolioPropertyController {
 
     @GetMapping("/edit-form/cash")
     public String getCashEditForm(@RequestParam(name = "id", required = false) Integer id, Model model) {
-        PortfolioPropertyModel property = getPortfolioProperty(id, PortfolioPropertyCashModel::new);
+        PortfolioPropertyModel property = (id != null) ?
+                portfolioPropertyFormsService.getCashById(id).orElseGet(PortfolioPropertyCashModel::new) :
+                getPortfolioProperty(null, PortfolioPropertyCashModel::new);
         return getEditForm(model, property);
     }
 
@@ -119,4 +121,12 @@ public class PortfolioPropertyController {
         model.addAttribute("backLink", "/portfolio-properties");
         return "success";
     }
+
+    @GetMapping("/delete-cash")
+    public String deleteCash(@RequestParam(name = "id") Integer id, Model model) {
+        portfolioPropertyFormsService.deleteCash(id);
+        model.addAttribute("message", "Запись удалена");
+        model.addAttribute("backLink", "/portfolio-properties");
+        return "success";
+    }
 }
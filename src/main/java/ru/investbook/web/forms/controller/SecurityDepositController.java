@@ -25,9 +25,11 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import ru.investbook.converter.TransactionConverter;
 import ru.investbook.report.FifoPositionsFactory;
 import ru.investbook.repository.PortfolioRepository;
 import ru.investbook.repository.SecurityRepository;
+import ru.investbook.repository.TransactionRepository;
 import ru.investbook.web.forms.model.TransactionModel;
 import ru.investbook.web.forms.service.TransactionFormsService;
 
@@ -41,8 +43,11 @@ public class SecurityDepositController extends TransactionController{
 
     public SecurityDepositController(TransactionFormsService transactionFormsService,
                                      PortfolioRepository portfolioRepository, SecurityRepository securityRepository,
-                                     FifoPositionsFactory fifoPositionsFactory) {
-        super(transactionFormsService, portfolioRepository, securityRepository, fifoPositionsFactory);
+                                     FifoPositionsFactory fifoPositionsFactory,
+                                     TransactionRepository transactionRepository,
+                                     TransactionConverter transactionConverter) {
+        super(transactionFormsService, portfolioRepository, securityRepository, fifoPositionsFactory,
+                transactionRepository, transactionConverter);
     }
 
     @GetMapping
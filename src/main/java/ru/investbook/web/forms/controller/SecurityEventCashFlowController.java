@@ -19,6 +19,7 @@
 package ru.investbook.web.forms.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.spacious_team.broker.pojo.SecurityEventCashFlow;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -26,8 +27,10 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import ru.investbook.converter.SecurityEventCashFlowConverter;
 import ru.investbook.report.FifoPositionsFactory;
 import ru.investbook.repository.PortfolioRepository;
+import ru.investbook.repository.SecurityEventCashFlowRepository;
 import ru.investbook.repository.SecurityRepository;
 import ru.investbook.web.ControllerHelper;
 import ru.investbook.web.forms.model.SecurityEventCashFlowModel;
@@ -36,6 +39,7 @@ import ru.investbook.web.forms.service.SecurityEventCashFlowFormsService;
 import javax.annotation.PostConstruct;
 import javax.validation.Valid;
 import java.util.Collection;
+import java.util.Optional;
 
 @Controller
 @RequestMapping("/security-events")
@@ -45,6 +49,8 @@ public class SecurityEventCashFlowController {
     private final PortfolioRepository portfolioRepository;
     private final SecurityRepository securityRepository;
     private final FifoPositionsFactory fifoPositionsFactory;
+    private final SecurityEventCashFlowRepository securityEventCashFlowRepository;
+    private final SecurityEventCashFlowConverter securityEventCashFlowConverter;
     private volatile Collection<String> securities;
     private volatile Collection<String> portfolios;
     private volatile String selectedPortfolio;
@@ -83,17 +89,31 @@ public class SecurityEventCashFlowController {
     @PostMapping
     public String postSecurityEventCashFlow(@Valid @ModelAttribute("event") SecurityEventCashFlowModel event) {
         selectedPortfolio = event.getPortfolio();
+        // edited event may change security, date or type
+        Optional<SecurityEventCashFlow> storedEvent = Optional.ofNullable(event.getId())
+                .flatMap(this::findSecurityEventCashFlow);
         securityEventCashFlowFormsService.save(event);
-        fifoPositionsFactory.invalidateCache();
+        storedEvent.ifPresent(fifoPositionsFactory::invalidateCache);
+        findSecurityEventCashFlow(event.getId())
+                .ifPresent(fifoPositionsFactory::invalidateCache);
         return "security-events/view-single";
     }
 
     @GetMapping("/delete")
     public String delete(@RequestParam(name = "id") Integer id, Model model) {
+        Optional<SecurityEventCashFlow> storedEvent = findSecurityEventCashFlow(id);
         securityEventCashFlowFormsService.delete(id);
-        fifoPositionsFactory.invalidateCache();
+        storedEvent.ifPresent(fifoPositionsFactory::invalidateCache);
         model.addAttribute("message", "Запись удалена");
         model.addAttribute("backLink", "/security-events");
         return "success";
     }
+
+    /**
+     * @return stored event copy, managed entity is not returned because it is updated by following save
+     */
+    private Optional<SecurityEventCashFlow> findSecurityEventCashFlow(Integer id) {
+        return securityEventCashFlowRepository.findById(id)
+                .map(securityEventCashFlowConverter::fromEntity);
+    }
 }
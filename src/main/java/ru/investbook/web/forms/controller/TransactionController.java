@@ -19,6 +19,7 @@
 package ru.investbook.web.forms.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.spacious_team.broker.pojo.Transaction;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -26,9 +27,12 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import ru.investbook.converter.TransactionConverter;
+import ru.investbook.entity.TransactionEntityPK;
 import ru.investbook.report.FifoPositionsFactory;
 import ru.investbook.repository.PortfolioRepository;
 import ru.investbook.repository.SecurityRepository;
+import ru.investbook.repository.TransactionRepository;
 import ru.investbook.web.ControllerHelper;
 import ru.investbook.web.forms.model.TransactionModel;
 import ru.investbook.web.forms.service.TransactionFormsService;
@@ -37,6 +41,7 @@ import javax.annotation.PostConstruct;
 import javax.validation.Valid;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Controller
@@ -47,6 +52,8 @@ public class TransactionController {
     private final PortfolioRepository portfolioRepository;
     private final SecurityRepository securityRepository;
     private final FifoPositionsFactory fifoPositionsFactory;
+    private final TransactionRepository transactionRepository;
+    private final TransactionConverter transactionConverter;
     private volatile Collection<String> securities;
     private volatile Collection<String> portfolios;
     private volatile String selectedPortfolio;
@@ -96,8 +103,13 @@ public class TransactionController {
     @PostMapping
     public String postTransaction(@Valid @ModelAttribute("transaction") TransactionModel transaction) {
         selectedPortfolio = transaction.getPortfolio();
+        // edited transaction may change security or date
+        Optional<Transaction> storedTransaction =
+                findTransaction(transaction.getPortfolio(), transaction.getTransactionId());
         transactionFormsService.save(transaction);
-        fifoPositionsFactory.invalidateCache();
+        storedTransaction.ifPresent(fifoPositionsFactory::invalidateCache);
+        findTransaction(transaction.getPortfolio(), transaction.getTransactionId())
+                .ifPresent(fifoPositionsFactory::invalidateCache);
         return "transactions/view-single";
     }
 
@@ -112,7 +124,19 @@ public class TransactionController {
     }
 
     protected void doDelete(String portfolio, String transactionId) {
+        Optional<Transaction> storedTransaction = findTransaction(portfolio, transactionId);
         transactionFormsService.delete(portfolio, transactionId);
-        fifoPositionsFactory.invalidateCache();
+        storedTransaction.ifPresent(fifoPositionsFactory::invalidateCache);
+    }
+
+    /**
+     * @return stored transaction copy, managed entity is not returned because it is updated by following save
+     */
+    private Optional<Transaction> findTransaction(String portfolio, String transactionId) {
+        TransactionEntityPK pk = new TransactionEntityPK();
+        pk.setPortfolio(portfolio);
+        pk.setId(transactionId);
+        return transactionRepository.findById(pk)
+                .map(transactionConverter::fromEntity);
     }
 }
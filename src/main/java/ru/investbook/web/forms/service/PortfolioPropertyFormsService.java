@@ -19,82 +19,99 @@
 package ru.investbook.web.forms.service;
 
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
 import org.spacious_team.broker.pojo.Portfolio;
 import org.spacious_team.broker.pojo.PortfolioCash;
 import org.spacious_team.broker.pojo.PortfolioProperty;
-import org.spacious_team.broker.pojo.PortfolioPropertyType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.investbook.converter.PortfolioCashConverter;
 import ru.investbook.converter.PortfolioConverter;
-import ru.investbook.converter.PortfolioPropertyConverter;
-import ru.investbook.entity.PortfolioPropertyEntity;
-import ru.investbook.repository.PortfolioPropertyRepository;
+import ru.investbook.converter.PortfolioTotalAssetsConverter;
+import ru.investbook.entity.PortfolioCashEntity;
+import ru.investbook.entity.PortfolioTotalAssetsEntity;
+import ru.investbook.repository.PortfolioCashRepository;
 import ru.investbook.repository.PortfolioRepository;
+import ru.investbook.repository.PortfolioTotalAssetsRepository;
 import ru.investbook.web.forms.model.PortfolioPropertyCashModel;
 import ru.investbook.web.forms.model.PortfolioPropertyModel;
 import ru.investbook.web.forms.model.PortfolioPropertyTotalAssetsModel;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.reducing;
-import static org.spacious_team.broker.pojo.PortfolioPropertyType.*;
 
 @Service
-@Slf4j
 @RequiredArgsConstructor
 public class PortfolioPropertyFormsService implements FormsService<PortfolioPropertyModel> {
     private static final ZoneId zoneId = ZoneId.systemDefault();
-    private final PortfolioPropertyRepository portfolioPropertyRepository;
+    private final PortfolioTotalAssetsRepository portfolioTotalAssetsRepository;
     private final PortfolioRepository portfolioRepository;
-    private final PortfolioPropertyConverter portfolioPropertyConverter;
+    private final PortfolioTotalAssetsConverter portfolioTotalAssetsConverter;
     private final PortfolioConverter portfolioConverter;
-    private final Collection<String> properties = Set.of(TOTAL_ASSETS_RUB.name(), TOTAL_ASSETS_USD.name(), CASH.name());
+    private final PortfolioCashRepository portfolioCashRepository;
+    private final PortfolioCashConverter portfolioCashConverter;
 
     public Optional<PortfolioPropertyModel> getById(Integer id) {
-        return portfolioPropertyRepository.findById(id)
+        return portfolioTotalAssetsRepository.findById(id)
                 .map(this::toModel);
     }
 
+    /**
+     * @param id any row id of portfolio cash, cash of all currencies of the portfolio at the timestamp is returned
+     */
+    public Optional<PortfolioPropertyModel> getCashById(Integer id) {
+        return portfolioCashRepository.findById(id)
+                .map(e -> portfolioCashRepository.findByPortfolioIdAndTimestamp(
+                        e.getPortfolio().getId(), e.getTimestamp()))
+                .map(this::toCashModel);
+    }
+
     @Override
     public List<PortfolioPropertyModel> getAll() {
-        return portfolioPropertyRepository.findByPropertyInOrderByTimestampDesc(properties)
+        List<PortfolioPropertyModel> models = portfolioTotalAssetsRepository
+                .findByOrderByTimestampDescPortfolioIdAscIdAsc()
                 .stream()
                 .map(this::toModel)
-                .collect(Collectors.toList());
+                .collect(Collectors.toCollection(ArrayList::new));
+        portfolioCashRepository.findByOrderByTimestampDescPortfolioIdAscIdAsc()
+                .stream()
+                .collect(groupingBy(e -> new PortfolioCashKey(e.getPortfolio().getId(), e.getTimestamp()),
+                        LinkedHashMap::new,
+                        Collectors.toList()))
+                .values()
+                .forEach(cash -> models.add(toCashModel(cash)));
+        models.sort(Comparator.comparing(PortfolioPropertyModel::getDate).reversed());
+        return models;
     }
 
+    /**
+     * Cash of edited portfolio and date is replaced in one transaction
+     */
     @Override
+    @Transactional
     public void save(PortfolioPropertyModel m) {
         saveAndFlush(m.getPortfolio());
+        if (m instanceof PortfolioPropertyCashModel) {
+            saveCash((PortfolioPropertyCashModel) m);
+            return;
+        }
         PortfolioProperty.PortfolioPropertyBuilder builder = PortfolioProperty.builder()
                 .id(m.getId())
                 .portfolio(m.getPortfolio())
                 .timestamp(m.getDate().atStartOfDay(zoneId).toInstant());
 
-        if (m instanceof PortfolioPropertyCashModel) {
-            PortfolioPropertyCashModel c = (PortfolioPropertyCashModel) m;
-            PortfolioCash.PortfolioCashBuilder b = PortfolioCash.builder().section("all");
-            Collection<PortfolioCash> cash = new ArrayList<>();
-            cash.add(b.value(c.getCashRub()).currency("RUB").build());
-            cash.add(b.value(c.getCashUsd()).currency("USD").build());
-            cash.add(b.value(c.getCashEur()).currency("EUR").build());
-            cash.add(b.value(c.getCashGbp()).currency("GBP").build());
-            cash.add(b.value(c.getCashChf()).currency("CHF").build());
-            cash = cash.stream()
-                    .filter(e -> e.getValue() != null && e.getValue().doubleValue() > 0.001)
-                    .collect(Collectors.toList());
-            builder.property(CASH)
-                    .value(PortfolioCash.serialize(cash));
-        } else if (m instanceof PortfolioPropertyTotalAssetsModel) {
+        if (m instanceof PortfolioPropertyTotalAssetsModel) {
             PortfolioPropertyTotalAssetsModel a = (PortfolioPropertyTotalAssetsModel) m;
             builder.property(a.getTotalAssetsCurrency().toPortfolioProperty())
                     .value(a.getTotalAssets().toString());
@@ -102,10 +119,39 @@ public class PortfolioPropertyFormsService implements FormsService<PortfolioProp
             throw new IllegalArgumentException("Unexpected type " + m.getClass());
         }
 
-        PortfolioPropertyEntity entity = portfolioPropertyConverter.toEntity(builder.build());
-        entity = portfolioPropertyRepository.save(entity);
+        PortfolioTotalAssetsEntity entity = portfolioTotalAssetsConverter.toEntity(builder.build());
+        entity = portfolioTotalAssetsRepository.save(entity);
         m.setId(entity.getId());
-        portfolioPropertyRepository.flush();
+        portfolioTotalAssetsRepository.flush();
+    }
+
+    /**
+     * Replaces all currencies cash of edited portfolio and date. Should be called in transaction
+     */
+    private void saveCash(PortfolioPropertyCashModel c) {
+        if (c.getId() != null) {
+            deleteCash(c.getId());
+        }
+        PortfolioCash.PortfolioCashBuilder b = PortfolioCash.builder()
+                .portfolio(c.getPortfolio())
+                .timestamp(c.getDate().atStartOfDay(zoneId).toInstant())
+                .section(PortfolioCashConverter.DEFAULT_MARKET);
+        Collection<PortfolioCash> cash = new ArrayList<>();
+        cash.add(b.value(c.getCashRub()).currency("RUB").build());
+        cash.add(b.value(c.getCashUsd()).currency("USD").build());
+        cash.add(b.value(c.getCashEur()).currency("EUR").build());
+        cash.add(b.value(c.getCashGbp()).currency("GBP").build());
+        cash.add(b.value(c.getCashChf()).currency("CHF").build());
+        List<PortfolioCashEntity> entities = cash.stream()
+                .filter(e -> e.getValue() != null && e.getValue().doubleValue() > 0.001)
+                .map(portfolioCashConverter::toEntity)
+                .collect(Collectors.toList());
+        entities = portfolioCashRepository.saveAll(entities);
+        c.setId(entities.stream()
+                .map(PortfolioCashEntity::getId)
+                .min(Integer::compareTo)
+                .orElse(null));
+        portfolioCashRepository.flush();
     }
 
     private void saveAndFlush(String portfolio) {
@@ -117,56 +163,51 @@ public class PortfolioPropertyFormsService implements FormsService<PortfolioProp
         }
     }
 
-    private PortfolioPropertyModel toModel(PortfolioPropertyEntity e) {
-        PortfolioPropertyModel m;
-        PortfolioPropertyType type = valueOf(e.getProperty().toUpperCase());
-        m = switch (type) {
-            case CASH -> new PortfolioPropertyCashModel();
-            case TOTAL_ASSETS_RUB, TOTAL_ASSETS_USD -> new PortfolioPropertyTotalAssetsModel();
-        };
+    private PortfolioPropertyModel toModel(PortfolioTotalAssetsEntity e) {
+        PortfolioPropertyTotalAssetsModel m = new PortfolioPropertyTotalAssetsModel();
         m.setId(e.getId());
         m.setPortfolio(e.getPortfolio().getId());
         m.setDate(e.getTimestamp().atZone(zoneId).toLocalDate());
-        return switch (type) {
-            case CASH -> {
-                PortfolioPropertyCashModel c = (PortfolioPropertyCashModel) m;
-                try {
-                    Map<String, BigDecimal> cashes = PortfolioCash.deserialize(e.getValue())
-                            .stream()
-                            .collect(groupingBy(p -> p.getCurrency().toUpperCase(),
-                                    reducing(BigDecimal.ZERO, PortfolioCash::getValue, BigDecimal::add)));
-                    c.setCashRub(cashes.getOrDefault("RUB", BigDecimal.ZERO));
-                    c.setCashUsd(cashes.getOrDefault("USD", BigDecimal.ZERO));
-                    c.setCashEur(cashes.getOrDefault("EUR", BigDecimal.ZERO));
-                    c.setCashGbp(cashes.getOrDefault("GBP", BigDecimal.ZERO));
-                    c.setCashChf(cashes.getOrDefault("CHF", BigDecimal.ZERO));
-                } catch (Exception ex) {
-                    log.warn("Ошибка при десериализации свойства: {}", e.getValue(), ex);
-                }
-                yield c;
-            }
-            case TOTAL_ASSETS_RUB, TOTAL_ASSETS_USD -> {
-                PortfolioPropertyTotalAssetsModel a = (PortfolioPropertyTotalAssetsModel) m;
-                a.setTotalAssets(getPropertyValue(e));
-                a.setTotalAssetsCurrency(PortfolioPropertyTotalAssetsModel.Currency.valueOf(type));
-                yield a;
-            }
-        };
+        m.setTotalAssets(e.getValue());
+        m.setTotalAssetsCurrency(PortfolioPropertyTotalAssetsModel.Currency.valueOf(e.getCurrency().toUpperCase()));
+        return m;
     }
 
-    private static BigDecimal getPropertyValue(PortfolioPropertyEntity entity) {
-        try {
-            return BigDecimal.valueOf(
-                    Double.parseDouble(
-                            entity.getValue()));
-        } catch (Exception e) {
-            log.error("Значение должно содержать число, сохранено {}", entity);
-            return BigDecimal.ZERO;
-        }
+    private PortfolioPropertyModel toCashModel(List<PortfolioCashEntity> entities) {
+        PortfolioCashEntity first = entities.stream()
+                .min(Comparator.comparing(PortfolioCashEntity::getId))
+                .orElseThrow();
+        PortfolioPropertyCashModel c = new PortfolioPropertyCashModel();
+        c.setId(first.getId());
+        c.setPortfolio(first.getPortfolio().getId());
+        c.setDate(first.getTimestamp().atZone(zoneId).toLocalDate());
+        Map<String, BigDecimal> cashes = entities.stream()
+                .collect(groupingBy(e -> e.getCurrency().toUpperCase(),
+                        reducing(BigDecimal.ZERO, PortfolioCashEntity::getValue, BigDecimal::add)));
+        c.setCashRub(cashes.getOrDefault("RUB", BigDecimal.ZERO));
+        c.setCashUsd(cashes.getOrDefault("USD", BigDecimal.ZERO));
+        c.setCashEur(cashes.getOrDefault("EUR", BigDecimal.ZERO));
+        c.setCashGbp(cashes.getOrDefault("GBP", BigDecimal.ZERO));
+        c.setCashChf(cashes.getOrDefault("CHF", BigDecimal.ZERO));
+        return c;
     }
 
     public void delete(Integer id) {
-        portfolioPropertyRepository.deleteById(id);
-        portfolioPropertyRepository.flush();
+        portfolioTotalAssetsRepository.deleteById(id);
+        portfolioTotalAssetsRepository.flush();
+    }
+
+    /**
+     * @param id any row id of portfolio cash, cash of all currencies of the portfolio at the timestamp is deleted
+     */
+    @Transactional
+    public void deleteCash(Integer id) {
+        portfolioCashRepository.findById(id)
+                .ifPresent(e -> portfolioCashRepository.deleteByPortfolioIdAndTimestamp(
+                        e.getPortfolio().getId(), e.getTimestamp()));
+        portfolioCashRepository.flush();
+    }
+
+    private static record PortfolioCashKey(String portfolio, Instant timestamp) {
     }
 }
@@ -65,6 +65,9 @@ public class SecurityQuoteFormsService implements FormsService<SecurityQuoteMode
     public void save(SecurityQuoteModel e) {
         convertDerivativeSecurityId(e);
         saveAndFlush(e.getSecurityId(), e.getSecurityName());
+        Optional<String> prevSecurity = ofNullable(e.getId())
+                .flatMap(securityQuoteRepository::findById)
+                .map(quote -> quote.getSecurity().getId());
         SecurityQuoteEntity entity = securityQuoteRepository.saveAndFlush(
                 securityQuoteConverter.toEntity(SecurityQuote.builder()
                         .id(e.getId())
@@ -76,6 +79,9 @@ public class SecurityQuoteFormsService implements FormsService<SecurityQuoteMode
                         .currency(hasLength(e.getCurrency()) ? e.getCurrency() : null)
                         .build()));
         e.setId(entity.getId());
+        securityQuoteRepository.refreshLatestQuote(e.getSecurityId());
+        prevSecurity.filter(security -> !security.equals(e.getSecurityId()))
+                .ifPresent(securityQuoteRepository::refreshLatestQuote);
     }
 
     private void convertDerivativeSecurityId(SecurityQuoteModel model) {
@@ -110,7 +116,10 @@ public class SecurityQuoteFormsService implements FormsService<SecurityQuoteMode
     }
 
     public void delete(Integer id) {
+        Optional<String> security = securityQuoteRepository.findById(id)
+                .map(e -> e.getSecurity().getId());
         securityQuoteRepository.deleteById(id);
         securityQuoteRepository.flush();
+        security.ifPresent(securityQuoteRepository::refreshLatestQuote);
     }
 }
@@ -0,0 +1,37 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+-- Последняя котировка каждого инструмента. Обновляется приложением после изменения котировок инструмента
+-- (SecurityQuoteRepository.refreshLatestQuote()), котировки на прошлые даты читаются из security_quote
+CREATE TABLE IF NOT EXISTS `security_latest_quote` (
+    `security` varchar(64) NOT NULL COMMENT 'Инструмент (акция, облигация, контракт)',
+    `quote_id` int(10) unsigned NOT NULL COMMENT 'Последняя котировка инструмента',
+    PRIMARY KEY (`security`),
+    KEY `security_latest_quote_quote_id_ix` (`quote_id`),
+    CONSTRAINT `security_latest_quote_security_fkey` FOREIGN KEY (`security`) REFERENCES `security` (`id`) ON UPDATE CASCADE ON DELETE CASCADE,
+    CONSTRAINT `security_latest_quote_quote_id_fkey` FOREIGN KEY (`quote_id`) REFERENCES `security_quote` (`id`) ON UPDATE CASCADE ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COMMENT='Последние котировки финансовых инструментов';
+
+INSERT IGNORE INTO `security_latest_quote` (`security`, `quote_id`)
+    SELECT q.`security`, q.`id`
+    FROM `security_quote` AS q
+    WHERE q.`timestamp` = (
+        SELECT MAX(q2.`timestamp`)
+        FROM `security_quote` AS q2
+        WHERE q2.`security` = q.`security`
+    );
@@ -0,0 +1,32 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+-- Остатки денежных средств, ранее хранились сериализованными в portfolio_property (свойство CASH),
+-- существующие свойства переносятся Java миграцией db.migration.all.V2021_8_5_1
+CREATE TABLE IF NOT EXISTS `portfolio_cash` (
+    `id` int(10) unsigned NOT NULL AUTO_INCREMENT,
+    `portfolio` varchar(32) NOT NULL COMMENT 'Портфель (номер брокерского счета)',
+    `timestamp` timestamp NOT NULL DEFAULT current_timestamp() COMMENT 'Время, на которое известен остаток',
+    `market` varchar(64) NOT NULL DEFAULT 'all' COMMENT 'Рынок (секция), на котором учитываются денежные средства',
+    `value` decimal(20,6) NOT NULL COMMENT 'Остаток денежных средств',
+    `currency` char(3) NOT NULL COMMENT 'Код валюты',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `portfolio_cash_portfolio_timestamp_market_currency_uniq_ix` (`portfolio`, `timestamp`, `market`, `currency`),
+    KEY `portfolio_cash_timestamp_ix` (`timestamp`),
+    CONSTRAINT `portfolio_cash_portfolio_fkey` FOREIGN KEY (`portfolio`) REFERENCES `portfolio` (`id`) ON UPDATE CASCADE ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 COMMENT='Остатки денежных средств';
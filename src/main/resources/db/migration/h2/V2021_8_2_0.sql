@@ -0,0 +1,34 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+-- Составные индексы для запросов отчетов, см. DatabaseIndexesTest
+
+-- TransactionRepository.findBySecurityIdAndPkPortfolioInAndTimestampBetweenOrderByTimestampAscPkIdAsc
+CREATE INDEX IF NOT EXISTS `transaction_security_timestamp_portfolio_ix`
+    ON `transaction` (`security`, `timestamp`, `portfolio`);
+
+-- SecurityEventCashFlowRepository.findByPortfolioIdInAndSecurityIdAndCashFlowTypeIdAndTimestampBetweenOrderByTimestampAsc
+CREATE INDEX IF NOT EXISTS `security_event_cash_flow_security_type_timestamp_portfolio_ix`
+    ON `security_event_cash_flow` (`security`, `type`, `timestamp`, `portfolio`);
+
+-- PortfolioPropertyRepository.findDistinctOnPortfolioId...
+CREATE INDEX IF NOT EXISTS `portfolio_property_property_portfolio_timestamp_ix`
+    ON `portfolio_property` (`property`, `portfolio`, `timestamp`);
+
+-- SecurityQuoteRepository.findFirstBySecurityIdAndTimestampLessThanOrderByTimestampDesc
+-- использует существующий индекс security_quote_security_timestamp_uniq_ix (security, timestamp)
@@ -0,0 +1,32 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+-- Тип инструмента, значения org.spacious_team.broker.pojo.SecurityType.
+-- Заполняется по идентификатору инструмента, как SecurityType.getSecurityType()
+ALTER TABLE `security`
+    ADD COLUMN IF NOT EXISTS `type` varchar(16) DEFAULT NULL COMMENT 'Тип инструмента: STOCK_OR_BOND, DERIVATIVE, CURRENCY_PAIR' AFTER `name`;
+
+UPDATE `security`
+    SET `type` = CASE
+        WHEN length(`id`) = 12 THEN 'STOCK_OR_BOND'
+        WHEN `id` LIKE '______\_%' THEN 'CURRENCY_PAIR'
+        ELSE 'DERIVATIVE'
+    END
+    WHERE `type` IS NULL;
+
+CREATE INDEX IF NOT EXISTS `security_type_ix` ON `security` (`type`);
@@ -0,0 +1,35 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+-- Составные индексы для запросов отчетов, см. DatabaseIndexesTest
+
+-- TransactionRepository.findBySecurityIdAndPkPortfolioInAndTimestampBetweenOrderByTimestampAscPkIdAsc
+ALTER TABLE `transaction`
+    ADD KEY IF NOT EXISTS `transaction_security_timestamp_portfolio_ix` (`security`, `timestamp`, `portfolio`);
+
+-- SecurityEventCashFlowRepository.findByPortfolioIdInAndSecurityIdAndCashFlowTypeIdAndTimestampBetweenOrderByTimestampAsc
+ALTER TABLE `security_event_cash_flow`
+    ADD KEY IF NOT EXISTS `security_event_cash_flow_security_type_timestamp_portfolio_ix`
+        (`security`, `type`, `timestamp`, `portfolio`);
+
+-- PortfolioPropertyRepository.findDistinctOnPortfolioId...
+ALTER TABLE `portfolio_property`
+    ADD KEY IF NOT EXISTS `portfolio_property_property_portfolio_timestamp_ix` (`property`, `portfolio`, `timestamp`);
+
+-- SecurityQuoteRepository.findFirstBySecurityIdAndTimestampLessThanOrderByTimestampDesc
+-- использует существующий индекс security_quote_security_timestamp_uniq_ix (security, timestamp)
@@ -0,0 +1,22 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+-- Оценка активов и остатки денежных средств перенесены из portfolio_property в отдельные таблицы,
+-- запросы PortfolioPropertyRepository.findDistinctOnPortfolioId... удалены
+ALTER TABLE `portfolio_property`
+    DROP KEY IF EXISTS `portfolio_property_property_portfolio_timestamp_ix`;
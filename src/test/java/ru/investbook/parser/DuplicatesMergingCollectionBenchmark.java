@@ -0,0 +1,89 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.spacious_team.broker.pojo.EventCashFlow;
+import org.spacious_team.table_wrapper.api.AbstractTable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link DuplicatesMergingCollection} and {@link AbstractTable#addWithEqualityChecker}, which checks
+ * each added row against all previously added rows, on synthetic cash flows. Isn't run by tests,
+ * run {@link #main(String[])} after {@code mvn test-compile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuplicatesMergingCollectionBenchmark {
+
+    @Param({"10000", "50000"})
+    private int rowsCount;
+    private List<EventCashFlow> cashFlows;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DuplicatesMergingCollectionBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build())
+                .run();
+    }
+
+    @Setup
+    public void setUp() {
+        cashFlows = DuplicatesMergingCollectionTest.createCashFlows(rowsCount, rowsCount / 5);
+    }
+
+    @Benchmark
+    public Collection<EventCashFlow> addWithEqualityChecker() {
+        Collection<EventCashFlow> collection = new ArrayList<>();
+        for (EventCashFlow cash : cashFlows) {
+            AbstractTable.addWithEqualityChecker(cash, collection,
+                    EventCashFlow::checkEquality, EventCashFlow::mergeDuplicates);
+        }
+        return collection;
+    }
+
+    @Benchmark
+    public Collection<EventCashFlow> duplicatesMergingCollection() {
+        Collection<EventCashFlow> collection = DuplicatesMergingCollection.ofEventCashFlows();
+        collection.addAll(cashFlows);
+        return collection;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ru.investbook.parser;
+
+import org.junit.jupiter.api.Test;
+import org.spacious_team.broker.pojo.CashFlowType;
+import org.spacious_team.broker.pojo.EventCashFlow;
+import org.spacious_team.table_wrapper.api.AbstractTable;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Compares merging results with {@link AbstractTable#addWithEqualityChecker} on synthetic cash flows.
+ * Time of both implementations is compared by {@link DuplicatesMergingCollectionBenchmark}.
+ */
+public class DuplicatesMergingCollectionTest {
+
+    private static final int ROWS = 1_000;
+    private static final int DISTINCT_EVENTS = 200;
+
+    @Test
+    void add() {
+        List<EventCashFlow> cashFlows = createCashFlows(ROWS, DISTINCT_EVENTS);
+
+        Collection<EventCashFlow> expected = new ArrayList<>();
+        for (EventCashFlow cash : cashFlows) {
+            AbstractTable.addWithEqualityChecker(cash, expected,
+                    EventCashFlow::checkEquality, EventCashFlow::mergeDuplicates);
+        }
+        Collection<EventCashFlow> actual = DuplicatesMergingCollection.ofEventCashFlows();
+        actual.addAll(cashFlows);
+
+        assertEquals(new ArrayList<>(actual), new ArrayList<>(expected));
+    }
+
+    @Test
+    void iteratorRemove() {
+        Collection<EventCashFlow> collection = DuplicatesMergingCollection.ofEventCashFlows();
+        List<EventCashFlow> cashFlows = createCashFlows(100, DISTINCT_EVENTS);
+        collection.addAll(cashFlows);
+        collection.removeIf(cash -> cash.getEventType() == CashFlowType.TAX);
+        collection.addAll(cashFlows);
+
+        Collection<EventCashFlow> expected = new ArrayList<>();
+        for (EventCashFlow cash : cashFlows) {
+            AbstractTable.addWithEqualityChecker(cash, expected,
+                    EventCashFlow::checkEquality, EventCashFlow::mergeDuplicates);
+        }
+        expected.removeIf(cash -> cash.getEventType() == CashFlowType.TAX);
+        for (EventCashFlow cash : cashFlows) {
+            AbstractTable.addWithEqualityChecker(cash, expected,
+                    EventCashFlow::checkEquality, EventCashFlow::mergeDuplicates);
+        }
+        assertEquals(new ArrayList<>(collection), new ArrayList<>(expected));
+    }
+
+    /**
+     * @param distinctEvents count of distinct events, rows of same event are merged
+     */
+    static List<EventCashFlow> createCashFlows(int rows, int distinctEvents) {
+        Random random = new Random(0);
+        Instant start = Instant.parse("2021-01-01T00:00:00Z");
+        CashFlowType[] types = {CashFlowType.CASH, CashFlowType.TAX, CashFlowType.COMMISSION};
+        String[] currencies = {"RUB", "USD", "EUR"};
+        List<EventCashFlow> cashFlows = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int event = random.nextInt(distinctEvents);
+            cashFlows.add(EventCashFlow.builder()
+                    .portfolio("portfolio-" + (event % 3))
+                    .timestamp(start.plusSeconds(event / 9 * 3600L))
+                    .eventType(types[event % types.length])
+                    .currency(currencies[(event / 3) % currencies.length])
+                    .value(BigDecimal.valueOf(random.nextInt(100_000), 2))
+                    .build());
+        }
+        return cashFlows;
+    }
+}
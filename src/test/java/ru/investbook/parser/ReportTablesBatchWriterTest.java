@@ -0,0 +1,208 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.spacious_team.broker.pojo.CashFlowType;
+import org.spacious_team.broker.pojo.EventCashFlow;
+import org.spacious_team.broker.pojo.ForeignExchangeRate;
+import org.spacious_team.broker.pojo.PortfolioCash;
+import org.spacious_team.broker.pojo.PortfolioProperty;
+import org.spacious_team.broker.pojo.PortfolioPropertyType;
+import org.spacious_team.broker.pojo.Security;
+import org.spacious_team.broker.pojo.SecurityEventCashFlow;
+import org.spacious_team.broker.pojo.SecurityQuote;
+import org.spacious_team.broker.report_parser.api.BrokerReport;
+import org.spacious_team.broker.report_parser.api.ReportTable;
+import org.spacious_team.broker.report_parser.api.ReportTables;
+import org.spacious_team.broker.report_parser.api.SecurityTransaction;
+import org.spacious_team.broker.report_parser.api.WrappingReportTable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.investbook.report.FifoPositionsFactory;
+import ru.investbook.report.ForeignExchangeRateService;
+import ru.investbook.service.moex.MoexDerivativeCodeService;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.expectThrows;
+
+/**
+ * Imports reports to H2 database migrated by Flyway. Second import of the same report should not add any row,
+ * report with invalid row should not be stored at all.
+ */
+public class ReportTablesBatchWriterTest {
+
+    private static final String URL = "jdbc:h2:mem:investbook-batch-writer;mode=mysql;DB_CLOSE_DELAY=-1";
+    private static final String PORTFOLIO = "portfolio-1";
+    private static final String ISIN = "RU000A0JX0J2";
+    private static final Instant TIMESTAMP = Instant.parse("2021-01-15T10:00:00Z");
+    private static final List<String> TABLES = List.of("portfolio", "security", "transaction",
+            "transaction_cash_flow", "event_cash_flow", "portfolio_cash", "portfolio_total_assets", "security_quote",
+            "security_latest_quote", "security_event_cash_flow", "foreign_exchange_rate");
+    private JdbcTemplate jdbcTemplate;
+    private ReportTablesBatchWriter writer;
+
+    @BeforeEach
+    void migrate() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, "sa", "");
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration/h2", "classpath:db/migration/all")
+                .load()
+                .migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        writer = new ReportTablesBatchWriter(
+                jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                new MoexDerivativeCodeService(),
+                mock(FifoPositionsFactory.class),
+                mock(ForeignExchangeRateService.class));
+    }
+
+    @AfterEach
+    void drop() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void writeSameReportTwice() {
+        ReportTables reportTables = getReportTables();
+
+        writer.write(reportTables);
+        Map<String, Integer> rowCounts = getRowCounts();
+        writer.write(reportTables);
+
+        assertEquals(getRowCounts(), rowCounts);
+        TABLES.forEach(table -> assertEquals((int) rowCounts.get(table), 1, table));
+    }
+
+    @Test
+    void writeNothingIfRowViolatesConstraint() {
+        ReportTables reportTables = getReportTables();
+        BrokerReport report = reportTables.getReport();
+        when(reportTables.getCashFlowTable()).thenReturn(WrappingReportTable.of(report, List.of(
+                EventCashFlow.builder()
+                        .portfolio(PORTFOLIO)
+                        .eventType(CashFlowType.CASH)
+                        .timestamp(TIMESTAMP)
+                        .currency("RUB")
+                        .build())));
+
+        expectThrows(DataIntegrityViolationException.class, () -> writer.write(reportTables));
+
+        TABLES.forEach(table -> assertEquals((int) getRowCounts().get(table), 0, table));
+    }
+
+    private Map<String, Integer> getRowCounts() {
+        return TABLES.stream()
+                .collect(Collectors.toMap(table -> table,
+                        table -> jdbcTemplate.queryForObject("SELECT count(*) FROM `" + table + "`", Integer.class)));
+    }
+
+    private static ReportTables getReportTables() {
+        BrokerReport report = mock(BrokerReport.class);
+        ReportTables reportTables = mock(ReportTables.class, (InvocationOnMock invocation) ->
+                ReportTable.class.isAssignableFrom(invocation.getMethod().getReturnType()) ?
+                        WrappingReportTable.of(report, List.of()) :
+                        RETURNS_DEFAULTS.answer(invocation));
+        when(reportTables.getReport()).thenReturn(report);
+        when(reportTables.getSecuritiesTable()).thenReturn(WrappingReportTable.of(report, List.of(
+                Security.builder()
+                        .id(ISIN)
+                        .name("Облигация")
+                        .build())));
+        when(reportTables.getSecurityTransactionTable()).thenReturn(WrappingReportTable.of(report, List.of(
+                SecurityTransaction.builder()
+                        .timestamp(TIMESTAMP)
+                        .transactionId("1")
+                        .portfolio(PORTFOLIO)
+                        .security(ISIN)
+                        .count(10)
+                        .value(BigDecimal.valueOf(-10_000))
+                        .accruedInterest(BigDecimal.ZERO)
+                        .commission(BigDecimal.ZERO)
+                        .valueCurrency("RUB")
+                        .commissionCurrency("RUB")
+                        .build())));
+        when(reportTables.getCashFlowTable()).thenReturn(WrappingReportTable.of(report, List.of(
+                EventCashFlow.builder()
+                        .portfolio(PORTFOLIO)
+                        .eventType(CashFlowType.CASH)
+                        .timestamp(TIMESTAMP)
+                        .value(BigDecimal.valueOf(10_000))
+                        .currency("RUB")
+                        .build())));
+        when(reportTables.getCashTable()).thenReturn(WrappingReportTable.of(report, List.of(
+                PortfolioCash.builder()
+                        .portfolio(PORTFOLIO)
+                        .timestamp(TIMESTAMP)
+                        .section("Фондовый рынок")
+                        .value(BigDecimal.ZERO)
+                        .currency("RUB")
+                        .build())));
+        when(reportTables.getPortfolioPropertyTable()).thenReturn(WrappingReportTable.of(report, List.of(
+                PortfolioProperty.builder()
+                        .portfolio(PORTFOLIO)
+                        .property(PortfolioPropertyType.TOTAL_ASSETS_RUB)
+                        .value("10000")
+                        .timestamp(TIMESTAMP)
+                        .build())));
+        when(reportTables.getSecurityQuoteTable()).thenReturn(WrappingReportTable.of(report, List.of(
+                SecurityQuote.builder()
+                        .security(ISIN)
+                        .timestamp(TIMESTAMP)
+                        .quote(BigDecimal.valueOf(100))
+                        .currency("RUB")
+                        .build())));
+        when(reportTables.getDividendTable()).thenReturn(WrappingReportTable.of(report, List.of(
+                SecurityEventCashFlow.builder()
+                        .portfolio(PORTFOLIO)
+                        .eventType(CashFlowType.COUPON)
+                        .timestamp(TIMESTAMP)
+                        .security(ISIN)
+                        .count(10)
+                        .value(BigDecimal.valueOf(100))
+                        .currency("RUB")
+                        .build())));
+        when(reportTables.getForeignExchangeRateTable()).thenReturn(WrappingReportTable.of(report, List.of(
+                ForeignExchangeRate.builder()
+                        .date(LocalDate.of(2021, 1, 15))
+                        .currencyPair("USDRUB")
+                        .rate(BigDecimal.valueOf(73.5))
+                        .build())));
+        return reportTables;
+    }
+}
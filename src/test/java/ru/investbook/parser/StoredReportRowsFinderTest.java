@@ -0,0 +1,285 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.spacious_team.broker.pojo.CashFlowType;
+import org.spacious_team.broker.pojo.EventCashFlow;
+import org.spacious_team.broker.pojo.ForeignExchangeRate;
+import org.spacious_team.broker.pojo.PortfolioCash;
+import org.spacious_team.broker.pojo.PortfolioProperty;
+import org.spacious_team.broker.pojo.PortfolioPropertyType;
+import org.spacious_team.broker.pojo.SecurityEventCashFlow;
+import org.spacious_team.broker.pojo.SecurityQuote;
+import org.spacious_team.broker.pojo.Transaction;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.investbook.parser.StoredReportRowsFinder.EventCashFlowKey;
+import ru.investbook.parser.StoredReportRowsFinder.ForeignExchangeRateKey;
+import ru.investbook.parser.StoredReportRowsFinder.PortfolioCashKey;
+import ru.investbook.parser.StoredReportRowsFinder.PortfolioPropertyKey;
+import ru.investbook.parser.StoredReportRowsFinder.PortfolioTotalAssetsKey;
+import ru.investbook.parser.StoredReportRowsFinder.SecurityEventCashFlowKey;
+import ru.investbook.parser.StoredReportRowsFinder.SecurityQuoteKey;
+import ru.investbook.parser.StoredReportRowsFinder.TransactionCashFlowKey;
+import ru.investbook.parser.StoredReportRowsFinder.TransactionKey;
+import ru.investbook.service.moex.MoexDerivativeCodeService;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Stores rows to H2 database migrated by Flyway, checks that finder returns keys of stored rows only.
+ */
+public class StoredReportRowsFinderTest {
+
+    private static final String URL = "jdbc:h2:mem:investbook-stored-rows;mode=mysql;DB_CLOSE_DELAY=-1";
+    private static final String PORTFOLIO = "portfolio-1";
+    private static final String ISIN = "RU000A0JX0J2";
+    private static final String FUTURES_SHORTNAME = "Si-6.21";
+    private static final String FUTURES_CODE = "SiM1";
+    private static final Instant STORED = Instant.parse("2021-01-15T10:00:00Z");
+    private static final Instant NEW = STORED.plus(1, ChronoUnit.DAYS);
+    private static final Instant EARLIER = STORED.minus(1, ChronoUnit.DAYS);
+    private static final LocalDate STORED_DATE = LocalDate.of(2021, 1, 15);
+    private static JdbcTemplate jdbcTemplate;
+    private static StoredReportRowsFinder finder;
+
+    @BeforeAll
+    static void migrateAndStore() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(URL, "sa", "");
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration/h2", "classpath:db/migration/all")
+                .load()
+                .migrate();
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        jdbcTemplate = namedJdbcTemplate.getJdbcTemplate();
+        finder = new StoredReportRowsFinder(namedJdbcTemplate, new MoexDerivativeCodeService());
+        Timestamp timestamp = Timestamp.from(STORED);
+        jdbcTemplate.update("INSERT INTO `portfolio` (`id`) VALUES (?)", PORTFOLIO);
+        jdbcTemplate.update("INSERT INTO `security` (`id`, `type`) VALUES (?, 'STOCK_OR_BOND')", ISIN);
+        jdbcTemplate.update("INSERT INTO `security` (`id`, `type`) VALUES (?, 'DERIVATIVE')", FUTURES_SHORTNAME);
+        jdbcTemplate.update("INSERT INTO `portfolio_property` (`portfolio`, `timestamp`, `property`, `value`) " +
+                "VALUES (?, ?, 'TOTAL_ASSETS_RUB', '1000')", PORTFOLIO, timestamp);
+        jdbcTemplate.update("INSERT INTO `portfolio_cash` (`portfolio`, `timestamp`, `market`, `currency`, `value`) " +
+                "VALUES (?, ?, 'all', 'RUB', 100)", PORTFOLIO, timestamp);
+        jdbcTemplate.update("INSERT INTO `portfolio_total_assets` (`portfolio`, `timestamp`, `currency`, `value`) " +
+                "VALUES (?, ?, 'RUB', 1000)", PORTFOLIO, timestamp);
+        jdbcTemplate.update("INSERT INTO `event_cash_flow` (`portfolio`, `timestamp`, `type`, `value`, `currency`) " +
+                "VALUES (?, ?, ?, 10.10, 'RUB')", PORTFOLIO, timestamp, CashFlowType.CASH.getId());
+        jdbcTemplate.update("INSERT INTO `event_cash_flow` (`portfolio`, `timestamp`, `type`, `value`) " +
+                "VALUES (?, ?, ?, 20)", PORTFOLIO, Timestamp.from(EARLIER), CashFlowType.TAX.getId()); // RUR
+        jdbcTemplate.update("INSERT INTO `transaction` (`id`, `portfolio`, `security`, `timestamp`, `count`) " +
+                "VALUES ('1', ?, ?, ?, 10)", PORTFOLIO, ISIN, timestamp);
+        jdbcTemplate.update("INSERT INTO `transaction_cash_flow` (`transaction_id`, `portfolio`, `type`, `value`) " +
+                "VALUES ('1', ?, ?, -1000)", PORTFOLIO, CashFlowType.PRICE.getId());
+        jdbcTemplate.update("INSERT INTO `security_event_cash_flow` " +
+                        "(`portfolio`, `timestamp`, `security`, `count`, `type`, `value`, `currency`) " +
+                        "VALUES (?, ?, ?, 10, ?, 50, 'RUB')",
+                PORTFOLIO, timestamp, ISIN, CashFlowType.COUPON.getId());
+        jdbcTemplate.update("INSERT INTO `security_event_cash_flow` " +
+                        "(`portfolio`, `timestamp`, `security`, `count`, `type`, `value`, `currency`) " +
+                        "VALUES (?, ?, ?, 1, ?, 50, 'RUB')",
+                PORTFOLIO, timestamp, FUTURES_SHORTNAME, CashFlowType.DERIVATIVE_PROFIT.getId());
+        jdbcTemplate.update("INSERT INTO `security_quote` (`security`, `timestamp`, `quote`, `currency`) " +
+                "VALUES (?, ?, 100, 'RUB')", ISIN, timestamp);
+        jdbcTemplate.update("INSERT INTO `foreign_exchange_rate` (`date`, `currency_pair`, `rate`) " +
+                "VALUES (?, 'USDRUB', 73.5)", Date.valueOf(STORED_DATE));
+    }
+
+    @AfterAll
+    static void drop() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void findPortfolios() {
+        assertEquals(finder.findPortfolios(List.of(PORTFOLIO, "portfolio-2")), Set.of(PORTFOLIO));
+    }
+
+    @Test
+    void findSecurities() {
+        assertEquals(finder.findSecurities(List.of(ISIN, "RU000A0ZZ1F6")), Set.of(ISIN));
+    }
+
+    @Test
+    void findPortfolioProperties() {
+        PortfolioProperty stored = getPortfolioProperty(STORED);
+        List<PortfolioProperty> properties = List.of(stored, getPortfolioProperty(NEW));
+        assertEquals(finder.findPortfolioProperties(properties), Set.of(PortfolioPropertyKey.of(stored)));
+    }
+
+    @Test
+    void findPortfolioCash() {
+        PortfolioCash stored = getPortfolioCash(STORED);
+        List<PortfolioCash> cash = List.of(stored, getPortfolioCash(NEW));
+        assertEquals(finder.findPortfolioCash(cash), Set.of(PortfolioCashKey.of(stored)));
+    }
+
+    @Test
+    void findPortfolioTotalAssets() {
+        PortfolioProperty stored = getPortfolioProperty(STORED);
+        List<PortfolioProperty> totalAssets = List.of(stored, getPortfolioProperty(NEW));
+        assertEquals(finder.findPortfolioTotalAssets(totalAssets), Set.of(PortfolioTotalAssetsKey.of(stored)));
+    }
+
+    @Test
+    void findEventCashFlowsOfDifferentScale() {
+        EventCashFlow stored = getEventCashFlow(STORED, new BigDecimal("10.1")); // stored as 10.10
+        List<EventCashFlow> cashFlows = List.of(
+                stored,
+                getEventCashFlow(STORED, new BigDecimal("10.2")),
+                getEventCashFlow(NEW, new BigDecimal("10.1")));
+        assertEquals(finder.findEventCashFlows(cashFlows), Set.of(EventCashFlowKey.of(stored)));
+    }
+
+    @Test
+    void findEventCashFlowsOfDefaultCurrency() {
+        EventCashFlow stored = getEventCashFlow(EARLIER, BigDecimal.valueOf(20)).toBuilder()
+                .eventType(CashFlowType.TAX)
+                .currency(null)
+                .build();
+        assertEquals(finder.findEventCashFlows(List.of(stored)), Set.of(EventCashFlowKey.of(stored)));
+    }
+
+    @Test
+    void findTransactions() {
+        Transaction stored = getTransaction("1", STORED);
+        List<Transaction> transactions = List.of(stored, getTransaction("2", NEW));
+        assertEquals(finder.findTransactions(transactions), Set.of(TransactionKey.of(stored)));
+    }
+
+    @Test
+    void findSecurityEventCashFlows() {
+        SecurityEventCashFlow stored = getSecurityEventCashFlow(STORED);
+        List<SecurityEventCashFlow> cashFlows = List.of(stored, getSecurityEventCashFlow(NEW));
+        assertEquals(finder.findSecurityEventCashFlows(cashFlows), Set.of(SecurityEventCashFlowKey.of(stored)));
+    }
+
+    @Test
+    void findSecurityEventCashFlowsOfDerivative() {
+        SecurityEventCashFlow stored = getSecurityEventCashFlow(STORED).toBuilder()
+                .security(FUTURES_CODE)
+                .eventType(CashFlowType.DERIVATIVE_PROFIT)
+                .build();
+        List<SecurityEventCashFlow> cashFlows = List.of(stored, stored.toBuilder().timestamp(NEW).build());
+        assertEquals(finder.findSecurityEventCashFlows(cashFlows), Set.of(SecurityEventCashFlowKey.of(stored)));
+    }
+
+    @Test
+    void findTransactionCashFlows() {
+        List<Transaction> transactions = List.of(getTransaction("1", STORED), getTransaction("2", NEW));
+        assertEquals(finder.findTransactionCashFlows(transactions),
+                Set.of(new TransactionCashFlowKey(PORTFOLIO, "1", CashFlowType.PRICE.getId())));
+    }
+
+    @Test
+    void findSecurityQuotes() {
+        SecurityQuote stored = getSecurityQuote(STORED);
+        List<SecurityQuote> quotes = List.of(stored, getSecurityQuote(NEW));
+        assertEquals(finder.findSecurityQuotes(quotes), Set.of(SecurityQuoteKey.of(stored)));
+    }
+
+    @Test
+    void findForeignExchangeRates() {
+        ForeignExchangeRate stored = getForeignExchangeRate(STORED_DATE);
+        List<ForeignExchangeRate> rates = List.of(stored, getForeignExchangeRate(STORED_DATE.plusDays(1)));
+        assertEquals(finder.findForeignExchangeRates(rates), Set.of(ForeignExchangeRateKey.of(stored)));
+    }
+
+    private static PortfolioProperty getPortfolioProperty(Instant timestamp) {
+        return PortfolioProperty.builder()
+                .portfolio(PORTFOLIO)
+                .timestamp(timestamp)
+                .property(PortfolioPropertyType.TOTAL_ASSETS_RUB)
+                .value("1000")
+                .build();
+    }
+
+    private static PortfolioCash getPortfolioCash(Instant timestamp) {
+        return PortfolioCash.builder()
+                .portfolio(PORTFOLIO)
+                .timestamp(timestamp)
+                .value(BigDecimal.valueOf(100))
+                .currency("RUB")
+                .build();
+    }
+
+    private static EventCashFlow getEventCashFlow(Instant timestamp, BigDecimal value) {
+        return EventCashFlow.builder()
+                .portfolio(PORTFOLIO)
+                .timestamp(timestamp)
+                .eventType(CashFlowType.CASH)
+                .value(value)
+                .currency("RUB")
+                .build();
+    }
+
+    private static Transaction getTransaction(String id, Instant timestamp) {
+        return Transaction.builder()
+                .id(id)
+                .portfolio(PORTFOLIO)
+                .security(ISIN)
+                .timestamp(timestamp)
+                .count(10)
+                .build();
+    }
+
+    private static SecurityEventCashFlow getSecurityEventCashFlow(Instant timestamp) {
+        return SecurityEventCashFlow.builder()
+                .portfolio(PORTFOLIO)
+                .timestamp(timestamp)
+                .security(ISIN)
+                .count(10)
+                .eventType(CashFlowType.COUPON)
+                .value(BigDecimal.valueOf(50))
+                .currency("RUB")
+                .build();
+    }
+
+    private static SecurityQuote getSecurityQuote(Instant timestamp) {
+        return SecurityQuote.builder()
+                .security(ISIN)
+                .timestamp(timestamp)
+                .quote(BigDecimal.valueOf(100))
+                .currency("RUB")
+                .build();
+    }
+
+    private static ForeignExchangeRate getForeignExchangeRate(LocalDate date) {
+        return ForeignExchangeRate.builder()
+                .date(date)
+                .currencyPair("USDRUB")
+                .rate(BigDecimal.valueOf(73.5))
+                .build();
+    }
+}
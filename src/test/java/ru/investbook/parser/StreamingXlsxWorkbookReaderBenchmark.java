@@ -0,0 +1,87 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link StreamingXlsxWorkbookReader} and XSSF object model reading synthetic reports.
+ * Heap allocated per read is shown by {@code gc.alloc.rate.norm}. Isn't run by tests,
+ * run {@link #main(String[])} after {@code mvn test-compile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamingXlsxWorkbookReaderBenchmark {
+
+    @Param({"psb", "uralsib"})
+    private String reportShape;
+    @Param({"20000"})
+    private int rowsCount;
+    private byte[] file;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StreamingXlsxWorkbookReaderBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build())
+                .run();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        file = StreamingXlsxWorkbookReaderTest.createReport(reportShape, rowsCount);
+    }
+
+    @Benchmark
+    public int xssfWorkbook() throws IOException {
+        try (Workbook book = new XSSFWorkbook(new ByteArrayInputStream(file))) {
+            return book.getSheetAt(0).getLastRowNum();
+        }
+    }
+
+    @Benchmark
+    public int streaming() throws IOException {
+        try (Workbook book = StreamingXlsxWorkbookReader.read(new ByteArrayInputStream(file))) {
+            return book.getSheetAt(0).getLastRowNum();
+        }
+    }
+}
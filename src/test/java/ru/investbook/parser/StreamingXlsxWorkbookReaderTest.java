@@ -0,0 +1,186 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.parser;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Date;
+import java.time.LocalDate;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Compares streaming reader with XSSF object model on synthetic reports.
+ * Time and heap allocations of both readers are compared by {@link StreamingXlsxWorkbookReaderBenchmark}.
+ */
+public class StreamingXlsxWorkbookReaderTest {
+
+    private static final int ROWS = 2_000;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"psb", "uralsib"})
+    void read(String reportShape) throws IOException {
+        byte[] file = createReport(reportShape, ROWS);
+
+        try (Workbook expected = new XSSFWorkbook(inputStream(file));
+             Workbook actual = StreamingXlsxWorkbookReader.read(inputStream(file))) {
+            assertEquals(actual.getNumberOfSheets(), expected.getNumberOfSheets());
+            for (int i = 0; i < expected.getNumberOfSheets(); i++) {
+                assertSheetEquals(actual.getSheetAt(i), expected.getSheetAt(i));
+            }
+        }
+    }
+
+    private static void assertSheetEquals(Sheet actual, Sheet expected) {
+        assertEquals(actual.getSheetName(), expected.getSheetName());
+        assertEquals(actual.getLastRowNum(), expected.getLastRowNum());
+        assertEquals(actual.getMergedRegions(), expected.getMergedRegions());
+        for (Row expectedRow : expected) {
+            Row actualRow = actual.getRow(expectedRow.getRowNum());
+            for (Cell expectedCell : expectedRow) {
+                Cell actualCell = actualRow.getCell(expectedCell.getColumnIndex());
+                assertEquals(actualCell.getCellType(), expectedCell.getCellType());
+                switch (expectedCell.getCellType()) {
+                    case STRING -> assertEquals(actualCell.getStringCellValue(), expectedCell.getStringCellValue());
+                    case NUMERIC -> {
+                        assertEquals(actualCell.getNumericCellValue(), expectedCell.getNumericCellValue());
+                        assertEquals(DateUtil.isCellDateFormatted(actualCell), DateUtil.isCellDateFormatted(expectedCell));
+                    }
+                    case BOOLEAN -> assertEquals(actualCell.getBooleanCellValue(), expectedCell.getBooleanCellValue());
+                    default -> {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param reportShape "psb" or "uralsib"
+     * @return xlsx file content
+     */
+    static byte[] createReport(String reportShape, int rows) throws IOException {
+        return reportShape.equals("psb") ? createPsbShapedReport(rows) : createUralsibShapedReport(rows);
+    }
+
+    private static byte[] createPsbShapedReport(int rows) throws IOException {
+        try (XSSFWorkbook book = new XSSFWorkbook()) {
+            Sheet sheet = book.createSheet("Отчет брокера");
+            CellStyle dateStyle = createDateStyle(book);
+            int i = 0;
+            sheet.createRow(i++).createCell(0).setCellValue("Отчет брокера за период с 01.01.2016 по 31.12.2020");
+            sheet.createRow(i++).createCell(0).setCellValue("Субсчет №: 12345-678");
+            sheet.createRow(i++).createCell(0).setCellValue("Сделки купли/продажи ценных бумаг");
+            i = createRow(sheet, i, "Дата заключения", "Время заключения", "Номер сделки", "Наименование ЦБ",
+                    "ISIN", "Вид сделки", "Количество, шт", "Цена", "Сумма сделки", "НКД", "Комиссия", "Валюта");
+            for (int n = 0; n < rows; n++, i++) {
+                Row row = sheet.createRow(i);
+                setDate(row.createCell(0), n, dateStyle);
+                row.createCell(1).setCellValue("10:" + (n % 60) + ":00");
+                row.createCell(2).setCellValue(100_000 + n);
+                row.createCell(3).setCellValue("Облигация " + (n % 300));
+                row.createCell(4).setCellValue("RU000A0" + (n % 300));
+                row.createCell(5).setCellValue((n % 2 == 0) ? "покупка" : "продажа");
+                row.createCell(6).setCellValue(n % 100 + 1);
+                row.createCell(7).setCellValue(99.5 + n % 10);
+                row.createCell(8).setCellValue(1000.25 * (n % 100 + 1));
+                row.createCell(9).setCellValue(n % 37 * 0.17);
+                row.createCell(10).setCellValue(n % 5 * 0.01);
+                row.createCell(11).setCellValue("RUB");
+            }
+            sheet.createRow(i).createCell(0).setCellValue("Итого");
+            return toBytes(book);
+        }
+    }
+
+    private static byte[] createUralsibShapedReport(int rows) throws IOException {
+        try (XSSFWorkbook book = new XSSFWorkbook()) {
+            Sheet sheet = book.createSheet("Отчет");
+            CellStyle dateStyle = createDateStyle(book);
+            int i = 0;
+            sheet.createRow(i++).createCell(0).setCellValue("Брокерский отчет");
+            sheet.createRow(i++).createCell(0).setCellValue("Номер договора: 12345");
+            sheet.createRow(i++).createCell(0).setCellValue("ДВИЖЕНИЕ ДЕНЕЖНЫХ СРЕДСТВ");
+            i = createRow(sheet, i, "Дата", "Операция", "Сумма", "", "Валюта", "Основание");
+            sheet.addMergedRegion(new CellRangeAddress(i - 1, i - 1, 2, 3));
+            for (int n = 0; n < rows; n++, i++) {
+                Row row = sheet.createRow(i);
+                setDate(row.createCell(0), n, dateStyle);
+                row.createCell(1).setCellValue((n % 3 == 0) ? "Ввод ДС" : "Погашение купона");
+                row.createCell(2).setCellValue(150.75 * (n % 50 + 1));
+                row.createCell(4).setCellValue("RUR");
+                row.createCell(5).setCellValue("Выплата дохода клиент <" + n + "> (НКД " + (n % 10) + ")");
+                if (n % 100 == 0) {
+                    sheet.addMergedRegion(new CellRangeAddress(i, i, 2, 3));
+                }
+            }
+            Sheet securities = book.createSheet("Ценные бумаги");
+            createRow(securities, 0, "Наименование", "ISIN", "Количество", "Погашено");
+            for (int n = 0; n < 300; n++) {
+                Row row = securities.createRow(n + 1);
+                row.createCell(0).setCellValue("Облигация " + n);
+                row.createCell(1).setCellValue("RU000A0" + n);
+                row.createCell(2).setCellValue(n * 10);
+                row.createCell(3).setCellValue(n % 2 == 0);
+            }
+            return toBytes(book);
+        }
+    }
+
+    private static int createRow(Sheet sheet, int rowNum, String... values) {
+        Row row = sheet.createRow(rowNum);
+        for (int i = 0; i < values.length; i++) {
+            row.createCell(i).setCellValue(values[i]);
+        }
+        return rowNum + 1;
+    }
+
+    private static CellStyle createDateStyle(Workbook book) {
+        CellStyle style = book.createCellStyle();
+        style.setDataFormat(book.createDataFormat().getFormat("dd.mm.yyyy"));
+        return style;
+    }
+
+    private static void setDate(Cell cell, int n, CellStyle dateStyle) {
+        cell.setCellValue(Date.valueOf(LocalDate.of(2016, 1, 1).plusDays(n % 1800)));
+        cell.setCellStyle(dateStyle);
+    }
+
+    private static byte[] toBytes(Workbook book) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        book.write(out);
+        return out.toByteArray();
+    }
+
+    private static InputStream inputStream(byte[] file) {
+        return new ByteArrayInputStream(file);
+    }
+}
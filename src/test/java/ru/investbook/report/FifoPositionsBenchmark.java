@@ -0,0 +1,95 @@
+/*
+ * InvestBook
+ * Copyright (C) 2020  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.report;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.spacious_team.broker.pojo.SecurityEventCashFlow;
+import org.spacious_team.broker.pojo.Transaction;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link FifoPositions} building time for synthetic single security history.
+ * Isn't run by tests, run {@link #main(String[])} after {@code mvn test-compile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FifoPositionsBenchmark {
+
+    @Param({"10000", "100000"})
+    private int transactionsCount;
+    private Deque<Transaction> transactions;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FifoPositionsBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build())
+                .run();
+    }
+
+    @Setup
+    public void setUp() {
+        transactions = new ArrayDeque<>(transactionsCount);
+        Random random = new Random(0);
+        Instant timestamp = Instant.parse("2010-01-01T00:00:00Z");
+        int position = 0;
+        for (int i = 0; i < transactionsCount; i++) {
+            // buys prevail to keep a long queue of opened positions, sells close several of them at once
+            int count = (position == 0 || random.nextInt(10) < 6) ?
+                    1 + random.nextInt(10) :
+                    -Math.min(position, 1 + random.nextInt(30));
+            position += count;
+            timestamp = timestamp.plusSeconds(60);
+            transactions.add(Transaction.builder()
+                    .id(String.valueOf(i))
+                    .portfolio("portfolio")
+                    .security("security")
+                    .timestamp(timestamp)
+                    .count(count)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public FifoPositions fifoPositions() {
+        return new FifoPositions(transactions, new ArrayDeque<SecurityEventCashFlow>(), TransactionCashFlows.empty());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.report;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.testng.Assert.assertEquals;
+
+public class ForeignExchangeRateHistoryTest {
+
+    private final LocalDate date = LocalDate.of(2021, 7, 1);
+    private final ForeignExchangeRateHistory history = ForeignExchangeRateHistory.of(Map.of(
+            date, BigDecimal.valueOf(72),
+            date.plusDays(1), BigDecimal.valueOf(73),
+            date.plusDays(5), BigDecimal.valueOf(74)));
+
+    @Test
+    void get() {
+        assertEquals(history.get(date.plusDays(1)), Optional.of(BigDecimal.valueOf(73)));
+        assertEquals(history.get(date.plusDays(2)), Optional.empty());
+        assertEquals(history.getLatest(), Optional.of(BigDecimal.valueOf(74)));
+    }
+
+    @Test
+    void getAtOrBefore() {
+        assertEquals(history.getAtOrBefore(date.minusDays(1)), Optional.empty());
+        assertEquals(history.getAtOrBefore(date), Optional.of(BigDecimal.valueOf(72)));
+        assertEquals(history.getAtOrBefore(date.plusDays(4)), Optional.of(BigDecimal.valueOf(73)));
+        assertEquals(history.getAtOrBefore(date.plusDays(10)), Optional.of(BigDecimal.valueOf(74)));
+        assertEquals(history.getDateAtOrBefore(date.minusDays(1)), Optional.empty());
+        assertEquals(history.getDateAtOrBefore(date.plusDays(4)), Optional.of(date.plusDays(1)));
+    }
+
+    @Test
+    void withRatesAndWithoutRate() {
+        ForeignExchangeRateHistory updated = history
+                .withRates(Map.of(date.plusDays(3), BigDecimal.valueOf(75), date, BigDecimal.valueOf(71)))
+                .withoutRate(date.plusDays(5));
+        assertEquals(updated.get(date), Optional.of(BigDecimal.valueOf(71)));
+        assertEquals(updated.getAtOrBefore(date.plusDays(4)), Optional.of(BigDecimal.valueOf(75)));
+        assertEquals(updated.getLatest(), Optional.of(BigDecimal.valueOf(75)));
+        assertEquals(history.getLatest(), Optional.of(BigDecimal.valueOf(74)));
+    }
+
+    @Test
+    void withNewerRates() {
+        ForeignExchangeRateHistory updated = history;
+        for (int i = 6; i < 100; i++) {
+            updated = updated.withRates(Map.of(date.plusDays(i), BigDecimal.valueOf(i)));
+        }
+        ForeignExchangeRateHistory branch1 = updated.withRates(Map.of(date.plusDays(100), BigDecimal.valueOf(1)));
+        ForeignExchangeRateHistory branch2 = updated.withRates(Map.of(date.plusDays(101), BigDecimal.valueOf(2)));
+        assertEquals(updated.getLatest(), Optional.of(BigDecimal.valueOf(99)));
+        assertEquals(updated.get(date.plusDays(1)), Optional.of(BigDecimal.valueOf(73)));
+        assertEquals(updated.get(date.plusDays(50)), Optional.of(BigDecimal.valueOf(50)));
+        assertEquals(branch1.getLatest(), Optional.of(BigDecimal.valueOf(1)));
+        assertEquals(branch1.get(date.plusDays(101)), Optional.empty());
+        assertEquals(branch2.getLatest(), Optional.of(BigDecimal.valueOf(2)));
+        assertEquals(branch2.getDateAtOrBefore(date.plusDays(200)), Optional.of(date.plusDays(101)));
+        assertEquals(branch2.get(date.plusDays(100)), Optional.empty());
+        assertEquals(history.getLatest(), Optional.of(BigDecimal.valueOf(74)));
+    }
+}
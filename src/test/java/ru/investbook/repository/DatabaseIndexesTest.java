@@ -0,0 +1,282 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ru.investbook.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.investbook.InvestbookProperties;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace.NONE;
+import static org.testng.Assert.assertFalse;
+
+/**
+ * Calls report repository methods on seeded H2 database migrated by Flyway, captures SQL generated by Hibernate
+ * and fails if EXPLAIN of the query shows full table scan.
+ */
+@Slf4j
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:investbook-indexes;mode=mysql;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+                "ru.investbook.repository.DatabaseIndexesTest$SqlCapture"})
+@AutoConfigureTestDatabase(replace = NONE)
+@Import(InvestbookProperties.class)
+public class DatabaseIndexesTest {
+
+    private static final int PORTFOLIOS = 10;
+    private static final int SECURITIES = 200;
+    private static final int ROWS = 20_000;
+    private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+    private static final Instant FROM = Instant.parse("2020-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2021-01-01T00:00:00Z");
+    private static final Collection<String> PORTFOLIO_IDS = List.of("portfolio-1", "portfolio-2");
+    private static final String SECURITY_ID = "security-1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private SecurityEventCashFlowRepository securityEventCashFlowRepository;
+    @Autowired
+    private SecurityQuoteRepository securityQuoteRepository;
+    @Autowired
+    private PortfolioCashRepository portfolioCashRepository;
+    @Autowired
+    private PortfolioTotalAssetsRepository portfolioTotalAssetsRepository;
+
+    @BeforeAll
+    static void seed(@Autowired DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            seed(connection);
+        }
+    }
+
+    static Stream<Arguments> queries() {
+        return Stream.of(
+                query("TransactionRepository.findBySecurityIdAndPkPortfolioInAndTimestampBetween" +
+                                "OrderByTimestampAscPkIdAsc",
+                        test -> test.transactionRepository
+                                .findBySecurityIdAndPkPortfolioInAndTimestampBetweenOrderByTimestampAscPkIdAsc(
+                                        SECURITY_ID, PORTFOLIO_IDS, FROM, TO)),
+                query("SecurityEventCashFlowRepository.findByPortfolioIdInAndSecurityIdAndCashFlowTypeId" +
+                                "AndTimestampBetweenOrderByTimestampAsc",
+                        test -> test.securityEventCashFlowRepository.
+                        findByPortfolioIdInAndSecurityIdAndCashFlowTypeIdAndTimestampBetweenOrderByTimestampAsc(
+                                PORTFOLIO_IDS, SECURITY_ID, 6, FROM, TO)),
+                query("TransactionRepository.findDistinctDerivativeByPortfolioInAndTimestampBetween" +
+                                "OrderByTimestampDesc",
+                        test -> test.transactionRepository
+                                .findDistinctDerivativeByPortfolioInAndTimestampBetweenOrderByTimestampDesc(
+                                        PORTFOLIO_IDS, FROM, TO)),
+                query("SecurityQuoteRepository.findFirstBySecurityIdAndTimestampLessThanOrderByTimestampDesc",
+                        test -> test.securityQuoteRepository
+                                .findFirstBySecurityIdAndTimestampLessThanOrderByTimestampDesc(SECURITY_ID, TO)),
+                query("SecurityQuoteRepository.findLatestBySecurityId",
+                        test -> test.securityQuoteRepository.findLatestBySecurityId(SECURITY_ID)),
+                query("PortfolioCashRepository.sumLatestValueByPortfolioIdInAndTimestampBetweenGroupByCurrency",
+                        test -> test.portfolioCashRepository
+                                .sumLatestValueByPortfolioIdInAndTimestampBetweenGroupByCurrency(
+                                        PORTFOLIO_IDS, FROM, TO)),
+                query("PortfolioCashRepository.sumValueByTimestampBetweenGroupByPortfolioAndTimestampAndCurrency",
+                        test -> test.portfolioCashRepository
+                                .sumValueByTimestampBetweenGroupByPortfolioAndTimestampAndCurrency(
+                                        FROM, FROM.plus(31, ChronoUnit.DAYS))),
+                query("PortfolioTotalAssetsRepository.sumLatestValueByPortfolioIdInGroupByCurrency",
+                        test -> test.portfolioTotalAssetsRepository
+                                .sumLatestValueByPortfolioIdInGroupByCurrency(PORTFOLIO_IDS)),
+                query("PortfolioTotalAssetsRepository.findByTimestampBetweenOrderByTimestamp",
+                        test -> test.portfolioTotalAssetsRepository
+                                .findByTimestampBetweenOrderByTimestamp(FROM, FROM.plus(31, ChronoUnit.DAYS))));
+    }
+
+    private static Arguments query(String repositoryMethod, Consumer<DatabaseIndexesTest> query) {
+        return Arguments.of(repositoryMethod, query);
+    }
+
+    /**
+     * Explains first captured statement, that is repository method query. Following statements, if any,
+     * load entity associations by primary key.
+     */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("queries")
+    void explain(String repositoryMethod, Consumer<DatabaseIndexesTest> query) {
+        SqlCapture.clear();
+        query.accept(this);
+        List<String> statements = SqlCapture.getStatements();
+        assertFalse(statements.isEmpty(), "No SQL executed by " + repositoryMethod);
+        String sql = statements.get(0);
+        String plan = explain(sql);
+        log.info("Query plan for {}:\n{}\n{}", repositoryMethod, sql, plan);
+        assertFalse(plan.contains(".tableScan"), "Full table scan for " + repositoryMethod + ":\n" + plan);
+    }
+
+    /**
+     * Query parameters are bound to null, H2 chooses indexes on prepare, so plan doesn't depend on values
+     */
+    private String explain(String sql) {
+        return jdbcTemplate.query("EXPLAIN " + sql,
+                statement -> {
+                    int parameterCount = statement.getParameterMetaData().getParameterCount();
+                    for (int i = 1; i <= parameterCount; i++) {
+                        statement.setNull(i, Types.NULL);
+                    }
+                },
+                resultSet -> {
+                    StringBuilder plan = new StringBuilder();
+                    while (resultSet.next()) {
+                        plan.append(resultSet.getString(1)).append('\n');
+                    }
+                    return plan.toString();
+                });
+    }
+
+    private static void seed(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement portfolio = connection.prepareStatement(
+                "INSERT INTO `portfolio` (`id`) VALUES (?)");
+             PreparedStatement security = connection.prepareStatement(
+                     "INSERT INTO `security` (`id`, `name`, `type`) VALUES (?, ?, ?)");
+             PreparedStatement transaction = connection.prepareStatement("""
+                     INSERT INTO `transaction` (`id`, `portfolio`, `security`, `timestamp`, `count`)
+                     VALUES (?, ?, ?, ?, ?)""");
+             PreparedStatement securityEventCashFlow = connection.prepareStatement("""
+                     INSERT INTO `security_event_cash_flow`
+                        (`portfolio`, `timestamp`, `security`, `count`, `type`, `value`, `currency`)
+                     VALUES (?, ?, ?, ?, ?, ?, 'RUB')""");
+             PreparedStatement portfolioCash = connection.prepareStatement("""
+                     INSERT INTO `portfolio_cash` (`portfolio`, `timestamp`, `market`, `currency`, `value`)
+                     VALUES (?, ?, 'all', ?, ?)""");
+             PreparedStatement portfolioTotalAssets = connection.prepareStatement("""
+                     INSERT INTO `portfolio_total_assets` (`portfolio`, `timestamp`, `currency`, `value`)
+                     VALUES (?, ?, ?, ?)""");
+             PreparedStatement securityQuote = connection.prepareStatement("""
+                     INSERT INTO `security_quote` (`security`, `timestamp`, `quote`)
+                     VALUES (?, ?, ?)""");
+             Statement statement = connection.createStatement()) {
+            for (int i = 0; i < PORTFOLIOS; i++) {
+                portfolio.setString(1, "portfolio-" + i);
+                portfolio.addBatch();
+            }
+            portfolio.executeBatch();
+            for (int i = 0; i < SECURITIES; i++) {
+                security.setString(1, "security-" + i);
+                security.setString(2, "name-" + i);
+                security.setString(3, (i % 2 == 0) ? "STOCK_OR_BOND" : "DERIVATIVE");
+                security.addBatch();
+            }
+            security.executeBatch();
+            for (int i = 0; i < ROWS; i++) {
+                String portfolioId = "portfolio-" + (i % PORTFOLIOS);
+                String securityId = "security-" + (i % SECURITIES);
+                Timestamp timestamp = Timestamp.from(START.plus(i, ChronoUnit.HOURS));
+
+                transaction.setString(1, String.valueOf(i));
+                transaction.setString(2, portfolioId);
+                transaction.setString(3, securityId);
+                transaction.setTimestamp(4, timestamp);
+                transaction.setInt(5, 1);
+                transaction.addBatch();
+
+                securityEventCashFlow.setString(1, portfolioId);
+                securityEventCashFlow.setTimestamp(2, timestamp);
+                securityEventCashFlow.setString(3, securityId);
+                securityEventCashFlow.setInt(4, 1);
+                securityEventCashFlow.setInt(5, 6 + (i % 2));
+                securityEventCashFlow.setInt(6, 100);
+                securityEventCashFlow.addBatch();
+
+                portfolioCash.setString(1, portfolioId);
+                portfolioCash.setTimestamp(2, timestamp);
+                portfolioCash.setString(3, (i % 2 == 0) ? "RUB" : "USD");
+                portfolioCash.setInt(4, 100);
+                portfolioCash.addBatch();
+
+                portfolioTotalAssets.setString(1, portfolioId);
+                portfolioTotalAssets.setTimestamp(2, timestamp);
+                portfolioTotalAssets.setString(3, (i % 3 == 0) ? "USD" : "RUB");
+                portfolioTotalAssets.setInt(4, 100);
+                portfolioTotalAssets.addBatch();
+
+                securityQuote.setString(1, securityId);
+                securityQuote.setTimestamp(2, timestamp);
+                securityQuote.setInt(3, 100);
+                securityQuote.addBatch();
+            }
+            transaction.executeBatch();
+            securityEventCashFlow.executeBatch();
+            portfolioCash.executeBatch();
+            portfolioTotalAssets.executeBatch();
+            securityQuote.executeBatch();
+            statement.execute("""
+                    INSERT INTO `security_latest_quote` (`security`, `quote_id`)
+                    SELECT `security`, MAX(`id`) FROM `security_quote` GROUP BY `security`""");
+            connection.commit();
+            statement.execute("ANALYZE");
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Configured as Hibernate statement inspector, Hibernate creates it by default constructor
+     */
+    public static class SqlCapture implements StatementInspector {
+
+        private static final List<String> statements = new ArrayList<>();
+
+        static synchronized void clear() {
+            statements.clear();
+        }
+
+        static synchronized List<String> getStatements() {
+            return List.copyOf(statements);
+        }
+
+        @Override
+        public String inspect(String sql) {
+            synchronized (SqlCapture.class) {
+                statements.add(sql);
+            }
+            return sql;
+        }
+    }
+}
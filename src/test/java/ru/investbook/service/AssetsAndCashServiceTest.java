@@ -0,0 +1,76 @@
+/*
+ * InvestBook
+ * Copyright (C) 2021  Vitalii Ananev <spacious-team@ya.ru>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package ru.investbook.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.investbook.report.ForeignExchangeRateService;
+import ru.investbook.repository.PortfolioCashRepository;
+import ru.investbook.repository.PortfolioCurrencyValue;
+import ru.investbook.repository.PortfolioRepository;
+import ru.investbook.repository.PortfolioTotalAssetsRepository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+@ExtendWith(MockitoExtension.class)
+public class AssetsAndCashServiceTest {
+
+    @Mock
+    PortfolioTotalAssetsRepository portfolioTotalAssetsRepository;
+    @Mock
+    PortfolioCashRepository portfolioCashRepository;
+    @Mock
+    ForeignExchangeRateService foreignExchangeRateService;
+    @Mock
+    PortfolioRepository portfolioRepository;
+
+    @InjectMocks
+    AssetsAndCashService service;
+
+    @Test
+    void getAssetsSumsRubAndUsdAssets() {
+        Set<String> portfolios = Set.of("portfolio-1", "portfolio-2");
+        BigDecimal rubAssets = BigDecimal.valueOf(1000);
+        BigDecimal usdAssets = BigDecimal.valueOf(10);
+        when(portfolioTotalAssetsRepository.sumLatestValueByPortfolioIdInGroupByCurrency(portfolios))
+                .thenReturn(List.of(
+                        new PortfolioCurrencyValue("RUB", Instant.now(), rubAssets),
+                        new PortfolioCurrencyValue("USD", Instant.now(), usdAssets)));
+        when(foreignExchangeRateService.convertValueToCurrency(rubAssets, "RUB", "RUB")).thenReturn(rubAssets);
+        when(foreignExchangeRateService.convertValueToCurrency(usdAssets, "USD", "RUB"))
+                .thenReturn(BigDecimal.valueOf(750));
+
+        assertEquals(service.getAssets(portfolios), Optional.of(BigDecimal.valueOf(1750)));
+    }
+
+    @Test
+    void getAssetsOfUnknownPortfolios() {
+        assertEquals(service.getAssets(Set.of()), Optional.empty());
+    }
+}